@@ -32,6 +32,14 @@ public class KeyRecord extends ColumnSet<Table> {
 		Index,
 	}
 	
+	/**
+	 * The kind of index used for an internal materialized table.  Set to {@link #INDEX_TYPE_HASH} 
+	 * for an in memory hash index, which supports only equality and IN lookups on all of the key columns,
+	 * rather than an ordered index.
+	 */
+	public static final String INDEX_TYPE = AbstractMetadataRecord.RELATIONAL_URI + "index-type"; //$NON-NLS-1$
+	public static final String INDEX_TYPE_HASH = "HASH"; //$NON-NLS-1$
+	
 	private Type type;
 
 	public KeyRecord(Type type) {
@@ -65,13 +65,16 @@ import org.teiid.jdbc.JDBCPlugin;
  * <li>version 3: starts with 8.6 and adds better repeated string performance
  * <li>version 4: starts with 8.10 and adds the geometry type
  * <li>version 5: starts with 11.2 and adds the geography and json types
+ * <li>version 6: starts with 12.0 and adds dictionary encoding of strings and
+ *   delta/run length encoding of integral and temporal values
  * </ul>
  */
 public class BatchSerializer {
 
 	public static final byte VERSION_GEOMETRY = (byte)4;
 	public static final byte VERSION_GEOGRAPHY = (byte)5;
-    static final byte CURRENT_VERSION = VERSION_GEOGRAPHY;
+	public static final byte VERSION_ENCODED = (byte)6;
+    static final byte CURRENT_VERSION = VERSION_ENCODED;
 
 	private BatchSerializer() {} // Uninstantiable
 
@@ -102,6 +105,21 @@ public class BatchSerializer {
         serializers.put(DataTypeManager.DefaultDataTypes.NULL,     		new ColumnSerializer[] {defaultSerializer, new NullColumnSerializer1()});
         serializers.put(DataTypeManager.DefaultDataTypes.OBJECT,     	new ColumnSerializer[] {defaultSerializer, new ObjectColumnSerializer((byte)1)});
         serializers.put(DataTypeManager.DefaultDataTypes.VARBINARY,    	new ColumnSerializer[] {new BinaryColumnSerializer(), new BinaryColumnSerializer1()});
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.INTEGER, new IntColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.LONG, new LongColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.SHORT, new ShortColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.DATE, new DateColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.TIME, new TimeColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.TIMESTAMP, new TimestampColumnSerializer6());
+        addEncodedSerializer(DataTypeManager.DefaultDataTypes.STRING, new StringColumnSerializer6());
+    }
+
+    private static void addEncodedSerializer(String type, ColumnSerializer serializer) {
+    	ColumnSerializer[] sers = serializers.get(type);
+    	ColumnSerializer[] result = Arrays.copyOf(sers, VERSION_ENCODED + 1);
+    	Arrays.fill(result, sers.length, VERSION_ENCODED, sers[sers.length - 1]);
+    	result[VERSION_ENCODED] = serializer;
+    	serializers.put(type, result);
     }
 
     private static ColumnSerializer arrayColumnSerializer = new ColumnSerializer() {
@@ -867,6 +885,358 @@ public class BatchSerializer {
         }
     }
 
+    private static final byte DELTA_ENCODING = 0;
+    private static final byte RUN_LENGTH_ENCODING = 1;
+    private static final long[] TEMPORAL_SCALES = {60000, 1000};
+
+    static void writeVarLong(ObjectOutput out, long value) throws IOException {
+    	while ((value & ~0x7fL) != 0) {
+    		out.write((int)((value & 0x7f) | 0x80));
+    		value >>>= 7;
+    	}
+    	out.write((int)value);
+    }
+
+    static long readVarLong(ObjectInput in) throws IOException {
+    	long result = 0;
+    	for (int shift = 0; shift < 64; shift += 7) {
+    		int b = in.readUnsignedByte();
+    		result |= (long)(b & 0x7f) << shift;
+    		if ((b & 0x80) == 0) {
+    			return result;
+    		}
+    	}
+    	throw new IOException("Malformed variable length value"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes the values as the differences between consecutive values.  Runs of the same
+     * difference, which includes repeated values and sequences, are run length encoded if that is smaller.
+     * @param values will be overwritten with the differences
+     * @param scales candidate divisors that are tried against all values, or null if the values should not be scaled
+     */
+    static void writeLongs(ObjectOutput out, long[] values, int count, long[] scales) throws IOException {
+    	long scale = 1;
+    	if (scales != null) {
+    		scaleSearch: for (long candidate : scales) {
+    			for (int i = 0; i < count; i++) {
+    				if (values[i] % candidate != 0) {
+    					continue scaleSearch;
+    				}
+    			}
+    			scale = candidate;
+    			break;
+    		}
+    		writeVarLong(out, scale);
+    	}
+    	long previous = 0;
+    	int runs = 0;
+    	for (int i = 0; i < count; i++) {
+    		long value = values[i] / scale;
+    		long delta = value - previous;
+    		if (i == 0 || delta != values[i - 1]) {
+    			runs++;
+    		}
+    		values[i] = delta;
+    		previous = value;
+    	}
+    	if (runs * 2 <= count) {
+    		out.write(RUN_LENGTH_ENCODING);
+    		for (int i = 0; i < count;) {
+    			long delta = values[i];
+    			int end = i + 1;
+    			while (end < count && values[end] == delta) {
+    				end++;
+    			}
+    			writeVarLong(out, (delta << 1) ^ (delta >> 63));
+    			writeVarLong(out, end - i);
+    			i = end;
+    		}
+    	} else {
+    		out.write(DELTA_ENCODING);
+    		for (int i = 0; i < count; i++) {
+    			long delta = values[i];
+    			writeVarLong(out, (delta << 1) ^ (delta >> 63));
+    		}
+    	}
+    }
+
+    static void readLongs(ObjectInput in, long[] values, int count, boolean scaled) throws IOException {
+    	long scale = scaled?readVarLong(in):1;
+    	byte encoding = in.readByte();
+    	long previous = 0;
+    	if (encoding == RUN_LENGTH_ENCODING) {
+    		for (int i = 0; i < count;) {
+    			long zigzag = readVarLong(in);
+    			long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+    			long length = readVarLong(in);
+    			if (length <= 0 || length > count - i) {
+    				throw new IOException("Invalid run length " + length); //$NON-NLS-1$
+    			}
+    			for (int end = i + (int)length; i < end; i++) {
+    				previous += delta;
+    				values[i] = previous * scale;
+    			}
+    		}
+    	} else if (encoding == DELTA_ENCODING) {
+    		for (int i = 0; i < count; i++) {
+    			long zigzag = readVarLong(in);
+    			previous += (zigzag >>> 1) ^ -(zigzag & 1);
+    			values[i] = previous * scale;
+    		}
+    	} else {
+    		throw new IOException("Invalid encoding " + encoding); //$NON-NLS-1$
+    	}
+    }
+
+    private static int countNonNull(byte[] isNull, int rows) {
+    	int count = rows;
+    	for (int i = 0; i < rows; i++) {
+    		if (isNullObject(isNull, i)) {
+    			count--;
+    		}
+    	}
+    	return count;
+    }
+
+    /**
+     * A serializer for values that can be represented as longs.  The non-null values
+     * are written with {@link BatchSerializer#writeLongs(ObjectOutput, long[], int, long[])}
+     */
+    private static abstract class LongEncodedColumnSerializer extends ColumnSerializer {
+    	private long[] scales;
+
+    	LongEncodedColumnSerializer(long[] scales) {
+    		this.scales = scales;
+    	}
+
+    	@Override
+    	public void writeColumn(ObjectOutput out, int col,
+    			List<? extends List<?>> batch, Map<Object, Integer> cache,
+    			byte version) throws IOException {
+    		writeIsNullData(out, col, batch);
+    		long[] values = new long[batch.size()];
+    		int count = 0;
+    		for (int i = 0; i < batch.size(); i++) {
+    			Object obj = batch.get(i).get(col);
+    			if (obj != null) {
+    				values[count++] = toLong(obj);
+    			}
+    		}
+    		writeLongs(out, values, count, scales);
+    	}
+
+    	@Override
+    	public void readColumn(ObjectInput in, int col,
+    			List<List<Object>> batch, byte[] isNull, List<Object> cache,
+    			byte version) throws IOException, ClassNotFoundException {
+    		readIsNullData(in, isNull);
+    		long[] values = new long[countNonNull(isNull, batch.size())];
+    		readLongs(in, values, values.length, scales != null);
+    		int index = 0;
+    		for (int i = 0; i < batch.size(); i++) {
+    			if (!isNullObject(isNull, i)) {
+    				batch.get(i).set(col, DataTypeManager.getCanonicalValue(fromLong(values[index++])));
+    			}
+    		}
+    	}
+
+    	protected abstract long toLong(Object obj);
+
+    	protected abstract Object fromLong(long value);
+    }
+
+    private static class IntColumnSerializer6 extends LongEncodedColumnSerializer {
+    	IntColumnSerializer6() {
+    		super(null);
+    	}
+    	@Override
+    	protected long toLong(Object obj) {
+    		return ((Integer)obj).intValue();
+    	}
+    	@Override
+    	protected Object fromLong(long value) {
+    		return Integer.valueOf((int)value);
+    	}
+    }
+
+    private static class LongColumnSerializer6 extends LongEncodedColumnSerializer {
+    	LongColumnSerializer6() {
+    		super(null);
+    	}
+    	@Override
+    	protected long toLong(Object obj) {
+    		return ((Long)obj).longValue();
+    	}
+    	@Override
+    	protected Object fromLong(long value) {
+    		return Long.valueOf(value);
+    	}
+    }
+
+    private static class ShortColumnSerializer6 extends LongEncodedColumnSerializer {
+    	ShortColumnSerializer6() {
+    		super(null);
+    	}
+    	@Override
+    	protected long toLong(Object obj) {
+    		return ((Short)obj).shortValue();
+    	}
+    	@Override
+    	protected Object fromLong(long value) {
+    		return Short.valueOf((short)value);
+    	}
+    }
+
+    private static class DateColumnSerializer6 extends LongEncodedColumnSerializer {
+    	DateColumnSerializer6() {
+    		super(TEMPORAL_SCALES);
+    	}
+    	@Override
+    	protected long toLong(Object obj) {
+    		return ((java.sql.Date)obj).getTime();
+    	}
+    	@Override
+    	protected Object fromLong(long value) {
+    		return new java.sql.Date(value);
+    	}
+    }
+
+    private static class TimeColumnSerializer6 extends LongEncodedColumnSerializer {
+    	TimeColumnSerializer6() {
+    		super(TEMPORAL_SCALES);
+    	}
+    	@Override
+    	protected long toLong(Object obj) {
+    		return ((Time)obj).getTime();
+    	}
+    	@Override
+    	protected Object fromLong(long value) {
+    		return new Time(value);
+    	}
+    }
+
+    /**
+     * Writes the millisecond and nano values as separate sequences
+     */
+    private static class TimestampColumnSerializer6 extends ColumnSerializer {
+    	@Override
+    	public void writeColumn(ObjectOutput out, int col,
+    			List<? extends List<?>> batch, Map<Object, Integer> cache,
+    			byte version) throws IOException {
+    		writeIsNullData(out, col, batch);
+    		long[] millis = new long[batch.size()];
+    		long[] nanos = new long[batch.size()];
+    		int count = 0;
+    		for (int i = 0; i < batch.size(); i++) {
+    			Timestamp ts = (Timestamp)batch.get(i).get(col);
+    			if (ts != null) {
+    				millis[count] = ts.getTime();
+    				nanos[count++] = ts.getNanos();
+    			}
+    		}
+    		writeLongs(out, millis, count, TEMPORAL_SCALES);
+    		writeLongs(out, nanos, count, null);
+    	}
+
+    	@Override
+    	public void readColumn(ObjectInput in, int col,
+    			List<List<Object>> batch, byte[] isNull, List<Object> cache,
+    			byte version) throws IOException, ClassNotFoundException {
+    		readIsNullData(in, isNull);
+    		int count = countNonNull(isNull, batch.size());
+    		long[] millis = new long[count];
+    		long[] nanos = new long[count];
+    		readLongs(in, millis, count, true);
+    		readLongs(in, nanos, count, false);
+    		int index = 0;
+    		for (int i = 0; i < batch.size(); i++) {
+    			if (!isNullObject(isNull, i)) {
+    				Timestamp ts = new Timestamp(millis[index]);
+    				ts.setNanos((int)nanos[index++]);
+    				batch.get(i).set(col, DataTypeManager.getCanonicalValue(ts));
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Uses a dictionary of the column values when there are few distinct values, otherwise
+     * the values are written with the repeated string handling of version 3
+     */
+    private static class StringColumnSerializer6 extends StringColumnSerializer3 {
+    	private static final byte LITERAL_VALUES = 0;
+    	private static final byte DICTIONARY_VALUES = 1;
+    	private static final StringColumnSerializer1 entrySerializer = new StringColumnSerializer1();
+
+    	@Override
+    	public void writeColumn(ObjectOutput out, int col,
+    			List<? extends List<?>> batch, Map<Object, Integer> cache,
+    			byte version) throws IOException {
+    		int rows = batch.size();
+    		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    		List<String> entries = new ArrayList<String>();
+    		long[] indexes = new long[rows];
+    		int count = 0;
+    		for (int i = 0; i < rows && entries.size() * 2 <= rows; i++) {
+    			String str = (String)batch.get(i).get(col);
+    			if (str == null) {
+    				continue;
+    			}
+    			Integer index = dictionary.get(str);
+    			if (index == null) {
+    				index = entries.size();
+    				dictionary.put(str, index);
+    				entries.add(str);
+    			}
+    			indexes[count++] = index;
+    		}
+    		if (entries.size() * 2 > count) {
+    			out.write(LITERAL_VALUES);
+    			super.writeColumn(out, col, batch, cache, version);
+    			return;
+    		}
+    		out.write(DICTIONARY_VALUES);
+    		writeIsNullData(out, col, batch);
+    		writeVarLong(out, entries.size());
+    		for (String entry : entries) {
+    			entrySerializer.writeObject(out, entry, cache, version);
+    		}
+    		writeLongs(out, indexes, count, null);
+    	}
+
+    	@Override
+    	public void readColumn(ObjectInput in, int col,
+    			List<List<Object>> batch, byte[] isNull, List<Object> cache,
+    			byte version) throws IOException, ClassNotFoundException {
+    		byte encoding = in.readByte();
+    		if (encoding == LITERAL_VALUES) {
+    			super.readColumn(in, col, batch, isNull, cache, version);
+    			return;
+    		}
+    		if (encoding != DICTIONARY_VALUES) {
+    			throw new IOException("Invalid encoding " + encoding); //$NON-NLS-1$
+    		}
+    		readIsNullData(in, isNull);
+    		String[] entries = new String[(int)readVarLong(in)];
+    		for (int i = 0; i < entries.length; i++) {
+    			entries[i] = DataTypeManager.getCanonicalValue((String)entrySerializer.readObject(in, cache, version));
+    		}
+    		long[] indexes = new long[countNonNull(isNull, batch.size())];
+    		readLongs(in, indexes, indexes.length, false);
+    		int index = 0;
+    		for (int i = 0; i < batch.size(); i++) {
+    			if (!isNullObject(isNull, i)) {
+    				long entry = indexes[index++];
+    				if (entry < 0 || entry >= entries.length) {
+    					throw new IOException("Invalid dictionary index " + entry); //$NON-NLS-1$
+    				}
+    				batch.get(i).set(col, entries[(int)entry]);
+    			}
+    		}
+    	}
+    }
+
     private static ColumnSerializer getSerializer(String type, byte version) {
     	ColumnSerializer[] sers = serializers.get(type);
     	if (sers == null) {
@@ -18,6 +18,8 @@
 
 package org.teiid.client;
 
+import java.sql.Blob;
+
 import javax.transaction.xa.Xid;
 
 import org.teiid.client.lob.LobChunk;
@@ -32,6 +34,13 @@ import org.teiid.core.TeiidProcessingException;
 
 public interface DQP {
 	
+	/**
+	 * Used as the batchFirst of a cursor request to ask for the rows following
+	 * the last results sent.  Such requests may be made before the prior results have
+	 * been received, which allows the server to send results as they are produced.
+	 */
+	int NEXT_BATCH = 0;
+	
 	@Secure(optional=true)
 	ResultsFuture<ResultsMessage> executeRequest(long reqID, RequestMessage message) throws TeiidProcessingException, TeiidComponentException;
 	
@@ -44,6 +53,13 @@ public interface DQP {
 	ResultsFuture<?> closeLobChunkStream(int lobRequestId, long requestId, String streamId) throws TeiidProcessingException, TeiidComponentException;
 	
 	ResultsFuture<LobChunk> requestNextLobChunk(int lobRequestId, long requestId, String streamId) throws TeiidProcessingException, TeiidComponentException;
+	
+	/**
+	 * Request the whole value of a blob, which is sent as a single stream rather than in chunks.
+	 * @return a future for the blob, which will have a null result if the value 
+	 * should instead be read with {@link #requestNextLobChunk(int, long, String)}
+	 */
+	ResultsFuture<Blob> requestLobStream(long requestId, String streamId) throws TeiidProcessingException, TeiidComponentException;
 		
 	MetadataResult getMetadata(long requestID) throws TeiidComponentException, TeiidProcessingException;
 	
@@ -272,6 +272,22 @@ public class BatchResults {
 	public int getHighestRowNumber() {
 		return highestRowNumber;
 	}
+	
+	/**
+	 * @return the highest row number that can be read from the saved batches 
+	 * without a fetch.  The final row number may be known before it is fetched.
+	 */
+	public int getHighestAvailableRowNumber() {
+		int result = this.currentRowNumber;
+		for (int i = 0; i < batches.size(); i++) {
+			Batch batch = batches.get(i);
+			if (batch.getBeginRow() <= result + 1 && batch.getEndRow() > result) {
+				result = batch.getEndRow();
+				i = -1; //the saved batches are not ordered
+			}
+		}
+		return Math.min(result, highestRowNumber);
+	}
 
 	private void setCurrentRowNumber(int currentRowNumber) {
 		if (currentRowNumber != this.currentRowNumber) {
@@ -83,7 +83,11 @@ public class JDBCURL {
     	        TeiidURL.CONNECTION.LOGIN_TIMEOUT,
     	        DatabaseMetaDataImpl.REPORT_AS_VIEWS,
     	        DatabaseMetaDataImpl.NULL_SORT,
-    	        ResultSetImpl.DISABLE_FETCH_SIZE));
+    	        ResultSetImpl.DISABLE_FETCH_SIZE,
+    	        ResultSetImpl.STREAM_RESULTS,
+    	        ResultSetImpl.PREFETCH_BATCHES,
+    	        ResultSetImpl.PREFETCH_MEMORY_LIMIT,
+    	        ResultSetImpl.STREAM_LOBS));
     	props.addAll(EXECUTION_PROPERTIES.keySet());
     	Map<String, String> result = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
     	for (String string : props) {
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 
 import javax.sql.rowset.serial.SerialArray;
@@ -231,10 +232,46 @@ public class PreparedStatementImpl extends StatementImpl implements TeiidPrepare
     	submitExecute(ResultsMode.EITHER, options).addCompletionListener(processor);
     }
     
+    @Override
+    public ResultsFuture<Boolean> submitExecute(RequestOptions options) throws SQLException {
+    	return submitExecute(ResultsMode.EITHER, options);
+    }
+    
     public ResultsFuture<Boolean> submitExecute(ResultsMode mode, RequestOptions options) throws SQLException {
         return executeSql(new String[] {this.prepareSql}, false, mode, false, options, autoGeneratedKeys);
     }
 
+    /**
+     * Submit the current batch for non-blocking execution.  Unlike {@link #executeBatch()}
+     * the batch is sent as a single request and is cleared once submitted.
+     */
+    @Override
+    public ResultsFuture<int[]> submitExecuteBatch() throws SQLException {
+    	ResultsFuture<Boolean> pending = null;
+    	try {
+    		pending = executeSql(new String[] {this.prepareSql}, true, ResultsMode.UPDATECOUNT, false, null);
+    	} finally {
+    		if (batchParameterList != null) {
+    			batchParameterList.clear();
+    		}
+    	}
+    	final ResultsFuture<int[]> result = new ResultsFuture<int[]>();
+    	pending.addCompletionListener(new ResultsFuture.CompletionListener<Boolean>() {
+    		@Override
+    		public void onCompletion(ResultsFuture<Boolean> future) {
+    			try {
+    				future.get();
+    				result.getResultsReceiver().receiveResults(updateCounts);
+    			} catch (ExecutionException e) {
+    				result.getResultsReceiver().exceptionOccurred(e.getCause());
+    			} catch (Throwable t) {
+    				result.getResultsReceiver().exceptionOccurred(t);
+    			}
+    		}
+		});
+    	return result;
+    }
+
 	@Override
     public boolean execute() throws SQLException {
         executeSql(new String[] {this.prepareSql}, false, ResultsMode.EITHER, true, null, autoGeneratedKeys);
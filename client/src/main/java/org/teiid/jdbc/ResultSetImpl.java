@@ -25,6 +25,7 @@ import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
 import java.util.Calendar;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -35,6 +36,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.teiid.client.DQP;
 import org.teiid.client.ResultsMessage;
 import org.teiid.client.lob.LobChunkInputStream;
 import org.teiid.client.lob.StreamingLobChunckProducer;
@@ -43,6 +45,7 @@ import org.teiid.client.util.ResultsFuture;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.types.BaseClobType;
+import org.teiid.core.types.BaseLob;
 import org.teiid.core.types.BinaryType;
 import org.teiid.core.types.BlobImpl;
 import org.teiid.core.types.BlobType;
@@ -63,6 +66,22 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
 	private static final int BEFORE_FIRST_ROW = 0;
 
 	public static final String DISABLE_FETCH_SIZE = "disableResultSetFetchSize"; //$NON-NLS-1$
+	public static final String STREAM_RESULTS = "streamResultSets"; //$NON-NLS-1$
+	public static final String PREFETCH_BATCHES = "prefetchBatches"; //$NON-NLS-1$
+	public static final String PREFETCH_MEMORY_LIMIT = "prefetchMemoryLimit"; //$NON-NLS-1$
+	/**
+	 * Opt-in to request blob values as a single stream.  The first read of a value then 
+	 * transfers all of it into a client temp file, even for a partial read such as getBytes(1, 10), 
+	 * which with the default chunked access only requests the first chunk.
+	 */
+	public static final String STREAM_LOBS = "streamLobs"; //$NON-NLS-1$
+	
+	/**
+	 * The target number of rows initially requested ahead of the reader when streaming
+	 */
+	static final int STREAMING_ROWS = 8192;
+	static final int MAX_STREAMING_REQUESTS = 16;
+	static final long PREFETCH_MEMORY_LIMIT_DEFAULT = 1 << 26;
 
 	// the object which was last read from Results
 	private Object currentValue;
@@ -97,12 +116,20 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
     
     private ResultsFuture<ResultsMessage> prefetch;
     private boolean usePrefetch;
+    private LinkedList<ResultsFuture<ResultsMessage>> streamed;
+    private int streamingDepth;
+    private int maxStreamingDepth;
+    private long prefetchMemoryLimit;
+    private int rowSizeEstimate;
 
 	private int skipTo;
 	
 	private static boolean DISABLE_FETCH_SIZE_DEFAULT = PropertiesUtils.getHierarchicalProperty("org.teiid." + DISABLE_FETCH_SIZE, false, Boolean.class); //$NON-NLS-1$
 	
 	private Boolean disableFetchSize;
+	
+	static boolean STREAM_RESULTS_DEFAULT = PropertiesUtils.getHierarchicalProperty("org.teiid." + STREAM_RESULTS, false, Boolean.class); //$NON-NLS-1$
+	static boolean STREAM_LOBS_DEFAULT = PropertiesUtils.getHierarchicalProperty("org.teiid." + STREAM_LOBS, false, Boolean.class); //$NON-NLS-1$
 
 	/**
 	 * Constructor.
@@ -142,7 +169,20 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
 		if (logger.isLoggable(Level.FINER)) {
 			logger.finer("Creating ResultSet requestID: " + requestID + " beginRow: " + resultsMsg.getFirstRow() + " resultsColumns: " + resultColumns + " parameters: " + parameters); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 		}
+		this.asynch = statement.isAsynch();
 		this.usePrefetch = cursorType == ResultSet.TYPE_FORWARD_ONLY && !statement.useCallingThread();
+		if (this.usePrefetch && this.parameters == 0 && statement.streamResults()) {
+			this.streamed = new LinkedList<ResultsFuture<ResultsMessage>>();
+			this.maxStreamingDepth = statement.getPrefetchBatches();
+			if (this.maxStreamingDepth <= 0) {
+				this.maxStreamingDepth = MAX_STREAMING_REQUESTS;
+			}
+			this.streamingDepth = Math.min(this.maxStreamingDepth, Math.max(2, STREAMING_ROWS / Math.max(1, fetchSize)));
+			this.prefetchMemoryLimit = statement.getPrefetchMemoryLimit();
+			if (this.prefetchMemoryLimit <= 0) {
+				this.prefetchMemoryLimit = PREFETCH_MEMORY_LIMIT_DEFAULT;
+			}
+		}
 		this.maxRows = statement.getMaxRows();
 		this.batchResults = new BatchResults(this, getCurrentBatch(resultsMsg), this.cursorType == ResultSet.TYPE_FORWARD_ONLY ? 1 : BatchResults.DEFAULT_SAVED_BATCHES);
 	}
@@ -229,6 +269,7 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
     /**
      * Assumes forward only cursoring
      */
+    @Override
     public ResultsFuture<Boolean> submitNext() throws SQLException {
     	Boolean hasNext = batchResults.hasNext(getOffset() + 1, false);
     	if (hasNext != null) {
@@ -331,8 +372,39 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
         return currentValue;
     }
     
-	private InputStreamFactory createInputStreamFactory(Streamable<?> type) {
+	private InputStreamFactory createInputStreamFactory(final Streamable<?> type) throws SQLException {
 		final StreamingLobChunckProducer.Factory factory = new StreamingLobChunckProducer.Factory(this.statement.getDQP(), this.requestID, type);
+		if (type instanceof BlobType && this.statement.streamLobs()) {
+			final DQP dqp = this.statement.getDQP();
+			final long reqId = this.requestID;
+			//request the whole value once, which the server may send directly from the buffer files
+			return new InputStreamFactory() {
+				private InputStreamFactory streamed;
+				private boolean chunked;
+				
+				@Override
+				public synchronized InputStream getInputStream() throws IOException {
+					if (streamed == null && !chunked) {
+						try {
+							Blob blob = dqp.requestLobStream(reqId, type.getReferenceStreamId()).get();
+							if (blob instanceof BaseLob) {
+								streamed = ((BaseLob)blob).getStreamFactory();
+							} else {
+								chunked = true;
+							}
+						} catch (Exception e) {
+							IOException ex = new IOException(JDBCPlugin.Util.getString("StreamImpl.Unable_to_read_data_from_stream", e.getMessage())); //$NON-NLS-1$
+							ex.initCause(e);
+							throw ex;
+						}
+					}
+					if (streamed != null) {
+						return streamed.getInputStream();
+					}
+					return new LobChunkInputStream(factory.getLobChunkProducer());
+				}
+			};
+		}
 		InputStreamFactory isf = new InputStreamFactory() {
 			@Override
 			public InputStream getInputStream() throws IOException {
@@ -371,6 +443,19 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
     public Batch requestBatch(int beginRow) throws SQLException{
     	checkClosed();
         try {
+        	if (streamed != null && !streamed.isEmpty()) {
+        		//as with the prefetch the next results are used regardless of the beginRow
+        		ResultsFuture<ResultsMessage> next = streamed.removeFirst();
+        		if (!next.isDone()) {
+        			//the reader is waiting on results, so request further ahead
+        			streamingDepth = Math.min(maxStreamingDepth, streamingDepth + 1);
+        		} else if (streamingDepth > 2 && !streamed.isEmpty() && streamed.getLast().isDone()) {
+        			//everything requested has arrived, so the reader is the bottleneck
+        			streamingDepth--;
+        		}
+        		ResultsMessage result = getResults(next);
+        		return processBatch(result);
+        	}
         	if (prefetch != null) {
     			//TODO: this is not efficient if the user is skipping around the results
     			//but the server logic at this point basically requires us
@@ -448,14 +533,37 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
 
 	private Batch getCurrentBatch(ResultsMessage currentResultMsg) throws TeiidSQLException {
 		this.updatedPlanDescription = currentResultMsg.getPlanDescription();
-		if (usePrefetch && !asynch 
-				&& prefetch == null && currentResultMsg.getLastRow() != currentResultMsg.getFinalRow()) {
-			//fetch before processing the results
-			prefetch = submitRequestBatch(currentResultMsg.getLastRow() + 1);
+		if (usePrefetch && !asynch && currentResultMsg.getLastRow() != currentResultMsg.getFinalRow()) {
+			if (streamed != null) {
+				//replenish the credit so that the server can keep sending as results are produced
+				if (rowSizeEstimate == 0) {
+					//size the initial requests from the first results
+					currentResultMsg.processResults();
+					List<? extends List<?>> results = currentResultMsg.getResultsList();
+					if (!results.isEmpty()) {
+						rowSizeEstimate = estimateRowSize(results.get(0));
+					}
+				}
+				int requests = streamingDepth;
+				if (rowSizeEstimate > 0) {
+					//limit the rows held by outstanding requests
+					long batchSize = (long)rowSizeEstimate * Math.max(1, fetchSize);
+					requests = (int)Math.max(1, Math.min(requests, prefetchMemoryLimit / batchSize));
+				}
+				while (streamed.size() < requests) {
+					streamed.add(submitRequestBatch(DQP.NEXT_BATCH));
+				}
+			} else if (prefetch == null) {
+				//fetch before processing the results
+				prefetch = submitRequestBatch(currentResultMsg.getLastRow() + 1);
+			}
 		}
 		currentResultMsg.processResults();
 		List<?> lastTuple = null;
 		List<List<?>> resultsList = (List<List<?>>) currentResultMsg.getResultsList();
+		if (streamed != null && !resultsList.isEmpty()) {
+			rowSizeEstimate = Math.max(rowSizeEstimate, estimateRowSize(resultsList.get(0)));
+		}
 		//similar logic to BatchCollector on the server side
 		//this is a catch all in case the server doesn't enforce the max
 		//such as currently the case with cached subset results
@@ -513,6 +621,13 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
 		return highest - current - getOffset() - (batchResults.isTailLast()?1:0);
 	}
 	
+	@Override
+	public int availableFetched() throws SQLException {
+		int current = batchResults.getCurrentRowNumber();
+		int highest = batchResults.getHighestAvailableRowNumber();
+		return highest - current - getOffset() - (batchResults.isTailLast() && highest == batchResults.getHighestRowNumber()?1:0);
+	}
+	
 	protected int getOffset() {
 		return parameters > 0 ? 1 : 0;
 	}
@@ -1775,5 +1890,26 @@ public class ResultSetImpl extends WrapperImpl implements TeiidResultSet, BatchF
 	ResultsFuture<ResultsMessage> getPrefetch() {
 		return prefetch;
 	}
+	
+	int getOutstandingBatches() {
+		return streamed == null ? 0 : streamed.size();
+	}
+	
+	/**
+	 * A rough estimate of the heap used by a row of results
+	 */
+	static int estimateRowSize(List<?> row) {
+		int size = 16 + 8 * row.size();
+		for (Object value : row) {
+			if (value instanceof String) {
+				size += 40 + 2 * ((String)value).length();
+			} else if (value instanceof byte[]) {
+				size += 16 + ((byte[])value).length;
+			} else if (value != null) {
+				size += 24;
+			}
+		}
+		return size;
+	}
 
 }
@@ -52,6 +52,7 @@ import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.types.DataTypeManager;
 import org.teiid.core.types.JDBCSQLTypeInfo;
 import org.teiid.core.types.SQLXMLImpl;
+import org.teiid.core.util.PropertiesUtils;
 import org.teiid.core.util.SqlUtil;
 import org.teiid.core.util.StringUtil;
 import org.teiid.jdbc.EnhancedTimer.Task;
@@ -122,6 +123,9 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
     // ID for current request
     protected long currentRequestID = -1;
 
+    // true if the current request was submitted without blocking
+    private boolean asynch;
+
     //  the last query plan description
     private PlanNode currentPlanDescription;
 
@@ -327,6 +331,7 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
     	submitExecute(sql, options).addCompletionListener(processor);
     }
     
+    @Override
     public ResultsFuture<Boolean> submitExecute(String sql, RequestOptions options) throws SQLException {
     	return executeSql(new String[] {sql}, false, ResultsMode.EITHER, false, options);
     }
@@ -425,6 +430,7 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
         throws SQLException {
         checkStatement();
         resetExecutionState();
+        this.asynch = !synch;
         if (options != null) {
         	if (options.isContinuous()) {
         		if (!this.driverConnection.getServerConnection().supportsContinuous()) {
@@ -574,7 +580,7 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
         }
     	ResultsFuture<ResultsMessage> pendingResult = execute(reqMessage, synch);
     	final ResultsFuture<Boolean> result = new ResultsFuture<Boolean>();
-    	pendingResult.addCompletionListener(new ResultsFuture.CompletionListener<ResultsMessage>() {
+    	ResultsFuture.CompletionListener<ResultsMessage> resultsListener = new ResultsFuture.CompletionListener<ResultsMessage>() {
     		@Override
     		public void onCompletion(ResultsFuture<ResultsMessage> future) {
     			try {
@@ -584,10 +590,12 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
 					result.getResultsReceiver().exceptionOccurred(t);
 				}
     		}
-		});
+		};
     	if (synch) {
     		try {
 				pendingResult.get(queryTimeoutMS==0?Integer.MAX_VALUE:queryTimeoutMS, TimeUnit.MILLISECONDS);
+				//only listen once done so that remote results are read by the calling thread
+				pendingResult.addCompletionListener(resultsListener);
     			result.get(); //throw an exception if needed
     			return result;
     		} catch (ExecutionException e) {
@@ -605,6 +613,7 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
 			}
     		throw new TeiidSQLException(JDBCPlugin.Util.getString("MMStatement.Timeout_before_complete")); //$NON-NLS-1$
     	}
+    	pendingResult.addCompletionListener(resultsListener);
     	return result;
     }
 
@@ -760,6 +769,50 @@ public class StatementImpl extends WrapperImpl implements TeiidStatement {
 		return (useCallingThread == null || Boolean.valueOf(useCallingThread));
 	}
 
+	boolean isAsynch() {
+		return asynch;
+	}
+
+	/**
+	 * @return true if forward only results should be streamed by keeping several
+	 * requests for the following batches outstanding
+	 */
+	boolean streamResults() throws SQLException {
+		if (this.getConnection().getServerConnection() == null 
+				|| this.getConnection().getServerConnection().getServerVersion().compareTo("12.00") < 0) { //$NON-NLS-1$
+			return false;
+		}
+		return getPrefetchBatches() > 1 || PropertiesUtils.getBooleanProperty(this.getConnection().getConnectionProps(), ResultSetImpl.STREAM_RESULTS, ResultSetImpl.STREAM_RESULTS_DEFAULT);
+	}
+	
+	/**
+	 * @return true if blob values should be requested as a single stream
+	 * rather than in chunks
+	 */
+	boolean streamLobs() throws SQLException {
+		if (this.getConnection().getServerConnection() == null 
+				|| this.getConnection().getServerConnection().getServerVersion().compareTo("12.00") < 0) { //$NON-NLS-1$
+			return false;
+		}
+		return PropertiesUtils.getBooleanProperty(this.getConnection().getConnectionProps(), ResultSetImpl.STREAM_LOBS, ResultSetImpl.STREAM_LOBS_DEFAULT);
+	}
+	
+	/**
+	 * @return the maximum number of batches to request ahead of the reader when streaming
+	 * or 0 if not set
+	 */
+	int getPrefetchBatches() throws SQLException {
+		return PropertiesUtils.getIntProperty(this.getConnection().getConnectionProps(), ResultSetImpl.PREFETCH_BATCHES, 0);
+	}
+	
+	/**
+	 * @return the approximate limit in bytes for rows held by outstanding requests when streaming
+	 * or 0 if not set
+	 */
+	long getPrefetchMemoryLimit() throws SQLException {
+		return PropertiesUtils.getLongProperty(this.getConnection().getConnectionProps(), ResultSetImpl.PREFETCH_MEMORY_LIMIT, 0);
+	}
+
 	public static ResultsFuture<Boolean> booleanFuture(boolean isTrue) {
 		ResultsFuture<Boolean> rs = new ResultsFuture<Boolean>();
 		rs.getResultsReceiver().receiveResults(isTrue);
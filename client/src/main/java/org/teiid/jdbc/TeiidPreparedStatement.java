@@ -21,6 +21,8 @@ package org.teiid.jdbc;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import org.teiid.client.util.ResultsFuture;
+
 /**
  * This interface provides methods in 
  * addition to the standard JDBC methods. 
@@ -29,7 +31,6 @@ public interface TeiidPreparedStatement extends PreparedStatement {
 	
     /**
      * Execute the given statement using a non-blocking callback.
-     * This method is only valid for use with embedded connections.
      * 
      * Note that a single Statement may only have 1 asynch query executing at a time.
      * 
@@ -38,5 +39,22 @@ public interface TeiidPreparedStatement extends PreparedStatement {
      * @throws SQLException 
      */
     void submitExecute(StatementCallback callback, RequestOptions options) throws SQLException;
+    
+    /**
+     * Execute the prepared statement without blocking.
+     * @see TeiidStatement#submitExecute(String, RequestOptions)
+     * 
+     * @param options may be null
+     * @throws SQLException 
+     */
+    ResultsFuture<Boolean> submitExecute(RequestOptions options) throws SQLException;
+    
+    /**
+     * Submit the current batch without blocking.  The batch is cleared once submitted
+     * and the returned future completes with the update counts.
+     * 
+     * @throws SQLException 
+     */
+    ResultsFuture<int[]> submitExecuteBatch() throws SQLException;
 
 }
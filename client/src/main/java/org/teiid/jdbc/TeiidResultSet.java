@@ -21,6 +21,8 @@ package org.teiid.jdbc;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import org.teiid.client.util.ResultsFuture;
+
 public interface TeiidResultSet extends ResultSet {
 	
     /**
@@ -32,5 +34,28 @@ public interface TeiidResultSet extends ResultSet {
      * @exception  SQLException if the statement is closed or another error condition occurs.
      */
 	int available() throws SQLException;
+	
+	/**
+	 * Returns the number of rows (after the current) that have already been fetched to the client
+	 * and can be read with {@link #next()} without a fetch.  Unlike {@link #available()} this does not
+	 * count rows that are known to exist, but have not yet been fetched.
+	 *
+	 * @exception  SQLException if the statement is closed or another error condition occurs.
+	 */
+	int availableFetched() throws SQLException;
+	
+	/**
+	 * Move the cursor forward one row without blocking.  The returned future completes 
+	 * with the result of {@link #next()} once the batch containing the row is available.
+	 * <br>
+	 * Rows are fetched a batch at a time, so after completion the following {@link #availableFetched()} 
+	 * rows may be read with {@link #next()} without blocking.  For results from a non-blocking
+	 * execution, {@link #next()} will throw an exception rather than block if a fetch is needed.
+	 * <br>
+	 * Only valid for forward only results.
+	 *  
+	 * @exception  SQLException if the result set is closed or another error condition occurs.
+	 */
+	ResultsFuture<Boolean> submitNext() throws SQLException;
 
 }
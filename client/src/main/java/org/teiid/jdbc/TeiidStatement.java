@@ -24,6 +24,7 @@ import java.util.Collection;
 
 import org.teiid.client.plan.Annotation;
 import org.teiid.client.plan.PlanNode;
+import org.teiid.client.util.ResultsFuture;
 
 
 
@@ -99,7 +100,6 @@ public interface TeiidStatement extends java.sql.Statement {
     
     /**
      * Execute the given statement using a non-blocking callback.
-     * This method is only valid for use with embedded connections.
      * 
      * Note that a single Statement may only have 1 asynch query executing at a time.
      * 
@@ -108,4 +108,21 @@ public interface TeiidStatement extends java.sql.Statement {
      * @throws SQLException 
      */
     void submitExecute(String sql, StatementCallback callback, RequestOptions options) throws SQLException;
+    
+    /**
+     * Execute the given statement without blocking.  The returned future completes 
+     * with true if there is a {@link TeiidResultSet}, which should then be read with 
+     * {@link TeiidResultSet#submitNext()}.
+     * <br>
+     * Completion listeners are called from a driver or server thread, and should 
+     * not perform blocking calls on this connection.  Such a call will not deadlock, 
+     * but it delays the results of other non-blocking executions until it returns.
+     * 
+     * Note that a single Statement may only have 1 asynch query executing at a time.
+     * 
+     * @param sql
+     * @param options may be null
+     * @throws SQLException 
+     */
+    ResultsFuture<Boolean> submitExecute(String sql, RequestOptions options) throws SQLException;
 }
@@ -42,6 +42,9 @@ public class Handshake implements Externalizable {
     private byte[] publicKeyLarge;
     private AuthenticationType authType = AuthenticationType.USERPASSWORD;
     private boolean cbc = true;
+    private boolean multiplexed;
+    private boolean compression;
+    private int maxStreams;
     
     public Handshake() {
     	
@@ -119,6 +122,42 @@ public class Handshake implements Externalizable {
         this.cbc = cbc;
     }
     
+    /**
+     * From the server, if it accepts multiple logical connections over the socket.
+     * From the client, if it will send {@link MultiplexedMessage}s.
+     */
+    public boolean isMultiplexed() {
+		return multiplexed;
+	}
+    
+    public void setMultiplexed(boolean multiplexed) {
+		this.multiplexed = multiplexed;
+	}
+    
+    /**
+     * From the server, if it can compress large results.
+     * From the client, if it accepts compressed results.
+     */
+    public boolean isCompression() {
+		return compression;
+	}
+    
+    public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+    
+    /**
+     * From the server, the max number of logical connections it will accept over the socket.
+     * From the client, the negotiated max, which is no more than the server max.
+     */
+    public int getMaxStreams() {
+		return maxStreams;
+	}
+    
+    public void setMaxStreams(int maxStreams) {
+		this.maxStreams = maxStreams;
+	}
+    
     @Override
     public void readExternal(ObjectInput in) throws IOException,
     		ClassNotFoundException {
@@ -141,6 +180,27 @@ public class Handshake implements Externalizable {
     	} catch (EOFException e) {
     	    cbc = false;
     	}
+    	try {
+    		multiplexed = in.readBoolean();
+    	} catch (OptionalDataException e) {
+    		multiplexed = false;
+    	} catch (EOFException e) {
+    		multiplexed = false;
+    	}
+    	try {
+    		compression = in.readBoolean();
+    	} catch (OptionalDataException e) {
+    		compression = false;
+    	} catch (EOFException e) {
+    		compression = false;
+    	}
+    	try {
+    		maxStreams = in.readInt();
+    	} catch (OptionalDataException e) {
+    		maxStreams = 0;
+    	} catch (EOFException e) {
+    		maxStreams = 0;
+    	}
     }
     
     @Override
@@ -155,6 +215,9 @@ public class Handshake implements Externalizable {
 	    	out.write(publicKeyLarge);
     	}
     	out.writeBoolean(cbc);
+    	out.writeBoolean(multiplexed);
+    	out.writeBoolean(compression);
+    	out.writeInt(maxStreams);
     }
     
 }
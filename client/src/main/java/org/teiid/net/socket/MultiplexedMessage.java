@@ -0,0 +1,70 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.net.socket;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A request sent for a logical connection that shares its socket with other connections.
+ * <br>
+ * Responses are plain {@link Message}s since the message keys are already unique
+ * per socket.  A message with null contents and key closes the stream.
+ */
+public class MultiplexedMessage extends Message {
+	private static final long serialVersionUID = -2839413318725127290L;
+
+	private int streamId;
+
+	public MultiplexedMessage() {
+
+	}
+
+	public MultiplexedMessage(int streamId) {
+		this.streamId = streamId;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public boolean isClose() {
+		return getContents() == null && getMessageKey() == null;
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException,
+			ClassNotFoundException {
+		super.readExternal(in);
+		this.streamId = in.readInt();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+		out.writeInt(streamId);
+	}
+
+	@Override
+	public String toString() {
+		return "Stream " + streamId + " " + super.toString(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.net.socket;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.teiid.client.util.ResultsFuture;
+import org.teiid.client.util.ResultsReceiver;
+import org.teiid.core.crypto.Cryptor;
+import org.teiid.net.CommunicationException;
+import org.teiid.net.HostInfo;
+
+/**
+ * A logical connection over a shared {@link SocketServerInstanceImpl}.
+ * <br>
+ * Requests are tagged with the stream id so that the server can associate them with
+ * the session of this connection.  Reading and the dispatch of responses is shared with
+ * all other streams on the socket.
+ */
+class MultiplexedServerInstance implements SocketServerInstance {
+
+	private final SocketServerInstanceImpl instance;
+	private final int streamId;
+	private HashMap<Class<?>, Object> serviceMap = new HashMap<Class<?>, Object>();
+	private volatile boolean closed;
+
+	MultiplexedServerInstance(SocketServerInstanceImpl instance, int streamId) {
+		this.instance = instance;
+		this.streamId = streamId;
+	}
+
+	@Override
+	public synchronized <T> T getService(Class<T> iface) {
+		Object service = this.serviceMap.get(iface);
+		if (service == null) {
+			service = Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {iface}, new SocketServerInstanceImpl.RemoteInvocationHandler(iface, false) {
+				@Override
+				protected SocketServerInstance getInstance() {
+					return MultiplexedServerInstance.this;
+				}
+			});
+			this.serviceMap.put(iface, service);
+		}
+		return iface.cast(service);
+	}
+
+	@Override
+	public void send(Message message, ResultsReceiver<Object> receiver,
+			Serializable key) throws CommunicationException, InterruptedException {
+		MultiplexedMessage streamMessage = new MultiplexedMessage(streamId);
+		streamMessage.setContents(message.getContents());
+		instance.send(streamMessage, receiver, key);
+	}
+
+	@Override
+	public void read(long timeout, TimeUnit unit, ResultsFuture<?> resultsFuture)
+			throws TimeoutException, InterruptedException {
+		instance.read(timeout, unit, resultsFuture);
+	}
+
+	@Override
+	public void readAsynch(ResultsFuture<?> resultsFuture) {
+		instance.readAsynch(resultsFuture);
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		instance.closeStream(streamId);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed && instance.isOpen();
+	}
+
+	@Override
+	public HostInfo getHostInfo() {
+		return instance.getHostInfo();
+	}
+
+	@Override
+	public Cryptor getCryptor() {
+		return instance.getCryptor();
+	}
+
+	@Override
+	public long getSynchTimeout() {
+		return instance.getSynchTimeout();
+	}
+
+	@Override
+	public String getServerVersion() {
+		return instance.getServerVersion();
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return instance.getLocalAddress();
+	}
+
+	int getStreamId() {
+		return streamId;
+	}
+
+}
@@ -21,6 +21,11 @@ package org.teiid.net.socket;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.teiid.core.util.PropertiesUtils;
@@ -48,6 +53,10 @@ public class SocketServerConnectionFactory implements ServerConnectionFactory, S
 	
 	//config properties
 	private long synchronousTtl = 240000l;
+	private int maxConnectionsPerSocket;
+	private boolean compression;
+	
+	private Map<HostInfo, List<SocketServerInstanceImpl>> sharedInstances = new HashMap<HostInfo, List<SocketServerInstanceImpl>>();
 
 	public static synchronized SocketServerConnectionFactory getInstance() {
 		if (INSTANCE == null) {
@@ -84,9 +93,57 @@ public class SocketServerConnectionFactory implements ServerConnectionFactory, S
 	
 	@Override
 	public SocketServerInstance getServerInstance(HostInfo info) throws CommunicationException, IOException {
+		if (maxConnectionsPerSocket > 1) {
+			SocketServerInstance stream = openSharedStream(info);
+			if (stream != null) {
+				return stream;
+			}
+		}
 		SocketServerInstanceImpl ssii = new SocketServerInstanceImpl(info, getSynchronousTtl(), this.channelFactory.getSoTimeout());
+		ssii.setMaxStreams(maxConnectionsPerSocket);
+		ssii.setCompression(compression);
 		ssii.connect(this.channelFactory);
-		return ssii;
+		if (!ssii.isMultiplexed()) {
+			//older server, use the socket directly
+			return ssii;
+		}
+		SocketServerInstance stream = ssii.openStream();
+		synchronized (sharedInstances) {
+			List<SocketServerInstanceImpl> instances = sharedInstances.get(info);
+			if (instances == null) {
+				instances = new ArrayList<SocketServerInstanceImpl>();
+				sharedInstances.put(info, instances);
+			}
+			instances.add(ssii);
+		}
+		return stream;
+	}
+
+	private SocketServerInstance openSharedStream(HostInfo info) {
+		synchronized (sharedInstances) {
+			List<SocketServerInstanceImpl> instances = sharedInstances.get(info);
+			if (instances == null) {
+				return null;
+			}
+			for (Iterator<SocketServerInstanceImpl> iter = instances.iterator(); iter.hasNext();) {
+				SocketServerInstanceImpl ssii = iter.next();
+				if (!ssii.isOpen()) {
+					iter.remove();
+					continue;
+				}
+				if (ssii.getHostInfo().isSsl() != info.isSsl()) {
+					continue;
+				}
+				SocketServerInstance stream = ssii.openStream();
+				if (stream != null) {
+					return stream;
+				}
+			}
+			if (instances.isEmpty()) {
+				sharedInstances.remove(info);
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -115,5 +172,31 @@ public class SocketServerConnectionFactory implements ServerConnectionFactory, S
 	public void setSynchronousTtl(long synchronousTTL) {
 		this.synchronousTtl = synchronousTTL;
 	}
+	
+	public int getMaxConnectionsPerSocket() {
+		return maxConnectionsPerSocket;
+	}
+	
+	/**
+	 * Set the max number of logical connections that may share a socket.
+	 * A value less than 2, the default, uses a socket for each connection.
+	 * @param maxConnectionsPerSocket
+	 */
+	public void setMaxConnectionsPerSocket(int maxConnectionsPerSocket) {
+		this.maxConnectionsPerSocket = maxConnectionsPerSocket;
+	}
+	
+	public boolean isCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Set to true to accept compressed results from servers that offer compression.
+	 * This trades cpu for bandwidth and is typically only beneficial over slower links.
+	 * @param compression
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
 
 }
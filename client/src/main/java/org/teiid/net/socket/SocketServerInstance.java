@@ -48,6 +48,12 @@ public interface SocketServerInstance {
 
 	void read(long timeout, TimeUnit unit, ResultsFuture<?> resultsFuture) throws TimeoutException, InterruptedException;
 
+	/**
+	 * Read in the background until the future is done.  Used when there 
+	 * is no thread waiting on the result.
+	 */
+	void readAsynch(ResultsFuture<?> resultsFuture);
+
 	String getServerVersion();
 
 	InetAddress getLocalAddress();
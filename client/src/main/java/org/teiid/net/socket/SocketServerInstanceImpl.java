@@ -29,10 +29,13 @@ import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -49,6 +52,7 @@ import org.teiid.core.crypto.CryptoException;
 import org.teiid.core.crypto.Cryptor;
 import org.teiid.core.crypto.DhKeyGenerator;
 import org.teiid.core.crypto.NullCryptor;
+import org.teiid.core.util.NamedThreadFactory;
 import org.teiid.jdbc.JDBCPlugin;
 import org.teiid.net.CommunicationException;
 import org.teiid.net.HostInfo;
@@ -64,6 +68,8 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
     private static Logger log = Logger.getLogger("org.teiid.client.sockets"); //$NON-NLS-1$
 
 	private static AtomicInteger MESSAGE_ID = new AtomicInteger();
+	//shared by all sockets, at most one thread is used per socket with pending asynch results
+	private static ExecutorService asynchReaders = Executors.newCachedThreadPool(new NamedThreadFactory("Asynch Socket Reader")); //$NON-NLS-1$
     private Map<Serializable, ResultsReceiver<Object>> asynchronousListeners = new ConcurrentHashMap<Serializable, ResultsReceiver<Object>>();
 
     private long synchTimeout;
@@ -76,6 +82,14 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
     
     private boolean hasReader;
     private int soTimeout;
+    private Set<ResultsFuture<?>> asynchFutures = new LinkedHashSet<ResultsFuture<?>>();
+    private boolean asynchReading;
+    
+    private int maxStreams;
+    private boolean multiplexed;
+    private boolean compression;
+    private int streams;
+    private int nextStreamId;
     
     public SocketServerInstanceImpl(HostInfo info, long synchTimeout, int soTimeout) {
     	if (!info.isResolved()) {
@@ -183,6 +197,12 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
                 this.cryptor = new NullCryptor();
             }
             
+            this.multiplexed = this.maxStreams > 1 && handshake.isMultiplexed() && handshake.getMaxStreams() > 1;
+            this.maxStreams = this.multiplexed?Math.min(this.maxStreams, handshake.getMaxStreams()):0;
+            handshake.setMultiplexed(this.multiplexed);
+            handshake.setMaxStreams(this.maxStreams);
+            handshake.setCompression(this.compression && handshake.isCompression());
+            
             this.socketChannel.write(handshake);
         } catch (CryptoException e) {
         	 throw new CommunicationException(JDBCPlugin.Event.TEIID20012, e, e.getMessage());
@@ -197,6 +217,60 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
     public boolean isOpen() {
         return socketChannel.isOpen();
     }
+    
+    /**
+     * Request that the socket be shared by up to maxStreams logical connections.  
+     * Must be set prior to connecting.  The server may lower the max.
+     * @param maxStreams
+     */
+    public void setMaxStreams(int maxStreams) {
+		this.maxStreams = maxStreams;
+	}
+    
+    /**
+     * Accept compressed results if the server offers them.  Must be set prior to connecting.
+     * @param compression
+     */
+    public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+    
+    /**
+     * @return true if the server accepted sharing the socket
+     */
+    public boolean isMultiplexed() {
+		return multiplexed;
+	}
+    
+    /**
+     * Open a logical connection over this socket.
+     * @return the new stream or null if the socket is closed or already has the max streams
+     */
+    public synchronized SocketServerInstance openStream() {
+    	if (!multiplexed || !isOpen() || streams >= maxStreams) {
+    		return null;
+    	}
+    	streams++;
+    	return new MultiplexedServerInstance(this, ++nextStreamId);
+    }
+    
+    /**
+     * Notify the server that the stream is closed.  The socket is closed along with the last stream.
+     */
+    void closeStream(int streamId) {
+    	if (isOpen()) {
+    		socketChannel.write(new MultiplexedMessage(streamId));
+    	}
+    	synchronized (this) {
+    		if (--streams == 0) {
+    			shutdown();
+    		}
+    	}
+    }
+    
+    public synchronized int getStreamCount() {
+		return streams;
+	}
 
     public void send(Message message, ResultsReceiver<Object> listener, Serializable messageKey)
         throws CommunicationException, InterruptedException {
@@ -263,6 +337,12 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
                 	if (log.isLoggable(Level.FINE)) {
                 		log.log(Level.FINE, "protocol error aborting all listeners"); //$NON-NLS-1$
                 	}
+                	if (multiplexed) {
+                		//the listeners belong to every stream, so the socket can no longer be trusted
+                		shutdown();
+                		exceptionOccurred(holder.getException());
+                		return;
+                	}
                 	for (ResultsReceiver<Object> listener : asynchronousListeners.values()) {
                 		listener.exceptionOccurred(holder.getException());
                 	}
@@ -344,6 +424,63 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
 		}
     }
     
+    @Override
+    public void readAsynch(ResultsFuture<?> future) {
+    	synchronized (this) {
+    		if (future.isDone()) {
+    			return;
+    		}
+    		asynchFutures.add(future);
+    		if (asynchReading) {
+    			return;
+    		}
+    		asynchReading = true;
+    	}
+    	asynchReaders.execute(new Runnable() {
+			@Override
+			public void run() {
+				readAsynch();
+			}
+		});
+    }
+    
+    /**
+     * Read until all of the asynch futures are done.  Listeners are called from this
+     * thread and should not perform blocking calls on the connection.  Reading is relinquished 
+     * before dispatching, so a blocking call will not deadlock, but it delays the results 
+     * for the other asynch futures until it returns.
+     */
+    private void readAsynch() {
+    	while (true) {
+    		ResultsFuture<?> future = null;
+    		synchronized (this) {
+    			for (Iterator<ResultsFuture<?>> iter = asynchFutures.iterator(); iter.hasNext();) {
+    				ResultsFuture<?> pending = iter.next();
+    				if (pending.isDone()) {
+    					iter.remove();
+    				} else if (future == null) {
+    					future = pending;
+    				}
+    			}
+    			if (future == null) {
+    				asynchReading = false;
+    				return;
+    			}
+    		}
+    		try {
+    			read(synchTimeout, TimeUnit.MILLISECONDS, future);
+    		} catch (TimeoutException e) {
+    			//keep reading, asynch timeouts are enforced by the caller
+    		} catch (InterruptedException e) {
+    			synchronized (this) {
+    				asynchReading = false;
+    			}
+    			Thread.currentThread().interrupt();
+    			return;
+    		}
+    	}
+    }
+    
 	@Override
 	public synchronized <T> T getService(Class<T> iface) {
 		Object service = this.serviceMap.get(iface);
@@ -423,6 +560,15 @@ public class SocketServerInstanceImpl implements SocketServerInstance {
 						instance.read(timeout, unit, this);
 						return super.get(timeout, unit);
 					}
+					
+					/**
+					 * there may not be a thread waiting on the result, so read in the background
+					 */
+					@Override
+					public void addCompletionListener(CompletionListener<Object> listener) {
+						super.addCompletionListener(listener);
+						instance.readAsynch(this);
+					}
 				};
 				final ResultsReceiver<Object> receiver = results.getResultsReceiver();
 	
@@ -24,6 +24,7 @@ import java.sql.Clob;
 import java.sql.SQLException;
 import java.sql.SQLXML;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -51,11 +52,13 @@ import org.teiid.core.TeiidException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.TeiidRuntimeException;
 import org.teiid.core.types.*;
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
 import org.teiid.core.types.InputStreamFactory.StreamFactoryReference;
 import org.teiid.core.util.ReaderInputStream;
 import org.teiid.jdbc.JDBCPlugin;
 import org.teiid.net.socket.Handshake;
 import org.teiid.net.socket.Message;
+import org.teiid.net.socket.MultiplexedMessage;
 import org.teiid.net.socket.ServiceInvocationStruct;
 
 
@@ -76,6 +79,7 @@ public class CompactObjectOutputStream extends ObjectOutputStream {
     
     private List<InputStream> streams = new LinkedList<InputStream>();
     private List<StreamFactoryReference> references = new LinkedList<StreamFactoryReference>();
+    private Map<InputStream, InputStreamFactory> transferableFactories = new IdentityHashMap<InputStream, InputStreamFactory>();
     
     public static void addKnownClass(Class<?> clazz, byte code) {
     	KNOWN_CLASSES.put(clazz, Integer.valueOf(code));
@@ -90,6 +94,7 @@ public class CompactObjectOutputStream extends ObjectOutputStream {
     	addKnownClass(Message.class, (byte)4);
     	addKnownClass(SerializableReader.class, (byte)5);
     	addKnownClass(SerializableInputStream.class, (byte)6);
+    	addKnownClass(MultiplexedMessage.class, (byte)7);
     	
     	addKnownClass(DQP.class, (byte)10);
     	addKnownClass(LobChunk.class, (byte)11);
@@ -133,11 +138,21 @@ public class CompactObjectOutputStream extends ObjectOutputStream {
 		return streams;
 	}
     
+    /**
+     * Get the factory of a stream from {@link #getStreams()} if its bytes
+     * may be transferred directly to a channel instead.
+     * @return the {@link ChannelTransferable} factory or null
+     */
+    public InputStreamFactory getTransferableFactory(InputStream stream) {
+    	return transferableFactories.get(stream);
+    }
+    
     @Override
     public void reset() throws IOException {
     	super.reset();
     	streams.clear();
     	references.clear();
+    	transferableFactories.clear();
     }
     
     public List<StreamFactoryReference> getReferences() {
@@ -181,7 +196,12 @@ public class CompactObjectOutputStream extends ObjectOutputStream {
 		    		references.add(sfr);
 		    		return sfr;
 		    	} else if (obj instanceof BlobImpl) {
-		    		streams.add(((Blob)obj).getBinaryStream());
+		    		InputStream is = ((Blob)obj).getBinaryStream();
+		    		streams.add(is);
+		    		InputStreamFactory isf = ((BlobImpl)obj).getStreamFactory();
+		    		if (isf instanceof ChannelTransferable) {
+		    			transferableFactories.put(is, isf);
+		    		}
 		    		StreamFactoryReference sfr = new BlobImpl();
 		    		references.add(sfr);
 		    		return sfr;
@@ -24,7 +24,7 @@ import org.teiid.core.types.InputStreamFactory;
 import org.teiid.core.types.InputStreamFactory.StreamFactoryReference;
 import org.teiid.core.util.AccessibleBufferedInputStream;
 import org.teiid.core.util.ExternalizeUtil;
-import org.teiid.core.util.ObjectConverterUtil;
+import org.teiid.core.util.LZ4Codec;
 import org.teiid.jdbc.JDBCPlugin;
 
 
@@ -46,6 +46,11 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
 
     private int remaining;
     private boolean foundLength;
+    private boolean compressed;
+    private int rawLength;
+    private byte[] compressedBlock;
+    private int blockIndex;
+    private int chunkLengthHigh = -1;
     
     private InputStream subStream = new InputStream() {
     	
@@ -90,6 +95,11 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
 	        if (!foundLength) {
 	        	clearRemaining();
 	        	remaining = dis.readInt();
+	        	//a negative length indicates a compressed object
+	        	compressed = remaining < 0;
+	        	if (compressed) {
+	        		remaining = -remaining;
+	        	}
 	        	foundLength = true;
 	        	if (remaining <= 0) {
 	    		    throw new StreamCorruptedException("invalid data length: " + remaining); //$NON-NLS-1$
@@ -98,8 +108,12 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
 	    		    throw new StreamCorruptedException(JDBCPlugin.Util.gs(JDBCPlugin.Event.TEIID20028, remaining, maxObjectSize));
 	    		}
 	        }
+	        InputStream objectStream = subStream;
+	        if (compressed) {
+	        	objectStream = readCompressed();
+	        }
 	        foundLength = false;
-	        CompactObjectInputStream cois = new CompactObjectInputStream(subStream, classLoader);
+	        CompactObjectInputStream cois = new CompactObjectInputStream(objectStream, classLoader);
 	        result = cois.readObject();
 	        streams = ExternalizeUtil.readList(cois, StreamFactoryReference.class);
 	        streamIndex = 0;
@@ -107,7 +121,16 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
     	while (streamIndex < streams.size()) {
     		if (!foundLength) {
     			clearRemaining();
-	        	remaining = 0xffff & dis.readShort(); //convert to unsigned
+    			//read the bytes separately so that the state is retained if a read times out
+    			if (chunkLengthHigh == -1) {
+    				chunkLengthHigh = in.read();
+    			}
+    			int low = in.read();
+    			if ((chunkLengthHigh | low) < 0) {
+    				throw new EOFException();
+    			}
+	        	remaining = (chunkLengthHigh << 8) + low;
+	        	chunkLengthHigh = -1;
 	        	foundLength = true;
 		        if (remaining < 0) {
 		        	throw new StreamCorruptedException("Invalid stream chunk length"); //$NON-NLS-1$
@@ -132,20 +155,29 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
 				});
 		        this.stream = new FileOutputStream(f);
 	        }
-        	foundLength = false;
 	        if (remaining != 0) {
-	        	int available = Math.min(remaining, in.getCount() - in.getPosition());
-				if (available > 0) {
-	        		this.stream.write(in.getBuffer(), in.getPosition(), available);
-	        		in.setPosition(in.getPosition() + available);
-					remaining -= available;
+	        	//copy from the buffer so that the state is retained if a read times out
+	        	while (remaining > 0) {
+		        	int available = Math.min(remaining, in.getCount() - in.getPosition());
+					if (available > 0) {
+		        		this.stream.write(in.getBuffer(), in.getPosition(), available);
+		        		in.setPosition(in.getPosition() + available);
+						remaining -= available;
+						continue;
+		        	}
+					//fill the buffer
+					int b = in.read();
+					if (b == -1) {
+						throw new EOFException();
+					}
+					this.stream.write(b);
+					remaining--;
 	        	}
-				if (remaining > 0) {
-					ObjectConverterUtil.write(this.stream, in, in.getBuffer(), remaining, false);
-					remaining = 0;
-				}
+	        	//only read the next chunk length once this chunk is fully copied
+	        	foundLength = false;
 				continue;
 	        }
+	        foundLength = false;
         	stream.close();
         	stream = null;
         	streamIndex++;
@@ -157,6 +189,39 @@ public class ObjectDecoderInputStream extends ObjectInputStream {
         return toReturn;
     }
     
+    /**
+     * Read the raw length and the LZ4 block of a compressed object.  The state is retained
+     * so that the read may be resumed after a timeout.
+     */
+    private InputStream readCompressed() throws IOException {
+    	if (compressedBlock == null) {
+    		rawLength = dis.readInt();
+    		remaining -= 4;
+    		if (rawLength <= 0 || remaining <= 0) {
+    			throw new StreamCorruptedException("invalid compressed data length: " + rawLength); //$NON-NLS-1$
+    		}
+    		if (rawLength > maxObjectSize) {
+    			throw new StreamCorruptedException(JDBCPlugin.Util.gs(JDBCPlugin.Event.TEIID20028, rawLength, maxObjectSize));
+    		}
+    		compressedBlock = new byte[remaining];
+    		blockIndex = 0;
+    	}
+    	while (blockIndex < compressedBlock.length) {
+    		int read = subStream.read(compressedBlock, blockIndex, compressedBlock.length - blockIndex);
+    		if (read < 0) {
+    			throw new EOFException();
+    		}
+    		blockIndex += read;
+    	}
+    	byte[] block = compressedBlock;
+    	compressedBlock = null;
+    	byte[] raw = new byte[rawLength];
+    	if (LZ4Codec.decompress(block, 0, block.length, raw, 0, raw.length) != raw.length) {
+    		throw new StreamCorruptedException("invalid compressed data"); //$NON-NLS-1$
+    	}
+    	return new ByteArrayInputStream(raw);
+    }
+    
     void clearRemaining() throws IOException {
     	while (remaining > 0) {
     		long skipped = in.skip(remaining);
@@ -27,6 +27,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.List;
 
@@ -133,6 +135,47 @@ public class TestBatchSerializer {
         helpTestSerialization(sampleBatchTypes, sampleBatchWithNulls(4096), BatchSerializer.CURRENT_VERSION); // A bunch of rows. This should also test large strings
     }
     
+    @Test public void testSerializeBasicTypesGeography() throws Exception {
+        helpTestSerialization(sampleBatchTypes, sampleBatchWithNulls(17), BatchSerializer.VERSION_GEOGRAPHY);
+        helpTestSerialization(sampleBatchTypes, sampleBatchWithNulls(833), BatchSerializer.VERSION_GEOGRAPHY);
+    }
+    
+    private static int serializedSize(String[] types, List<?>[] batch, byte version) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(byteStream);
+        BatchSerializer.writeBatch(out, types, Arrays.asList(batch), version);
+        out.close();
+        return byteStream.size();
+    }
+    
+    @Test public void testEncodedLowCardinality() throws Exception {
+        String[] types = {DataTypeManager.DefaultDataTypes.STRING, DataTypeManager.DefaultDataTypes.INTEGER, 
+                DataTypeManager.DefaultDataTypes.LONG, DataTypeManager.DefaultDataTypes.TIMESTAMP, DataTypeManager.DefaultDataTypes.DATE};
+        List<?>[] batch = new List[2048];
+        long start = TimestampUtil.createTimestamp(110, 0, 1, 0, 0, 0, 0).getTime();
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = Arrays.asList(i%100 == 0?null:"STATUS_" + (i/256), i, (long)i%3, new Timestamp(start + i/16*1000), TimestampUtil.createDate(110, 0, 1 + i/512));
+        }
+        helpTestSerialization(types, batch, BatchSerializer.VERSION_ENCODED);
+        int encoded = serializedSize(types, batch, BatchSerializer.VERSION_ENCODED);
+        int prior = serializedSize(types, batch, BatchSerializer.VERSION_GEOGRAPHY);
+        assertTrue(prior + " " + encoded, encoded * 10 < prior);
+    }
+    
+    @Test public void testEncodedExtremes() throws Exception {
+        String[] types = {DataTypeManager.DefaultDataTypes.STRING, DataTypeManager.DefaultDataTypes.INTEGER, 
+                DataTypeManager.DefaultDataTypes.LONG, DataTypeManager.DefaultDataTypes.SHORT, DataTypeManager.DefaultDataTypes.TIME};
+        List<?>[] batch = new List[64];
+        for (int i = 0; i < batch.length; i++) {
+            boolean even = i%2 == 0;
+            batch[i] = Arrays.asList(even?"a":sampleString(66666), even?Integer.MIN_VALUE:Integer.MAX_VALUE, 
+                    even?Long.MIN_VALUE:Long.MAX_VALUE, even?Short.MIN_VALUE:(short)i, new Time(even?-1:i*1000));
+        }
+        helpTestSerialization(types, batch, BatchSerializer.VERSION_ENCODED);
+        //all null
+        helpTestSerialization(types, new List[] {Arrays.asList(null, null, null, null, null), Arrays.asList(null, null, null, null, null)}, BatchSerializer.VERSION_ENCODED);
+    }
+    
     @Test public void testSerializeLargeStrings() throws Exception {
         List<?> row = Arrays.asList(new Object[] {sampleString(66666)});
         helpTestSerialization(new String[] {DataTypeManager.DefaultDataTypes.STRING}, new List[] {row}, BatchSerializer.CURRENT_VERSION);
@@ -322,6 +322,18 @@ public class TestBatchResults {
         assertEquals(Arrays.asList(41), mbf.batchCalls);
     }
         
+    @Test public void testHighestAvailableWithLastRow() throws Exception{
+    	Batch batch = new Batch(createBatch(1, 10), 1, 10);
+    	batch.setLastRow(50);
+    	BatchResults batchResults = new BatchResults(new MockBatchFetcher(), batch, 1);
+    	assertEquals(50, batchResults.getHighestRowNumber());
+    	assertEquals(10, batchResults.getHighestAvailableRowNumber());
+    	assertTrue(batchResults.absolute(10));
+    	assertEquals(10, batchResults.getHighestAvailableRowNumber());
+    	batchResults.next();
+    	assertEquals(20, batchResults.getHighestAvailableRowNumber());
+    }
+        
     @Test public void testCurrentRowNumber() throws Exception {
     	BatchResults batchResults = getBatchResults(createBatch(1, 1), true);
         assertEquals(0, batchResults.getCurrentRowNumber());
@@ -31,10 +31,17 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.MockSettings;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.teiid.client.DQP;
 import org.teiid.client.ResultsMessage;
 import org.teiid.client.lob.LobChunk;
@@ -690,6 +697,20 @@ public class TestResultSet {
         cs.close();      
     }
     
+    @Test public void testAvailableFetched() throws Exception {
+    	StatementImpl statement = createMockStatement(ResultSet.TYPE_SCROLL_INSENSITIVE);
+    	ResultsMessage msg = TestAllResultsImpl.exampleResultsMsg4(1, 10, false);
+    	msg.setFinalRow(50);
+    	ResultSetImpl cs = new ResultSetImpl(msg, statement, new ResultSetMetaDataImpl(new MetadataProvider(DeferredMetadataProvider.loadPartialMetadata(msg.getColumnNames(), msg.getDataTypes())), null), 0);
+    	//the final row is known, but only the first batch has been fetched
+    	assertEquals(50, cs.available());
+    	assertEquals(10, cs.availableFetched());
+    	assertTrue(cs.next());
+    	assertEquals(49, cs.available());
+    	assertEquals(9, cs.availableFetched());
+    	cs.close();
+    }
+    
     @Test public void testForwardOnlyPrefetchSmallFetchSize() throws Exception {
     	StatementImpl statement = createMockStatement(ResultSet.TYPE_FORWARD_ONLY);
     	ResultSetImpl cs = TestAllResultsImpl.helpTestBatching(statement, 10, 128, 256, true);
@@ -754,6 +775,92 @@ public class TestResultSet {
 		}
     }
     
+    @Test public void testForwardOnlyStreaming() throws Exception {
+    	final int fetchSize = 100;
+    	final int totalLength = 1000;
+    	StatementImpl statement = createMockStatement(ResultSet.TYPE_FORWARD_ONLY);
+    	ResultSetImpl cs = helpTestStreaming(statement, fetchSize, totalLength, false);
+    	for (int i = 1; i <= totalLength; i++) {
+    		assertTrue(cs.next());
+    		assertEquals(i, cs.getInt(1));
+    		assertNull(cs.getPrefetch());
+    	}
+    	assertFalse(cs.next());
+    	//the initial window of 16 is not replenished as the results always arrive before they are read
+    	DQP dqp = statement.getDQP();
+    	Mockito.verify(dqp, Mockito.times(16)).processCursorRequest(TestAllResultsImpl.REQUEST_ID, DQP.NEXT_BATCH, fetchSize);
+    	Mockito.verify(dqp, Mockito.times(16)).processCursorRequest(Matchers.anyLong(), Matchers.anyInt(), Matchers.anyInt());
+    }
+    
+    @Test public void testForwardOnlyStreamingWaitingReader() throws Exception {
+    	final int fetchSize = 1000;
+    	final int totalLength = 50000;
+    	StatementImpl statement = createMockStatement(ResultSet.TYPE_FORWARD_ONLY);
+    	stub(statement.getPrefetchBatches()).toReturn(12);
+    	ResultSetImpl cs = helpTestStreaming(statement, fetchSize, totalLength, true);
+    	//8 = 8192/1000
+    	assertEquals(8, cs.getOutstandingBatches());
+    	int max = 0;
+    	for (int i = 1; i <= totalLength; i++) {
+    		assertTrue(cs.next());
+    		assertEquals(i, cs.getInt(1));
+    		max = Math.max(max, cs.getOutstandingBatches());
+    	}
+    	assertFalse(cs.next());
+    	//grows to the configured depth as each read waits
+    	assertEquals(12, max);
+    }
+    
+    @Test public void testForwardOnlyStreamingMemoryLimit() throws Exception {
+    	final int fetchSize = 100;
+    	final int totalLength = 1000;
+    	StatementImpl statement = createMockStatement(ResultSet.TYPE_FORWARD_ONLY);
+    	ResultsMessage msg = TestAllResultsImpl.exampleResultsMsg4(1, 1, false);
+    	//room for 2 batches
+    	stub(statement.getPrefetchMemoryLimit()).toReturn(2L * fetchSize * ResultSetImpl.estimateRowSize(msg.getResultsList().get(0)));
+    	ResultSetImpl cs = helpTestStreaming(statement, fetchSize, totalLength, true);
+    	for (int i = 1; i <= totalLength; i++) {
+    		assertTrue(cs.next());
+    		assertEquals(i, cs.getInt(1));
+    		assertTrue(cs.getOutstandingBatches() <= 2);
+    	}
+    	assertFalse(cs.next());
+    }
+
+	private ResultSetImpl helpTestStreaming(StatementImpl statement, final int fetchSize, final int totalLength, final boolean wait)
+			throws TeiidProcessingException, SQLException {
+		stub(statement.streamResults()).toReturn(true);
+    	stub(statement.getFetchSize()).toReturn(fetchSize);
+    	DQP dqp = statement.getDQP();
+    	final AtomicInteger next = new AtomicInteger(fetchSize + 1);
+    	stub(dqp.processCursorRequest(TestAllResultsImpl.REQUEST_ID, DQP.NEXT_BATCH, fetchSize)).toAnswer(new Answer<ResultsFuture<ResultsMessage>>() {
+    		@Override
+    		public ResultsFuture<ResultsMessage> answer(
+    				InvocationOnMock invocation) throws Throwable {
+    			int begin = Math.min(totalLength + 1, next.getAndAdd(fetchSize));
+    			int length = Math.min(fetchSize, totalLength - begin + 1);
+    			final ResultsMessage msg = TestAllResultsImpl.exampleResultsMsg4(begin, length, begin + length - 1 >= totalLength);
+    			ResultsFuture<ResultsMessage> nextBatch = new ResultsFuture<ResultsMessage>() {
+    				@Override
+    				public synchronized ResultsMessage get(long timeout, TimeUnit unit)
+    						throws InterruptedException, ExecutionException, TimeoutException {
+    					//the results only arrive once the reader waits
+    					if (!isDone()) {
+    						getResultsReceiver().receiveResults(msg);
+    					}
+    					return super.get(timeout, unit);
+    				}
+    			};
+    			if (!wait) {
+    				nextBatch.getResultsReceiver().receiveResults(msg);
+    			}
+    			return nextBatch;
+    		}
+    	});
+    	ResultsMessage msg = TestAllResultsImpl.exampleResultsMsg4(1, fetchSize, false);
+    	return new ResultSetImpl(msg, statement, new ResultSetMetaDataImpl(new MetadataProvider(DeferredMetadataProvider.loadPartialMetadata(msg.getColumnNames(), msg.getDataTypes())), null), 0);
+	}
+    
     private ResultSetImpl helpExecuteQuery(int fetchSize, int totalResults, int cursorType) throws SQLException, TeiidProcessingException {
         StatementImpl statement = createMockStatement(cursorType, withSettings().stubOnly());
 		return TestAllResultsImpl.helpTestBatching(statement, fetchSize, Math.min(fetchSize, totalResults), totalResults);
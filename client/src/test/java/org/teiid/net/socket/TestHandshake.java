@@ -18,7 +18,7 @@
 
 package org.teiid.net.socket;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
@@ -33,6 +33,25 @@ public class TestHandshake {
 		ObjectInputStream ois = new ObjectInputStream(new FileInputStream(UnitTestUtil.getTestDataFile("handshake.ser")));
 		Handshake hs = (Handshake)ois.readObject();
 		assertEquals(AuthenticationType.USERPASSWORD, hs.getAuthType());
+		assertFalse(hs.isMultiplexed());
+		assertFalse(hs.isCompression());
+	}
+	
+	@Test public void testMultiplexed() throws Exception {
+		Handshake hs = new Handshake();
+		hs.setMultiplexed(true);
+		hs.setMaxStreams(4);
+		hs = UnitTestUtil.helpSerialize(hs);
+		assertTrue(hs.isMultiplexed());
+		assertEquals(4, hs.getMaxStreams());
+	}
+	
+	@Test public void testCompression() throws Exception {
+		Handshake hs = new Handshake();
+		hs.setCompression(true);
+		hs = UnitTestUtil.helpSerialize(hs);
+		assertTrue(hs.isCompression());
+		assertFalse(hs.isMultiplexed());
 	}
 	
 	@Test public void testVersionNormalization() throws Exception {
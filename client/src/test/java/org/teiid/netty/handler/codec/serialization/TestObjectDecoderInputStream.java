@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,12 +31,15 @@ import java.net.SocketTimeoutException;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
+import org.teiid.core.types.BlobImpl;
 import org.teiid.core.types.ClobImpl;
 import org.teiid.core.types.InputStreamFactory;
 import org.teiid.core.types.Streamable;
 import org.teiid.core.util.AccessibleBufferedInputStream;
+import org.teiid.core.util.ObjectConverterUtil;
 import org.teiid.core.util.ReaderInputStream;
 
 public class TestObjectDecoderInputStream {
@@ -69,6 +73,58 @@ public class TestObjectDecoderInputStream {
 		assertEquals(obj, result);
 	}
 	
+	@Test public void testTimeoutExceptionInChunk() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectEncoderOutputStream oeos = new ObjectEncoderOutputStream(new DataOutputStream(baos), 512);
+		final byte[] bytes = new byte[100000];
+		new Random(1).nextBytes(bytes);
+		BlobImpl blob = new BlobImpl(new InputStreamFactory() {
+			@Override
+			public InputStream getInputStream() throws IOException {
+				return new ByteArrayInputStream(bytes);
+			}
+		});
+		oeos.writeObject(blob);
+		oeos.close();
+		byte[] encoded = baos.toByteArray();
+		//only time out once the object itself has been read
+		final int header = 4 + Math.abs(new DataInputStream(new ByteArrayInputStream(encoded)).readInt());
+		final ByteArrayInputStream bais = new ByteArrayInputStream(encoded);
+		final int[] timeouts = new int[1];
+		InputStream is = new InputStream() {
+			int count;
+			int position;
+			@Override
+			public int read() throws IOException {
+				throw new AssertionError();
+			}
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (position >= header && count++%2==0) {
+					timeouts[0]++;
+					throw new SocketTimeoutException();
+				}
+				int read = bais.read(b, off, Math.min(len, 700));
+				if (read > 0) {
+					position += read;
+				}
+				return read;
+			}
+		};
+		ObjectDecoderInputStream odis = new ObjectDecoderInputStream(new AccessibleBufferedInputStream(is, 1024), Thread.currentThread().getContextClassLoader(), 1024);
+		Object result = null;
+		do {
+			assertTrue(timeouts[0] < 1000);
+			try {
+				result = odis.readObject();
+			} catch (SocketTimeoutException e) {
+				
+			}
+		} while (result == null);
+		assertTrue(timeouts[0] > 10);
+		assertArrayEquals(bytes, ObjectConverterUtil.convertToByteArray(((BlobImpl)result).getBinaryStream()));
+	}
+	
 	@Test public void testReplaceObject() throws Exception {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		ObjectEncoderOutputStream out = new ObjectEncoderOutputStream(new DataOutputStream(baos), 512);
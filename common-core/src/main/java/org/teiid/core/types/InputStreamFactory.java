@@ -19,12 +19,15 @@
 package org.teiid.core.types;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -53,6 +56,22 @@ public abstract class InputStreamFactory implements Source {
 		
 	}
 	
+	/**
+	 * Implemented by factories that can write their bytes directly to a channel,
+	 * such as from a file, rather than through an {@link InputStream}
+	 */
+	public interface ChannelTransferable {
+		
+		/**
+		 * Transfer up to count bytes starting at position to the target.
+		 * @return the number of bytes transferred, which may be less than count
+		 * if the target cannot accept more without blocking
+		 * @throws EOFException if the position is not less than the length
+		 */
+		long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+		
+	}
+	
 	private String systemId;
 	protected long length = -1;
 	
@@ -102,7 +121,7 @@ public abstract class InputStreamFactory implements Source {
     	return StorageMode.OTHER;
     }
     
-    public static class FileInputStreamFactory extends InputStreamFactory {
+    public static class FileInputStreamFactory extends InputStreamFactory implements ChannelTransferable {
     	
     	private File f;
     	
@@ -121,6 +140,25 @@ public abstract class InputStreamFactory implements Source {
     		return new BufferedInputStream(new FileInputStream(f));
     	}
     	
+    	/**
+    	 * The file is opened for each call, which is expected to transfer
+    	 * as much as the target will accept.
+    	 */
+    	@Override
+    	public long transferTo(long position, long count,
+    			WritableByteChannel target) throws IOException {
+    		FileInputStream fis = new FileInputStream(f);
+    		try {
+    			FileChannel channel = fis.getChannel();
+    			if (position >= channel.size()) {
+    				throw new EOFException();
+    			}
+    			return channel.transferTo(position, count, target);
+    		} finally {
+    			fis.close();
+    		}
+    	}
+    	
     	@Override
     	public StorageMode getStorageMode() {
     		return StorageMode.PERSISTENT;
@@ -0,0 +1,196 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.core.util;
+
+import java.io.IOException;
+
+/**
+ * A pure java implementation of the LZ4 block format.
+ * <br>
+ * The compressor is a single pass greedy matcher that favors speed over ratio.
+ * Blocks do not carry their uncompressed length, so callers are expected to
+ * frame blocks with the lengths.
+ */
+public final class LZ4Codec {
+
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int LOG_HASH_SIZE = 12;
+	private static final int SKIP_TRIGGER = 6;
+
+	private LZ4Codec() {
+
+	}
+
+	/**
+	 * @return the max size of the compressed form of the given length
+	 */
+	public static int maxCompressedLength(int length) {
+		return length + length/255 + 16;
+	}
+
+	/**
+	 * Compress the source bytes into the destination, which must have at least
+	 * {@link #maxCompressedLength(int)} bytes available.
+	 * @return the compressed length
+	 */
+	public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+		int srcEnd = srcOff + srcLen;
+		int anchor = srcOff;
+		int op = destOff;
+		if (srcLen > MF_LIMIT) {
+			int[] table = new int[1 << LOG_HASH_SIZE];
+			int matchLimit = srcEnd - LAST_LITERALS;
+			int mfLimit = srcEnd - MF_LIMIT;
+			int ip = srcOff;
+			while (ip < mfLimit) {
+				int sequence = readInt(src, ip);
+				int h = hash(sequence);
+				//entries are stored offset by one so that 0 is empty
+				int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+					ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+					continue;
+				}
+				while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+				op = writeSequence(src, anchor, ip - anchor, dest, op, ip - ref, matchLength);
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+		op = writeSequence(src, anchor, srcEnd - anchor, dest, op, 0, 0);
+		return op - destOff;
+	}
+
+	/**
+	 * Decompress the source block into the destination
+	 * @return the decompressed length
+	 * @throws IOException if the block is malformed or does not fit into the destination length
+	 */
+	public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+		int ip = srcOff;
+		int srcEnd = srcOff + srcLen;
+		int op = destOff;
+		int destEnd = destOff + destLen;
+		try {
+			while (true) {
+				int token = src[ip++] & 0xff;
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b = 0;
+					do {
+						b = src[ip++] & 0xff;
+						literalLength += b;
+					} while (b == 255);
+				}
+				if (ip + literalLength > srcEnd || op + literalLength > destEnd) {
+					throw new IOException("Malformed compressed block"); //$NON-NLS-1$
+				}
+				System.arraycopy(src, ip, dest, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if (ip == srcEnd) {
+					break;
+				}
+				int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+				ip += 2;
+				int matchLength = token & 0xf;
+				if (matchLength == 15) {
+					int b = 0;
+					do {
+						b = src[ip++] & 0xff;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < destOff || op + matchLength > destEnd) {
+					throw new IOException("Malformed compressed block"); //$NON-NLS-1$
+				}
+				if (offset >= matchLength) {
+					System.arraycopy(dest, ref, dest, op, matchLength);
+					op += matchLength;
+				} else {
+					//overlapping copy
+					for (int i = 0; i < matchLength; i++) {
+						dest[op++] = dest[ref++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Malformed compressed block", e); //$NON-NLS-1$
+		}
+		return op - destOff;
+	}
+
+	private static int writeSequence(byte[] src, int literalStart, int literalLength,
+			byte[] dest, int op, int offset, int matchLength) {
+		int tokenIndex = op++;
+		int token = 0;
+		if (literalLength >= 15) {
+			token = 15 << 4;
+			op = writeLength(dest, op, literalLength - 15);
+		} else {
+			token = literalLength << 4;
+		}
+		System.arraycopy(src, literalStart, dest, op, literalLength);
+		op += literalLength;
+		if (matchLength > 0) {
+			dest[op++] = (byte)offset;
+			dest[op++] = (byte)(offset >>> 8);
+			int length = matchLength - MIN_MATCH;
+			if (length >= 15) {
+				token |= 15;
+				op = writeLength(dest, op, length - 15);
+			} else {
+				token |= length;
+			}
+		}
+		dest[tokenIndex] = (byte)token;
+		return op;
+	}
+
+	private static int writeLength(byte[] dest, int op, int length) {
+		while (length >= 255) {
+			dest[op++] = (byte)255;
+			length -= 255;
+		}
+		dest[op++] = (byte)length;
+		return op;
+	}
+
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | (b[i + 3] << 24);
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - LOG_HASH_SIZE);
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.core.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TestLZ4Codec {
+
+	private static int roundTrip(byte[] bytes) throws IOException {
+		byte[] compressed = new byte[LZ4Codec.maxCompressedLength(bytes.length) + 3];
+		int length = LZ4Codec.compress(bytes, 0, bytes.length, compressed, 3);
+		byte[] result = new byte[bytes.length];
+		assertEquals(bytes.length, LZ4Codec.decompress(compressed, 3, length, result, 0, result.length));
+		assertArrayEquals(bytes, result);
+		return length;
+	}
+
+	@Test public void testEmpty() throws Exception {
+		assertEquals(1, roundTrip(new byte[0]));
+	}
+
+	@Test public void testSmall() throws Exception {
+		roundTrip("abc".getBytes("UTF-8"));
+		roundTrip("aaaaaaaaaaaaaaaa".getBytes("UTF-8"));
+	}
+
+	@Test public void testRepetitive() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("some repetitive value ").append(i % 100);
+		}
+		byte[] bytes = sb.toString().getBytes("UTF-8");
+		assertTrue(roundTrip(bytes) < bytes.length / 10);
+	}
+
+	@Test public void testRuns() throws Exception {
+		byte[] bytes = new byte[100000];
+		Arrays.fill(bytes, 1000, 90000, (byte)7);
+		assertTrue(roundTrip(bytes) < 1000);
+	}
+
+	@Test public void testRandom() throws Exception {
+		Random r = new Random(1);
+		for (int i = 0; i < 20; i++) {
+			byte[] bytes = new byte[r.nextInt(1 << 17)];
+			r.nextBytes(bytes);
+			//partially repeat
+			System.arraycopy(bytes, 0, bytes, bytes.length/2, bytes.length/4);
+			roundTrip(bytes);
+		}
+	}
+
+	@Test(expected=IOException.class) public void testMalformed() throws Exception {
+		byte[] bytes = "some repetitive value some repetitive value".getBytes("UTF-8");
+		byte[] compressed = new byte[LZ4Codec.maxCompressedLength(bytes.length)];
+		int length = LZ4Codec.compress(bytes, 0, bytes.length, compressed, 0);
+		LZ4Codec.decompress(compressed, 0, length, new byte[10], 0, 10);
+	}
+
+}
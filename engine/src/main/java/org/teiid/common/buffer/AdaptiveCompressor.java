@@ -0,0 +1,255 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.common.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.teiid.core.util.LZ4Codec;
+
+/**
+ * Compresses serialized buffer data with {@link LZ4Codec}.
+ * <br>
+ * Data that does not shrink by at least 1/8 is stored as is.  After several consecutive
+ * failures only a sample of the following attempts are compressed until one succeeds, so
+ * that incompressible data costs little cpu.
+ * <br>
+ * Tracks the bytes and the time spent so that the ratio and cost can be monitored.
+ */
+public class AdaptiveCompressor {
+
+	public static final byte RAW = 1;
+	public static final byte COMPRESSED = 2;
+
+	private static final int FAILURE_THRESHOLD = 4;
+	private static final int SAMPLE_MASK = 15;
+
+	/**
+	 * Reads a stream of chunks written by {@link AdaptiveCompressor#writeChunk(byte[], int, OutputStream)}
+	 */
+	private final class ChunkInputStream extends InputStream {
+		private DataInputStream in;
+		private byte[] chunk = new byte[0];
+		private byte[] compressed;
+		private int index;
+		private int length;
+
+		ChunkInputStream(InputStream in) {
+			this.in = new DataInputStream(in);
+		}
+
+		private boolean nextChunk() throws IOException {
+			int type = in.read();
+			if (type == -1) {
+				return false;
+			}
+			int rawLength = in.readInt();
+			if (chunk.length < rawLength) {
+				chunk = new byte[rawLength];
+			}
+			if (type == RAW) {
+				in.readFully(chunk, 0, rawLength);
+			} else {
+				int compressedLength = in.readInt();
+				if (compressed == null || compressed.length < compressedLength) {
+					compressed = new byte[compressedLength];
+				}
+				in.readFully(compressed, 0, compressedLength);
+				decompress(compressed, compressedLength, chunk, rawLength);
+			}
+			index = 0;
+			length = rawLength;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (index == length) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+			return chunk[index++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (index == length) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+			len = Math.min(len, length - index);
+			System.arraycopy(chunk, index, b, off, len);
+			index += len;
+			return len;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private AtomicInteger failures = new AtomicInteger();
+	private AtomicInteger samples = new AtomicInteger();
+
+	private AtomicLong compressedCount = new AtomicLong();
+	private AtomicLong bypassedCount = new AtomicLong();
+	private AtomicLong uncompressedBytes = new AtomicLong();
+	private AtomicLong storedBytes = new AtomicLong();
+	private AtomicLong compressionNanos = new AtomicLong();
+	private AtomicLong decompressionNanos = new AtomicLong();
+
+	/**
+	 * Attempt to compress the source
+	 * @param dest must be at least {@link LZ4Codec#maxCompressedLength(int)} in length
+	 * @return the compressed length or -1 if the source should be stored as is
+	 */
+	public int compress(byte[] src, int length, byte[] dest) {
+		if (failures.get() >= FAILURE_THRESHOLD && (samples.getAndIncrement() & SAMPLE_MASK) != 0) {
+			bypassedCount.incrementAndGet();
+			uncompressedBytes.addAndGet(length);
+			storedBytes.addAndGet(length);
+			return -1;
+		}
+		long start = System.nanoTime();
+		int result = LZ4Codec.compress(src, 0, length, dest, 0);
+		compressionNanos.addAndGet(System.nanoTime() - start);
+		uncompressedBytes.addAndGet(length);
+		if (result > length - (length >> 3)) {
+			failures.incrementAndGet();
+			bypassedCount.incrementAndGet();
+			storedBytes.addAndGet(length);
+			return -1;
+		}
+		failures.set(0);
+		compressedCount.incrementAndGet();
+		storedBytes.addAndGet(result);
+		return result;
+	}
+
+	public void decompress(byte[] src, int length, byte[] dest, int destLength) throws IOException {
+		long start = System.nanoTime();
+		int result = LZ4Codec.decompress(src, 0, length, dest, 0, destLength);
+		decompressionNanos.addAndGet(System.nanoTime() - start);
+		if (result != destLength) {
+			throw new IOException("Invalid compressed length " + result + " expected " + destLength); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Write a self describing chunk to the output.  The output only receives array writes.
+	 */
+	public void writeChunk(byte[] src, int length, OutputStream out) throws IOException {
+		byte[] dest = new byte[LZ4Codec.maxCompressedLength(length)];
+		int compressedLength = compress(src, length, dest);
+		byte[] header = new byte[9];
+		writeInt(header, 1, length);
+		if (compressedLength < 0) {
+			header[0] = RAW;
+			out.write(header, 0, 5);
+			out.write(src, 0, length);
+		} else {
+			header[0] = COMPRESSED;
+			writeInt(header, 5, compressedLength);
+			out.write(header, 0, 9);
+			out.write(dest, 0, compressedLength);
+		}
+	}
+
+	private static void writeInt(byte[] b, int offset, int value) {
+		b[offset] = (byte)(value >>> 24);
+		b[offset + 1] = (byte)(value >>> 16);
+		b[offset + 2] = (byte)(value >>> 8);
+		b[offset + 3] = (byte)value;
+	}
+
+	/**
+	 * Read the remainder of a single chunk, after the type has been read
+	 * @return a stream of the uncompressed bytes
+	 */
+	public InputStream readChunk(int type, InputStream in) throws IOException {
+		DataInputStream dis = new DataInputStream(in);
+		int rawLength = dis.readInt();
+		byte[] raw = new byte[rawLength];
+		if (type == RAW) {
+			dis.readFully(raw);
+		} else if (type == COMPRESSED) {
+			int compressedLength = dis.readInt();
+			byte[] compressed = new byte[compressedLength];
+			dis.readFully(compressed);
+			decompress(compressed, compressedLength, raw, rawLength);
+		} else {
+			throw new IOException("Invalid chunk type " + type); //$NON-NLS-1$
+		}
+		return new ByteArrayInputStream(raw);
+	}
+
+	/**
+	 * Create a stream of the uncompressed bytes from a stream of chunks
+	 */
+	public InputStream createChunkInputStream(InputStream in) {
+		return new ChunkInputStream(in);
+	}
+
+	public long getCompressedCount() {
+		return compressedCount.get();
+	}
+
+	public long getBypassedCount() {
+		return bypassedCount.get();
+	}
+
+	public long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+
+	public long getStoredBytes() {
+		return storedBytes.get();
+	}
+
+	public long getCompressionNanos() {
+		return compressionNanos.get();
+	}
+
+	public long getDecompressionNanos() {
+		return decompressionNanos.get();
+	}
+
+	/**
+	 * @return the ratio of the uncompressed to stored bytes, 1 if nothing has been stored.
+	 */
+	public double getRatio() {
+		long stored = storedBytes.get();
+		if (stored == 0) {
+			return 1;
+		}
+		return uncompressedBytes.get()/(double)stored;
+	}
+
+}
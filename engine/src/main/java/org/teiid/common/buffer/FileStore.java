@@ -18,10 +18,12 @@
 
 package org.teiid.common.buffer;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -174,6 +176,25 @@ public abstract class FileStore implements Removable {
     	} while (n < length);
 	}
 	
+	/**
+	 * Transfer up to length bytes starting at the fileOffset to the target.
+	 * <br>
+	 * The default implementation reads through a heap buffer.  Stores
+	 * backed by a file or mapped memory should write to the target directly.
+	 * @return the number of bytes transferred, which may be less than length
+	 * if the target cannot accept more without blocking
+	 * @throws EOFException if the fileOffset is not less than the length
+	 */
+	public long transferTo(long fileOffset, long length, WritableByteChannel target) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate((int)Math.min(length, 1<<16));
+		int read = read(fileOffset, bb.array(), 0, bb.capacity());
+		if (read <= 0) {
+			throw new EOFException();
+		}
+		bb.limit(read);
+		return target.write(bb);
+	}
+	
 	public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
 		write(getLength(), bytes, offset, length);
 	}
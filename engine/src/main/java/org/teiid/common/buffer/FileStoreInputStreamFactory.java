@@ -19,6 +19,7 @@
 package org.teiid.common.buffer;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -26,13 +27,16 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.ref.PhantomReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 import org.teiid.common.buffer.FileStore.FileStoreOutputStream;
 import org.teiid.core.types.DataTypeManager;
 import org.teiid.core.types.InputStreamFactory;
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
 
-public final class FileStoreInputStreamFactory extends InputStreamFactory {
+public final class FileStoreInputStreamFactory extends InputStreamFactory implements ChannelTransferable {
 	private final FileStore lobBuffer;
 	private FileStoreOutputStream fsos;
 	private String encoding;
@@ -66,6 +70,19 @@ public final class FileStoreInputStreamFactory extends InputStreamFactory {
 		return lobBuffer.createInputStream(start, len);
 	}
 	
+	@Override
+	public long transferTo(long position, long count,
+			WritableByteChannel target) throws IOException {
+		if (fsos != null && !fsos.bytesWritten()) {
+			if (position >= fsos.getCount()) {
+				throw new EOFException();
+			}
+			int len = (int)Math.min(count, fsos.getCount() - position);
+			return target.write(ByteBuffer.wrap(fsos.getBuffer(), (int)position, len));
+		}
+		return lobBuffer.transferTo(position, count, target);
+	}
+	
 	public byte[] getMemoryBytes() {
 		if (fsos != null && !fsos.bytesWritten() && fsos.getBuffer().length == fsos.getCount()) {
 			return fsos.getBuffer();
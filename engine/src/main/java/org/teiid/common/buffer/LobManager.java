@@ -18,9 +18,11 @@
 
 package org.teiid.common.buffer;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.SQLException;
@@ -41,6 +43,7 @@ import org.teiid.core.types.ClobImpl;
 import org.teiid.core.types.DataTypeManager;
 import org.teiid.core.types.InputStreamFactory;
 import org.teiid.core.types.InputStreamFactory.BlobInputStreamFactory;
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
 import org.teiid.core.types.InputStreamFactory.ClobInputStreamFactory;
 import org.teiid.core.types.InputStreamFactory.SQLXMLInputStreamFactory;
 import org.teiid.core.types.InputStreamFactory.StorageMode;
@@ -72,12 +75,47 @@ public class LobManager {
 		}
 	}
 	
+	/**
+	 * A lob persisted uncompressed as a range of the store
+	 */
+	private static final class StoreInputStreamFactory extends InputStreamFactory implements ChannelTransferable {
+		private final FileStore store;
+		private final long lobOffset;
+		private final long lobLength;
+		
+		public StoreInputStreamFactory(FileStore store, long lobOffset, long lobLength) {
+			this.store = store;
+			this.lobOffset = lobOffset;
+			this.lobLength = lobLength;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return store.createInputStream(lobOffset, lobLength);
+		}
+		
+		@Override
+		public long transferTo(long position, long count,
+				WritableByteChannel target) throws IOException {
+			if (position >= lobLength) {
+				throw new EOFException();
+			}
+			return store.transferTo(lobOffset + position, Math.min(count, lobLength - position), target);
+		}
+		
+		@Override
+		public StorageMode getStorageMode() {
+			return StorageMode.PERSISTENT;
+		}
+	}
+	
 	private Map<String, LobHolder> lobReferences = Collections.synchronizedMap(new HashMap<String, LobHolder>());
 	private boolean inlineLobs = true;
 	private int maxMemoryBytes = DataTypeManager.MAX_LOB_MEMORY_BYTES;
 	private int[] lobIndexes;
 	private FileStore lobStore;
     private boolean saveTemporary;
+    private AdaptiveCompressor compressor;
 	
 	public LobManager(int[] lobIndexes, FileStore lobStore) {
 		this.lobIndexes = lobIndexes;
@@ -89,6 +127,7 @@ public class LobManager {
 		clone.inlineLobs = inlineLobs;
 		clone.maxMemoryBytes = maxMemoryBytes;
 		clone.saveTemporary = saveTemporary;
+		clone.compressor = compressor;
 		synchronized (lobReferences) {
 			for (Map.Entry<String, LobHolder> entry : lobReferences.entrySet()) {
 				LobHolder lobHolder = new LobHolder(entry.getValue().lob);
@@ -211,7 +250,7 @@ public class LobManager {
 	public void detachLob(final Streamable<?> lob, final FileStore store, byte[] bytes) throws TeiidComponentException {
 		// if this is not attached, just return
 		if (InputStreamFactory.getStorageMode(lob) != StorageMode.MEMORY) {
-			persistLob(lob, store, bytes, inlineLobs, maxMemoryBytes);
+			persistLob(lob, store, bytes, inlineLobs, maxMemoryBytes, compressor);
 		} else {
 		    InputStreamFactory.setTemporary(lob, false);
 		}
@@ -219,6 +258,15 @@ public class LobManager {
 
 	public static void persistLob(final Streamable<?> lob,
 			final FileStore store, byte[] bytes, boolean inlineLobs, int maxMemoryBytes) throws TeiidComponentException {
+		persistLob(lob, store, bytes, inlineLobs, maxMemoryBytes, null);
+	}
+	
+	/**
+	 * Persist the lob to the store.  If the compressor is not null, the lob is written as chunks
+	 * of up to the buffer size that are individually compressed.
+	 */
+	public static void persistLob(final Streamable<?> lob,
+			final FileStore store, byte[] bytes, boolean inlineLobs, int maxMemoryBytes, final AdaptiveCompressor compressor) throws TeiidComponentException {
 		long byteLength = Integer.MAX_VALUE;
 		
 		try {
@@ -270,27 +318,36 @@ public class LobManager {
 			long offset = store.getLength();
 						
 			OutputStream fsos = store.createOutputStream();
-			byteLength = ObjectConverterUtil.write(fsos, is, bytes, -1);
+			if (compressor == null) {
+				byteLength = ObjectConverterUtil.write(fsos, is, bytes, -1);
+			} else {
+				byteLength = writeChunks(fsos, is, bytes, compressor);
+			}
 			
 			// re-construct the new lobs based on the file store
 			final long lobOffset = offset;
-			final long lobLength = byteLength;
+			final long lobLength = compressor == null ? byteLength : store.getLength() - offset;
 			/*
 			 * Using an inner class here will hold a reference to the LobManager
 			 * which prevents the removal of the FileStore until all of the
 			 * lobs have been gc'd
 			 */
-			InputStreamFactory isf = new InputStreamFactory() {
-				@Override
-				public InputStream getInputStream() throws IOException {
-					return store.createInputStream(lobOffset, lobLength);
-				}
-				
-				@Override
-				public StorageMode getStorageMode() {
-					return StorageMode.PERSISTENT;
-				}
-			};			
+			InputStreamFactory isf = null;
+			if (compressor == null) {
+				isf = new StoreInputStreamFactory(store, lobOffset, lobLength);
+			} else {
+				isf = new InputStreamFactory() {
+					@Override
+					public InputStream getInputStream() throws IOException {
+						return compressor.createChunkInputStream(store.createInputStream(lobOffset, lobLength));
+					}
+					
+					@Override
+					public StorageMode getStorageMode() {
+						return StorageMode.PERSISTENT;
+					}
+				};
+			}
 			isf.setLength(byteLength);
 			if (lob instanceof BlobType) {
 				((BlobType)lob).setReference(new BlobImpl(isf));
@@ -314,6 +371,33 @@ public class LobManager {
 		}
 	}
 	
+	private static long writeChunks(OutputStream out, InputStream is, byte[] bytes, AdaptiveCompressor compressor) throws IOException {
+		long length = 0;
+		try {
+			while (true) {
+				int count = 0;
+				int read = 0;
+				while (count < bytes.length && (read = is.read(bytes, count, bytes.length - count)) != -1) {
+					count += read;
+				}
+				if (count > 0) {
+					compressor.writeChunk(bytes, count, out);
+					length += count;
+				}
+				if (read == -1) {
+					break;
+				}
+			}
+		} finally {
+			is.close();
+		}
+		return length;
+	}
+	
+	public void setCompressor(AdaptiveCompressor compressor) {
+		this.compressor = compressor;
+	}
+	
 	public int getLobCount() {
 		return this.lobReferences.size();
 	}
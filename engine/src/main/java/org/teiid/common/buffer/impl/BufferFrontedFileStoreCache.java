@@ -46,6 +46,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.teiid.common.buffer.AdaptiveCompressor;
 import org.teiid.common.buffer.AutoCleanupUtil;
 import org.teiid.common.buffer.Cache;
 import org.teiid.common.buffer.CacheEntry;
@@ -56,6 +57,7 @@ import org.teiid.common.buffer.Serializer;
 import org.teiid.common.buffer.StorageManager;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidRuntimeException;
+import org.teiid.core.util.AccessibleByteArrayOutputStream;
 import org.teiid.core.util.ExecutorUtils;
 import org.teiid.core.util.PropertiesUtils;
 import org.teiid.logging.LogConstants;
@@ -104,6 +106,7 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
 	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
 	private static final int DEFAULT_MIN_DEFRAG = 1 << 26;
 	private static final int HEADER_BYTES = 16;
+	private static final int UNCOMPRESSED = 0;
 	private static final int EVICTION_SCANS = 2;
 
 	public static final int DEFAULT_MAX_OBJECT_SIZE = 1 << 23;
@@ -354,6 +357,8 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
 	private int maxStorageObjectSize = DEFAULT_MAX_OBJECT_SIZE;
 	private long memoryBufferSpace = 1 << 26; //64MB
 	private boolean direct;
+	private boolean compress;
+	private AdaptiveCompressor compressor = new AdaptiveCompressor();
 	
 	private int maxMemoryBlocks;
 	private AtomicLong readAttempts = new AtomicLong();
@@ -664,9 +669,14 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
 			BlockOutputStream bos = new BlockOutputStream(blockManager, memoryBlocks);
 			bos.writeLong(s.getId());
 			bos.writeLong(entry.getId());
-			ObjectOutput dos = new ObjectOutputStream(bos);
-            s.serialize(entry.getObject(), dos);
-            dos.close();
+			if (compress) {
+				writeCompressed(entry, s, bos);
+			} else {
+				bos.write(UNCOMPRESSED);
+				ObjectOutput dos = new ObjectOutputStream(bos);
+	            s.serialize(entry.getObject(), dos);
+	            dos.close();
+			}
         	//synchronized to ensure proper cleanup from a concurrent removal 
             synchronized (map) {
             	if (physicalMapping.containsKey(s.getId()) && map.containsKey(entry.getId())) {
@@ -734,6 +744,16 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
         return true;
 	}
 
+	@SuppressWarnings("unchecked")
+	private void writeCompressed(CacheEntry entry, Serializer s, BlockOutputStream bos) throws IOException {
+		AccessibleByteArrayOutputStream baos = new AccessibleByteArrayOutputStream(1 << 12);
+		ObjectOutput oos = new ObjectOutputStream(baos);
+		s.serialize(entry.getObject(), oos);
+		oos.close();
+		compressor.writeChunk(baos.getBuffer(), baos.getCount(), bos);
+		bos.close();
+	}
+
 	private void checkForLowMemory() {
 		//proactively create freespace
 		if (!cleanerRunning.get() && lowBlocks(false) && cleanerRunning.compareAndSet(false, true)) {
@@ -825,6 +845,10 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
 			for (int i = 0; i < HEADER_BYTES; i++) {
 				is.read();
 			}
+			int type = is.read();
+			if (type != UNCOMPRESSED) {
+				is = compressor.readChunk(type, is);
+			}
 			ObjectInput dis = new ObjectInputStream(is);
 			CacheEntry ce = new CacheEntry(new CacheKey(oid, 1, 1), info.sizeEstimate, serializer.deserialize(dis), ref, true);
 			return ce;
@@ -924,6 +948,18 @@ public class BufferFrontedFileStoreCache implements Cache<PhysicalInfo> {
 		this.direct = direct;
 	}
 	
+	/**
+	 * Compress serialized objects before they are written to the memory buffer or storage
+	 * @param compress
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+	
+	public AdaptiveCompressor getCompressor() {
+		return compressor;
+	}
+	
 	@Override
 	public boolean addToCacheGroup(Long gid, Long oid) {
 		Map<Long, PhysicalInfo> map = physicalMapping.get(gid);
@@ -35,6 +35,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -484,12 +485,22 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     private int maxActivePlans = DQPConfiguration.DEFAULT_MAX_ACTIVE_PLANS; //used as a hint to set the reserveBatchKB
     private boolean useWeakReferences = true;
     private boolean inlineLobs = true;
+    private AdaptiveCompressor lobCompressor;
     private int targetBytesPerRow = TARGET_BYTES_PER_ROW;
     private int maxSoftReferences;
     private int nominalProcessingMemoryMax = maxProcessingBytes;
 
-    private ReentrantLock lock = new ReentrantLock();
-    private Condition batchesFreed = lock.newCondition();
+    /**
+     * Threads waiting for a reservation are spread across stripes, so that
+     * a release only signals the stripes that actually have waiters.
+     */
+    private static class WaitStripe {
+    	final ReentrantLock lock = new ReentrantLock();
+    	final Condition batchesFreed = lock.newCondition();
+    	final AtomicInteger waiters = new AtomicInteger();
+    }
+    
+    private WaitStripe[] waitStripes = new WaitStripe[CONCURRENCY_LEVEL];
     
     AtomicLong activeBatchBytes = new AtomicLong();
     
@@ -501,19 +512,23 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     
     //limited size reference caches based upon the memory settings
     private WeakReferenceHashedValueCache<CacheEntry> weakReferenceCache; 
-    private Map<Long, BatchSoftReference> softCache = Collections.synchronizedMap(new LinkedHashMap<Long, BatchSoftReference>(16, .75f, false) {
+    /**
+     * An insertion ordered segment of the soft reference cache.  Each segment is limited to its share of the max soft references.
+     */
+    private final class SoftCacheSegment extends LinkedHashMap<Long, BatchSoftReference> {
 		private static final long serialVersionUID = 1L;
 
 		protected boolean removeEldestEntry(Map.Entry<Long,BatchSoftReference> eldest) {
-    		if (size() > maxSoftReferences) {
+    		if (size() > Math.max(1, maxSoftReferences / softCache.length)) {
     			BatchSoftReference bsr = eldest.getValue();
     			clearSoftReference(bsr);
     			return true;
     		}
     		return false;
     	}
-
-    });
+    }
+    
+    private SoftCacheSegment[] softCache = new SoftCacheSegment[CONCURRENCY_LEVEL];
     
     private Cache cache;
     private StorageManager storageManager;
@@ -545,6 +560,10 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     }
     
 	public BufferManagerImpl(boolean sharedTimer) {
+		for (int i = 0; i < CONCURRENCY_LEVEL; i++) {
+			waitStripes[i] = new WaitStripe();
+			softCache[i] = new SoftCacheSegment();
+		}
 		this.cleaner = new Cleaner(this);
 		if (sharedTimer) {
 		    if (SHARED_TIMER == null) {
@@ -626,6 +645,7 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 		if (lobIndexes != null) {
 			FileStore lobStore = createFileStore(newID + "_lobs"); //$NON-NLS-1$
 			lobManager = new LobManager(lobIndexes, lobStore);
+			lobManager.setCompressor(lobCompressor);
 			batchManager.setLobManager(lobManager);
 		}
     	TupleBuffer tupleBuffer = new TupleBuffer(batchManager, String.valueOf(newID), elements, lobManager, getProcessorBatchSize(elements));
@@ -797,12 +817,31 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
         		LogManager.logTrace(LogConstants.CTX_BUFFER_MGR, "Releasing orphaned buffer space", count); //$NON-NLS-1$
         	}
     	}
-    	lock.lock();
+    	this.reserveBatchBytes.addAndGet(count);
+    	for (WaitStripe stripe : waitStripes) {
+    		if (stripe.waiters.get() > 0) {
+    			stripe.lock.lock();
+    			try {
+    				stripe.batchesFreed.signalAll();
+    			} finally {
+    				stripe.lock.unlock();
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Wait for a release of buffers on the stripe for the current thread
+     */
+    private void awaitRelease() throws InterruptedException {
+    	WaitStripe stripe = waitStripes[(int)(Thread.currentThread().getId() & (waitStripes.length - 1))];
+    	stripe.waiters.incrementAndGet();
+    	stripe.lock.lock();
     	try {
-        	this.reserveBatchBytes.addAndGet(count);
-	    	batchesFreed.signalAll();
+    		stripe.batchesFreed.await(20, TimeUnit.MILLISECONDS);
     	} finally {
-    		lock.unlock();
+    		stripe.lock.unlock();
+    		stripe.waiters.decrementAndGet();
     	}
     }
     
@@ -812,21 +851,13 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     		LogManager.logTrace(LogConstants.CTX_BUFFER_MGR, "Reserving buffer space", count, mode); //$NON-NLS-1$
     	}
 		CommandContext context = CommandContext.getThreadLocalContext();
-		int existing = 0;
-		if (context != null) {
-			existing = (int)Math.min(Integer.MAX_VALUE, context.addAndGetReservedBuffers(0));
-		}
     	int result = count;
     	if (mode == BufferReserveMode.FORCE) {
     		reserve(count, context);
     	} else {
-    		lock.lock();
-    		try {
-    			count = Math.min(count, nominalProcessingMemoryMax - existing);
-    			result = noWaitReserve(count, false, context);
-    		} finally {
-    			lock.unlock();
-    		}
+			count = claimProcessingMemory(count, context);
+			result = noWaitReserve(count, false);
+			releaseClaim(count - result, context);
     	}
 		persistBatchReferences(result);
     	return result;
@@ -838,6 +869,31 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 			context.addAndGetReservedBuffers(count);
 		}
 	}
+	
+	/**
+	 * Claim up to count against the processing memory max for the context.  
+	 * The check and the claim are a single update of the context, so that concurrent 
+	 * reservations for the same plan cannot together exceed the max.
+	 * @return the amount claimed, which should be released with {@link #releaseClaim(int, CommandContext)} if not reserved
+	 */
+	private int claimProcessingMemory(int count, CommandContext context) {
+		if (context == null) {
+			return Math.max(0, Math.min(count, nominalProcessingMemoryMax));
+		}
+		long total = context.addAndGetReservedBuffers(count);
+		long excess = Math.min(count, total - nominalProcessingMemoryMax);
+		if (excess > 0) {
+			context.addAndGetReservedBuffers((int)-excess);
+			count -= excess;
+		}
+		return count;
+	}
+	
+	private void releaseClaim(int count, CommandContext context) {
+		if (context != null && count > 0) {
+			context.addAndGetReservedBuffers(-count);
+		}
+	}
     
     @Override
     public int reserveBuffersBlocking(int count, long[] val, boolean force) throws BlockedException {
@@ -851,18 +907,16 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     	int result = 0;
 		int count_orig = count;
 		CommandContext context = CommandContext.getThreadLocalContext();
-		long reserved = 0;
-		if (context != null) {
-			reserved = context.addAndGetReservedBuffers(0);
-			//TODO: in theory we have to check the whole stack as we could be 
-			//issuing embedded queries back to ourselves
-		}
-		count = Math.min(count, (int)Math.min(Integer.MAX_VALUE, nominalProcessingMemoryMax - reserved));
+		//TODO: in theory we have to check the whole stack as we could be 
+		//issuing embedded queries back to ourselves
+		count = claimProcessingMemory(count, context);
 		if (count_orig != count && !force) {
+			releaseClaim(count, context);
 			return 0; //is not possible to reserve the desired amount
 		}
-		result = noWaitReserve(count, true, context);
+		result = noWaitReserve(count, true);
 		if (result == 0) {
+			releaseClaim(count, context);
 			if (val[0]++ == 0) {
 				val[1] = System.currentTimeMillis();
 			}
@@ -870,11 +924,10 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 				long last = val[1];
 				val[1] = System.currentTimeMillis();
 				try {
-					lock.lock();
 					if (val[1] - last < 10) {
 						//if the time difference is too close, then wait to prevent tight spins
 						//but we can't wait too long as we don't want to thread starve the system
-						batchesFreed.await(20, TimeUnit.MILLISECONDS);
+						awaitRelease();
 					}
 					if ((val[0] << (force?16:18)) > count) {
 						//aging out 
@@ -892,15 +945,15 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 							min = 4*count/5;
 						}
 						//if a sample looks good proceed
-						if (reserveBatchBytes.get() > min){
-							reserve(count_orig, context);
+						if (reserveIfAbove(min, count_orig)) {
+							if (context != null) {
+								context.addAndGetReservedBuffers(count_orig);
+							}
 							result = count_orig;
 						}
 					}
 				} catch (InterruptedException e) {
 					throw new TeiidRuntimeException(e);
-				} finally {
-					lock.unlock();
 				}
 			}
 			if (result == 0) {
@@ -924,34 +977,47 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
     	return result;
     }
 
-	private int noWaitReserve(int count, boolean allOrNothing, CommandContext context) {
-		boolean success = false;
-		for (int i = 0; !success && i < 2; i++) {
+	/**
+	 * Reserve up to count without waiting.  The check against the available bytes
+	 * and the reservation are a single compare and set, so concurrent reservations cannot over-commit. 
+	 * The caller is responsible for updating the context.
+	 */
+	private int noWaitReserve(int count, boolean allOrNothing) {
+		while (true) {
 			long reserveBatch = this.reserveBatchBytes.get();
 			long overhead = this.overheadBytes.get();
 			long current = reserveBatch - overhead;
+			int toReserve = count;
 			if (allOrNothing) {
-				if (count > current) {
+				if (toReserve > current) {
 					return 0;
 				}
-			} else if (count > current) {
-				count = (int)Math.max(0, current);
+			} else if (toReserve > current) {
+				toReserve = (int)Math.max(0, current);
 			}
-			if (count == 0) {
+			if (toReserve <= 0) {
 				return 0;
 			}
-			if (this.reserveBatchBytes.compareAndSet(reserveBatch, reserveBatch - count)) {
-				success = true;
+			if (this.reserveBatchBytes.compareAndSet(reserveBatch, reserveBatch - toReserve)) {
+				return toReserve;
 			}
 		}
-		//the value is changing rapidly, but we've already potentially adjusted the value twice, so just proceed
-		if (!success) {
-			this.reserveBatchBytes.addAndGet(-count);
-		}
-		if (context != null) {
-			context.addAndGetReservedBuffers(count);
+	}
+	
+	/**
+	 * Reserve count only if the available bytes are above min, as a single compare and set.
+	 * The caller is responsible for updating the context.
+	 */
+	private boolean reserveIfAbove(long min, int count) {
+		while (true) {
+			long reserveBatch = this.reserveBatchBytes.get();
+			if (reserveBatch <= min) {
+				return false;
+			}
+			if (this.reserveBatchBytes.compareAndSet(reserveBatch, reserveBatch - count)) {
+				return true;
+			}
 		}
-		return count;
 	}
     
 	void persistBatchReferences(int max) {
@@ -1082,7 +1148,10 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 		//will push the soft ref out of memory potentially too quickly
 		int sizeEstimate = ce.getSizeEstimate()/2;
 		BatchSoftReference ref = new BatchSoftReference(ce, SOFT_QUEUE, sizeEstimate);
-		softCache.put(ce.getId(), ref);
+		SoftCacheSegment segment = getSoftCacheSegment(ce.getId());
+		synchronized (segment) {
+			segment.put(ce.getId(), ref);
+		}
 		overheadBytes.addAndGet(sizeEstimate);
 	}
 	
@@ -1121,7 +1190,7 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 			return ce;
 		}
 		if (prefersMemory == null || prefersMemory) {
-			BatchSoftReference bsr = softCache.remove(batch);
+			BatchSoftReference bsr = removeSoftReference(batch);
 			if (bsr != null) {
 				ce = bsr.get();
 				if (ce != null) {
@@ -1209,13 +1278,25 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 		}
 	}
 	
+	private SoftCacheSegment getSoftCacheSegment(Long id) {
+		long val = id.longValue();
+		return softCache[(int)(val ^ (val >>> 32)) & (softCache.length - 1)];
+	}
+	
+	private BatchSoftReference removeSoftReference(Long id) {
+		SoftCacheSegment segment = getSoftCacheSegment(id);
+		synchronized (segment) {
+			return segment.remove(id);
+		}
+	}
+	
 	void cleanSoftReferences() {
 		for (int i = 0; i < 10; i++) {
 			BatchSoftReference ref = (BatchSoftReference)SOFT_QUEUE.poll();
 			if (ref == null) {
 				break;
 			}
-			softCache.remove(ref.key);
+			removeSoftReference(ref.key);
 			clearSoftReference(ref);
 		}
 	}
@@ -1414,6 +1495,18 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 	public void setInlineLobs(boolean inlineLobs) {
 		this.inlineLobs = inlineLobs;
 	}
+	
+	/**
+	 * Set the compressor to use for persisted lob chunks, or null to store them as is
+	 * @param lobCompressor
+	 */
+	public void setLobCompressor(AdaptiveCompressor lobCompressor) {
+		this.lobCompressor = lobCompressor;
+	}
+	
+	public AdaptiveCompressor getLobCompressor() {
+		return lobCompressor;
+	}
 
 	public int getMaxReserveKB() {
 		return (int)(maxReserveBytes>>10);
@@ -1444,7 +1537,7 @@ public class BufferManagerImpl implements BufferManager, ReplicatedObject<String
 	@Override
 	public void persistLob(Streamable<?> lob, FileStore store,
 			byte[] bytes) throws TeiidComponentException {
-		LobManager.persistLob(lob, store, bytes, inlineLobs, DataTypeManager.MAX_LOB_MEMORY_BYTES);
+		LobManager.persistLob(lob, store, bytes, inlineLobs, DataTypeManager.MAX_LOB_MEMORY_BYTES, lobCompressor);
 	}
 
 	public void invalidCacheGroup(Long gid) {
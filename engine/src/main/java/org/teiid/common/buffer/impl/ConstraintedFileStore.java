@@ -20,6 +20,7 @@ package org.teiid.common.buffer.impl;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.channels.WritableByteChannel;
 
 import org.teiid.adminapi.impl.SessionMetadata;
 import org.teiid.common.buffer.FileStore;
@@ -82,6 +83,12 @@ class ConstraintedFileStore extends FileStore {
         delegate.readFully(fileOffset, b, offSet, length);
     }
 
+    @Override
+    public long transferTo(long fileOffset, long length,
+            WritableByteChannel target) throws IOException {
+        return delegate.transferTo(fileOffset, length, target);
+    }
+
     @Override
     public void write(byte[] bytes, int offset, int length)
             throws IOException {
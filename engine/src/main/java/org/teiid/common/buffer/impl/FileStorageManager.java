@@ -18,10 +18,17 @@
 
 package org.teiid.common.buffer.impl;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -29,6 +36,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.teiid.common.buffer.AutoCleanupUtil;
+import org.teiid.common.buffer.AutoCleanupUtil.Removable;
 import org.teiid.common.buffer.FileStore;
 import org.teiid.common.buffer.StorageManager;
 import org.teiid.core.TeiidComponentException;
@@ -46,6 +54,8 @@ public class FileStorageManager implements StorageManager {
 	private static final long MB = 1024L * 1024L;
 	public static final int DEFAULT_MAX_OPEN_FILES = 64;
 	public static final long DEFAULT_MAX_BUFFERSPACE = 5L * 1024L * MB; //5 GB
+	public static final int DEFAULT_LOG_MAPPED_REGION_SIZE = 23; //8 MB
+	private static final int MIN_MAPPED_SIZE = 1 << 12;
 	private static final String FILE_PREFIX = "b_"; //$NON-NLS-1$
 	
 	private long maxBufferSpace = DEFAULT_MAX_BUFFERSPACE;
@@ -141,6 +151,24 @@ public class FileStorageManager implements StorageManager {
 	    	return length;
 	    }
 
+	    @Override
+	    public synchronized long transferTo(long fileOffset, long length,
+	    		WritableByteChannel target) throws IOException {
+	    	if (fileInfo == null) {
+	    		throw new EOFException();
+	    	}
+	    	try {
+	    		RandomAccessFile fileAccess = fileInfo.open();
+	    		FileChannel channel = fileAccess.getChannel();
+	    		if (fileOffset >= channel.size()) {
+	    			throw new EOFException();
+	    		}
+	    		return channel.transferTo(fileOffset, length, target);
+	    	} finally {
+	    		fileInfo.close();
+	    	}
+	    }
+
 		private void setLength(RandomAccessFile fileAccess, long newLength, boolean truncate)
 				throws IOException {
 			long currentLength = fileAccess.length();
@@ -202,9 +230,226 @@ public class FileStorageManager implements StorageManager {
 		}
 	    
 	}
+	
+	/**
+	 * An immutable view of the mapped regions and the logical length, so that
+	 * unlocked reads see a consistent pair.
+	 */
+	private static final class MappedRegions {
+		final MappedByteBuffer[] buffers;
+		final long length;
+		
+		MappedRegions(MappedByteBuffer[] buffers, long length) {
+			this.buffers = buffers;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * A {@link FileStore} that maps its file in fixed size regions.
+	 * <br>
+	 * Reads are positional against the current {@link MappedRegions} and do not lock.  Growth and truncation
+	 * are synchronized and publish new regions.  The file is only held open while
+	 * it is resized and mapped, so mapped stores do not count against the max open files.
+	 * <br>
+	 * The last region starts small and is remapped at double the size as needed, so that
+	 * small stores are not charged for a full region.  The space for a mapping is given back 
+	 * only once the buffer has been collected and is no longer mapped.  For the same reason
+	 * the file is not shortened until all released buffers have been collected.
+	 */
+	public class MappedStore extends FileStore {
+		private String name;
+		private File file;
+		private volatile MappedRegions regions = new MappedRegions(new MappedByteBuffer[0], 0);
+		private long mapped;
+		private long fileLength;
+		private AtomicInteger pendingReleases = new AtomicInteger();
+		
+		public MappedStore(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public long getLength() {
+			return regions.length;
+		}
+		
+		@Override
+		protected int readWrite(long fileOffset, byte[] b, int offSet,
+				int len, boolean write) throws IOException {
+			MappedRegions current = null;
+			if (!write) {
+				current = regions;
+				if (fileOffset >= current.length) {
+					return -1;
+				}
+				len = (int)Math.min(len, current.length - fileOffset);
+			} else {
+				synchronized (this) {
+					current = regions;
+					if (fileOffset + len > current.length) {
+						current = new MappedRegions(ensureRegions(fileOffset + len), fileOffset + len);
+						regions = current;
+					}
+				}
+			}
+			int regionOffset = (int)(fileOffset & (regionSize - 1));
+			len = Math.min(len, regionSize - regionOffset);
+			ByteBuffer bb = current.buffers[(int)(fileOffset >> logRegionSize)].duplicate();
+			bb.position(regionOffset);
+			if (write) {
+				bb.put(b, offSet, len);
+			} else {
+				bb.get(b, offSet, len);
+			}
+			return len;
+		}
+		
+		@Override
+		public long transferTo(long fileOffset, long len,
+				WritableByteChannel target) throws IOException {
+			MappedRegions current = regions;
+			if (fileOffset >= current.length) {
+				throw new EOFException();
+			}
+			int regionOffset = (int)(fileOffset & (regionSize - 1));
+			len = Math.min(Math.min(len, current.length - fileOffset), regionSize - regionOffset);
+			ByteBuffer bb = current.buffers[(int)(fileOffset >> logRegionSize)].duplicate();
+			bb.position(regionOffset);
+			bb.limit(regionOffset + (int)len);
+			return target.write(bb);
+		}
+		
+		/**
+		 * Map at least newLength bytes, returning the buffers to publish.
+		 */
+		private MappedByteBuffer[] ensureRegions(long newLength) throws IOException {
+			MappedByteBuffer[] current = regions.buffers;
+			truncateReleased();
+			if (newLength <= mapped) {
+				return current;
+			}
+			if (file == null) {
+				file = createFile(name);
+			}
+			int last = (int)((newLength - 1) >> logRegionSize);
+			long lastNeeded = newLength - (((long)last) << logRegionSize);
+			int lastSize = (int)Math.min(regionSize, Math.max(MIN_MAPPED_SIZE, Long.highestOneBit(lastNeeded - 1) << 1));
+			long newMapped = (((long)last) << logRegionSize) + lastSize;
+			//a partial last region is replaced by a larger mapping
+			int keep = current.length;
+			if (keep > 0 && current[keep - 1].capacity() < regionSize) {
+				keep--;
+			}
+			long bytesUsed = newMapped - (((long)keep) << logRegionSize);
+			long used = usedBufferSpace.addAndGet(bytesUsed);
+			if (used > maxBufferSpace) {
+				System.gc(); //attempt a last ditch effort to cleanup
+				AutoCleanupUtil.doCleanup(false);
+				used = usedBufferSpace.get();
+				if (used > maxBufferSpace) {
+					usedBufferSpace.addAndGet(-bytesUsed);
+					throw new OutOfDiskException(QueryPlugin.Util.getString("FileStoreageManager.space_exhausted", bytesUsed, used, maxBufferSpace)); //$NON-NLS-1$
+				}
+			}
+			MappedByteBuffer[] next = Arrays.copyOf(current, last + 1);
+			RandomAccessFile fileAccess = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			try {
+				if (newMapped > fileLength) {
+					fileAccess.setLength(newMapped);
+					fileLength = newMapped;
+				}
+				for (int i = keep; i <= last; i++) {
+					next[i] = fileAccess.getChannel().map(MapMode.READ_WRITE, ((long)i) << logRegionSize, i == last?lastSize:regionSize);
+				}
+			} catch (IOException e) {
+				usedBufferSpace.addAndGet(-bytesUsed);
+				throw e;
+			} finally {
+				fileAccess.close();
+			}
+			mapped = newMapped;
+			for (int i = keep; i < current.length; i++) {
+				release(current[i]);
+			}
+			return next;
+		}
+		
+		/**
+		 * Shorten the file to what is mapped, but only once no released buffer
+		 * can still be read - touching a mapping past the end of the file faults.
+		 */
+		private void truncateReleased() throws IOException {
+			if (fileLength <= mapped || pendingReleases.get() > 0) {
+				return;
+			}
+			RandomAccessFile fileAccess = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			try {
+				fileAccess.setLength(mapped);
+				fileLength = mapped;
+			} finally {
+				fileAccess.close();
+			}
+		}
+		
+		/**
+		 * Give back the space for the buffer once it has been collected.  Unmapping
+		 * directly is not safe as reads may still be using the buffer.
+		 */
+		private void release(MappedByteBuffer buffer) {
+			final long size = buffer.capacity();
+			final AtomicInteger pending = pendingReleases;
+			pending.incrementAndGet();
+			AutoCleanupUtil.setCleanupReference(buffer, new Removable() {
+				
+				@Override
+				public void remove() {
+					usedBufferSpace.addAndGet(-size);
+					pending.decrementAndGet();
+				}
+			});
+		}
+		
+		@Override
+		public synchronized void setLength(long newLength) throws IOException {
+			MappedByteBuffer[] current = regions.buffers;
+			if (newLength > regions.length) {
+				regions = new MappedRegions(ensureRegions(newLength), newLength);
+				return;
+			}
+			int required = (int)((newLength + regionSize - 1) >> logRegionSize);
+			if (required < current.length) {
+				mapped = required == 0?0:((((long)required - 1) << logRegionSize) + current[required - 1].capacity());
+				regions = new MappedRegions(Arrays.copyOf(current, required), newLength);
+				for (int i = required; i < current.length; i++) {
+					release(current[i]);
+				}
+			} else {
+				regions = new MappedRegions(current, newLength);
+			}
+			truncateReleased();
+		}
+		
+		@Override
+		protected synchronized void removeDirect() {
+			MappedByteBuffer[] current = regions.buffers;
+			regions = new MappedRegions(new MappedByteBuffer[0], 0);
+			mapped = 0;
+			for (MappedByteBuffer buffer : current) {
+				release(buffer);
+			}
+			if (file != null) {
+				file.delete();
+			}
+		}
+		
+	}
 
     // Initialization
     private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private boolean memoryMapped;
+    private int logRegionSize = DEFAULT_LOG_MAPPED_REGION_SIZE;
+    private int regionSize = 1 << logRegionSize;
     private String directory;
     private File dirFile;
     //use subdirectories to hold the files since we may create a relatively unbounded amount of lob files and 
@@ -271,9 +516,33 @@ public class FileStorageManager implements StorageManager {
     }
     
     public FileStore createFileStore(String name) {
+    	if (memoryMapped) {
+    		return new MappedStore(name);
+    	}
     	return new DiskStore(name);
     }
     
+    /**
+     * Use memory mapped regions rather than {@link RandomAccessFile} access for file stores
+     * @param memoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+    
+    public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+    
+    /**
+     * Set the size of the mapped regions as a power of 2, with a max of 30
+     * @param logRegionSize
+     */
+    public void setLogMappedRegionSize(int logRegionSize) {
+		this.logRegionSize = Math.min(30, logRegionSize);
+		this.regionSize = 1 << this.logRegionSize;
+	}
+    
     public String getDirectory() {
 		return directory;
 	}
@@ -0,0 +1,387 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.common.buffer.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.teiid.common.buffer.FileStore;
+import org.teiid.common.buffer.StorageManager;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.logging.LogConstants;
+import org.teiid.logging.LogManager;
+import org.teiid.query.QueryPlugin;
+
+/**
+ * A {@link StorageManager} that keeps all of its data outside of the heap.
+ * <br>
+ * Storage is allocated as large direct buffer segments that are divided into fixed size pages.
+ * Each {@link FileStore} is a page table into the shared segments, so there is no per store
+ * allocation and growth or truncation is just the assignment or release of pages.
+ * <br>
+ * Pages are always allocated at the lowest free index.  Segments that become empty are released
+ * and, once enough of the allocated space is free, pages from the highest segment are moved down so
+ * that it can be released as well.
+ * <br>
+ * Intended to be used as the storage layer of the {@link BufferFrontedFileStoreCache} in place of
+ * disk.  Note that the jvm limit on direct memory must allow for the max storage space.
+ */
+public class OffHeapStorageManager implements StorageManager {
+
+	public static final int DEFAULT_LOG_PAGE_SIZE = 16; //64KB
+	public static final int DEFAULT_LOG_SEGMENT_SIZE = 26; //64MB
+	public static final long DEFAULT_MAX_STORAGE_SPACE = 1L << 31; //2GB
+
+	private static class Segment {
+		ByteBuffer buffer;
+		int used;
+		OffHeapFileStore[] owners;
+		int[] slots;
+
+		Segment(int size, int pages, boolean direct) {
+			this.buffer = BlockByteBuffer.allocate(size, direct);
+			this.owners = new OffHeapFileStore[pages];
+			this.slots = new int[pages];
+		}
+	}
+
+	public class OffHeapFileStore extends FileStore {
+		private int[] pages = new int[0];
+		private int pageCount;
+		private long length;
+
+		@Override
+		public synchronized long getLength() {
+			return length;
+		}
+
+		@Override
+		protected synchronized int readWrite(long fileOffset, byte[] b, int offSet,
+				int len, boolean write) throws IOException {
+			if (!write) {
+				if (fileOffset >= length) {
+					return -1;
+				}
+				len = (int)Math.min(len, length - fileOffset);
+			} else if (fileOffset + len > length) {
+				ensurePages(fileOffset + len);
+				length = fileOffset + len;
+			}
+			int slot = (int)(fileOffset >> logPageSize);
+			int pageOffset = (int)(fileOffset & (pageSize - 1));
+			len = Math.min(len, pageSize - pageOffset);
+			ByteBuffer bb = getPage(pages[slot]);
+			bb.position(bb.position() + pageOffset);
+			if (write) {
+				bb.put(b, offSet, len);
+			} else {
+				bb.get(b, offSet, len);
+			}
+			return len;
+		}
+
+		private void ensurePages(long newLength) throws IOException {
+			int required = (int)((newLength + pageSize - 1) >> logPageSize);
+			if (required <= pageCount) {
+				return;
+			}
+			if (required > pages.length) {
+				pages = Arrays.copyOf(pages, Math.max(required, pages.length << 1));
+			}
+			try {
+				while (pageCount < required) {
+					pages[pageCount] = allocatePage(this, pageCount);
+					pageCount++;
+				}
+			} catch (IOException e) {
+				truncatePages(length);
+				throw e;
+			}
+		}
+
+		private void truncatePages(long newLength) {
+			int required = (int)((newLength + pageSize - 1) >> logPageSize);
+			while (pageCount > required) {
+				freePage(pages[--pageCount]);
+			}
+		}
+
+		@Override
+		public void setLength(long newLength) throws IOException {
+			synchronized (this) {
+				if (newLength > length) {
+					ensurePages(newLength);
+				} else {
+					truncatePages(newLength);
+				}
+				length = newLength;
+			}
+			compactIfNeeded();
+		}
+
+		@Override
+		protected void removeDirect() {
+			synchronized (this) {
+				truncatePages(0);
+				length = 0;
+			}
+			compactIfNeeded();
+		}
+
+		/**
+		 * Move the page at the given slot to the lowest free page if that is below the given segment
+		 * @return true if the page was moved or no longer belongs to this store
+		 */
+		synchronized boolean relocate(int slot, int page, int segment) {
+			if (slot >= pageCount || pages[slot] != page) {
+				return true;
+			}
+			int newPage = 0;
+			try {
+				newPage = allocatePage(this, slot);
+			} catch (IOException e) {
+				return false;
+			}
+			if (newPage >> logPagesPerSegment >= segment) {
+				freePage(newPage);
+				return false;
+			}
+			ByteBuffer source = getPage(page);
+			getPage(newPage).put(source);
+			pages[slot] = newPage;
+			freePage(page);
+			pagesMoved.incrementAndGet();
+			return true;
+		}
+	}
+
+	private int logPageSize = DEFAULT_LOG_PAGE_SIZE;
+	private int logSegmentSize = DEFAULT_LOG_SEGMENT_SIZE;
+	private long maxStorageSpace = DEFAULT_MAX_STORAGE_SPACE;
+	private boolean direct = true;
+
+	private int pageSize;
+	private int logPagesPerSegment;
+	private int pagesPerSegment;
+	private int maxPages;
+
+	//allocation state guarded by this
+	private Segment[] segments;
+	private BitSet pagesInUse = new BitSet();
+	private int searchStart;
+	private int usedPages;
+	private int allocatedSegments;
+	private int highestSegment = -1;
+
+	private AtomicBoolean compacting = new AtomicBoolean();
+	private AtomicLong pagesMoved = new AtomicLong();
+	private AtomicLong segmentsReleased = new AtomicLong();
+
+	@Override
+	public void initialize() throws TeiidComponentException {
+		this.logSegmentSize = Math.max(logPageSize, logSegmentSize);
+		this.pageSize = 1 << logPageSize;
+		this.logPagesPerSegment = logSegmentSize - logPageSize;
+		this.pagesPerSegment = 1 << logPagesPerSegment;
+		this.maxPages = (int)Math.min(Integer.MAX_VALUE, maxStorageSpace >> logPageSize);
+		this.segments = new Segment[(maxPages + pagesPerSegment - 1) >> logPagesPerSegment];
+	}
+
+	@Override
+	public FileStore createFileStore(String name) {
+		return new OffHeapFileStore();
+	}
+
+	/**
+	 * Return a buffer positioned at the start of the page and limited to the page size
+	 */
+	private ByteBuffer getPage(int page) {
+		Segment s = null;
+		synchronized (this) {
+			s = segments[page >> logPagesPerSegment];
+		}
+		ByteBuffer bb = s.buffer.duplicate();
+		int position = (page & (pagesPerSegment - 1)) << logPageSize;
+		bb.limit(position + pageSize);
+		bb.position(position);
+		return bb;
+	}
+
+	synchronized int allocatePage(OffHeapFileStore owner, int slot) throws IOException {
+		int page = pagesInUse.nextClearBit(searchStart);
+		if (page >= maxPages) {
+			long used = ((long)usedPages) << logPageSize;
+			throw new OutOfDiskException(QueryPlugin.Util.getString("OffHeapStorageManager.space_exhausted", pageSize, used, maxStorageSpace)); //$NON-NLS-1$
+		}
+		int index = page >> logPagesPerSegment;
+		Segment s = segments[index];
+		if (s == null) {
+			int size = (int)Math.min(1 << logSegmentSize, ((long)(maxPages - (index << logPagesPerSegment))) << logPageSize);
+			s = new Segment(size, size >> logPageSize, direct);
+			segments[index] = s;
+			allocatedSegments++;
+			highestSegment = Math.max(highestSegment, index);
+		}
+		int segmentPage = page & (pagesPerSegment - 1);
+		s.owners[segmentPage] = owner;
+		s.slots[segmentPage] = slot;
+		s.used++;
+		pagesInUse.set(page);
+		searchStart = page + 1;
+		usedPages++;
+		return page;
+	}
+
+	synchronized void freePage(int page) {
+		int index = page >> logPagesPerSegment;
+		Segment s = segments[index];
+		s.owners[page & (pagesPerSegment - 1)] = null;
+		pagesInUse.clear(page);
+		searchStart = Math.min(searchStart, page);
+		usedPages--;
+		if (--s.used == 0 && allocatedSegments > 1) {
+			//release to the gc, which will free the direct memory
+			segments[index] = null;
+			allocatedSegments--;
+			segmentsReleased.incrementAndGet();
+			while (highestSegment >= 0 && segments[highestSegment] == null) {
+				highestSegment--;
+			}
+		}
+	}
+
+	/**
+	 * Compact if half of the allocated space is free
+	 */
+	void compactIfNeeded() {
+		synchronized (this) {
+			if (allocatedSegments < 2 || usedPages > (allocatedSegments << logPagesPerSegment) >> 1) {
+				return;
+			}
+		}
+		compact();
+	}
+
+	/**
+	 * Move pages from the highest segments into the free space of the lower segments
+	 * until no more segments can be released.
+	 */
+	public void compact() {
+		if (!compacting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			while (true) {
+				int index = 0;
+				OffHeapFileStore[] owners = null;
+				int[] slots = null;
+				synchronized (this) {
+					index = highestSegment;
+					if (index <= 0) {
+						break;
+					}
+					Segment s = segments[index];
+					int free = (allocatedSegments << logPagesPerSegment) - usedPages - (s.owners.length - s.used);
+					if (free < s.used) {
+						break;
+					}
+					owners = s.owners.clone();
+					slots = s.slots.clone();
+				}
+				LogManager.logDetail(LogConstants.CTX_BUFFER_MGR, "Compacting off heap segment", index); //$NON-NLS-1$
+				int base = index << logPagesPerSegment;
+				for (int i = 0; i < owners.length; i++) {
+					if (owners[i] != null && !owners[i].relocate(slots[i], base + i, index)) {
+						return;
+					}
+				}
+				synchronized (this) {
+					if (segments[index] != null) {
+						//concurrent allocation into the segment
+						break;
+					}
+				}
+			}
+		} finally {
+			compacting.set(false);
+		}
+	}
+
+	public void setLogPageSize(int logPageSize) {
+		this.logPageSize = logPageSize;
+	}
+
+	public void setLogSegmentSize(int logSegmentSize) {
+		this.logSegmentSize = Math.min(30, logSegmentSize);
+	}
+
+	/**
+	 * Set the max amount of storage space in bytes
+	 * @param maxStorageSpace
+	 */
+	public void setMaxStorageSpace(long maxStorageSpace) {
+		this.maxStorageSpace = maxStorageSpace;
+	}
+
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
+	@Override
+	public long getMaxStorageSpace() {
+		return maxStorageSpace;
+	}
+
+	/**
+	 * Get the bytes in use by pages
+	 */
+	public synchronized long getUsedBufferSpace() {
+		return ((long)usedPages) << logPageSize;
+	}
+
+	/**
+	 * Get the bytes held by allocated segments
+	 */
+	public synchronized long getAllocatedBufferSpace() {
+		long result = 0;
+		for (int i = 0; i <= highestSegment; i++) {
+			if (segments[i] != null) {
+				result += segments[i].buffer.capacity();
+			}
+		}
+		return result;
+	}
+
+	public synchronized int getSegmentCount() {
+		return allocatedSegments;
+	}
+
+	public long getPagesMoved() {
+		return pagesMoved.get();
+	}
+
+	public long getSegmentsReleased() {
+		return segmentsReleased.get();
+	}
+
+}
@@ -18,7 +18,9 @@
 
 package org.teiid.common.buffer.impl;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -91,6 +93,20 @@ public class SplittableStorageManager implements StorageManager {
 			return length;
 	    }
 
+	    @Override
+	    public long transferTo(long fileOffset, long length,
+	    		WritableByteChannel target) throws IOException {
+	    	FileStore store = null;
+	    	synchronized (this) {
+	    		if (fileOffset >= len) {
+	    			throw new EOFException();
+	    		}
+	    		store = storageFiles.get((int)(fileOffset/maxFileSize));
+	    	}
+	    	long fileBegin = fileOffset%maxFileSize;
+	    	return store.transferTo(fileBegin, Math.min(length, maxFileSize - fileBegin), target);
+	    }
+
 		private void ensureLength(long length) throws IOException {
 			if (length <= len) {
 				return;
@@ -20,7 +20,7 @@ package org.teiid.dqp.internal.process;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.util.Arrays;
 
 import org.teiid.client.lob.LobChunk;
 import org.teiid.client.lob.LobChunkProducer;
@@ -32,12 +32,13 @@ import org.teiid.core.CorePlugin;
  * stream into sequence of ByteLobChunk objects of given chunk size. 
  */
 public class ByteLobChunkStream implements LobChunkProducer {
-    private PushbackInputStream stream;
+    private InputStream stream;
     private int chunkSize;
     private boolean closed;
+    private int next = -1; //the byte read ahead to detect the last chunk
     
     public ByteLobChunkStream(InputStream stream, int chunkSize) {
-        this.stream = new PushbackInputStream(stream);
+        this.stream = stream;
         this.chunkSize = chunkSize;
     }
     
@@ -47,36 +48,28 @@ public class ByteLobChunkStream implements LobChunkProducer {
             throw new IllegalStateException(CorePlugin.Util.getString("stream_closed")); //$NON-NLS-1$
         }
                 
-        // read contents from the stream
+        // read contents from the stream directly into the chunk
         byte[] cbuf = new byte[this.chunkSize];
-        int start = 0;
         int read = 0;
-        while (true) {
-            int currentRead = this.stream.read(cbuf, start, cbuf.length - start);
+        if (this.next != -1) {
+        	cbuf[read++] = (byte)this.next;
+        	this.next = -1;
+        }
+        boolean isLast = false;
+        while (read < this.chunkSize) {
+            int currentRead = this.stream.read(cbuf, read, this.chunkSize - read);
             if (currentRead == -1) {
-                if (start == 0) {
-                    return new LobChunk(new byte[0], true);
-                }
+            	isLast = true;
                 break;
             }
             read += currentRead;
-            if (read < this.chunkSize) {
-                start = read;
-            } else {
-                break;
-            }
         }
-        boolean isLast = false;
-        if (read != this.chunkSize) {
-            byte[] buf = new byte[read];
-            System.arraycopy(cbuf, 0, buf, 0, read);
-            cbuf = buf;
+        if (!isLast) {
+        	this.next = this.stream.read();
+        	isLast = this.next == -1;
         }
-        int next = this.stream.read();
-        if (next == -1) {
-        	isLast = true;
-        } else {
-        	this.stream.unread(next);
+        if (read != this.chunkSize) {
+            cbuf = Arrays.copyOf(cbuf, read);
         }
         return new LobChunk(cbuf, isLast);
     }
@@ -85,4 +78,4 @@ public class ByteLobChunkStream implements LobChunkProducer {
         this.closed = true;
         this.stream.close();
     }        
-}
\ No newline at end of file
+}
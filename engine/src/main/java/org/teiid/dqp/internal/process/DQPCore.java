@@ -19,6 +19,7 @@
 package org.teiid.dqp.internal.process;
 
 import java.lang.ref.WeakReference;
+import java.sql.Blob;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -473,6 +474,17 @@ public class DQPCore implements DQP {
         return resultsFuture;
     }
     
+	public ResultsFuture<Blob> requestLobStream(long requestId, String streamId)
+			throws TeiidProcessingException, TeiidComponentException {
+        if (LogManager.isMessageToBeRecorded(LogConstants.CTX_DQP, MessageLevel.DETAIL)) {
+            LogManager.logDetail(LogConstants.CTX_DQP, "Request for Lob stream with Stream id="+streamId);  //$NON-NLS-1$
+        }  
+        RequestWorkItem workItem = getRequestWorkItem(DQPWorkContext.getWorkContext().getRequestID(requestId));
+        ResultsFuture<Blob> resultsFuture = new ResultsFuture<Blob>();
+        resultsFuture.getResultsReceiver().receiveResults(workItem.getLobStream(streamId));
+        return resultsFuture;
+	}
+    
     RequestWorkItem getRequestWorkItem(RequestID reqID) throws TeiidProcessingException {
     	RequestWorkItem result = this.requests.get(reqID);
     	if (result == null) {
@@ -70,7 +70,8 @@ public class DQPWorkContext implements Serializable {
 		EIGHT_6("08.06.00.Beta3", (byte)3), //$NON-NLS-1$
 		EIGHT_7("08.07.00.Beta2", (byte)3), //$NON-NLS-1$
 		EIGHT_10("08.10.00.Alpha3", BatchSerializer.VERSION_GEOMETRY), //$NON-NLS-1$
-	    ELEVEN_2("11.02", BatchSerializer.VERSION_GEOGRAPHY); //$NON-NLS-1$
+	    ELEVEN_2("11.02", BatchSerializer.VERSION_GEOGRAPHY), //$NON-NLS-1$
+	    TWELVE_0("12.00", BatchSerializer.VERSION_ENCODED); //$NON-NLS-1$
 		
 		private String string;
 		private byte clientSerializationVersion;
@@ -153,6 +154,22 @@ public class DQPWorkContext implements Serializable {
     
     public DQPWorkContext() {
 	}
+    
+    /**
+     * Create a context for another logical connection from the same client.
+     * The client information is copied, but not the session.
+     */
+    public DQPWorkContext newClientContext() {
+    	DQPWorkContext result = new DQPWorkContext();
+    	result.clientAddress = this.clientAddress;
+    	result.clientHostname = this.clientHostname;
+    	result.securityHelper = this.securityHelper;
+    	result.clientVersion = this.clientVersion;
+    	result.admin = this.admin;
+    	result.connectionProfile = this.connectionProfile;
+    	result.local = this.local;
+    	return result;
+    }
 
     public boolean useCallingThread() {
 		return useCallingThread;
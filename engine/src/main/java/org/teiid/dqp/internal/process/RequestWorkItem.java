@@ -19,7 +19,9 @@
 package org.teiid.dqp.internal.process;
 
 import java.lang.ref.WeakReference;
+import java.sql.Blob;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -35,6 +37,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.teiid.api.exception.query.QueryMetadataException;
 import org.teiid.client.BatchSerializer;
+import org.teiid.client.DQP;
 import org.teiid.client.RequestMessage;
 import org.teiid.client.RequestMessage.ShowPlan;
 import org.teiid.client.ResizingArrayList;
@@ -53,7 +56,13 @@ import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.TeiidRuntimeException;
+import org.teiid.core.types.BlobImpl;
+import org.teiid.core.types.BlobType;
 import org.teiid.core.types.DataTypeManager;
+import org.teiid.core.types.InputStreamFactory;
+import org.teiid.core.types.InputStreamFactory.BlobInputStreamFactory;
+import org.teiid.core.types.InputStreamFactory.StorageMode;
+import org.teiid.core.types.Streamable;
 import org.teiid.core.util.EquivalenceUtil;
 import org.teiid.dqp.internal.datamgr.ThreadCpuTimer;
 import org.teiid.dqp.internal.process.AuthorizationValidator.CommandType;
@@ -125,6 +134,19 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 		}
 	}
 
+	/**
+	 * A queued request for the next results
+	 */
+	private static final class PendingRequest {
+		int count;
+		ResultsReceiver<ResultsMessage> receiver;
+
+		PendingRequest(int count, ResultsReceiver<ResultsMessage> receiver) {
+			this.count = count;
+			this.receiver = receiver;
+		}
+	}
+
 	private final class WorkWrapper<T> implements
 			DQPCore.CompletionListener<T> {
 		
@@ -150,6 +172,9 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 					}
 				}
 				nextWork = queue.pollFirst();
+				while (nextWork != null && nextWork.work.isDone()) {
+					nextWork = queue.pollFirst();
+				}
 				if (nextWork == null) {
 					totalThreads--;
 				} else {
@@ -211,6 +236,8 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 	private ResultsReceiver<ResultsMessage> resultsReceiver;
 	private int begin;
 	private int end;
+	private int lastSentRow;
+	private LinkedList<PendingRequest> pendingRequests = new LinkedList<PendingRequest>();
     private TupleBatch savedBatch;
     private Map<Integer, LobWorkItem> lobStreams = Collections.synchronizedMap(new HashMap<Integer, LobWorkItem>(4));    
     
@@ -254,14 +281,25 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
     
 	/**
 	 * Ask for results.
+	 * <br>
+	 * A beginRow of {@link DQP#NEXT_BATCH} continues from the last row sent.  Those requests act as
+	 * credits that may be issued before the prior results have been sent and are queued.
 	 * @param beginRow
 	 * @param endRow
 	 */
     synchronized void requestResults(int beginRow, int endRow, ResultsReceiver<ResultsMessage> receiver) {
 		if (this.resultsReceiver != null) {
-			throw new IllegalStateException("Results already requested"); //$NON-NLS-1$\
+			if (beginRow != DQP.NEXT_BATCH) {
+				throw new IllegalStateException("Results already requested"); //$NON-NLS-1$\
+			}
+			this.pendingRequests.add(new PendingRequest(endRow - beginRow + 1, receiver));
+			return;
 		}
 		this.resultsReceiver = receiver;
+		if (beginRow == DQP.NEXT_BATCH) {
+			endRow = this.lastSentRow + endRow - beginRow + 1;
+			beginRow = this.lastSentRow + 1;
+		}
 		this.begin = beginRow;
 		this.end = endRow;
 	}
@@ -474,6 +512,9 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 			synchronized (queue) {
 				while (!queue.isEmpty() && totalThreads < dqpCore.getUserRequestSourceConcurrency()) {
 					WorkWrapper<?> w = queue.removeFirst();
+					if (w.work.isDone()) {
+						continue; //cancelled before it was submitted
+					}
 	        		dqpCore.addWork(w.work);
 	        		w.submitted = true;
 	        		totalThreads++;
@@ -869,6 +910,7 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 		ResultsMessage response = null;
 		ResultsReceiver<ResultsMessage> receiver = null;
 		boolean result = true;
+		boolean promoted = false;
 		synchronized (this) {
 			if (this.resultsReceiver == null) {
 				if (cursorRequestExpected()) {
@@ -1011,6 +1053,15 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 	         */
             receiver = this.resultsReceiver;
             this.resultsReceiver = null;    
+            this.lastSentRow = response.getLastRow();
+            PendingRequest pending = this.pendingRequests.poll();
+            if (pending != null) {
+            	//the next credit continues where these results end
+            	this.resultsReceiver = pending.receiver;
+            	this.begin = this.lastSentRow + 1;
+            	this.end = this.lastSentRow + pending.count;
+            	promoted = true;
+            }
 		}
 		cancelCancelTask();
 		if ((!this.dqpWorkContext.getSession().isEmbedded() && requestMsg.isDelaySerialization() && this.requestMsg.getShowPlan() == ShowPlan.ON) 
@@ -1033,6 +1084,10 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 		}
 		setAnalysisRecords(response);
         receiver.receiveResults(response);
+        if (promoted) {
+        	//ensure that buffered results are sent for the next request
+        	moreWork();
+        }
         return result;
 	}
 
@@ -1142,9 +1197,14 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 
     private void sendError() {
     	ResultsReceiver<ResultsMessage> receiver = null;
+    	List<PendingRequest> pending = null;
     	synchronized (this) {
     		receiver = this.resultsReceiver;
     		this.resultsReceiver = null;
+    		if (!this.pendingRequests.isEmpty()) {
+    			pending = new ArrayList<PendingRequest>(this.pendingRequests);
+    			this.pendingRequests.clear();
+    		}
     		if (receiver == null) {
     			LogManager.logDetail(LogConstants.CTX_DQP, processingException, "Unable to send error to client as results were already sent.", requestID); //$NON-NLS-1$
     			return;
@@ -1164,6 +1224,13 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
         response.setException(exception);
         setAnalysisRecords(response);
         receiver.receiveResults(response);
+        if (pending != null) {
+        	for (PendingRequest request : pending) {
+        		ResultsMessage pendingResponse = new ResultsMessage();
+        		pendingResponse.setException(exception);
+        		request.receiver.receiveResults(pendingResponse);
+        	}
+        }
     }
 
 	private Throwable addCancelCode(Throwable exception) {
@@ -1211,6 +1278,38 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
     	}
     }
     
+    /**
+     * Get the blob to send as a single stream.  Values that are not yet in memory or the buffer
+     * are read in chunks by {@link LobWorkItem}, since reading them may block on the source.
+     * @return the blob or null if the value should be read in chunks
+     */
+    Blob getLobStream(String id) throws TeiidComponentException {
+    	Streamable<?> streamable = this.resultsBuffer.getLobReference(id);
+    	if (!(streamable instanceof BlobType)) {
+    		return null;
+    	}
+    	StorageMode mode = InputStreamFactory.getStorageMode(streamable);
+    	if (mode != StorageMode.MEMORY && mode != StorageMode.PERSISTENT) {
+    		return null;
+    	}
+    	Object reference = streamable.getReference();
+    	BlobImpl blob = null;
+    	if (reference instanceof BlobImpl) {
+    		blob = (BlobImpl)reference;
+    	} else {
+    		blob = new BlobImpl(new BlobInputStreamFactory((Blob)reference));
+    	}
+    	try {
+    		long length = blob.getStreamFactory().getLength();
+    		if (length > 0) {
+    			this.dataBytes.addAndGet(length);
+    		}
+    	} catch (SQLException e) {
+    		return null;
+    	}
+    	return blob;
+    }
+    
     public void removeLobStream(int streamRequestId) {
         this.lobStreams.remove(streamRequestId);
     } 
@@ -1376,6 +1475,19 @@ public class RequestWorkItem extends AbstractWorkItem implements PrioritizedRunn
 		return work;
 	}
 	
+    /**
+     * Add work for processing part of the plan in parallel, which shares the source concurrency
+     * limit with source work.
+     */
+    public <T> FutureWork<T> addParallelWork(Callable<T> callable) {
+    	return addWork(callable, new CompletionListener<T>() {
+    		@Override
+    		public void onCompletion(FutureWork<T> future) {
+    			//the worker notifies as needed
+    		}
+		}, 100);
+    }
+    
     <T> FutureWork<T> addWork(Callable<T> callable, CompletionListener<T> listener, int priority) {
     	FutureWork<T> work = new FutureWork<T>(callable, priority);
     	work.setRequestId(this.requestID.toString());
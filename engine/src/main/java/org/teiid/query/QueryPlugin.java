@@ -659,5 +659,10 @@ public class QueryPlugin { // extends Plugin {
         TEIID31292,
         TEIID31293, 
         TEIID31294,
+        TEIID31295,
+        TEIID31296,
+        TEIID31297,
+        TEIID31298,
+        TEIID31299,
 	}
 }
@@ -0,0 +1,414 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.eval;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.teiid.api.exception.query.ExpressionEvaluationException;
+import org.teiid.common.buffer.BlockedException;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.util.EquivalenceUtil;
+import org.teiid.metadata.FunctionMethod.PushDown;
+import org.teiid.query.QueryPlugin;
+import org.teiid.query.function.FunctionDescriptor;
+import org.teiid.query.function.FunctionLibrary;
+import org.teiid.query.sql.lang.CompareCriteria;
+import org.teiid.query.sql.lang.CompoundCriteria;
+import org.teiid.query.sql.lang.Criteria;
+import org.teiid.query.sql.lang.ExpressionCriteria;
+import org.teiid.query.sql.lang.IsNullCriteria;
+import org.teiid.query.sql.lang.NotCriteria;
+import org.teiid.query.sql.lang.SetCriteria;
+import org.teiid.query.sql.symbol.CaseExpression;
+import org.teiid.query.sql.symbol.Constant;
+import org.teiid.query.sql.symbol.DerivedExpression;
+import org.teiid.query.sql.symbol.Expression;
+import org.teiid.query.sql.symbol.ExpressionSymbol;
+import org.teiid.query.sql.symbol.Function;
+import org.teiid.query.sql.symbol.SearchedCaseExpression;
+
+/**
+ * Compiles {@link Criteria} and {@link Expression} trees once per plan into trees of specialized
+ * evaluators, which avoids the type dispatch of the {@link Evaluator} for every row.  Element
+ * references are resolved to tuple indexes and the operators of comparisons against constants
+ * are resolved at compile time.
+ * <br>
+ * Constructs that are not supported, such as subqueries, pushdown functions and xml/json
+ * expressions, are evaluated by the {@link Evaluator} passed in at evaluation time, so that a
+ * compiled form may be shared by clones of a plan.  The semantics, including the exceptions
+ * raised, match the {@link Evaluator}.
+ */
+public class ExpressionCompiler {
+
+	public interface CompiledExpression {
+		Object evaluate(List<?> tuple, Evaluator evaluator) throws ExpressionEvaluationException, BlockedException, TeiidComponentException;
+	}
+
+	public interface CompiledCriteria {
+		Boolean evaluateTVL(List<?> tuple, Evaluator evaluator) throws ExpressionEvaluationException, BlockedException, TeiidComponentException;
+	}
+
+	private Map<? extends Expression, Integer> elements;
+	private boolean compiled;
+
+	private ExpressionCompiler(Map<? extends Expression, Integer> elements) {
+		this.elements = elements;
+	}
+
+	/**
+	 * Compile the criteria
+	 * @param elements the map of element to tuple index
+	 * @return the compiled criteria or null if no part of the criteria can be compiled
+	 */
+	public static CompiledCriteria compile(Criteria criteria, Map<? extends Expression, Integer> elements) {
+		if (criteria == null) {
+			return null;
+		}
+		ExpressionCompiler compiler = new ExpressionCompiler(elements);
+		CompiledCriteria result = compiler.compileCriteria(criteria);
+		if (!compiler.compiled) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Compile the expression.  Evaluation exceptions are wrapped in the same way as
+	 * {@link Evaluator#evaluate(Expression, List)}
+	 * @param elements the map of element to tuple index
+	 * @return the compiled expression or null if no part of the expression can be compiled
+	 */
+	public static CompiledExpression compile(Expression expression, Map<? extends Expression, Integer> elements) {
+		if (expression == null) {
+			return null;
+		}
+		ExpressionCompiler compiler = new ExpressionCompiler(elements);
+		CompiledExpression result = compiler.compileEvaluate(expression);
+		if (!compiler.compiled) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Compile as the top level {@link Evaluator#evaluate(Expression, List)}
+	 */
+	private CompiledExpression compileEvaluate(final Expression expression) {
+		final CompiledExpression compiledExpression = compileExpression(expression);
+		return (tuple, evaluator) -> {
+			try {
+				return compiledExpression.evaluate(tuple, evaluator);
+			} catch (ExpressionEvaluationException e) {
+				throw new ExpressionEvaluationException(QueryPlugin.Event.TEIID30328, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID30328, new Object[] {expression, e.getMessage()}));
+			}
+		};
+	}
+
+	private CompiledExpression compileExpression(final Expression expression) {
+		if (expression instanceof DerivedExpression) {
+			if (elements != null) {
+				Integer index = elements.get(expression);
+				if (index != null) {
+					compiled = true;
+					final int i = index;
+					return (tuple, evaluator) -> tuple.get(i);
+				}
+			}
+			if (expression instanceof ExpressionSymbol) {
+				return compileExpression(((ExpressionSymbol)expression).getExpression());
+			}
+		} else if (expression instanceof Constant) {
+			Constant c = (Constant)expression;
+			if (!c.isMultiValued()) {
+				compiled = true;
+				final Object value = c.getValue();
+				return (tuple, evaluator) -> value;
+			}
+		} else if (expression instanceof Function) {
+			CompiledExpression result = compileFunction((Function)expression);
+			if (result != null) {
+				return result;
+			}
+		} else if (expression instanceof SearchedCaseExpression) {
+			return compileSearchedCase((SearchedCaseExpression)expression);
+		} else if (expression instanceof CaseExpression) {
+			return compileCase((CaseExpression)expression);
+		} else if (expression instanceof Criteria) {
+			final CompiledCriteria crit = compileCriteria((Criteria)expression);
+			return (tuple, evaluator) -> Boolean.TRUE.equals(crit.evaluateTVL(tuple, evaluator));
+		}
+		return (tuple, evaluator) -> evaluator.internalEvaluate(expression, tuple);
+	}
+
+	private CompiledExpression compileFunction(final Function function) {
+		final FunctionDescriptor fd = function.getFunctionDescriptor();
+		if (fd == null || fd.getPushdown() == PushDown.MUST_PUSHDOWN || fd.getProcedure() != null
+				|| function.getName().equalsIgnoreCase(FunctionLibrary.LOOKUP)) {
+			return null;
+		}
+		compiled = true;
+		Expression[] args = function.getArgs();
+		final CompiledExpression[] compiledArgs = new CompiledExpression[args.length];
+		for (int i = 0; i < args.length; i++) {
+			compiledArgs[i] = compileExpression(args[i]);
+		}
+		final int start = fd.requiresContext()?1:0;
+		return (tuple, evaluator) -> {
+			Object[] values = new Object[compiledArgs.length + start];
+			if (start == 1) {
+				values[0] = evaluator.context;
+			}
+			for (int i = 0; i < compiledArgs.length; i++) {
+				values[i+start] = compiledArgs[i].evaluate(tuple, evaluator);
+			}
+			return fd.invokeFunction(values, evaluator.context, null);
+		};
+	}
+
+	private CompiledExpression compileCase(CaseExpression expr) {
+		compiled = true;
+		final CompiledExpression value = compileExpression(expr.getExpression());
+		final CompiledExpression[] whens = new CompiledExpression[expr.getWhenCount()];
+		final CompiledExpression[] thens = new CompiledExpression[whens.length];
+		for (int i = 0; i < whens.length; i++) {
+			whens[i] = compileExpression(expr.getWhenExpression(i));
+			thens[i] = compileExpression(expr.getThenExpression(i));
+		}
+		final CompiledExpression elseExpr = expr.getElseExpression() != null?compileExpression(expr.getElseExpression()):null;
+		return (tuple, evaluator) -> {
+			Object exprVal = value.evaluate(tuple, evaluator);
+			for (int i = 0; i < whens.length; i++) {
+				if (EquivalenceUtil.areEqual(exprVal, whens[i].evaluate(tuple, evaluator))) {
+					return thens[i].evaluate(tuple, evaluator);
+				}
+			}
+			if (elseExpr != null) {
+				return elseExpr.evaluate(tuple, evaluator);
+			}
+			return null;
+		};
+	}
+
+	private CompiledExpression compileSearchedCase(SearchedCaseExpression expr) {
+		compiled = true;
+		final CompiledCriteria[] whens = new CompiledCriteria[expr.getWhenCount()];
+		final CompiledExpression[] thens = new CompiledExpression[whens.length];
+		for (int i = 0; i < whens.length; i++) {
+			whens[i] = compileCriteria(expr.getWhenCriteria(i));
+			thens[i] = compileExpression(expr.getThenExpression(i));
+		}
+		final CompiledExpression elseExpr = expr.getElseExpression() != null?compileExpression(expr.getElseExpression()):null;
+		return (tuple, evaluator) -> {
+			for (int i = 0; i < whens.length; i++) {
+				if (Boolean.TRUE.equals(whens[i].evaluateTVL(tuple, evaluator))) {
+					return thens[i].evaluate(tuple, evaluator);
+				}
+			}
+			if (elseExpr != null) {
+				return elseExpr.evaluate(tuple, evaluator);
+			}
+			return null;
+		};
+	}
+
+	private CompiledCriteria compileCriteria(final Criteria criteria) {
+		if (criteria instanceof CompoundCriteria) {
+			return compileCompound((CompoundCriteria)criteria);
+		}
+		if (criteria instanceof NotCriteria) {
+			final CompiledCriteria crit = compileCriteria(((NotCriteria)criteria).getCriteria());
+			return (tuple, evaluator) -> {
+				Boolean result = crit.evaluateTVL(tuple, evaluator);
+				if (result == null) {
+					return null;
+				}
+				return !result;
+			};
+		}
+		if (criteria instanceof CompareCriteria) {
+			return compileCompare((CompareCriteria)criteria);
+		}
+		if (criteria instanceof IsNullCriteria) {
+			final IsNullCriteria isNull = (IsNullCriteria)criteria;
+			final CompiledExpression expr = compileEvaluate(isNull.getExpression());
+			final boolean negated = isNull.isNegated();
+			return (tuple, evaluator) -> {
+				Object value = null;
+				try {
+					value = expr.evaluate(tuple, evaluator);
+				} catch (ExpressionEvaluationException e) {
+					throw new ExpressionEvaluationException(QueryPlugin.Event.TEIID30323, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID30323, isNull));
+				}
+				return value == null ^ negated;
+			};
+		}
+		if (criteria instanceof SetCriteria && ((SetCriteria)criteria).isAllConstants()) {
+			return compileSet((SetCriteria)criteria);
+		}
+		if (criteria instanceof ExpressionCriteria) {
+			final CompiledExpression expr = compileEvaluate(((ExpressionCriteria)criteria).getExpression());
+			return (tuple, evaluator) -> (Boolean)expr.evaluate(tuple, evaluator);
+		}
+		return (tuple, evaluator) -> evaluator.evaluateTVL(criteria, tuple);
+	}
+
+	private CompiledCriteria compileCompound(CompoundCriteria criteria) {
+		List<Criteria> subCrits = criteria.getCriteria();
+		final CompiledCriteria[] crits = new CompiledCriteria[subCrits.size()];
+		for (int i = 0; i < crits.length; i++) {
+			crits[i] = compileCriteria(subCrits.get(i));
+		}
+		if (criteria.getOperator() == CompoundCriteria.AND) {
+			return (tuple, evaluator) -> {
+				Boolean result = Boolean.TRUE;
+				for (int i = 0; i < crits.length; i++) {
+					Boolean value = crits[i].evaluateTVL(tuple, evaluator);
+					if (value == null) {
+						result = null;
+					} else if (!value) {
+						return Boolean.FALSE;
+					}
+				}
+				return result;
+			};
+		}
+		return (tuple, evaluator) -> {
+			Boolean result = Boolean.FALSE;
+			for (int i = 0; i < crits.length; i++) {
+				Boolean value = crits[i].evaluateTVL(tuple, evaluator);
+				if (value == null) {
+					result = null;
+				} else if (value) {
+					return Boolean.TRUE;
+				}
+			}
+			return result;
+		};
+	}
+
+	private CompiledCriteria compileCompare(final CompareCriteria criteria) {
+		final CompiledExpression left = compileEvaluate(criteria.getLeftExpression());
+		final CompiledExpression right = compileEvaluate(criteria.getRightExpression());
+		final int operator = criteria.getOperator();
+		Expression rightExpr = criteria.getRightExpression();
+		if (rightExpr instanceof Constant && !((Constant)rightExpr).isMultiValued()
+				&& isScalar(rightExpr) && isScalar(criteria.getLeftExpression())) {
+			//the comparison may be fully resolved
+			compiled = true;
+			final Object value = ((Constant)rightExpr).getValue();
+			if (value == null) {
+				return (tuple, evaluator) -> {
+					evaluateOperand(left, tuple, evaluator, criteria, "left"); //$NON-NLS-1$
+					return null;
+				};
+			}
+			final ComparisonResult test = getComparisonResult(operator);
+			return (tuple, evaluator) -> {
+				Object leftValue = evaluateOperand(left, tuple, evaluator, criteria, "left"); //$NON-NLS-1$
+				if (leftValue == null) {
+					return null;
+				}
+				return test.matches(Constant.COMPARATOR.compare(leftValue, value));
+			};
+		}
+		return (tuple, evaluator) -> {
+			Object leftValue = evaluateOperand(left, tuple, evaluator, criteria, "left"); //$NON-NLS-1$
+			if (leftValue == null) {
+				return null;
+			}
+			Object rightValue = evaluateOperand(right, tuple, evaluator, criteria, "right"); //$NON-NLS-1$
+			if (rightValue == null) {
+				return null;
+			}
+			return Evaluator.compare(operator, leftValue, rightValue);
+		};
+	}
+
+	/**
+	 * @return true if the values are known to not be arrays, which use a different comparison
+	 */
+	private static boolean isScalar(Expression expr) {
+		return expr.getType() != null && !expr.getType().isArray();
+	}
+
+	private interface ComparisonResult {
+		boolean matches(int compare);
+	}
+
+	private static ComparisonResult getComparisonResult(int operator) {
+		switch (operator) {
+		case CompareCriteria.EQ:
+			return compare -> compare == 0;
+		case CompareCriteria.NE:
+			return compare -> compare != 0;
+		case CompareCriteria.LT:
+			return compare -> compare < 0;
+		case CompareCriteria.LE:
+			return compare -> compare <= 0;
+		case CompareCriteria.GT:
+			return compare -> compare > 0;
+		case CompareCriteria.GE:
+			return compare -> compare >= 0;
+		default:
+			throw new AssertionError();
+		}
+	}
+
+	private static Object evaluateOperand(CompiledExpression expr, List<?> tuple, Evaluator evaluator, CompareCriteria criteria, String side)
+			throws ExpressionEvaluationException, BlockedException, TeiidComponentException {
+		try {
+			return expr.evaluate(tuple, evaluator);
+		} catch (ExpressionEvaluationException e) {
+			throw new ExpressionEvaluationException(QueryPlugin.Event.TEIID30312, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID30312, side, criteria));
+		}
+	}
+
+	private CompiledCriteria compileSet(final SetCriteria criteria) {
+		compiled = true;
+		final CompiledExpression expr = compileEvaluate(criteria.getExpression());
+		final Collection<?> values = criteria.getValues();
+		final boolean hasNull = values.contains(Constant.NULL_CONSTANT);
+		final boolean negated = criteria.isNegated();
+		final Class<?> type = criteria.getExpression().getType();
+		return (tuple, evaluator) -> {
+			Object leftValue = null;
+			try {
+				leftValue = expr.evaluate(tuple, evaluator);
+			} catch (ExpressionEvaluationException e) {
+				throw new ExpressionEvaluationException(QueryPlugin.Event.TEIID30323, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID30323, criteria));
+			}
+			if (leftValue == null) {
+				if (!values.isEmpty()) {
+					return null;
+				}
+				return negated;
+			}
+			if (!values.contains(new Constant(leftValue, type))) {
+				if (hasNull) {
+					return null;
+				}
+				return negated;
+			}
+			return !negated;
+		};
+	}
+
+}
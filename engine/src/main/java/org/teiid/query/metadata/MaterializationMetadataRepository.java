@@ -47,6 +47,8 @@ public class MaterializationMetadataRepository implements MetadataRepository {
 	public static final String MATVIEW_PREFER_MEMORY = "{http://www.teiid.org/ext/relational/2012}MATVIEW_PREFER_MEMORY"; //$NON-NLS-1$
 	public static final String MATVIEW_SCOPE = "{http://www.teiid.org/ext/relational/2012}MATVIEW_SCOPE"; //$NON-NLS-1$
 	public static final String MATVIEW_LOADNUMBER_COLUMN = "{http://www.teiid.org/ext/relational/2012}MATVIEW_LOADNUMBER_COLUMN"; //$NON-NLS-1$
+	public static final String MATVIEW_INCREMENTAL = "{http://www.teiid.org/ext/relational/2012}MATVIEW_INCREMENTAL"; //$NON-NLS-1$
+	public static final String MATVIEW_STORAGE_FORMAT = "{http://www.teiid.org/ext/relational/2012}MATVIEW_STORAGE_FORMAT"; //$NON-NLS-1$
 	
 	public static final String MATVIEW_OWNER_VDB_NAME = "{http://www.teiid.org/ext/relational/2012}MATVIEW_OWNER_VDB_NAME"; //$NON-NLS-1$
 	public static final String MATVIEW_OWNER_VDB_VERSION = "{http://www.teiid.org/ext/relational/2012}MATVIEW_OWNER_VDB_VERSION"; //$NON-NLS-1$
@@ -60,6 +62,7 @@ public class MaterializationMetadataRepository implements MetadataRepository {
 	public enum LoadStates {NEEDS_LOADING, LOADING, LOADED, FAILED_LOAD};
 	public enum Scope {IMPORTED, FULL};
 	public enum ErrorAction {THROW_EXCEPTION, IGNORE, WAIT}
+	public enum StorageFormat {ROW, COLUMNAR}
 	// Status table column names
 	//VDBName, VDBVersion, SchemaName, Name, TargetSchemaName, TargetName, Valid, LoadState, Updated, Cardinality, LoadNumber
 	
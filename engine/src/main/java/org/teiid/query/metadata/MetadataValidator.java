@@ -55,15 +55,23 @@ import org.teiid.query.sql.LanguageVisitor;
 import org.teiid.query.sql.lang.CacheHint;
 import org.teiid.query.sql.lang.Command;
 import org.teiid.query.sql.lang.DynamicCommand;
+import org.teiid.query.sql.lang.FromClause;
+import org.teiid.query.sql.lang.JoinPredicate;
+import org.teiid.query.sql.lang.JoinType;
 import org.teiid.query.sql.lang.Query;
 import org.teiid.query.sql.lang.QueryCommand;
 import org.teiid.query.sql.lang.SetQuery;
+import org.teiid.query.sql.lang.Select;
 import org.teiid.query.sql.lang.StoredProcedure;
+import org.teiid.query.sql.lang.SubqueryFromClause;
+import org.teiid.query.sql.lang.UnaryFromClause;
 import org.teiid.query.sql.navigator.PreOrPostOrderNavigator;
 import org.teiid.query.sql.navigator.PreOrderNavigator;
 import org.teiid.query.sql.proc.Block;
 import org.teiid.query.sql.proc.CommandStatement;
 import org.teiid.query.sql.proc.CreateProcedureCommand;
+import org.teiid.query.sql.symbol.AliasSymbol;
+import org.teiid.query.sql.symbol.Constant;
 import org.teiid.query.sql.symbol.ElementSymbol;
 import org.teiid.query.sql.symbol.Expression;
 import org.teiid.query.sql.symbol.GroupSymbol;
@@ -448,6 +456,9 @@ public class MetadataValidator {
                         loadScriptsValidation(vdb, report, metadataValidator, model, t, t.getProperty(MATVIEW_AFTER_LOAD_SCRIPT, false), "MATVIEW_AFTER_LOAD_SCRIPT");//$NON-NLS-1$
                     } else {
                     	// internal materialization
+                    	if (Boolean.valueOf(t.getProperty(MATVIEW_INCREMENTAL, false))) {
+                    		addIncrementalMatViewTriggers(vdb, report, metadataValidator, model, t);
+                    	}
                     	String manage = t.getProperty(ALLOW_MATVIEW_MANAGEMENT, false);
                     	if (!Boolean.valueOf(manage)) {
                     		continue;
@@ -500,6 +511,227 @@ public class MetadataValidator {
             LogManager.logDetail(LogConstants.CTX_MATVIEWS, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31256, st.getName(), t.getName()));
         }
         
+        /**
+         * Add after triggers to the physical tables of an internal materialized view so that a source event
+         * refreshes only the view rows affected by the changed row.
+         * <br>
+         * The affected keys are found with the view query where the changed table is replaced by the 
+         * old and/or new row values.  
+         */
+        private void addIncrementalMatViewTriggers(VDBMetaData vdb, ValidatorReport report, MetadataValidator metadataValidator, ModelMetaData model, Table t) {
+            if (!Boolean.parseBoolean(t.getProperty(MATVIEW_UPDATABLE, false))) {
+                metadataValidator.log(report, model, Severity.WARNING, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31217, t.getFullName()));
+                return;
+            }
+            QueryMetadataInterface metadata = new TempMetadataAdapter(vdb.getAttachment(QueryMetadataInterface.class), new TempMetadataStore());
+            Map<Table, List<GroupSymbol>> sourceGroups = new LinkedHashMap<Table, List<GroupSymbol>>();
+            Query query = null;
+            try {
+                Command command = QueryParser.getQueryParser().parseCommand(t.getSelectTransformation());
+                QueryResolver.resolveCommand(command, metadata);
+                if (t.getPrimaryKey() != null && isIncrementallyMaintainable(command, sourceGroups)) {
+                    query = (Query)command;
+                }
+            } catch (TeiidException e) {
+                LogManager.logDetail(LogConstants.CTX_MATVIEWS, e, "Could not resolve the view definition of", t.getFullName()); //$NON-NLS-1$
+            }
+            if (query == null) {
+                metadataValidator.log(report, model, Severity.WARNING, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31295, t.getFullName()));
+                return;
+            }
+            int[] keyPositions = new int[t.getPrimaryKey().getColumns().size()];
+            StringBuilder refresh = new StringBuilder("EXECUTE SYSADMIN.refreshMatViewRow(").append(new Constant(t.getFullName())); //$NON-NLS-1$
+            for (int i = 0; i < keyPositions.length; i++) {
+                keyPositions[i] = t.getColumns().indexOf(t.getPrimaryKey().getColumns().get(i));
+                refresh.append(", x.k").append(i + 1); //$NON-NLS-1$
+            }
+            refresh.append(");\n"); //$NON-NLS-1$
+            for (Map.Entry<Table, List<GroupSymbol>> entry : sourceGroups.entrySet()) {
+                Table st = entry.getKey();
+                for (Table.TriggerEvent event : Table.TriggerEvent.values()) {
+                    List<String> rowGroups = new ArrayList<String>(2);
+                    int commandType = Command.TYPE_UPDATE;
+                    if (event != Table.TriggerEvent.INSERT) {
+                        rowGroups.add(SQLConstants.Reserved.OLD);
+                        if (event == Table.TriggerEvent.DELETE) {
+                            commandType = Command.TYPE_DELETE;
+                        }
+                    }
+                    if (event != Table.TriggerEvent.DELETE) {
+                        rowGroups.add(SQLConstants.Reserved.NEW);
+                        if (event == Table.TriggerEvent.INSERT) {
+                            commandType = Command.TYPE_INSERT;
+                        }
+                    }
+                    StringBuilder deltas = new StringBuilder();
+                    for (GroupSymbol group : entry.getValue()) {
+                        for (String rowGroup : rowGroups) {
+                            if (deltas.length() > 0) {
+                                deltas.append(" UNION "); //$NON-NLS-1$
+                            }
+                            deltas.append(createDeltaQuery(query, keyPositions, group, st, rowGroup));
+                        }
+                    }
+                    String name = "ON_"+st.getName()+"_"+event.name()+"_FOR_"+t.getName()+"_FOR_INCREMENTAL_REFRESH"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                    String loop = "FOR EACH ROW\n" //$NON-NLS-1$
+                            + "BEGIN ATOMIC\n" //$NON-NLS-1$
+                            + "LOOP ON (" + deltas + ") AS x\n" //$NON-NLS-1$ //$NON-NLS-2$
+                            + "BEGIN\n"; //$NON-NLS-1$
+                    String plan = loop + refresh + "END\n" //$NON-NLS-1$
+                            + "END\n"; //$NON-NLS-1$
+                    try {
+                        //only the delta queries are validated, the SYSADMIN procedures are not visible to the vdb metadata
+                        Command command = QueryParser.getQueryParser().parseProcedure(loop + "END\nEND\n", true); //$NON-NLS-1$
+                        QueryResolver.resolveCommand(command, new GroupSymbol(st.getFullName()), commandType, metadata, false);
+                    } catch (TeiidException e) {
+                        metadataValidator.log(report, model, Severity.WARNING, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31080, t.getFullName(), e.getMessage()));
+                        return;
+                    }
+                    Trigger trigger = new Trigger();
+                    trigger.setName(name);
+                    trigger.setEvent(event);
+                    trigger.setPlan(plan);
+                    trigger.setAfter(true);
+                    trigger.setProperty(DDLStringVisitor.GENERATED, "true"); //$NON-NLS-1$
+                    st.getTriggers().put(name, trigger);
+                }
+                LogManager.logDetail(LogConstants.CTX_MATVIEWS, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31296, st.getName(), t.getName()));
+            }
+        }
+        
+        /**
+         * Determine if the view is a single query over physical tables without subqueries or a limit
+         * @param sourceGroups will be populated with the from clause groups of each physical table
+         */
+        static boolean isIncrementallyMaintainable(Command command, Map<Table, List<GroupSymbol>> sourceGroups) {
+            if (!(command instanceof Query)) {
+                return false;
+            }
+            Query query = (Query)command;
+            if (query.getFrom() == null || query.getLimit() != null || query.getInto() != null || query.getWith() != null
+                    || !ValueIteratorProviderCollectorVisitor.getValueIteratorProviders(query).isEmpty()) {
+                return false;
+            }
+            for (FromClause clause : query.getFrom().getClauses()) {
+                if (!collectSourceGroups(clause, sourceGroups)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static boolean collectSourceGroups(FromClause clause, Map<Table, List<GroupSymbol>> sourceGroups) {
+            if (clause instanceof JoinPredicate) {
+                JoinPredicate jp = (JoinPredicate)clause;
+                if (jp.getJoinType() == JoinType.JOIN_SEMI || jp.getJoinType() == JoinType.JOIN_ANTI_SEMI || jp.getJoinType() == JoinType.JOIN_UNION) {
+                    return false;
+                }
+                return collectSourceGroups(jp.getLeftClause(), sourceGroups) && collectSourceGroups(jp.getRightClause(), sourceGroups);
+            }
+            if (!(clause instanceof UnaryFromClause)) {
+                return false;
+            }
+            GroupSymbol group = ((UnaryFromClause)clause).getGroup();
+            if (!(group.getMetadataID() instanceof Table) || !((Table)group.getMetadataID()).isPhysical()) {
+                return false;
+            }
+            List<GroupSymbol> groups = sourceGroups.get(group.getMetadataID());
+            if (groups == null) {
+                groups = new ArrayList<GroupSymbol>(1);
+                sourceGroups.put((Table)group.getMetadataID(), groups);
+            }
+            groups.add(group);
+            return true;
+        }
+        
+        /**
+         * Create the query for the distinct view keys affected by the row values of the given trigger row group.
+         * The group is replaced by an inline view of the row values and outer joins are adjusted
+         * so that only rows joined to the changed row are returned. 
+         */
+        static Query createDeltaQuery(Query query, int[] keyPositions, GroupSymbol group, Table table, String rowGroup) {
+            Query delta = (Query)query.clone();
+            Set<String> names = new HashSet<String>();
+            for (GroupSymbol gs : GroupCollectorVisitor.getGroups(delta.getFrom(), true)) {
+                names.add(gs.getName().toUpperCase());
+            }
+            String alias = "delta"; //$NON-NLS-1$
+            for (int i = 1; names.contains(alias.toUpperCase()); i++) {
+                alias = "delta" + i; //$NON-NLS-1$
+            }
+            GroupSymbol deltaGroup = new GroupSymbol(alias);
+            for (ElementSymbol es : ElementCollectorVisitor.getElements(delta, false)) {
+                if (group.equals(es.getGroupSymbol())) {
+                    es.setGroupSymbol(deltaGroup);
+                    es.setOutputName(alias + Symbol.SEPARATOR + es.getShortName());
+                }
+            }
+            Select row = new Select();
+            for (Column c : table.getColumns()) {
+                ElementSymbol value = new ElementSymbol(rowGroup + Symbol.SEPARATOR + c.getName());
+                row.addSymbol(new AliasSymbol(c.getName(), value));
+            }
+            Query rowQuery = new Query();
+            rowQuery.setSelect(row);
+            SubqueryFromClause replacement = new SubqueryFromClause(alias, rowQuery);
+            List<FromClause> clauses = delta.getFrom().getClauses();
+            for (int i = 0; i < clauses.size(); i++) {
+                clauses.set(i, replaceGroup(clauses.get(i), group, replacement));
+            }
+            Select select = new Select();
+            select.setDistinct(true);
+            List<Expression> projected = delta.getProjectedSymbols();
+            for (int i = 0; i < keyPositions.length; i++) {
+                select.addSymbol(new AliasSymbol("k" + (i + 1), SymbolMap.getExpression(projected.get(keyPositions[i])))); //$NON-NLS-1$
+            }
+            delta.setSelect(select);
+            delta.setHaving(null);
+            delta.setOrderBy(null);
+            delta.setOption(null);
+            return delta;
+        }
+        
+        private static FromClause replaceGroup(FromClause clause, GroupSymbol group, FromClause replacement) {
+            if (clause instanceof UnaryFromClause) {
+                if (group.equals(((UnaryFromClause)clause).getGroup())) {
+                    return replacement;
+                }
+                return clause;
+            }
+            if (!(clause instanceof JoinPredicate)) {
+                return clause;
+            }
+            JoinPredicate jp = (JoinPredicate)clause;
+            //rows of the other side that do not join with the changed row are not affected
+            if (containsGroup(jp.getLeftClause(), group)) {
+                if (jp.getJoinType() == JoinType.JOIN_RIGHT_OUTER) {
+                    jp.setJoinType(JoinType.JOIN_INNER);
+                } else if (jp.getJoinType() == JoinType.JOIN_FULL_OUTER) {
+                    jp.setJoinType(JoinType.JOIN_LEFT_OUTER);
+                }
+                jp.setLeftClause(replaceGroup(jp.getLeftClause(), group, replacement));
+            } else if (containsGroup(jp.getRightClause(), group)) {
+                if (jp.getJoinType() == JoinType.JOIN_LEFT_OUTER) {
+                    jp.setJoinType(JoinType.JOIN_INNER);
+                } else if (jp.getJoinType() == JoinType.JOIN_FULL_OUTER) {
+                    jp.setJoinType(JoinType.JOIN_RIGHT_OUTER);
+                }
+                jp.setRightClause(replaceGroup(jp.getRightClause(), group, replacement));
+            }
+            return jp;
+        }
+        
+        private static boolean containsGroup(FromClause clause, GroupSymbol group) {
+            if (clause instanceof UnaryFromClause) {
+                return group.equals(((UnaryFromClause)clause).getGroup());
+            }
+            if (clause instanceof JoinPredicate) {
+                JoinPredicate jp = (JoinPredicate)clause;
+                return containsGroup(jp.getLeftClause(), group) || containsGroup(jp.getRightClause(), group);
+            }
+            return false;
+        }
+        
         private void loadScriptsValidation(VDBMetaData vdb, ValidatorReport report, MetadataValidator metadataValidator, ModelMetaData model, Table matView, String script, String option) {
         	if(script == null) {
         		return;
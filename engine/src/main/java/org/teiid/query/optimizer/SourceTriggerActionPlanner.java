@@ -58,7 +58,6 @@ import org.teiid.query.sql.ProcedureReservedWords;
 import org.teiid.query.sql.lang.Command;
 import org.teiid.query.sql.proc.CreateProcedureCommand;
 import org.teiid.query.sql.proc.TriggerAction;
-import org.teiid.query.sql.symbol.Constant;
 import org.teiid.query.sql.symbol.ElementSymbol;
 import org.teiid.query.sql.symbol.Expression;
 import org.teiid.query.sql.symbol.GroupSymbol;
@@ -249,12 +248,12 @@ public final class SourceTriggerActionPlanner implements CommandPlanner {
                 params.put(changingElement, changingElement);
                 if (index == null) {
                     //not changing
-                    tuple.add(new Constant(null));
-                    tuple.add(new Constant(Boolean.FALSE));
+                    tuple.add(null);
+                    tuple.add(Boolean.FALSE);
                 } else {
                     //changing
-                    tuple.add(new Constant(DataTypeManager.convertToRuntimeType(sec.newValues[index], true)));
-                    tuple.add(new Constant(Boolean.TRUE));
+                    tuple.add(DataTypeManager.convertToRuntimeType(sec.newValues[index], true));
+                    tuple.add(Boolean.TRUE);
                 }
             }
         }
@@ -273,8 +272,10 @@ public final class SourceTriggerActionPlanner implements CommandPlanner {
                 oldElement.setMetadataID(c);
                 lookup.put(oldElement, tuple.size());
                 params.put(oldElement, oldElement);
-                if (index != null) {
-                    tuple.add(new Constant(DataTypeManager.convertToRuntimeType(sec.oldValues[index], true)));
+                if (index == null) {
+                    tuple.add(null);
+                } else {
+                    tuple.add(DataTypeManager.convertToRuntimeType(sec.oldValues[index], true));
                 }
             }
         }
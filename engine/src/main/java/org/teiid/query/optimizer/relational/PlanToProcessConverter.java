@@ -168,11 +168,47 @@ public class PlanToProcessConverter {
 				nextParent.addChild(child);
 			}
 		}
+		
+		if (context != null && context.getOptions().isCompileExpressions()) {
+			//compile the whole chain now that the children are known
+			for (RelationalNode node = convertedNode; node != null; node = node == nextParent?null:node.getChildren()[0]) {
+				if (node instanceof SubqueryAwareRelationalNode) {
+					((SubqueryAwareRelationalNode)node).compileExpressions();
+				}
+			}
+		}
+		
+		if (context != null && context.getOptions().isParallelExchange()) {
+			addExchanges(nextParent);
+		}
 
         // Return root of tree for top node
 		return convertedNode;
 	}
 
+	/**
+	 * Process independent union branches and join sides with separate workers
+	 */
+	private void addExchanges(RelationalNode node) {
+		if (node instanceof UnionAllNode) {
+			if (node.getChildCount() < 2) {
+				return;
+			}
+		} else if (node instanceof JoinNode) {
+			JoinNode joinNode = (JoinNode)node;
+			if (joinNode.isDependent() || !(joinNode.getJoinStrategy() instanceof MergeJoinStrategy || joinNode.getJoinStrategy() instanceof HashJoinStrategy)) {
+				return;
+			}
+		} else {
+			return;
+		}
+		RelationalNode[] children = node.getChildren();
+		for (int i = 0; i < node.getChildCount(); i++) {
+			children[i] = ExchangeNode.exchange(children[i], getID());
+			children[i].setParent(node);
+		}
+	}
+
     protected int getID() {
         return idGenerator.nextInt();
     }
@@ -293,6 +329,15 @@ public class PlanToProcessConverter {
                     List rightExpressions = (List) node.getProperty(NodeConstants.Info.RIGHT_EXPRESSIONS);
                     jnode.setJoinExpressions(leftExpressions, rightExpressions);
                     joinCrits = (List) node.getProperty(NodeConstants.Info.NON_EQUI_JOIN_CRITERIA);
+                } else if (stype == JoinStrategyType.HASH) {
+                	HashJoinStrategy hjStrategy = new HashJoinStrategy(node.hasBooleanProperty(Info.HASH_BUILD_LEFT));
+                	if (node.hasBooleanProperty(Info.SINGLE_MATCH)) {
+                	    Assertion.assertTrue(jtype == JoinType.JOIN_LEFT_OUTER);
+                	    hjStrategy.singleMatch(true);
+                	}
+                	jnode.setJoinStrategy(hjStrategy);
+                    jnode.setJoinExpressions((List) node.getProperty(NodeConstants.Info.LEFT_EXPRESSIONS), (List) node.getProperty(NodeConstants.Info.RIGHT_EXPRESSIONS));
+                    joinCrits = (List) node.getProperty(NodeConstants.Info.NON_EQUI_JOIN_CRITERIA);
                 } else if (stype == JoinStrategyType.NESTED_TABLE) {
                 	NestedTableJoinStrategy ntjStrategy = new NestedTableJoinStrategy();
                 	jnode.setJoinStrategy(ntjStrategy);
@@ -557,6 +602,7 @@ public class PlanToProcessConverter {
 				SymbolMap groupingMap = (SymbolMap)node.getProperty(NodeConstants.Info.SYMBOL_MAP);
 				gnode.setOutputMapping(groupingMap);
 				gnode.setRemoveDuplicates(node.hasBooleanProperty(NodeConstants.Info.IS_DUP_REMOVAL));
+				gnode.setHashAggregation(node.hasBooleanProperty(NodeConstants.Info.HASH_AGGREGATION));
 				List<Expression> gCols = (List) node.getProperty(NodeConstants.Info.GROUP_COLS);
 				OrderBy orderBy = (OrderBy) node.getProperty(Info.SORT_ORDER);
 				if (orderBy == null) {
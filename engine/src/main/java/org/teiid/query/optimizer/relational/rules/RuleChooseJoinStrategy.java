@@ -34,6 +34,7 @@ import org.teiid.query.optimizer.relational.RuleStack;
 import org.teiid.query.optimizer.relational.plantree.NodeConstants;
 import org.teiid.query.optimizer.relational.plantree.NodeEditor;
 import org.teiid.query.optimizer.relational.plantree.PlanNode;
+import org.teiid.query.processor.relational.HashJoinStrategy;
 import org.teiid.query.processor.relational.JoinNode.JoinStrategyType;
 import org.teiid.query.sql.lang.CompareCriteria;
 import org.teiid.query.sql.lang.Criteria;
@@ -47,10 +48,17 @@ import org.teiid.query.util.CommandContext;
 
 
 /**
- * Marks join as a candidate merge join if conditions are met
+ * Marks join as a candidate merge join if conditions are met.  
+ * See also {@link #chooseHashJoin(PlanNode, List, List, float, float, CommandContext)}, which is 
+ * applied once the join is implemented and the cost estimates are available.
  */
 public class RuleChooseJoinStrategy implements OptimizerRule {
     
+    /**
+     * The minimum estimated size in batches of both sides for a hash join to be used
+     */
+    static final int HASH_JOIN_MIN_BATCHES = 8;
+    
     public PlanNode execute(PlanNode plan, QueryMetadataInterface metadata, CapabilitiesFinder capFinder, RuleStack rules, AnalysisRecord analysisRecord, CommandContext context)
         throws QueryMetadataException, TeiidComponentException {
 
@@ -163,6 +171,50 @@ public class RuleChooseJoinStrategy implements OptimizerRule {
         }
 	}
     
+    /**
+     * Determines whether a merge join should instead use a hash join based upon the cost estimates
+     * of the sides.  The hash join avoids sorting both sides, so it is only chosen when
+     * both sides are larger than several batches and the join expressions have hash values consistent
+     * with their comparison.  The smaller side is used as the build side of inner joins.
+     * @param leftCost the estimated cardinality of the left side
+     * @param rightCost the estimated cardinality of the right side
+     * @return true if the join was marked as a hash join
+     */
+    static boolean chooseHashJoin(PlanNode joinNode, List<Expression> leftExpressions, List<Expression> rightExpressions, 
+    		float leftCost, float rightCost, CommandContext context) {
+    	if (context == null || leftCost == NewCalculateCostUtil.UNKNOWN_VALUE || rightCost == NewCalculateCostUtil.UNKNOWN_VALUE) {
+    		return false;
+    	}
+    	JoinType jtype = (JoinType) joinNode.getProperty(NodeConstants.Info.JOIN_TYPE);
+    	if (jtype != JoinType.JOIN_INNER && jtype != JoinType.JOIN_LEFT_OUTER 
+    			&& jtype != JoinType.JOIN_SEMI && jtype != JoinType.JOIN_ANTI_SEMI) {
+    		return false;
+    	}
+    	if (joinNode.getProperty(NodeConstants.Info.DEPENDENT_VALUE_SOURCE) != null 
+    			|| joinNode.hasBooleanProperty(NodeConstants.Info.IS_SEMI_DEP)) {
+    		return false;
+    	}
+    	if (Math.min(leftCost, rightCost) <= HASH_JOIN_MIN_BATCHES * context.getProcessorBatchSize()) {
+    		//the sorts are cheap or the enhanced sort join will index the small side rather than sort the large side
+    		return false;
+    	}
+    	if (!HashJoinStrategy.isHashable(leftExpressions, rightExpressions)
+    			|| !hasOutputs(joinNode.getFirstChild(), leftExpressions) 
+    			|| !hasOutputs(joinNode.getLastChild(), rightExpressions)) {
+    		return false;
+    	}
+    	joinNode.setProperty(NodeConstants.Info.JOIN_STRATEGY, JoinStrategyType.HASH);
+    	if (jtype == JoinType.JOIN_INNER && leftCost < rightCost) {
+    		joinNode.setProperty(NodeConstants.Info.HASH_BUILD_LEFT, Boolean.TRUE);
+    	}
+    	return true;
+    }
+
+	private static boolean hasOutputs(PlanNode child, List<Expression> expressions) {
+		List<Expression> outputCols = (List<Expression>) child.getProperty(NodeConstants.Info.OUTPUT_COLS);
+		return outputCols != null && outputCols.containsAll(expressions);
+	}
+
     public static List<Expression> createExpressionSymbols(List<? extends Expression> expressions) {
         List<Expression> result = new ArrayList<Expression>();
         for (Expression expression : expressions) {
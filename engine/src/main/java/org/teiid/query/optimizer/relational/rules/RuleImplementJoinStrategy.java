@@ -125,6 +125,13 @@ public class RuleImplementJoinStrategy implements OptimizerRule {
             	right = false;
             }
             JoinType joinType = (JoinType) joinNode.getProperty(NodeConstants.Info.JOIN_TYPE);
+            if (key == null && context != null && !canPushSort(joinNode, leftExpressions, rightExpressions, metadata, capabilitiesFinder, context)) {
+            	float leftCost = NewCalculateCostUtil.computeCostForTree(joinNode.getFirstChild(), metadata);
+            	float rightCost = NewCalculateCostUtil.computeCostForTree(joinNode.getLastChild(), metadata);
+            	if (RuleChooseJoinStrategy.chooseHashJoin(joinNode, leftExpressions, rightExpressions, leftCost, rightCost, context)) {
+            		continue;
+            	}
+            }
             /**
              * Don't push sorts for unbalanced inner joins, we prefer to use a processing time cost based decision 
              */
@@ -218,6 +225,26 @@ public class RuleImplementJoinStrategy implements OptimizerRule {
         return plan;
     }
 
+    /**
+     * @return true if the sort for either side of the join could be performed by the source
+     */
+    private static boolean canPushSort(PlanNode joinNode, List<Expression> leftExpressions, List<Expression> rightExpressions, 
+    		QueryMetadataInterface metadata, CapabilitiesFinder capFinder, CommandContext context) throws QueryMetadataException, TeiidComponentException {
+    	for (int i = 0; i < 2; i++) {
+    		PlanNode childNode = i == 0 ? joinNode.getFirstChild() : joinNode.getLastChild();
+    		List<Expression> expressions = i == 0 ? leftExpressions : rightExpressions;
+    		PlanNode sourceNode = FrameUtil.findJoinSourceNode(childNode);
+    		if (sourceNode == null || sourceNode.getType() != NodeConstants.Types.ACCESS) {
+    			continue;
+    		}
+    		PlanNode sortNode = createSortNode(new ArrayList<Expression>(new LinkedHashSet<Expression>(expressions)), (List<Expression>)sourceNode.getProperty(NodeConstants.Info.OUTPUT_COLS));
+    		if (RuleRaiseAccess.canRaiseOverSort(sourceNode, metadata, capFinder, sortNode, null, false, context, true)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
     /**
      * Insert a sort node under the merge join node.  If necessary, also insert a project
      * node to handle function evaluation.  
@@ -24,6 +24,7 @@ import java.util.List;
 
 import org.teiid.api.exception.query.QueryMetadataException;
 import org.teiid.api.exception.query.QueryPlannerException;
+import org.teiid.common.buffer.BufferManager;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.query.analysis.AnalysisRecord;
 import org.teiid.query.metadata.QueryMetadataInterface;
@@ -35,6 +36,7 @@ import org.teiid.query.optimizer.relational.plantree.NodeConstants.Info;
 import org.teiid.query.optimizer.relational.plantree.NodeEditor;
 import org.teiid.query.optimizer.relational.plantree.NodeFactory;
 import org.teiid.query.optimizer.relational.plantree.PlanNode;
+import org.teiid.query.processor.relational.GroupingNode;
 import org.teiid.query.processor.relational.JoinNode.JoinStrategyType;
 import org.teiid.query.processor.relational.MergeJoinStrategy.SortOption;
 import org.teiid.query.sql.lang.OrderBy;
@@ -165,13 +167,16 @@ public class RulePlanSorts implements OptimizerRule {
 						child = child.getFirstChild();
 					}
 				}
+			} else {
+				checkForHashAggregation(node, metadata, context);
 			}
 			//TODO: check the join interesting order
 			parentBlocking = true;
 			break;
 		case NodeConstants.Types.JOIN:
 			if (node.getProperty(NodeConstants.Info.JOIN_STRATEGY) == JoinStrategyType.NESTED_LOOP 
-					|| node.getProperty(NodeConstants.Info.JOIN_STRATEGY) == JoinStrategyType.NESTED_TABLE) {
+					|| node.getProperty(NodeConstants.Info.JOIN_STRATEGY) == JoinStrategyType.NESTED_TABLE
+					|| node.getProperty(NodeConstants.Info.JOIN_STRATEGY) == JoinStrategyType.HASH) {
 				break;
 			}
 			/*
@@ -213,6 +218,34 @@ public class RulePlanSorts implements OptimizerRule {
 		return root;
 	}
 
+	/**
+	 * Use hash aggregation if the grouping output order is not relied upon and 
+	 * there are estimated to be far fewer groups than input rows.
+	 */
+	private void checkForHashAggregation(PlanNode node, QueryMetadataInterface metadata, CommandContext context) 
+			throws QueryMetadataException, TeiidComponentException {
+		if (node.hasBooleanProperty(Info.ROLLUP) || node.getProperty(Info.SORT_ORDER) != null 
+				|| (node.getParent() != null && node.getParent().getType() == NodeConstants.Types.SORT)) {
+			return;
+		}
+		List<Expression> groupCols = (List<Expression>)node.getProperty(Info.GROUP_COLS);
+		if (!GroupingNode.isHashable(groupCols)) {
+			return;
+		}
+		float childCardinality = NewCalculateCostUtil.computeCostForTree(node.getFirstChild(), metadata);
+		float groupCardinality = NewCalculateCostUtil.computeCostForTree(node, metadata);
+		if (childCardinality == NewCalculateCostUtil.UNKNOWN_VALUE || groupCardinality == NewCalculateCostUtil.UNKNOWN_VALUE) {
+			return;
+		}
+		int batchSize = BufferManager.DEFAULT_PROCESSOR_BATCH_SIZE;
+		if (context != null) {
+			batchSize = context.getProcessorBatchSize();
+		}
+		if (childCardinality > batchSize && groupCardinality * 2 <= childCardinality) {
+			node.setProperty(Info.HASH_AGGREGATION, true);
+		}
+	}
+
 	static PlanNode checkForProjectOptimization(PlanNode node, PlanNode root, 
 			QueryMetadataInterface metadata, CapabilitiesFinder capFinder, AnalysisRecord record, CommandContext context) throws QueryMetadataException, TeiidComponentException, QueryPlannerException {
 		PlanNode projectNode = node.getFirstChild();
@@ -276,6 +276,27 @@ public class AccessNode extends SubqueryAwareRelationalNode {
         } while (!processCommandsIndividually() && hasNextCommand() && this.tupleSources.size() < Math.max(Math.min(MAX_CONCURRENT, this.getContext().getUserRequestSourceConcurrency()), this.getContext().getUserRequestSourceConcurrency()/2));
 	}
 	
+	/**
+	 * Finish an open that was blocked
+	 */
+	void completeOpen() throws TeiidComponentException, TeiidProcessingException {
+		if (!open) {
+			openInternal();
+			open = true;
+		}
+	}
+	
+	/**
+	 * @return the registered tuple sources, which an {@link ExchangeNode} may wrap
+	 */
+	List<TupleSource> getTupleSources() {
+		return tupleSources;
+	}
+	
+	boolean isMultiSourceExpansion() {
+		return multiSource && connectorBindingExpression == null;
+	}
+	
 	public boolean isShouldEvaluate() {
 		return shouldEvaluate;
 	}
@@ -377,10 +398,7 @@ public class AccessNode extends SubqueryAwareRelationalNode {
 	public TupleBatch nextBatchDirect()
 		throws BlockedException, TeiidComponentException, TeiidProcessingException {
 		
-		if (!open) {
-			openInternal(); //-- blocked during actual open
-			open = true;
-		}
+		completeOpen();
 		
 		if (multiSource && connectorBindingExpression == null) {
 			return this.getChildren()[0].nextBatch();
@@ -743,8 +761,10 @@ public class AccessNode extends SubqueryAwareRelationalNode {
             {
             	UnionAllNode unionNode = new UnionAllNode(accessNode.getID());
             	unionNode.setElements(accessNode.getElements());
+            	boolean exchange = !RelationalNodeUtil.isUpdate(accessNode.getCommand()) 
+            			&& accessNode.getContext() != null && accessNode.getContext().getOptions().isParallelExchange();
                 for (AccessNode newNode : accessNodes) {
-                	unionNode.addChild(newNode);
+                	unionNode.addChild(exchange?ExchangeNode.exchange(newNode, accessNode.getID()):newNode);
                 }
             	
             	RelationalNode parent = unionNode;
@@ -0,0 +1,514 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.processor.relational;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.teiid.common.buffer.BlockedException;
+import org.teiid.common.buffer.BufferManager.BufferReserveMode;
+import org.teiid.common.buffer.TupleBatch;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.TeiidException;
+import org.teiid.core.TeiidProcessingException;
+import org.teiid.core.TeiidRuntimeException;
+import org.teiid.core.util.ExecutorUtils;
+import org.teiid.dqp.internal.process.RequestWorkItem;
+import org.teiid.logging.LogConstants;
+import org.teiid.logging.LogManager;
+import org.teiid.query.metadata.TempMetadataAdapter;
+import org.teiid.query.sql.visitor.ValueIteratorProviderCollectorVisitor;
+import org.teiid.query.util.CommandContext;
+
+/**
+ * Executes its child subtree on a separate processing worker.  Batches are produced into a bounded
+ * queue, which is drained by the thread processing the parent.
+ * <br>
+ * The worker does not wait.  It runs until the queue is full, the child terminates, or the child
+ * blocks.  Only a worker that made progress notifies the request work item so that the processing
+ * thread does not spin on a blocked child.  A worker that blocked on source results is only 
+ * resubmitted once more results are available.
+ * <br>
+ * Workers are submitted with {@link CommandContext#submitParallel(Callable)} and count against
+ * the user request source concurrency.  If there is no concurrency, then the child is processed inline.
+ * <br>
+ * The child subtree is opened, and any source requests are registered, by the processing thread.
+ * Source results are also read only by the processing thread and handed off to the worker, see
+ * {@link HandOffTupleSource}.  The worker pulls batches using a branch of the {@link CommandContext}, 
+ * which is merged back by the processing thread as batches are handed off.
+ */
+public class ExchangeNode extends RelationalNode {
+
+	/**
+	 * The number of batches that may be queued ahead of the parent
+	 */
+	static final int QUEUE_BATCHES = 4;
+
+	/**
+	 * Holds source results read by the processing thread until the worker consumes them
+	 */
+	static class HandOffTupleSource implements TupleSource {
+		private TupleSource source;
+		private int maxRows;
+		private ArrayDeque<List<?>> rows = new ArrayDeque<List<?>>();
+		private boolean sourceDone;
+		private boolean sourceClosed;
+		private boolean closed;
+		
+		HandOffTupleSource(TupleSource source, int maxRows) {
+			this.source = source;
+			this.maxRows = maxRows;
+		}
+		
+		/**
+		 * Read what is available from the source, called by the processing thread
+		 */
+		void fill() throws TeiidComponentException, TeiidProcessingException {
+			int room = 0;
+			synchronized (this) {
+				if (sourceDone || closed) {
+					return;
+				}
+				room = maxRows - rows.size();
+			}
+			List<List<?>> read = new ArrayList<List<?>>(Math.max(0, room));
+			boolean end = false;
+			try {
+				while (read.size() < room) {
+					List<?> row = source.nextTuple();
+					if (row == null) {
+						end = true;
+						break;
+					}
+					read.add(row);
+				}
+			} catch (BlockedException e) {
+				//wait for more results
+			}
+			if (end) {
+				closeUnderlying();
+			}
+			synchronized (this) {
+				rows.addAll(read);
+				sourceDone |= end;
+			}
+		}
+		
+		/**
+		 * @return true if the worker could make progress
+		 */
+		synchronized boolean isReady() {
+			return sourceDone || !rows.isEmpty();
+		}
+		
+		@Override
+		public synchronized List<?> nextTuple() throws BlockedException {
+			if (closed) {
+				throw BlockedException.INSTANCE;
+			}
+			List<?> row = rows.poll();
+			if (row != null || sourceDone) {
+				return row;
+			}
+			throw BlockedException.INSTANCE;
+		}
+		
+		@Override
+		public synchronized void closeSource() {
+			closed = true;
+			rows.clear();
+		}
+		
+		/**
+		 * Close the source, called by the processing thread
+		 */
+		void closeActual() {
+			closeSource();
+			closeUnderlying();
+		}
+		
+		private void closeUnderlying() {
+			synchronized (this) {
+				if (sourceClosed) {
+					return;
+				}
+				sourceClosed = true;
+			}
+			source.closeSource();
+		}
+	}
+
+	private ArrayDeque<TupleBatch> queue;
+	private boolean done;
+	private Throwable failure;
+
+	private Future<Void> worker;
+	private boolean running;
+	private boolean started;
+	private boolean starved;
+	private boolean wakeup;
+	private boolean closing;
+	private boolean inline;
+	private boolean opened;
+	private CommandContext branch;
+	private List<HandOffTupleSource> handOffs = new ArrayList<HandOffTupleSource>(2);
+	private RelationalNode detached;
+
+	private int reserved;
+
+	public ExchangeNode(int nodeID) {
+		super(nodeID);
+	}
+
+	/**
+	 * Determine if the subtree may be processed by a separate thread.
+	 * Only source access and the simple operations above it that do not use subqueries,
+	 * shared state, or temporary tables are allowed.
+	 */
+	public static boolean canExchange(RelationalNode node) {
+		if (node == null) {
+			return false;
+		}
+		if (node.getClass() == AccessNode.class) {
+			AccessNode accessNode = (AccessNode)node;
+			return !accessNode.isShouldEvaluate()
+					&& !accessNode.isMultiSourceExpansion()
+					&& accessNode.info == null
+					&& accessNode.getSubPlans() == null
+					&& !TempMetadataAdapter.TEMP_MODEL.getName().equals(accessNode.getModelName());
+		}
+		if (node.getClass() == ProjectNode.class || node.getClass() == SelectNode.class) {
+			if (!ValueIteratorProviderCollectorVisitor.getValueIteratorProviders(((SubqueryAwareRelationalNode)node).getObjects()).isEmpty()) {
+				return false;
+			}
+		} else if (node.getClass() != SortNode.class && node.getClass() != DupRemoveNode.class && node.getClass() != LimitNode.class) {
+			return false;
+		}
+		return node.getChildCount() == 1 && canExchange(node.getChildren()[0]);
+	}
+
+	/**
+	 * Wrap the given child in an exchange if it can be processed by a separate thread
+	 * @return the exchange or the original child
+	 */
+	public static RelationalNode exchange(RelationalNode child, int nodeID) {
+		if (!canExchange(child)) {
+			return child;
+		}
+		ExchangeNode exchange = new ExchangeNode(nodeID);
+		exchange.setElements(child.getElements());
+		exchange.addChild(child);
+		return exchange;
+	}
+
+	@Override
+	public void reset() {
+		awaitDetached();
+		super.reset();
+		this.queue = null;
+		this.done = false;
+		this.failure = null;
+		this.worker = null;
+		this.running = false;
+		this.started = false;
+		this.starved = false;
+		this.wakeup = false;
+		this.closing = false;
+		this.inline = false;
+		this.opened = false;
+		this.branch = null;
+		this.handOffs.clear();
+	}
+	
+	/**
+	 * Wait for a worker that was still running at close to finish closing the subtree
+	 */
+	private synchronized void awaitDetached() {
+		while (this.detached != null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void open() throws TeiidComponentException, TeiidProcessingException {
+		this.queue = new ArrayDeque<TupleBatch>(QUEUE_BATCHES);
+		CommandContext context = getContext();
+		Executor executor = context.getExecutor();
+		if (executor == null || executor == ExecutorUtils.getDirectExecutor() || context.getUserRequestSourceConcurrency() <= 1) {
+			this.inline = true;
+			setSubtreeContext(this.getChildren()[0], context);
+			super.open();
+			return;
+		}
+		if (reserved == 0) {
+			reserved = getBufferManager().reserveBuffers(QUEUE_BATCHES * getBufferManager().getSchemaSize(getOutputElements()), BufferReserveMode.FORCE);
+		}
+		this.branch = context.branch();
+		setSubtreeContext(this.getChildren()[0], this.branch);
+		super.open();
+	}
+	
+	private static void setSubtreeContext(RelationalNode node, CommandContext context) {
+		node.setContext(context);
+		for (int i = 0; i < node.getChildCount(); i++) {
+			setSubtreeContext(node.getChildren()[i], context);
+		}
+	}
+	
+	/**
+	 * Finish any blocked source open, so that requests are only registered by the processing thread,
+	 * then hand off the source results
+	 */
+	private void completeOpen() throws TeiidComponentException, TeiidProcessingException {
+		if (this.opened) {
+			return;
+		}
+		RelationalNode node = this.getChildren()[0];
+		while (node != null) {
+			if (node instanceof AccessNode) {
+				AccessNode accessNode = (AccessNode)node;
+				accessNode.completeOpen();
+				List<TupleSource> sources = accessNode.getTupleSources();
+				for (int i = 0; i < sources.size(); i++) {
+					HandOffTupleSource handOff = new HandOffTupleSource(sources.get(i), 2 * accessNode.getBatchSize());
+					sources.set(i, handOff);
+					this.handOffs.add(handOff);
+				}
+			}
+			node = node.getChildCount() == 1?node.getChildren()[0]:null;
+		}
+		this.opened = true;
+	}
+	
+	private boolean isReady() {
+		for (HandOffTupleSource handOff : this.handOffs) {
+			if (handOff.isReady()) {
+				return true;
+			}
+		}
+		return this.handOffs.isEmpty();
+	}
+
+	@Override
+	protected TupleBatch nextBatchDirect() throws BlockedException,
+			TeiidComponentException, TeiidProcessingException {
+		if (inline) {
+			return this.getChildren()[0].nextBatch();
+		}
+		completeOpen();
+		for (HandOffTupleSource handOff : this.handOffs) {
+			handOff.fill();
+		}
+		boolean submit = false;
+		TupleBatch batch = null;
+		synchronized (this) {
+			getContext().mergeBranch(this.branch);
+			batch = this.queue.poll();
+			if (batch == null && this.failure != null) {
+				throwFailure();
+			}
+			if (this.starved && isReady()) {
+				this.starved = false;
+			}
+			if (!this.done && !this.starved && this.queue.size() < QUEUE_BATCHES) {
+				if (!this.running) {
+					this.running = true;
+					submit = true;
+				} else {
+					//let the worker notify us if it ends up blocked
+					this.wakeup = true;
+				}
+			}
+		}
+		if (submit) {
+			this.worker = getContext().submitParallel(new Callable<Void>() {
+				@Override
+				public Void call() {
+					produce();
+					return null;
+				}
+			});
+		}
+		if (batch != null) {
+			return batch;
+		}
+		throw BlockedException.block(getContext().getRequestId(), "Blocking on exchange", getID()); //$NON-NLS-1$
+	}
+
+	private void throwFailure() throws TeiidComponentException, TeiidProcessingException {
+		if (failure instanceof TeiidComponentException) {
+			throw (TeiidComponentException)failure;
+		}
+		if (failure instanceof TeiidProcessingException) {
+			throw (TeiidProcessingException)failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error)failure;
+		}
+		throw new TeiidRuntimeException(failure);
+	}
+
+	/**
+	 * Run by the worker to fill the queue
+	 */
+	void produce() {
+		boolean notify = false;
+		RelationalNode subtree = null;
+		CommandContext context = this.branch;
+		CommandContext.pushThreadLocalContext(context);
+		try {
+			RelationalNode child = null;
+			synchronized (this) {
+				if (this.closing) {
+					return;
+				}
+				this.started = true;
+				child = this.getChildren()[0];
+			}
+			while (true) {
+				synchronized (this) {
+					if (this.closing || this.queue.size() >= QUEUE_BATCHES) {
+						break;
+					}
+				}
+				TupleBatch batch = child.nextBatch();
+				synchronized (this) {
+					if (this.closing) {
+						break;
+					}
+					this.queue.add(batch);
+					notify = true;
+					if (batch.getTerminationFlag()) {
+						this.done = true;
+						break;
+					}
+				}
+			}
+		} catch (BlockedException e) {
+			if (e == BlockedException.BLOCKED_ON_MEMORY_EXCEPTION) {
+				notify = true;
+			} else {
+				synchronized (this) {
+					//wait for the processing thread to hand off more results
+					this.starved = true;
+				}
+			}
+		} catch (Throwable e) {
+			if (!(e instanceof TeiidException)) {
+				LogManager.logDetail(LogConstants.CTX_DQP, e, "Exchange worker failed", getID()); //$NON-NLS-1$
+			}
+			synchronized (this) {
+				this.failure = e;
+			}
+			notify = true;
+		} finally {
+			synchronized (this) {
+				this.running = false;
+				this.started = false;
+				subtree = this.detached;
+				if (this.wakeup) {
+					this.wakeup = false;
+					notify = true;
+				}
+			}
+			if (subtree != null) {
+				closeDetached(subtree);
+			}
+			CommandContext.popThreadLocalContext();
+			if (notify && subtree == null) {
+				RequestWorkItem workItem = context.getWorkItem();
+				if (workItem != null) {
+					workItem.moreWork();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Close a subtree that was still in use by the worker when the exchange was closed
+	 */
+	private void closeDetached(RelationalNode subtree) {
+		try {
+			subtree.close();
+		} catch (TeiidComponentException e) {
+			LogManager.logDetail(LogConstants.CTX_DQP, e, "Exchange worker could not close", getID()); //$NON-NLS-1$
+		} finally {
+			synchronized (this) {
+				this.getChildren()[0] = subtree;
+				this.detached = null;
+				notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void closeDirect() {
+		synchronized (this) {
+			this.closing = true;
+			//stop the worker at its next source read
+			for (HandOffTupleSource handOff : this.handOffs) {
+				handOff.closeSource();
+			}
+			if (this.running && !this.started) {
+				//if not yet running, the worker will see that we're closing
+				if (this.worker != null) {
+					this.worker.cancel(false);
+				}
+				this.running = false;
+			}
+			if (this.running) {
+				//rather than blocking, let the worker close the subtree once it stops
+				this.detached = this.getChildren()[0];
+				this.getChildren()[0] = null;
+			}
+			this.queue = null;
+			if (this.branch != null) {
+				getContext().mergeBranch(this.branch);
+			}
+		}
+		for (HandOffTupleSource handOff : this.handOffs) {
+			handOff.closeActual();
+		}
+		if (reserved > 0) {
+			getBufferManager().releaseBuffers(reserved);
+			reserved = 0;
+		}
+	}
+
+	@Override
+	public Object clone() {
+		ExchangeNode clonedNode = new ExchangeNode(super.getID());
+		super.copyTo(clonedNode);
+		return clonedNode;
+	}
+
+}
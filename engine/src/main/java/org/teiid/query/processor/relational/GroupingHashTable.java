@@ -0,0 +1,349 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.processor.relational;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.teiid.common.buffer.BufferManager;
+import org.teiid.common.buffer.BufferManager.BufferReserveMode;
+import org.teiid.common.buffer.BufferManager.TupleSourceType;
+import org.teiid.common.buffer.TupleBuffer;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.types.DataTypeManager;
+import org.teiid.query.function.FunctionMethods;
+import org.teiid.query.sql.symbol.Expression;
+
+/**
+ * An open addressing (linear probing) hash table of group rows - the key values followed by
+ * the partial aggregate state - used by the hash aggregation mode of the {@link GroupingNode}.
+ * <br>
+ * Memory for the groups is reserved from the {@link BufferManager}.  Once a reservation
+ * is denied the existing groups continue to be aggregated in memory, but input rows for
+ * new groups are spilled to hash partitions.  Each partition is then aggregated as a new
+ * table with a different hash seed after this table has been output.
+ */
+public class GroupingHashTable {
+
+	static final int PARTITION_BITS = 4;
+	static final int PARTITIONS = 1 << PARTITION_BITS;
+	/**
+	 * The level at which spilling stops and all groups are held in memory
+	 */
+	static final int MAX_LEVEL = 6;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private BufferManager bufferManager;
+	private String connectionId;
+	private List<? extends Expression> inputSchema;
+	private int[] keyIndexes;
+	private int[] groupKeyIndexes;
+	private int level;
+	private TupleBuffer input;
+
+	private int[] hashes;
+	private List<Object>[] entries;
+	private int size;
+
+	private int bytesPerGroup;
+	private int reserveChunk;
+	private int reserved;
+	private boolean spilling;
+	private TupleBuffer[] partitions;
+
+	private int outputIndex;
+
+	/**
+	 * @param inputSchema the schema of the input rows, which will also be used for partitions
+	 * @param keyIndexes the indexes of the group key values in the input rows
+	 * @param groupSchema the schema of the group rows
+	 * @param level the partitioning level
+	 * @param input the partition to aggregate or null if this is the initial table
+	 */
+	GroupingHashTable(BufferManager bufferManager, String connectionId, List<? extends Expression> inputSchema,
+			int[] keyIndexes, List<? extends Expression> groupSchema, int level, TupleBuffer input) {
+		this.bufferManager = bufferManager;
+		this.connectionId = connectionId;
+		this.inputSchema = inputSchema;
+		this.keyIndexes = keyIndexes;
+		this.groupKeyIndexes = new int[keyIndexes.length];
+		for (int i = 0; i < groupKeyIndexes.length; i++) {
+			groupKeyIndexes[i] = i;
+		}
+		this.level = level;
+		this.input = input;
+		this.reserveChunk = bufferManager.getSchemaSize(groupSchema);
+		this.bytesPerGroup = Math.max(1, reserveChunk / bufferManager.getProcessorBatchSize(groupSchema));
+	}
+
+	/**
+	 * Return true if the type has hash values consistent with the comparison of the values
+	 * used for grouping.
+	 */
+	static boolean isHashable(Class<?> type) {
+		if (type == DataTypeManager.DefaultDataClasses.STRING || type == DataTypeManager.DefaultDataClasses.CHAR) {
+			//collation based comparison is not consistent with the hash
+			return DataTypeManager.COLLATION_LOCALE == null;
+		}
+		return type == DataTypeManager.DefaultDataClasses.BOOLEAN
+				|| type == DataTypeManager.DefaultDataClasses.BYTE
+				|| type == DataTypeManager.DefaultDataClasses.SHORT
+				|| type == DataTypeManager.DefaultDataClasses.INTEGER
+				|| type == DataTypeManager.DefaultDataClasses.LONG
+				|| type == DataTypeManager.DefaultDataClasses.BIG_INTEGER
+				|| type == DataTypeManager.DefaultDataClasses.BIG_DECIMAL
+				|| type == DataTypeManager.DefaultDataClasses.FLOAT
+				|| type == DataTypeManager.DefaultDataClasses.DOUBLE
+				|| type == DataTypeManager.DefaultDataClasses.DATE
+				|| type == DataTypeManager.DefaultDataClasses.TIME
+				|| type == DataTypeManager.DefaultDataClasses.TIMESTAMP;
+	}
+
+	static boolean isHashable(List<? extends Expression> keys) {
+		for (Expression ex : keys) {
+			if (!isHashable(ex.getType())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get a hash of the key values consistent with {@link MergeJoinStrategy#compareTuples(List, List, int[], int[], boolean, boolean)}
+	 */
+	int hash(List<?> tuple) {
+		return hash(tuple, keyIndexes, level);
+	}
+
+	/**
+	 * Get a hash of the values at the given indexes suitable for use in a partitioned table
+	 * at the given level.
+	 */
+	public static int hash(List<?> tuple, int[] indexes, int level) {
+		//the seed ensures that a partition will be redistributed at the next level
+		int h = level * 0x9e3779b9;
+		for (int i = 0; i < indexes.length; i++) {
+			h = 31 * h + hashValue(tuple.get(indexes[i]));
+		}
+		//mix so that both the low (slot) and high (partition) bits are usable
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	static int hashValue(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof String) {
+			if (DataTypeManager.PAD_SPACE) {
+				return FunctionMethods.rightTrim((String)value, ' ', false).hashCode();
+			}
+		} else if (value instanceof BigDecimal) {
+			//compareTo ignores the scale
+			BigDecimal bd = (BigDecimal)value;
+			if (bd.signum() == 0) {
+				return 0;
+			}
+			return bd.stripTrailingZeros().hashCode();
+		}
+		return value.hashCode();
+	}
+
+	/**
+	 * Find the group row for the key values of the given input row
+	 * @return the group row or null if not present
+	 */
+	List<Object> get(List<?> tuple, int hash) {
+		if (entries == null) {
+			return null;
+		}
+		int mask = entries.length - 1;
+		for (int slot = hash & mask; entries[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && MergeJoinStrategy.compareTuples(tuple, entries[slot], keyIndexes, groupKeyIndexes, true, false) == 0) {
+				return entries[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reserve the memory for a new group.
+	 * @return false if the reservation was not granted and the input row should be spilled
+	 */
+	boolean reserve() {
+		if (spilling) {
+			return false;
+		}
+		long needed = (long)(size + 1) * bytesPerGroup;
+		if (needed <= reserved) {
+			return true;
+		}
+		//always allow the first chunk so that every level makes progress
+		BufferReserveMode mode = (reserved == 0 || level >= MAX_LEVEL) ? BufferReserveMode.FORCE : BufferReserveMode.NO_WAIT;
+		int amount = bufferManager.reserveBuffers(reserveChunk, mode);
+		reserved += amount;
+		if (needed <= reserved) {
+			return true;
+		}
+		spilling = true;
+		return false;
+	}
+
+	/**
+	 * Add a new group row.  Should only be called after a successful {@link #reserve()}
+	 */
+	@SuppressWarnings("unchecked")
+	void add(List<Object> group, int hash) {
+		if (entries == null) {
+			entries = new List[INITIAL_CAPACITY];
+			hashes = new int[INITIAL_CAPACITY];
+		} else if ((size + 1) << 1 > entries.length) {
+			List<Object>[] oldEntries = entries;
+			int[] oldHashes = hashes;
+			entries = new List[oldEntries.length << 1];
+			hashes = new int[entries.length];
+			for (int i = 0; i < oldEntries.length; i++) {
+				if (oldEntries[i] != null) {
+					insert(oldEntries[i], oldHashes[i]);
+				}
+			}
+		}
+		insert(group, hash);
+		size++;
+	}
+
+	private void insert(List<Object> group, int hash) {
+		int mask = entries.length - 1;
+		int slot = hash & mask;
+		while (entries[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		entries[slot] = group;
+		hashes[slot] = hash;
+	}
+
+	/**
+	 * Write the input row to the partition for the hash
+	 */
+	void spill(List<?> tuple, int hash) throws TeiidComponentException {
+		if (partitions == null) {
+			partitions = new TupleBuffer[PARTITIONS];
+		}
+		int partition = hash >>> (32 - PARTITION_BITS);
+		TupleBuffer buffer = partitions[partition];
+		if (buffer == null) {
+			buffer = bufferManager.createTupleBuffer(inputSchema, connectionId, TupleSourceType.PROCESSOR);
+			buffer.setForwardOnly(true);
+			partitions[partition] = buffer;
+		}
+		buffer.addTuple(tuple);
+	}
+
+	/**
+	 * Iterate the group rows
+	 * @return the next group row or null if there are no more
+	 */
+	List<Object> nextGroup() {
+		if (entries == null) {
+			return null;
+		}
+		while (outputIndex < entries.length) {
+			List<Object> group = entries[outputIndex];
+			entries[outputIndex++] = null;
+			if (group != null) {
+				return group;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Release the table memory and return the tables for the spilled partitions
+	 */
+	List<GroupingHashTable> finish(List<? extends Expression> groupSchema) throws TeiidComponentException {
+		release();
+		List<GroupingHashTable> result = new ArrayList<GroupingHashTable>(0);
+		if (partitions == null) {
+			return result;
+		}
+		for (int i = 0; i < partitions.length; i++) {
+			TupleBuffer partition = partitions[i];
+			if (partition == null) {
+				continue;
+			}
+			partition.close();
+			result.add(new GroupingHashTable(bufferManager, connectionId, inputSchema, keyIndexes, groupSchema, level + 1, partition));
+		}
+		partitions = null;
+		return result;
+	}
+
+	/**
+	 * @return the partition that is the input to this table, or null if this is the initial table
+	 */
+	TupleBuffer getInput() {
+		return input;
+	}
+
+	int getLevel() {
+		return level;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isSpilling() {
+		return spilling;
+	}
+
+	private void release() {
+		entries = null;
+		hashes = null;
+		if (reserved > 0) {
+			bufferManager.releaseBuffers(reserved);
+			reserved = 0;
+		}
+	}
+
+	/**
+	 * Release all resources held by this table
+	 */
+	void remove() {
+		release();
+		if (input != null) {
+			input.remove();
+			input = null;
+		}
+		if (partitions != null) {
+			for (TupleBuffer partition : partitions) {
+				if (partition != null) {
+					partition.remove();
+				}
+			}
+			partitions = null;
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -133,12 +134,20 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
     private int[] accumulatorStateCount;
     private TupleSource groupSortTupleSource;
     private int[] projection;
+    
+    // Hash aggregation
+    private boolean hashAggregation;
+    private GroupingHashTable hashTable;
+    private LinkedList<GroupingHashTable> hashPartitions;
+    private List<Expression> groupSchema;
+    private List<Object> stateValues;
 
     private static final int COLLECTION = 1;
     private static final int SORT = 2;
     private static final int GROUP = 3;
     private static final int GROUP_SORT = 4;
     private static final int GROUP_SORT_OUTPUT = 5;
+    private static final int HASH = 6;
 	private int[] indexes;
 	private boolean rollup;
 	private HashMap<Integer, Integer> indexMap;
@@ -179,6 +188,18 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
     public void setOutputMapping(SymbolMap outputMapping) {
 		this.outputMapping = outputMapping;
 	}
+    
+    /**
+     * Use a hash table rather than a sort to determine the groups when possible.
+     * The output will not be ordered by the grouping columns.
+     */
+    public void setHashAggregation(boolean hashAggregation) {
+		this.hashAggregation = hashAggregation;
+	}
+    
+    public boolean isHashAggregation() {
+		return hashAggregation;
+	}
 
 	@Override
 	public void initialize(CommandContext context, BufferManager bufferManager,
@@ -230,6 +251,13 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
         }
     }
 	
+	/**
+	 * Return true if the grouping expressions can be used with hash aggregation
+	 */
+	public static boolean isHashable(List<? extends Expression> groupCols) {
+		return GroupingHashTable.isHashable(groupCols);
+	}
+	
 	static Integer getIndex(Expression ex, LinkedHashMap<Expression, Integer> expressionIndexes) {
 		Integer index = expressionIndexes.get(ex);
 		if (index == null) {
@@ -408,6 +436,10 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
         	return groupSortOutputPhase();
         }
         
+        if (this.phase == HASH) {
+        	return hashPhase();
+        }
+        
         this.terminateBatches();
         return pullBatch();
     }
@@ -479,6 +511,7 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
 		    		for (OrderByItem item : this.orderBy) {
 		    			schema.add(SymbolMap.getExpression(item.getSymbol()));
 		    		}
+		    		boolean hash = this.hashAggregation && GroupingHashTable.isHashable(schema);
 	        		List<? extends Expression> elements = getElements();
 					this.projection = new int[elements.size()];
 					int index = 0;
@@ -501,12 +534,22 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
 			    		schema.add(es);
 		    		}
 		    		
+		    		this.groupSortTupleSource = this.getGroupSortTupleSource();
+		    		if (hash) {
+		    			this.groupSchema = schema;
+		    			this.stateValues = new ArrayList<Object>();
+		    			this.hashPartitions = new LinkedList<GroupingHashTable>();
+		    			this.hashTable = new GroupingHashTable(getBufferManager(), getConnectionID(), 
+		    					new ArrayList<Expression>(collectedExpressions.keySet()), this.indexes, schema, 0, null);
+		    			this.phase = HASH;
+		    			return;
+		    		}
+		    		
 		    		tree = this.getBufferManager().createSTree(schema, this.getConnectionID(), orderBy.size());
 		    		//non-default order needs to update the comparator
 		    		tree.getComparator().setNullOrdering(nullOrdering);
 		    		tree.getComparator().setOrderTypes(sortTypes);
-		    				
-		    		this.groupSortTupleSource = this.getGroupSortTupleSource();
+		    		
 		    		this.phase = GROUP_SORT;
 		    		return;
         		}
@@ -566,21 +609,9 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
 	 */
 	private TupleBatch groupSortOutputPhase() throws FunctionExecutionException, ExpressionEvaluationException, TeiidComponentException, TeiidProcessingException {
 		List<?> tuple = null;
-		int size = orderBy.size();
-		List<Object> vals = Arrays.asList(new Object[size + groupSortfunctions.length]);
+		List<Object> vals = Arrays.asList(new Object[orderBy.size() + groupSortfunctions.length]);
 		while ((tuple = groupSortTupleSource.nextTuple()) != null) {
-			for (int i = 0; i < size; i++) {
-				vals.set(i, tuple.get(i));
-			}
-			int index = size;
-			for (int i = 0; i < this.groupSortfunctions.length; i++) {
-				AggregateFunction aggregateFunction = this.groupSortfunctions[i];
-				aggregateFunction.setState(tuple, index);
-				index+=this.accumulatorStateCount[i];
-				vals.set(size + i, aggregateFunction.getResult(getContext()));
-			}
-			List<?> result = RelationalNode.projectTuple(projection, vals);
-			addBatchRow(result);
+			addGroupSortRow(tuple, vals);
 			if (isBatchFull()) {
 				return pullBatch();
 			}
@@ -589,6 +620,103 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
 		return pullBatch();
 	}
 
+	/**
+	 * Add the output row for a group of key values and accumulator state
+	 */
+	private void addGroupSortRow(List<?> tuple, List<Object> vals)
+			throws FunctionExecutionException, ExpressionEvaluationException,
+			TeiidComponentException, TeiidProcessingException {
+		int size = orderBy.size();
+		for (int i = 0; i < size; i++) {
+			vals.set(i, tuple.get(i));
+		}
+		int index = size;
+		for (int i = 0; i < this.groupSortfunctions.length; i++) {
+			AggregateFunction aggregateFunction = this.groupSortfunctions[i];
+			aggregateFunction.setState(tuple, index);
+			index+=this.accumulatorStateCount[i];
+			vals.set(size + i, aggregateFunction.getResult(getContext()));
+		}
+		List<?> result = RelationalNode.projectTuple(projection, vals);
+		addBatchRow(result);
+	}
+	
+	/**
+	 * Aggregate the input into the hash table, then output the groups.
+	 * Spilled partitions are then processed in the same way.
+	 * @return
+	 * @throws TeiidComponentException
+	 * @throws TeiidProcessingException
+	 */
+	private TupleBatch hashPhase() throws TeiidComponentException, TeiidProcessingException {
+		List<Object> vals = Arrays.asList(new Object[orderBy.size() + groupSortfunctions.length]);
+		while (true) {
+			if (this.groupSortTupleSource != null) {
+				List<?> tuple = null;
+				while ((tuple = groupSortTupleSource.nextTuple()) != null) {
+					int hash = hashTable.hash(tuple);
+					List<Object> current = hashTable.get(tuple, hash);
+					if (current != null) {
+						hashAggregate(tuple, current, true);
+						continue;
+					}
+					if (!hashTable.reserve()) {
+						hashTable.spill(tuple, hash);
+						continue;
+					}
+					current = Arrays.asList(new Object[groupSchema.size()]);
+					for (int i = 0; i < indexes.length; i++) {
+						current.set(i, tuple.get(indexes[i]));
+					}
+					hashAggregate(tuple, current, false);
+					hashTable.add(current, hash);
+				}
+				this.groupSortTupleSource.closeSource();
+				this.groupSortTupleSource = null;
+			}
+			List<?> group = null;
+			while ((group = hashTable.nextGroup()) != null) {
+				addGroupSortRow(group, vals);
+				if (isBatchFull()) {
+					return pullBatch();
+				}
+			}
+			this.hashPartitions.addAll(0, hashTable.finish(groupSchema));
+			hashTable.remove();
+			if (this.hashPartitions.isEmpty()) {
+				this.hashTable = null;
+				break;
+			}
+			this.hashTable = this.hashPartitions.removeFirst();
+			this.groupSortTupleSource = this.hashTable.getInput().createIndexedTupleSource(true);
+		}
+		terminateBatches();
+		return pullBatch();
+	}
+
+	/**
+	 * Update the accumulator state held in the group row
+	 */
+	private void hashAggregate(List<?> tuple, List<Object> current, boolean update)
+			throws TeiidComponentException, TeiidProcessingException {
+		int index = orderBy.size();
+		for (int i = 0; i < this.groupSortfunctions.length; i++) {
+			AggregateFunction aggregateFunction = this.groupSortfunctions[i];
+			if (update) {
+				aggregateFunction.setState(current, index);
+			} else {
+				aggregateFunction.reset();
+			}
+			aggregateFunction.addInput(tuple, getContext());
+			stateValues.clear();
+			aggregateFunction.getState(stateValues);
+			for (int j = 0; j < stateValues.size(); j++) {
+				current.set(index + j, stateValues.get(j));
+			}
+			index+=this.accumulatorStateCount[i];
+		}
+	}
+
     private void sortPhase() throws BlockedException, TeiidComponentException, TeiidProcessingException {
         this.sortBuffer = this.sortUtility.sort();
         this.sortBuffer.setForwardOnly(true);
@@ -713,6 +841,16 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
     		this.tree.remove();
     		this.tree = null;
     	}
+    	if (this.hashTable != null) {
+    		this.hashTable.remove();
+    		this.hashTable = null;
+    	}
+    	if (this.hashPartitions != null) {
+    		for (GroupingHashTable table : this.hashPartitions) {
+    			table.remove();
+    		}
+    		this.hashPartitions = null;
+    	}
     }
 
 	protected void getNodeString(StringBuffer str) {
@@ -730,6 +868,7 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
 		clonedNode.outputMapping = outputMapping;
 		clonedNode.orderBy = orderBy;
 		clonedNode.rollup = rollup;
+		clonedNode.hashAggregation = hashAggregation;
 		return clonedNode;
 	}
 
@@ -756,6 +895,9 @@ public class GroupingNode extends SubqueryAwareRelationalNode {
         if (rollup) {
         	props.addProperty(PROP_ROLLUP, Boolean.TRUE.toString());
         }
+        if (hashAggregation) {
+        	props.addProperty(PROP_HASH_AGGREGATION, Boolean.TRUE.toString());
+        }
         return props;
     }
 
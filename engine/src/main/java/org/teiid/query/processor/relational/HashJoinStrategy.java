@@ -0,0 +1,496 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.processor.relational;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.teiid.api.exception.query.ExpressionEvaluationException;
+import org.teiid.common.buffer.BufferManager;
+import org.teiid.common.buffer.BufferManager.BufferReserveMode;
+import org.teiid.common.buffer.TupleBuffer;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.TeiidProcessingException;
+import org.teiid.logging.LogConstants;
+import org.teiid.logging.LogManager;
+import org.teiid.logging.MessageLevel;
+import org.teiid.query.QueryPlugin;
+import org.teiid.query.processor.relational.SourceState.ImplicitBuffer;
+import org.teiid.query.sql.lang.JoinType;
+import org.teiid.query.sql.symbol.Expression;
+
+/**
+ * A hybrid hash join for equi-joins over unsorted inputs.
+ * <br>
+ * The build side is hash partitioned into in memory tables using memory reserved from the
+ * {@link BufferManager}.  When a reservation is denied the largest partition is spilled
+ * and all further build and probe rows for that partition are written to buffers.
+ * Each spilled partition pair is then joined in the same way with a different hash seed.
+ * <br>
+ * Supports inner, left outer, semi, and anti-semi joins.  Only inner joins may build from the left.
+ */
+public class HashJoinStrategy extends JoinStrategy {
+
+	static final int PARTITION_BITS = 4;
+	static final int PARTITIONS = 1 << PARTITION_BITS;
+	/**
+	 * The level at which spilling stops and all build rows are held in memory
+	 */
+	static final int MAX_LEVEL = 6;
+
+	private static class Partition {
+		List<List<?>> rows = new ArrayList<List<?>>();
+		int[] hashes = new int[8];
+		int[] buckets;
+		int[] next;
+		boolean spilled;
+		TupleBuffer buildBuffer;
+		TupleBuffer probeBuffer;
+
+		void add(List<?> tuple, int hash) {
+			if (rows.size() == hashes.length) {
+				hashes = Arrays.copyOf(hashes, hashes.length << 1);
+			}
+			hashes[rows.size()] = hash;
+			rows.add(tuple);
+		}
+
+		void index() {
+			int size = rows.size();
+			buckets = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size)) << 1)];
+			Arrays.fill(buckets, -1);
+			next = new int[size];
+			int mask = buckets.length - 1;
+			for (int i = 0; i < size; i++) {
+				int bucket = hashes[i] & mask;
+				next[i] = buckets[bucket];
+				buckets[bucket] = i;
+			}
+		}
+
+		int head(int hash) {
+			return buckets[hash & (buckets.length - 1)];
+		}
+
+		void remove() {
+			rows = null;
+			hashes = null;
+			buckets = null;
+			next = null;
+			if (buildBuffer != null) {
+				buildBuffer.remove();
+				buildBuffer = null;
+			}
+			if (probeBuffer != null) {
+				probeBuffer.remove();
+				probeBuffer = null;
+			}
+		}
+	}
+
+	/**
+	 * The state of joining one set of inputs
+	 */
+	private static class Pass {
+		int level;
+		TupleSource buildInput;
+		TupleSource probeInput;
+		TupleBuffer buildBuffer;
+		TupleBuffer probeBuffer;
+		Partition[] partitions = new Partition[PARTITIONS];
+		long used;
+		boolean built;
+
+		//probe state
+		List<?> probeTuple;
+		int probeHash;
+		Partition probePartition;
+		int candidate = -1;
+		boolean matched;
+
+		Pass(int level) {
+			this.level = level;
+			for (int i = 0; i < partitions.length; i++) {
+				partitions[i] = new Partition();
+			}
+		}
+
+		void remove() {
+			if (buildInput != null) {
+				buildInput.closeSource();
+				buildInput = null;
+			}
+			if (probeInput != null) {
+				probeInput.closeSource();
+				probeInput = null;
+			}
+			if (buildBuffer != null) {
+				buildBuffer.remove();
+				buildBuffer = null;
+			}
+			if (probeBuffer != null) {
+				probeBuffer.remove();
+				probeBuffer = null;
+			}
+			if (partitions != null) {
+				for (Partition partition : partitions) {
+					partition.remove();
+				}
+				partitions = null;
+			}
+		}
+	}
+
+	private boolean buildLeft;
+	private boolean singleMatch;
+
+	private SourceState buildSource;
+	private SourceState probeSource;
+	private Pass pass;
+	private LinkedList<Pass> pending = new LinkedList<Pass>();
+	private int bytesPerRow;
+	private int reserveChunk;
+	private int hashReserved;
+	private boolean done;
+
+	/**
+	 * @param buildLeft true if the hash tables should be built from the left side.  Only valid for inner joins
+	 */
+	public HashJoinStrategy(boolean buildLeft) {
+		this.buildLeft = buildLeft;
+	}
+
+	/**
+	 * Optional flag for a left outer join to enforce the single
+     * row restriction of a scalar subquery
+	 */
+	public HashJoinStrategy singleMatch(boolean b) {
+		this.singleMatch = b;
+		return this;
+	}
+
+	/**
+	 * Return true if the join expressions can be used with a hash join
+	 */
+	public static boolean isHashable(List<? extends Expression> leftExpressions, List<? extends Expression> rightExpressions) {
+		if (leftExpressions == null || rightExpressions == null || leftExpressions.size() != rightExpressions.size()) {
+			return false;
+		}
+		for (int i = 0; i < leftExpressions.size(); i++) {
+			Class<?> type = leftExpressions.get(i).getType();
+			if (type != rightExpressions.get(i).getType() || !GroupingHashTable.isHashable(type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void initialize(JoinNode joinNode) {
+		super.initialize(joinNode);
+		if (buildLeft && joinNode.getJoinType() != JoinType.JOIN_INNER) {
+			buildLeft = false;
+		}
+		if (buildLeft) {
+			this.buildSource = this.leftSource;
+			this.probeSource = this.rightSource;
+		} else {
+			this.buildSource = this.rightSource;
+			this.probeSource = this.leftSource;
+		}
+		List<? extends Expression> elements = this.buildSource.getSource().getElements();
+		BufferManager bufferManager = joinNode.getBufferManager();
+		this.reserveChunk = bufferManager.getSchemaSize(elements);
+		this.bytesPerRow = Math.max(1, reserveChunk / bufferManager.getProcessorBatchSize(elements));
+	}
+
+	@Override
+	protected void loadLeft() throws TeiidComponentException,
+			TeiidProcessingException {
+		this.leftSource.setImplicitBuffer(ImplicitBuffer.NONE);
+	}
+
+	@Override
+	protected void loadRight() throws TeiidComponentException,
+			TeiidProcessingException {
+		this.rightSource.setImplicitBuffer(ImplicitBuffer.NONE);
+	}
+
+	@Override
+	protected void process() throws TeiidComponentException,
+			TeiidProcessingException {
+		if (done) {
+			return;
+		}
+		if (pass == null) {
+			pass = new Pass(0);
+			pass.buildInput = this.buildSource.getIterator();
+			pass.probeInput = this.probeSource.getIterator();
+		}
+		while (true) {
+			if (!pass.built) {
+				build(pass);
+			}
+			probe(pass);
+			finishPass();
+			if (pending.isEmpty()) {
+				done = true;
+				return;
+			}
+			pass = pending.removeFirst();
+			pass.buildInput = pass.buildBuffer.createIndexedTupleSource(true);
+			pass.probeInput = pass.probeBuffer.createIndexedTupleSource(true);
+		}
+	}
+
+	private void build(Pass current) throws TeiidComponentException,
+			TeiidProcessingException {
+		int[] indexes = buildSource.getExpressionIndexes();
+		List<?> tuple = null;
+		while ((tuple = current.buildInput.nextTuple()) != null) {
+			if (hasNull(tuple, indexes)) {
+				continue; //can never match
+			}
+			int hash = GroupingHashTable.hash(tuple, indexes, current.level);
+			Partition partition = current.partitions[hash >>> (32 - PARTITION_BITS)];
+			if (!partition.spilled) {
+				current.used += bytesPerRow;
+				if (!reserve(current)) {
+					spill(current);
+					if (partition.spilled) {
+						current.used -= bytesPerRow;
+					}
+				}
+			}
+			if (partition.spilled) {
+				if (partition.buildBuffer == null) {
+					partition.buildBuffer = createBuffer(buildSource);
+				}
+				partition.buildBuffer.addTuple(tuple);
+				continue;
+			}
+			partition.add(tuple, hash);
+		}
+		current.buildInput.closeSource();
+		current.buildInput = null;
+		for (Partition partition : current.partitions) {
+			if (!partition.spilled) {
+				partition.index();
+			}
+		}
+		current.built = true;
+	}
+
+	/**
+	 * Reserve memory for the used bytes
+	 * @return false if the reservation was denied
+	 */
+	private boolean reserve(Pass current) {
+		while (current.used > hashReserved) {
+			//always allow the first chunk so that every level makes progress
+			BufferReserveMode mode = (hashReserved == 0 || current.level >= MAX_LEVEL) ? BufferReserveMode.FORCE : BufferReserveMode.NO_WAIT;
+			int amount = joinNode.getBufferManager().reserveBuffers(reserveChunk, mode);
+			hashReserved += amount;
+			if (amount < reserveChunk && mode == BufferReserveMode.NO_WAIT) {
+				return current.used <= hashReserved;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spill the largest partitions until the used memory is within the reservation
+	 */
+	private void spill(Pass current) throws TeiidComponentException {
+		while (current.used > hashReserved) {
+			Partition largest = null;
+			for (Partition partition : current.partitions) {
+				if (!partition.spilled && (largest == null || partition.rows.size() > largest.rows.size())) {
+					largest = partition;
+				}
+			}
+			if (largest == null) {
+				break;
+			}
+			if (LogManager.isMessageToBeRecorded(LogConstants.CTX_DQP, MessageLevel.DETAIL)) {
+				LogManager.logDetail(LogConstants.CTX_DQP, "spilling hash join partition", this.joinNode.getID(), current.level, largest.rows.size()); //$NON-NLS-1$
+			}
+			largest.spilled = true;
+			largest.buildBuffer = createBuffer(buildSource);
+			for (List<?> tuple : largest.rows) {
+				largest.buildBuffer.addTuple(tuple);
+			}
+			current.used -= (long)largest.rows.size() * bytesPerRow;
+			largest.rows = null;
+			largest.hashes = null;
+		}
+	}
+
+	private TupleBuffer createBuffer(SourceState state) throws TeiidComponentException {
+		TupleBuffer result = state.createSourceTupleBuffer();
+		result.setForwardOnly(true);
+		return result;
+	}
+
+	private void probe(Pass current) throws TeiidComponentException,
+			TeiidProcessingException {
+		int[] probeIndexes = probeSource.getExpressionIndexes();
+		int[] buildIndexes = buildSource.getExpressionIndexes();
+		JoinType joinType = this.joinNode.getJoinType();
+		while (true) {
+			if (current.probeTuple == null) {
+				List<?> tuple = current.probeInput.nextTuple();
+				if (tuple == null) {
+					break;
+				}
+				current.matched = false;
+				current.candidate = -1;
+				current.probePartition = null;
+				if (!hasNull(tuple, probeIndexes)) {
+					current.probeHash = GroupingHashTable.hash(tuple, probeIndexes, current.level);
+					Partition partition = current.partitions[current.probeHash >>> (32 - PARTITION_BITS)];
+					if (partition.spilled) {
+						if (partition.probeBuffer == null) {
+							partition.probeBuffer = createBuffer(probeSource);
+						}
+						partition.probeBuffer.addTuple(tuple);
+						continue;
+					}
+					current.probePartition = partition;
+					current.candidate = partition.head(current.probeHash);
+				}
+				current.probeTuple = tuple;
+			}
+			Partition partition = current.probePartition;
+			while (current.candidate != -1) {
+				int index = current.candidate;
+				if (partition.hashes[index] != current.probeHash
+						|| MergeJoinStrategy.compareTuples(current.probeTuple, partition.rows.get(index), probeIndexes, buildIndexes, false, false) != 0) {
+					current.candidate = partition.next[index];
+					continue;
+				}
+				List<?> buildTuple = partition.rows.get(index);
+				List outputTuple = buildLeft?outputTuple(buildTuple, current.probeTuple):outputTuple(current.probeTuple, buildTuple);
+				//may block, so the candidate is not advanced until after evaluation
+				boolean matches = this.joinNode.matchesCriteria(outputTuple);
+				current.candidate = partition.next[index];
+				if (!matches) {
+					continue;
+				}
+				boolean wasMatched = current.matched;
+				current.matched = true;
+				if (joinType == JoinType.JOIN_ANTI_SEMI) {
+					current.candidate = -1;
+					break;
+				}
+				if (joinType == JoinType.JOIN_SEMI) {
+					current.candidate = -1;
+				} else if (singleMatch && wasMatched) {
+					throw new ExpressionEvaluationException(QueryPlugin.Event.TEIID31293, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31293));
+				}
+				this.joinNode.addBatchRow(outputTuple);
+			}
+			List<?> tuple = current.probeTuple;
+			current.probeTuple = null;
+			if (!current.matched && (joinType == JoinType.JOIN_LEFT_OUTER || joinType == JoinType.JOIN_ANTI_SEMI)) {
+				this.joinNode.addBatchRow(outputTuple(tuple, this.rightSource.getOuterVals()));
+			}
+		}
+		current.probeInput.closeSource();
+		current.probeInput = null;
+	}
+
+	/**
+	 * Release the memory of the current pass and queue the spilled partitions
+	 */
+	private void finishPass() throws TeiidComponentException {
+		List<Pass> spilled = new ArrayList<Pass>();
+		for (Partition partition : pass.partitions) {
+			if (!partition.spilled) {
+				continue;
+			}
+			if (partition.buildBuffer != null && partition.probeBuffer != null) {
+				Pass next = new Pass(pass.level + 1);
+				next.buildBuffer = partition.buildBuffer;
+				next.buildBuffer.close();
+				next.probeBuffer = partition.probeBuffer;
+				next.probeBuffer.close();
+				partition.buildBuffer = null;
+				partition.probeBuffer = null;
+				spilled.add(next);
+			}
+		}
+		pass.remove();
+		pass = null;
+		releaseHashBuffers();
+		pending.addAll(0, spilled);
+	}
+
+	private void releaseHashBuffers() {
+		if (hashReserved > 0) {
+			joinNode.getBufferManager().releaseBuffers(hashReserved);
+			hashReserved = 0;
+		}
+	}
+
+	static boolean hasNull(List<?> tuple, int[] indexes) {
+		for (int i : indexes) {
+			if (tuple.get(i) == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close() {
+		if (joinNode == null) {
+			return;
+		}
+		if (pass != null) {
+			pass.remove();
+			pass = null;
+		}
+		for (Pass p : pending) {
+			p.remove();
+		}
+		pending.clear();
+		releaseHashBuffers();
+		super.close();
+	}
+
+	@Override
+	public HashJoinStrategy clone() {
+		return new HashJoinStrategy(buildLeft).singleMatch(singleMatch);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("HASH JOIN (build "); //$NON-NLS-1$
+		sb.append(buildLeft?"left":"right").append(")"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (singleMatch) {
+		    sb.append(" subquery"); //$NON-NLS-1$
+		}
+		return sb.toString();
+	}
+
+}
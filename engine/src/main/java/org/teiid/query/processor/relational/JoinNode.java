@@ -33,6 +33,9 @@ import org.teiid.common.buffer.TupleBatch;
 import org.teiid.common.buffer.TupleBuffer;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
+import org.teiid.query.eval.Evaluator;
+import org.teiid.query.eval.ExpressionCompiler;
+import org.teiid.query.eval.ExpressionCompiler.CompiledCriteria;
 import org.teiid.query.processor.ProcessorDataManager;
 import org.teiid.query.processor.relational.SourceState.ImplicitBuffer;
 import org.teiid.query.sql.LanguageObject;
@@ -54,7 +57,8 @@ public class JoinNode extends SubqueryAwareRelationalNode {
 	    MERGE,
 	    ENHANCED_SORT,
 	    NESTED_LOOP,
-	    NESTED_TABLE
+	    NESTED_TABLE,
+	    HASH
 	}
         
     private enum State { LOAD_LEFT, LOAD_RIGHT, EXECUTE }    
@@ -71,6 +75,7 @@ public class JoinNode extends SubqueryAwareRelationalNode {
     private Criteria joinCriteria;
     
     private Map combinedElementMap;
+    private CompiledCriteria compiledJoinCriteria;
     private int[] projectionIndexes;
     
     private DependentValueSource dvs;
@@ -114,20 +119,30 @@ public class JoinNode extends SubqueryAwareRelationalNode {
     
     public void setJoinCriteria(Criteria joinCriteria) {
         this.joinCriteria = joinCriteria;
+        this.compiledJoinCriteria = null;
     }
     
     @Override
     public void initialize(CommandContext context, BufferManager bufferManager,
     		ProcessorDataManager dataMgr) {
     	super.initialize(context, bufferManager, dataMgr);
-    	
-    	if (this.combinedElementMap == null) {
+    	initElementMap();
+    }
+
+	private void initElementMap() {
+		if (this.combinedElementMap == null) {
 	        // Create element lookup map for evaluating project expressions
 	        List combinedElements = new ArrayList(getChildren()[0].getElements());
 	        combinedElements.addAll(getChildren()[1].getElements());
 	        this.combinedElementMap = createLookupMap(combinedElements);
 	        this.projectionIndexes = getProjectionIndexes(combinedElementMap, getElements());
     	}
+	}
+    
+    @Override
+    public void compileExpressions() {
+    	initElementMap();
+    	this.compiledJoinCriteria = ExpressionCompiler.compile(this.joinCriteria, this.combinedElementMap);
     }
     
     public void open() 
@@ -175,6 +190,7 @@ public class JoinNode extends SubqueryAwareRelationalNode {
         clonedNode.joinStrategy = this.joinStrategy.clone();
         
         clonedNode.joinCriteria = this.joinCriteria;
+        clonedNode.compiledJoinCriteria = this.compiledJoinCriteria;
         
         clonedNode.leftExpressions = leftExpressions;
         
@@ -383,7 +399,14 @@ public class JoinNode extends SubqueryAwareRelationalNode {
     }
     
     boolean matchesCriteria(List outputTuple) throws BlockedException, TeiidComponentException, ExpressionEvaluationException {
-		return (this.joinCriteria == null || getEvaluator(this.combinedElementMap).evaluate(this.joinCriteria, outputTuple));
+    	if (this.joinCriteria == null) {
+    		return true;
+    	}
+    	Evaluator evaluator = getEvaluator(this.combinedElementMap);
+    	if (this.compiledJoinCriteria != null) {
+    		return Boolean.TRUE.equals(this.compiledJoinCriteria.evaluateTVL(outputTuple, evaluator));
+    	}
+		return evaluator.evaluate(this.joinCriteria, outputTuple);
     }
 
     public List getLeftExpressions() {
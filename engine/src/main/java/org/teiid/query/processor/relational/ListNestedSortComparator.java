@@ -77,7 +77,7 @@ public class ListNestedSortComparator<T extends Comparable<? super T>> implement
     
     private List<NullOrdering> nullOrdering;
     
-    private boolean init;
+    private volatile boolean init;
     private int nullValue = -1;
     
     private NullOrder defaultNullOrder = NullOrder.LOW;
@@ -146,22 +146,7 @@ public class ListNestedSortComparator<T extends Comparable<? super T>> implement
     
     public int compare(java.util.List<T> list1, java.util.List<T> list2) {
     	if (!init) {
-    		if (nullOrdering == null) {
-    			nullOrdering = Collections.nCopies(sortParameters.length, null);
-    		}
-    		for (int i = 0; i < sortParameters.length; i++) {
-    			if (nullOrdering.get(i) == null) {
-    				if (defaultNullOrder == NullOrder.FIRST) {
-    					nullOrdering.set(i, NullOrdering.FIRST);
-    				} else if (defaultNullOrder == NullOrder.LAST) {
-    					nullOrdering.set(i, NullOrdering.LAST);
-    				}
-    			}
-    		}
-    		if (defaultNullOrder == NullOrder.HIGH) {
-    			nullValue = 1;
-    		}
-    		init = true;
+    		init();
     	}
         int compare = 0;
         for (int k = 0; k < sortParameters.length; k++) {
@@ -212,6 +197,31 @@ public class ListNestedSortComparator<T extends Comparable<? super T>> implement
     	return 0;
     }
     
+    /**
+     * the comparator may be used by concurrent sorts
+     */
+    private synchronized void init() {
+    	if (init) {
+    		return;
+    	}
+    	if (nullOrdering == null) {
+    		nullOrdering = Collections.nCopies(sortParameters.length, null);
+    	}
+    	for (int i = 0; i < sortParameters.length; i++) {
+    		if (nullOrdering.get(i) == null) {
+    			if (defaultNullOrder == NullOrder.FIRST) {
+    				nullOrdering.set(i, NullOrdering.FIRST);
+    			} else if (defaultNullOrder == NullOrder.LAST) {
+    				nullOrdering.set(i, NullOrdering.LAST);
+    			}
+    		}
+    	}
+    	if (defaultNullOrder == NullOrder.HIGH) {
+    		nullValue = 1;
+    	}
+    	init = true;
+    }
+    
     private NullOrdering getNullOrdering(int index) {
 		return nullOrdering.get(index);
     }
@@ -35,6 +35,8 @@ import org.teiid.common.buffer.TupleBuffer;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.query.analysis.AnalysisRecord;
+import org.teiid.query.eval.ExpressionCompiler;
+import org.teiid.query.eval.ExpressionCompiler.CompiledExpression;
 import org.teiid.query.sql.LanguageObject;
 import org.teiid.query.sql.symbol.AliasSymbol;
 import org.teiid.query.sql.symbol.Expression;
@@ -52,6 +54,7 @@ public class ProjectNode extends SubqueryAwareRelationalNode {
     private boolean needsProject = true;
     private List<Expression> expressions;
     private int[] projectionIndexes;
+    private CompiledExpression[] compiledExpressions;
 
     // Saved state when blocked on evaluating a row - must be reset
     private TupleBatch currentBatch;
@@ -186,11 +189,24 @@ public class ProjectNode extends SubqueryAwareRelationalNode {
         int index = this.projectionIndexes[projectionIndex];
         if(index != -1) {
 			tuple.add(values.get(index));
+        } else if (this.compiledExpressions != null && this.compiledExpressions[projectionIndex] != null) {
+        	tuple.add(this.compiledExpressions[projectionIndex].evaluate(values, getEvaluator(this.elementMap)));
         } else { 
 			tuple.add(getEvaluator(this.elementMap).evaluate(symbol, values));
 		}
 	}
 
+	@Override
+	public void compileExpressions() {
+		CompiledExpression[] compiled = new CompiledExpression[this.expressions.size()];
+		for (int i = 0; i < compiled.length; i++) {
+			if (this.projectionIndexes[i] == -1) {
+				compiled[i] = ExpressionCompiler.compile(this.expressions.get(i), this.elementMap);
+			}
+		}
+		this.compiledExpressions = compiled;
+	}
+
 	protected void getNodeString(StringBuffer str) {
 		super.getNodeString(str);
 		str.append(selectSymbols);
@@ -209,6 +225,7 @@ public class ProjectNode extends SubqueryAwareRelationalNode {
         target.elementMap = elementMap;
         target.expressions = expressions;
         target.projectionIndexes = projectionIndexes;
+        target.compiledExpressions = compiledExpressions;
     }
 
     public PlanNode getDescriptionProperties() {
@@ -32,6 +32,9 @@ import org.teiid.common.buffer.TupleBatch;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.query.analysis.AnalysisRecord;
+import org.teiid.query.eval.Evaluator;
+import org.teiid.query.eval.ExpressionCompiler;
+import org.teiid.query.eval.ExpressionCompiler.CompiledCriteria;
 import org.teiid.query.processor.ProcessorDataManager;
 import org.teiid.query.rewriter.QueryRewriter;
 import org.teiid.query.sql.LanguageObject;
@@ -43,6 +46,7 @@ import org.teiid.query.util.CommandContext;
 public class SelectNode extends SubqueryAwareRelationalNode {
 
 	private Criteria criteria;
+	private CompiledCriteria compiledCriteria;
 	private Criteria preEvalCriteria;
 	private List<Expression> projectedExpressions;
 	private boolean shouldEvaluate = false;
@@ -76,6 +80,7 @@ public class SelectNode extends SubqueryAwareRelationalNode {
 
 	public void setCriteria(Criteria criteria) { 
 		this.criteria = criteria;
+		this.compiledCriteria = null;
 	}
 
 	public Criteria getCriteria() { // made public to support change in ProcedurePlanner
@@ -90,6 +95,10 @@ public class SelectNode extends SubqueryAwareRelationalNode {
 	public void initialize(CommandContext context, BufferManager bufferManager,
 			ProcessorDataManager dataMgr) {
 		super.initialize(context, bufferManager, dataMgr);
+		initElementMap();
+	}
+
+	private void initElementMap() {
         // Create element lookup map for evaluating project expressions
         if(this.elementMap == null) {
             this.elementMap = createLookupMap(this.getChildren()[0].getElements());
@@ -97,6 +106,12 @@ public class SelectNode extends SubqueryAwareRelationalNode {
         }
 	}
 	
+	@Override
+	public void compileExpressions() {
+		initElementMap();
+		this.compiledCriteria = ExpressionCompiler.compile(this.criteria, this.elementMap);
+	}
+	
     /**
      * @see org.teiid.query.processor.relational.RelationalNode#nextBatchDirect()
      */
@@ -115,7 +130,7 @@ public class SelectNode extends SubqueryAwareRelationalNode {
         while (currentRow <= currentBatch.getEndRow() && !isBatchFull()) {
     		List<?> tuple = currentBatch.getTuple(currentRow);
 
-            if(getEvaluator(this.elementMap).evaluate(this.preEvalCriteria!=null?preEvalCriteria:criteria, tuple)) {
+            if(matches(tuple)) {
                 addBatchRow(projectTuple(this.projectionIndexes, tuple));
             }
             currentRow++;
@@ -131,6 +146,15 @@ public class SelectNode extends SubqueryAwareRelationalNode {
     	return pullBatch();
 	}
     
+	private boolean matches(List<?> tuple)
+			throws BlockedException, TeiidComponentException, TeiidProcessingException {
+		Evaluator evaluator = getEvaluator(this.elementMap);
+		if (this.preEvalCriteria == null && this.compiledCriteria != null) {
+			return Boolean.TRUE.equals(this.compiledCriteria.evaluateTVL(tuple, evaluator));
+		}
+		return evaluator.evaluate(this.preEvalCriteria!=null?preEvalCriteria:criteria, tuple);
+	}
+    
 	protected void getNodeString(StringBuffer str) {
 		super.getNodeString(str);
 		str.append(criteria);
@@ -145,6 +169,7 @@ public class SelectNode extends SubqueryAwareRelationalNode {
 	protected void copyTo(SelectNode target){
 		super.copyTo(target);
 		target.criteria = criteria;
+		target.compiledCriteria = compiledCriteria;
 		target.elementMap = elementMap;
 		target.projectionIndexes = projectionIndexes;
 		target.projectedExpressions = projectedExpressions;
@@ -19,10 +19,12 @@
 package org.teiid.query.processor.relational;
 
 import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.TreeSet;
@@ -54,6 +56,13 @@ import org.teiid.query.util.CommandContext;
 
 /**
  * Implements several modes of a multi-pass sort.
+ * <br>
+ * In the parallel mode the sorted sublists are generated as the source is read - each full run is
+ * sorted and written by another thread while the next run is read, with a bounded number of runs
+ * in flight - and are merged with a
+ * {@link LoserTree} while the merged batches are written by another thread.  The other thread
+ * work is submitted through the {@link CommandContext} and the processing thread throws a 
+ * {@link BlockedException} rather than waiting for it.
  * 
  * TODO: could consider using an index for dup_removal and maintaining a separate output buffer
  * TODO: release the tuple buffer in the last merge pass if sublists will fit in processing batch size
@@ -108,6 +117,19 @@ public class SortUtility {
 		DUP_REMOVE_SORT
 	}
 	
+	/**
+	 * A run being sorted and written by another thread and the buffers reserved for it
+	 */
+	private static class RunTask {
+		final Future<Void> future;
+		final int reserved;
+		
+		RunTask(Future<Void> future, int reserved) {
+			this.future = future;
+			this.reserved = reserved;
+		}
+	}
+	
 	/**
 	 * state holder for the merge algorithm
 	 */
@@ -127,6 +149,72 @@ public class SortUtility {
 			return index + " " + tuple; //$NON-NLS-1$
 		}
 	}
+	
+	/**
+	 * A tournament tree over the sublists being merged.  Each internal node holds the loser
+	 * of the comparison between its subtrees, so that replacing the winner's tuple requires
+	 * only log(k) comparisons.  Exhausted sublists lose to all others and ties are won by the
+	 * lower sublist index.
+	 */
+	private class LoserTree {
+		private SortedSublist[] sources;
+		private int[] tree;
+		
+		LoserTree(SortedSublist[] sources) {
+			this.sources = sources;
+			int k = sources.length;
+			this.tree = new int[k];
+			//the leaves are logically at k..2k-1
+			int[] winners = new int[k << 1];
+			for (int i = 0; i < k; i++) {
+				winners[k + i] = i;
+			}
+			for (int n = k - 1; n > 0; n--) {
+				int left = winners[n << 1];
+				int right = winners[(n << 1) + 1];
+				if (beats(right, left)) {
+					winners[n] = right;
+					tree[n] = left;
+				} else {
+					winners[n] = left;
+					tree[n] = right;
+				}
+			}
+			tree[0] = winners[1];
+		}
+		
+		SortedSublist top() {
+			return sources[tree[0]];
+		}
+		
+		/**
+		 * Restore the tree after the tuple of the given sublist has changed
+		 */
+		void replay(int index) {
+			int winner = index;
+			for (int n = (index + sources.length) >> 1; n > 0; n >>= 1) {
+				if (beats(tree[n], winner)) {
+					int loser = winner;
+					winner = tree[n];
+					tree[n] = loser;
+				}
+			}
+			tree[0] = winner;
+		}
+		
+		private boolean beats(int i, int j) {
+			SortedSublist a = sources[i];
+			SortedSublist b = sources[j];
+			if (a.tuple == null) {
+				return false;
+			}
+			if (b.tuple == null) {
+				return true;
+			}
+			int result = comparator.compare(a.tuple, b.tuple);
+			return result < 0 || (result == 0 && i < j);
+		}
+	}
 
 	//constructor state
     private TupleSource source;
@@ -153,8 +241,21 @@ public class SortUtility {
 	private static boolean STABLE_SORT = PropertiesUtils.getHierarchicalProperty("org.teiid.requireStableSort", false, Boolean.class); //$NON-NLS-1$
 	
 	private boolean stableSort = STABLE_SORT;
+	private boolean parallel;
     private Future<Void> future;
     
+    //parallel sort state, which is retained when blocked on a pending task
+    private Future<Void> pending;
+    private ArrayDeque<RunTask> runTasks = new ArrayDeque<RunTask>();
+    private int maxRunTasks;
+    private TupleSource runSource;
+    private boolean runsRead;
+    private int runRows;
+    private int runReserved;
+    private AccessibleArrayList<List<?>> run;
+    private ParallelMerge parallelMerge;
+    private int mergeReserved;
+    
     public SortUtility(TupleSource sourceID, List<OrderByItem> items, Mode mode, BufferManager bufferMgr,
                         String groupName, List<? extends Expression> schema) {
         List<Expression> sortElements = null;
@@ -222,6 +323,7 @@ public class SortUtility {
         int distinctIndex = cols.length - 1;
         this.comparator.setDistinctIndex(distinctIndex);
         this.comparator.setNullOrdering(nullOrderings);
+        this.parallel = bufferMgr.getOptions().isParallelSort();
     }
     
     public SortUtility(TupleSource ts, List<? extends Expression> expressions, List<Boolean> types,
@@ -306,8 +408,18 @@ public class SortUtility {
                 end = System.nanoTime() + (cc.getTimeSliceEnd()-System.currentTimeMillis())*1000000;
             }
         }
+        if (runSource != null) {
+            //resume the parallel sort of the runs
+            sortRuns(rowLimit, end);
+            return;
+        }
         if (source == null) {
             doneReading = true;
+        } else if (parallel && !onePass && this.workingBuffer == null) {
+        	//sort the runs as they are read rather than collecting a working buffer first
+        	startRuns(source);
+        	sortRuns(rowLimit, end);
+        	return;
         }
     	outer: while (!doneReading) {
     		//sub-phase 1 - build up a working buffer of tuples
@@ -376,16 +488,7 @@ public class SortUtility {
             if (e.getCause() instanceof BlockedException) {
                 return;
             }
-            if (e.getCause() instanceof TeiidComponentException) {
-                throw (TeiidComponentException) e.getCause();
-            }
-            if (e.getCause() instanceof TeiidProcessingException) {
-                throw (TeiidProcessingException) e.getCause();
-            }
-            if (e.getCause() instanceof TeiidRuntimeException) {
-                throw (TeiidRuntimeException) e.getCause();
-            }
-            throw new TeiidRuntimeException(e);
+            throwCause(e);
         } catch (InterruptedException e) {
             Thread.interrupted();
             throw new TeiidRuntimeException(e);
@@ -393,6 +496,125 @@ public class SortUtility {
             future = null;
         }
     }
+
+    private static void throwCause(ExecutionException e)
+            throws TeiidComponentException, TeiidProcessingException {
+        if (e.getCause() instanceof TeiidComponentException) {
+            throw (TeiidComponentException) e.getCause();
+        }
+        if (e.getCause() instanceof TeiidProcessingException) {
+            throw (TeiidProcessingException) e.getCause();
+        }
+        if (e.getCause() instanceof TeiidRuntimeException) {
+            throw (TeiidRuntimeException) e.getCause();
+        }
+        throw new TeiidRuntimeException(e);
+    }
+    
+    /**
+     * Run a parallel sort task through the command context with the current thread's command context.
+     * The task is run inline if the current thread cannot be blocked waiting for it.
+     */
+    private Future<Void> submitTask(final Callable<Void> task) throws TeiidComponentException, TeiidProcessingException {
+        final CommandContext cc = CommandContext.getThreadLocalContext();
+        if (nonBlocking || cc == null || cc.getWorkItem() == null) {
+            try {
+                task.call();
+            } catch (TeiidComponentException | TeiidProcessingException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new TeiidRuntimeException(e);
+            }
+            return null;
+        }
+        return cc.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (cc != null) {
+                    CommandContext.pushThreadLocalContext(cc);
+                }
+                try {
+                    return task.call();
+                } finally {
+                    if (cc != null) {
+                        CommandContext.popThreadLocalContext();
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Throw a {@link BlockedException} until the pending task is done.  The work item is 
+     * notified of more work when the task completes.
+     */
+    private void awaitTask() throws BlockedException, TeiidComponentException, TeiidProcessingException {
+        if (pending == null) {
+            return;
+        }
+        if (!pending.isDone()) {
+            throw BlockedException.block("Waiting on parallel sort task"); //$NON-NLS-1$
+        }
+        Future<Void> task = pending;
+        pending = null;
+        getResult(task);
+    }
+    
+    /**
+     * Remove the completed run tasks and throw a {@link BlockedException} if more than max
+     * are still in flight.  The work item is notified of more work as each task completes.
+     */
+    private void awaitRunTasks(int max) throws BlockedException, TeiidComponentException, TeiidProcessingException {
+    	for (Iterator<RunTask> iter = runTasks.iterator(); iter.hasNext();) {
+    		RunTask task = iter.next();
+    		if (task.future.isDone()) {
+    			iter.remove();
+    			bufferManager.releaseBuffers(task.reserved);
+    			getResult(task.future);
+    		}
+    	}
+    	if (runTasks.size() > max) {
+    		throw BlockedException.block("Waiting on parallel sort runs"); //$NON-NLS-1$
+    	}
+    }
+
+    private static void getResult(Future<Void> task) throws TeiidComponentException, TeiidProcessingException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            throwCause(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TeiidRuntimeException(e);
+        }
+    }
+    
+    /**
+     * Cancel the pending tasks, or if they have already started wait for them as they may 
+     * still be using a buffer that is being removed
+     */
+    private void cleanupTasks() {
+    	cleanupTask(pending);
+    	pending = null;
+    	for (RunTask task : runTasks) {
+    		cleanupTask(task.future);
+    		bufferManager.releaseBuffers(task.reserved);
+    	}
+    	runTasks.clear();
+    }
+
+	private static void cleanupTask(Future<Void> task) {
+		if (task == null || task.cancel(false)) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            //already failing
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+	}
     
     private void workAsync(final int rowLimit, CommandContext cc) throws BlockedException {
         future = cc.submit(new Callable<Void>() {
@@ -414,6 +636,10 @@ public class SortUtility {
 
     private void sortWorking(int rowLimit)
             throws TeiidComponentException, TeiidProcessingException {
+    	if (runSource != null) {
+    		sortRuns(rowLimit, Long.MAX_VALUE);
+    		return;
+    	}
         //sub-phase 2 - perform a memory sort on the workingbuffer/source
     	int totalReservedBuffers = 0;
         try {
@@ -449,7 +675,14 @@ public class SortUtility {
 			ts.setReverse(!stableSort && workingBuffer.getRowCount() > this.batchSize);
 			maxRows = Math.max(1, (totalReservedBuffers/schemaSize))*batchSize;
 			boolean checkLimit = rowLimit > -1 && rowCount <= maxRows;
-            if (mode == Mode.SORT) {
+			if (parallel && rowCount > maxRows) {
+				//the runs reserve their own buffers
+				bufferManager.releaseBuffers(totalReservedBuffers);
+				totalReservedBuffers = 0;
+				startRuns(ts);
+				parallelSortWorking(rowLimit, Long.MAX_VALUE);
+				done = true;
+			} else if (mode == Mode.SORT) {
             	workingTuples = new AccessibleArrayList<>();
             } else {
             	workingTuples = new TreeSet<List<?>>(comparator);
@@ -493,21 +726,158 @@ public class SortUtility {
 		        sublist.saveBatch();
             }
         } catch (BlockedException e) {
-        	Assertion.failed("should not block during memory sublist sorting"); //$NON-NLS-1$
+        	if (runSource == null) {
+        		Assertion.failed("should not block during memory sublist sorting"); //$NON-NLS-1$
+        	}
+        	throw e; //waiting on the parallel sort
         } finally {
     		bufferManager.releaseBuffers(totalReservedBuffers);
-    		if (this.workingBuffer != null) {
-    			if (this.source != null) {
-    				this.workingBuffer.remove();
-    			}
-        		this.workingBuffer = null;
+    		if (runSource == null) {
+    			removeWorkingBuffer();
     		}
         }
     	
-    	if (this.activeTupleBuffers.isEmpty()) {
+    	startMerge();
+    }
+    
+    private void removeWorkingBuffer() {
+		if (this.workingBuffer != null) {
+			if (this.source != null) {
+				this.workingBuffer.remove();
+			}
+    		this.workingBuffer = null;
+		}
+	}
+
+	private void startMerge() throws TeiidComponentException {
+		if (this.activeTupleBuffers.isEmpty()) {
             activeTupleBuffers.add(createTupleBuffer());
         }  
         this.phase = MERGE;
+	}
+
+    private void startRuns(TupleSource ts) {
+    	CommandContext cc = CommandContext.getThreadLocalContext();
+    	this.maxRunTasks = cc == null?1:Math.max(1, cc.getUserRequestSourceConcurrency());
+    	//bound the rows held by the runs in flight and the run being read to the processing size
+    	this.runRows = Math.max(1, bufferManager.getMaxProcessingSize()/schemaSize/(maxRunTasks + 1))*batchSize;
+    	this.runSource = ts;
+    	this.runsRead = false;
+    }
+    
+    private void sortRuns(int rowLimit, long end) throws TeiidComponentException, TeiidProcessingException {
+    	parallelSortWorking(rowLimit, end);
+    	removeWorkingBuffer();
+    	startMerge();
+    }
+
+    /**
+     * Create the sorted sublists as the runs are read.  Each full run is sorted and written by another
+     * thread while the next run is read, with at most maxRunTasks runs in flight.  If the source blocks
+     * or too many runs are in flight a {@link BlockedException} is thrown and the read run is retained.
+     */
+    private void parallelSortWorking(int rowLimit, long end) throws TeiidComponentException, TeiidProcessingException {
+    	while (true) {
+    		if (run == null) {
+    			run = new AccessibleArrayList<List<?>>();
+    		}
+    		while (!runsRead && run.size() < runRows) {
+    			List<?> tuple = runSource.nextTuple();
+    			if (tuple == null) {
+    				runsRead = true;
+    				break;
+    			}
+    			if (run.size()%batchSize == 0) {
+    				runReserved += bufferManager.reserveBuffers(schemaSize, BufferReserveMode.FORCE);
+    			}
+    			run.add(tuple);
+    			if (end != Long.MAX_VALUE && (run.size()%32)==1 && System.nanoTime() > end) {
+            	    CommandContext.getThreadLocalContext().getWorkItem().moreWork();
+            	    throw BlockedException.block("Blocking on large sort"); //$NON-NLS-1$
+    			}
+    		}
+    		if (run.size() == 0) {
+    			run = null;
+    			break;
+    		}
+    		if (runsRead && runTasks.isEmpty() && activeTupleBuffers.isEmpty()) {
+    			//a single run, so there is nothing to overlap
+    			TupleBuffer sublist = createTupleBuffer();
+    			activeTupleBuffers.add(sublist);
+    			AccessibleArrayList<List<?>> toWrite = run;
+    			run = null;
+    			try {
+    				writeRun(sublist, toWrite.elementData, toWrite.size(), rowLimit);
+    			} finally {
+    				bufferManager.releaseBuffers(runReserved);
+    				runReserved = 0;
+    			}
+    			break;
+    		}
+    		awaitRunTasks(maxRunTasks - 1);
+    		final TupleBuffer sublist = createTupleBuffer();
+    		activeTupleBuffers.add(sublist);
+    		final AccessibleArrayList<List<?>> toWrite = run;
+    		run = null;
+    		int reserved = runReserved;
+    		runReserved = 0;
+    		Future<Void> task = null;
+    		try {
+	    		task = submitTask(new Callable<Void>() {
+	    			@Override
+	    			public Void call() throws Exception {
+	    				writeRun(sublist, toWrite.elementData, toWrite.size(), -1);
+	    				return null;
+	    			}
+	    		});
+    		} finally {
+    			if (task == null) {
+    				bufferManager.releaseBuffers(reserved);
+    			} else {
+    				runTasks.add(new RunTask(task, reserved));
+    			}
+    		}
+    		if (runsRead) {
+    			break;
+    		}
+    	}
+    	awaitRunTasks(0);
+    	if (runSource == source) {
+    		doneReading = true;
+    		//the working buffer row size estimate was not available
+    		int estimate = activeTupleBuffers.isEmpty()?0:activeTupleBuffers.get(0).getRowSizeEstimate();
+    		if (estimate > 0) {
+    			schemaSize = estimate*this.batchSize;
+    		}
+    	}
+    	runSource = null;
+    }
+    
+    /**
+     * Sort and write a run, removing duplicates if needed.  The stable sort retains the first of
+     * the duplicates, which matches the in memory {@link TreeSet}.
+     */
+    @SuppressWarnings("unchecked")
+	private void writeRun(TupleBuffer sublist, Object[] run, int size, int rowLimit) throws TeiidComponentException {
+    	if (size > (1<<18)) {
+    		Arrays.parallelSort(run, 0, size, comparator);
+    	} else {
+    		Arrays.sort(run, 0, size, comparator);
+    	}
+    	List<?> last = null;
+    	for (int i = 0; i < size; i++) {
+    		List<?> tuple = (List<?>)run[i];
+    		run[i] = null;
+    		if (mode != Mode.SORT && last != null && comparator.compare(last, tuple) == 0) {
+    			continue;
+    		}
+    		sublist.addTuple(tuple);
+    		last = tuple;
+    		if (sublist.getRowCount() == rowLimit) {
+    			break;
+    		}
+    	}
+    	sublist.saveBatch();
     }
 
     public void setWorkingBuffer(TupleBuffer workingBuffer) {
@@ -528,7 +898,84 @@ public class SortUtility {
     }
     
     protected void doMerge(int rowLimit) throws TeiidComponentException, TeiidProcessingException {
-    	long desiredSpace = activeTupleBuffers.size() * (long)schemaSize;
+    	int reserved = 0;
+    	if (parallelMerge != null) {
+    		//resume the parallel merge pass with its reservation
+    		reserved = mergeReserved;
+    		mergeReserved = 0;
+    	} else {
+    		reserved = reserveMergeBuffers();
+    	}
+        
+        try {
+        	while(this.activeTupleBuffers.size() > 1) {    		
+	            TupleBuffer merged = parallelMerge != null?parallelMerge.merged:createTupleBuffer();
+
+	            long desiredSpace = activeTupleBuffers.size() * (long)schemaSize;
+	            if (desiredSpace < reserved) {
+	            	bufferManager.releaseBuffers(reserved - (int)desiredSpace);
+	            	reserved = (int)desiredSpace;
+	            }
+	            int maxSortIndex = Math.max(2, reserved / schemaSize); //always allow progress
+	            
+            	if (LogManager.isMessageToBeRecorded(org.teiid.logging.LogConstants.CTX_DQP, MessageLevel.TRACE)) {
+	            	LogManager.logTrace(org.teiid.logging.LogConstants.CTX_DQP, "Merging", maxSortIndex, "sublists out of", activeTupleBuffers.size()); //$NON-NLS-1$ //$NON-NLS-2$
+	            }
+	            boolean checkLimit = maxSortIndex == activeTupleBuffers.size() && rowLimit > -1;
+	            
+	            if (parallel) {
+	            	if (parallelMerge == null) {
+	            		parallelMerge = new ParallelMerge(merged, maxSortIndex, checkLimit?rowLimit:-1);
+	            	}
+	            	try {
+	            		parallelMerge.merge();
+	            	} catch (BlockedException e) {
+	            		//retain the reservation until the pass is resumed
+	            		mergeReserved = reserved;
+	            		reserved = 0;
+	            		throw e;
+	            	}
+	            	parallelMerge = null;
+	            } else {
+		    		ArrayList<SortedSublist> sublists = new ArrayList<SortedSublist>(maxSortIndex);
+		        	// initialize the sublists with the min value
+		            for(int i = 0; i<maxSortIndex; i++) { 
+		             	TupleBuffer activeID = activeTupleBuffers.get(i);
+		             	SortedSublist sortedSublist = new SortedSublist();
+		            	sortedSublist.its = activeID.createIndexedTupleSource();
+		            	sortedSublist.its.setNoBlocking(true);
+		            	sortedSublist.index = i;
+		            	incrementWorkingTuple(sublists, sortedSublist);
+		            }
+	            
+		            // iteratively process the lowest tuple
+		            while (sublists.size() > 0) {
+		            	SortedSublist sortedSublist = sublists.remove(sublists.size() - 1);
+		        		merged.addTuple(sortedSublist.tuple);
+		            	incrementWorkingTuple(sublists, sortedSublist);
+	            	
+		            	if (checkLimit && merged.getRowCount() == rowLimit) {
+		            		//early exit for row limit
+		            		break;
+		            	}
+		            }                
+	            }
+	
+	            // Remove merged sublists
+	            for(int i=0; i<maxSortIndex; i++) {
+	            	TupleBuffer id = activeTupleBuffers.remove(0);
+            		id.remove();
+	            }
+	            merged.saveBatch();
+	            this.activeTupleBuffers.add(merged);           
+    		}
+        } finally {
+        	this.bufferManager.releaseBuffers(reserved);
+        }
+    }
+
+	private int reserveMergeBuffers() throws TeiidComponentException {
+		long desiredSpace = activeTupleBuffers.size() * (long)schemaSize;
         int toForce = (int)Math.min(desiredSpace, Math.max(2*schemaSize, this.bufferManager.getMaxProcessingSize()));
         int reserved = 0;
         
@@ -567,59 +1014,78 @@ public class SortUtility {
             toForce -= total % schemaSize;
         }
         reserved += bufferManager.reserveBuffers(toForce, BufferReserveMode.FORCE);
-        
-        try {
-        	while(this.activeTupleBuffers.size() > 1) {    		
-	    		ArrayList<SortedSublist> sublists = new ArrayList<SortedSublist>(activeTupleBuffers.size());
-	            
-	            TupleBuffer merged = createTupleBuffer();
+        return reserved;
+	}
 
-	            desiredSpace = activeTupleBuffers.size() * (long)schemaSize;
-	            if (desiredSpace < reserved) {
-	            	bufferManager.releaseBuffers(reserved - (int)desiredSpace);
-	            	reserved = (int)desiredSpace;
-	            }
-	            int maxSortIndex = Math.max(2, reserved / schemaSize); //always allow progress
-	            
-            	if (LogManager.isMessageToBeRecorded(org.teiid.logging.LogConstants.CTX_DQP, MessageLevel.TRACE)) {
-	            	LogManager.logTrace(org.teiid.logging.LogConstants.CTX_DQP, "Merging", maxSortIndex, "sublists out of", activeTupleBuffers.size()); //$NON-NLS-1$ //$NON-NLS-2$
-	            }
-	        	// initialize the sublists with the min value
-	            for(int i = 0; i<maxSortIndex; i++) { 
-	             	TupleBuffer activeID = activeTupleBuffers.get(i);
-	             	SortedSublist sortedSublist = new SortedSublist();
-	            	sortedSublist.its = activeID.createIndexedTupleSource();
-	            	sortedSublist.its.setNoBlocking(true);
-	            	sortedSublist.index = i;
-	            	incrementWorkingTuple(sublists, sortedSublist);
-	            }
-	            
-	            boolean checkLimit = maxSortIndex == activeTupleBuffers.size() && rowLimit > -1;
-	            
-	            // iteratively process the lowest tuple
-	            while (sublists.size() > 0) {
-	            	SortedSublist sortedSublist = sublists.remove(sublists.size() - 1);
-	        		merged.addTuple(sortedSublist.tuple);
-	            	incrementWorkingTuple(sublists, sortedSublist);
-	            	
-	            	if (checkLimit && merged.getRowCount() == rowLimit) {
-	            		//early exit for row limit
-	            		break;
-	            	}
-	            }                
-	
-	            // Remove merged sublists
-	            for(int i=0; i<maxSortIndex; i++) {
-	            	TupleBuffer id = activeTupleBuffers.remove(0);
-            		id.remove();
-	            }
-	            merged.saveBatch();
-	            this.activeTupleBuffers.add(merged);           
-    		}
-        } finally {
-        	this.bufferManager.releaseBuffers(reserved);
-        }
-    }
+	/**
+	 * A merge pass with a {@link LoserTree}.  Full batches of the output are written by another 
+	 * thread while the merge continues.  The state is retained when blocked on a pending write.
+	 */
+	private class ParallelMerge {
+		final TupleBuffer merged;
+		private final int rowLimit;
+		private final LoserTree tree;
+		private List<List<?>> batch = new ArrayList<List<?>>(batchSize);
+		private List<?> last;
+		private long rowCount;
+		private boolean done;
+		
+		ParallelMerge(TupleBuffer merged, int count, int rowLimit) throws TeiidComponentException, TeiidProcessingException {
+			this.merged = merged;
+			this.rowLimit = rowLimit;
+			SortedSublist[] sources = new SortedSublist[count];
+			for (int i = 0; i < count; i++) {
+				SortedSublist sortedSublist = new SortedSublist();
+				sortedSublist.its = activeTupleBuffers.get(i).createIndexedTupleSource();
+				sortedSublist.its.setNoBlocking(true);
+				sortedSublist.index = i;
+				sortedSublist.tuple = sortedSublist.its.nextTuple();
+				sources[i] = sortedSublist;
+			}
+			this.tree = new LoserTree(sources);
+		}
+		
+		void merge() throws TeiidComponentException, TeiidProcessingException {
+			while (true) {
+				if (batch.size() == batchSize || (done && !batch.isEmpty())) {
+					//only one write may be in progress to preserve the order
+					awaitTask();
+					final List<List<?>> toWrite = batch;
+					batch = new ArrayList<List<?>>(batchSize);
+					pending = submitTask(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							for (List<?> tuple : toWrite) {
+								merged.addTuple(tuple);
+							}
+							return null;
+						}
+					});
+				}
+				if (done) {
+					break;
+				}
+				SortedSublist sortedSublist = tree.top();
+				List<?> tuple = sortedSublist.tuple;
+				if (tuple == null) {
+					done = true;
+					continue;
+				}
+				if (mode == Mode.SORT || last == null || comparator.compare(last, tuple) != 0) {
+					batch.add(tuple);
+					last = tuple;
+					if (++rowCount == rowLimit) {
+						//early exit for row limit
+						done = true;
+						continue;
+					}
+				}
+				sortedSublist.tuple = sortedSublist.its.nextTuple();
+				tree.replay(sortedSublist.index);
+			}
+			awaitTask();
+		}
+	}
 
 	private void incrementWorkingTuple(ArrayList<SortedSublist> subLists, SortedSublist sortedSublist) throws TeiidComponentException, TeiidProcessingException {
 		while (true) {
@@ -645,6 +1111,19 @@ public class SortUtility {
     }
 
 	public synchronized void remove() {
+		cleanupTasks();
+		if (runSource != null) {
+			runSource = null;
+			run = null;
+			bufferManager.releaseBuffers(runReserved);
+			runReserved = 0;
+		}
+		if (parallelMerge != null) {
+			parallelMerge.merged.remove();
+			parallelMerge = null;
+			bufferManager.releaseBuffers(mergeReserved);
+			mergeReserved = 0;
+		}
 		if (workingBuffer != null && source != null) {
 			workingBuffer.remove();
 			workingBuffer = null;
@@ -671,6 +1150,10 @@ public class SortUtility {
 		this.stableSort = stableSort;
 	}
 	
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
 	void setBatchSize(int batchSize) {
 		this.batchSize = batchSize;
 	}
@@ -80,6 +80,13 @@ public abstract class SubqueryAwareRelationalNode extends RelationalNode {
 		}
 	}
 	
+	/**
+	 * Compile the expressions that are evaluated for each row.  Should be called once the children
+	 * have been added.  The compiled forms are shared by clones of this node.
+	 */
+	public void compileExpressions() {
+	}
+	
 	abstract public Collection<? extends LanguageObject> getObjects();
 	
 	@Override
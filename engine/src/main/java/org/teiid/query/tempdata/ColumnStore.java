@@ -0,0 +1,805 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.tempdata;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.teiid.client.BatchSerializer;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.TeiidProcessingException;
+import org.teiid.core.types.DataTypeManager;
+import org.teiid.query.processor.relational.ListNestedSortComparator;
+import org.teiid.query.sql.lang.CompareCriteria;
+import org.teiid.query.sql.lang.Criteria;
+import org.teiid.query.sql.lang.IsNullCriteria;
+import org.teiid.query.sql.lang.SetCriteria;
+import org.teiid.query.sql.symbol.Constant;
+import org.teiid.query.sql.symbol.ElementSymbol;
+import org.teiid.query.sql.symbol.Expression;
+import org.teiid.translator.ExecutionFactory.NullOrder;
+
+/**
+ * An immutable columnar copy of the rows of a non-updatable {@link TempTable}, which
+ * replaces the rows of the table tree once loaded.
+ * <br>
+ * The rows are kept in key order and split into segments of {@link #SEGMENT_SIZE} rows.  
+ * Each column of a segment is run length encoded, bit packed relative to the minimum value for
+ * integral types, dictionary encoded, or left as plain values - whichever applies first.  Each
+ * segment also has a zone map of the minimum and maximum value of each comparable column.
+ * <br>
+ * Key lookups and ranges are found by binary search over the row positions.  Scans skip 
+ * segments using the zone maps and evaluate simple column predicates against the encoded
+ * values before the rows are built.
+ */
+class ColumnStore {
+	
+	static final int SEGMENT_BITS = 10;
+	static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	
+	/**
+	 * A column predicate that can be evaluated against encoded values and zone maps.
+	 */
+	static final class ColumnPredicate {
+		private static final int IN = -1;
+		private static final int IS_NULL = -2;
+		
+		final int column;
+		final int operator;
+		final Object value;
+		final Object[] values;
+		final boolean negated;
+		
+		private ColumnPredicate(int column, int operator, Object value, Object[] values, boolean negated) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+			this.values = values;
+			this.negated = negated;
+		}
+		
+		boolean matches(Object v) {
+			if (operator == IS_NULL) {
+				return (v == null) != negated;
+			}
+			if (v == null) {
+				return false;
+			}
+			if (operator == IN) {
+				return Arrays.binarySearch(values, v, Constant.COMPARATOR) >= 0;
+			}
+			return matches(Constant.COMPARATOR.compare(v, value));
+		}
+		
+		boolean matches(int compare) {
+			switch (operator) {
+			case CompareCriteria.EQ:
+				return compare == 0;
+			case CompareCriteria.NE:
+				return compare != 0;
+			case CompareCriteria.LT:
+				return compare < 0;
+			case CompareCriteria.GT:
+				return compare > 0;
+			case CompareCriteria.LE:
+				return compare <= 0;
+			default:
+				return compare >= 0;
+			}
+		}
+		
+		/**
+		 * @return false if no row of the segment can match
+		 */
+		boolean matches(Segment segment) {
+			int nulls = segment.nullCount[column];
+			if (operator == IS_NULL) {
+				return negated ? nulls < segment.size : nulls > 0;
+			}
+			if (nulls == segment.size) {
+				return false;
+			}
+			Object min = segment.min[column];
+			Object max = segment.max[column];
+			if (min == null) {
+				return true;
+			}
+			if (operator == IN) {
+				for (Object v : values) {
+					if (Constant.COMPARATOR.compare(v, min) >= 0 && Constant.COMPARATOR.compare(v, max) <= 0) {
+						return true;
+					}
+				}
+				return false;
+			}
+			switch (operator) {
+			case CompareCriteria.EQ:
+				return Constant.COMPARATOR.compare(value, min) >= 0 && Constant.COMPARATOR.compare(value, max) <= 0;
+			case CompareCriteria.NE:
+				return Constant.COMPARATOR.compare(value, min) != 0 || Constant.COMPARATOR.compare(value, max) != 0;
+			case CompareCriteria.LT:
+				return Constant.COMPARATOR.compare(min, value) < 0;
+			case CompareCriteria.LE:
+				return Constant.COMPARATOR.compare(min, value) <= 0;
+			case CompareCriteria.GT:
+				return Constant.COMPARATOR.compare(max, value) > 0;
+			default:
+				return Constant.COMPARATOR.compare(max, value) >= 0;
+			}
+		}
+		
+	}
+	
+	/**
+	 * The encoded values of a column in a segment.
+	 */
+	abstract static class EncodedColumn {
+		
+		abstract Object get(int row);
+		
+		/**
+		 * Clear the selection of the rows in [from, to) that do not match
+		 */
+		void filter(ColumnPredicate predicate, int from, int to, long[] selection) {
+			for (int row = from; row < to; row++) {
+				if (isSelected(selection, row) && !predicate.matches(get(row))) {
+					clear(selection, row);
+				}
+			}
+		}
+		
+	}
+	
+	static final class PlainColumn extends EncodedColumn {
+		private final Object[] values;
+		
+		PlainColumn(Object[] values) {
+			this.values = values;
+		}
+		
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+	}
+	
+	static final class RunLengthColumn extends EncodedColumn {
+		private final Object[] values;
+		private final int[] ends;
+		
+		RunLengthColumn(Object[] values, int[] ends) {
+			this.values = values;
+			this.ends = ends;
+		}
+		
+		@Override
+		Object get(int row) {
+			int index = Arrays.binarySearch(ends, row + 1);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return values[index];
+		}
+		
+		@Override
+		void filter(ColumnPredicate predicate, int from, int to, long[] selection) {
+			int start = 0;
+			for (int i = 0; i < values.length && start < to; i++) {
+				int end = ends[i];
+				if (end > from && !predicate.matches(values[i])) {
+					for (int row = Math.max(start, from); row < Math.min(end, to); row++) {
+						clear(selection, row);
+					}
+				}
+				start = end;
+			}
+		}
+	}
+	
+	/**
+	 * Dictionary codes, where 0 is null
+	 */
+	static final class DictionaryColumn extends EncodedColumn {
+		private final Object[] dictionary;
+		private final long[] codes;
+		private final int bits;
+		
+		DictionaryColumn(Object[] dictionary, long[] codes, int bits) {
+			this.dictionary = dictionary;
+			this.codes = codes;
+			this.bits = bits;
+		}
+		
+		@Override
+		Object get(int row) {
+			return dictionary[(int)unpack(codes, row, bits)];
+		}
+		
+		@Override
+		void filter(ColumnPredicate predicate, int from, int to, long[] selection) {
+			boolean[] matches = new boolean[dictionary.length];
+			for (int i = 0; i < dictionary.length; i++) {
+				matches[i] = predicate.matches(dictionary[i]);
+			}
+			for (int row = from; row < to; row++) {
+				if (!matches[(int)unpack(codes, row, bits)]) {
+					clear(selection, row);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Integral values stored as the bit packed offset from the minimum value plus one, where 0 is null
+	 */
+	static final class PackedColumn extends EncodedColumn {
+		private final Class<?> type;
+		private final long base;
+		private final long[] codes;
+		private final int bits;
+		
+		PackedColumn(Class<?> type, long base, long[] codes, int bits) {
+			this.type = type;
+			this.base = base;
+			this.codes = codes;
+			this.bits = bits;
+		}
+		
+		@Override
+		Object get(int row) {
+			long code = unpack(codes, row, bits);
+			if (code == 0) {
+				return null;
+			}
+			return toValue(type, code - 1 + base);
+		}
+		
+		@Override
+		void filter(ColumnPredicate predicate, int from, int to, long[] selection) {
+			if (predicate.value == null) {
+				super.filter(predicate, from, to, selection);
+				return;
+			}
+			long value = ((Number)predicate.value).longValue();
+			for (int row = from; row < to; row++) {
+				long code = unpack(codes, row, bits);
+				if (code == 0 || !predicate.matches(Long.compare(code - 1 + base, value))) {
+					clear(selection, row);
+				}
+			}
+		}
+	}
+	
+	static final class Segment {
+		final int size;
+		final EncodedColumn[] columns;
+		final Object[] min;
+		final Object[] max;
+		final int[] nullCount;
+		
+		Segment(int size, int columnCount) {
+			this.size = size;
+			this.columns = new EncodedColumn[columnCount];
+			this.min = new Object[columnCount];
+			this.max = new Object[columnCount];
+			this.nullCount = new int[columnCount];
+		}
+	}
+	
+	private Class<?>[] types;
+	private boolean[] comparable;
+	private int keyLength;
+	private List<Segment> segments = new ArrayList<Segment>();
+	private long rowCount;
+	
+	ColumnStore(List<? extends Expression> columns, int keyLength) {
+		this.types = new Class<?>[columns.size()];
+		this.comparable = new boolean[columns.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = columns.get(i).getType();
+			comparable[i] = !DataTypeManager.isNonComparable(DataTypeManager.getDataTypeName(types[i]));
+		}
+		this.keyLength = keyLength;
+	}
+	
+	/**
+	 * Add all of the rows from the tuple source, which must be in key order
+	 */
+	void addAll(TupleSource ts) throws TeiidComponentException, TeiidProcessingException {
+		Object[][] values = new Object[types.length][SEGMENT_SIZE];
+		int count = 0;
+		List<?> row = null;
+		while ((row = ts.nextTuple()) != null) {
+			for (int i = 0; i < types.length; i++) {
+				values[i][count] = row.get(i);
+			}
+			if (++count == SEGMENT_SIZE) {
+				addSegment(values, count);
+				count = 0;
+			}
+		}
+		if (count > 0) {
+			addSegment(values, count);
+		}
+	}
+	
+	private void addSegment(Object[][] values, int size) {
+		Segment segment = new Segment(size, types.length);
+		for (int i = 0; i < types.length; i++) {
+			segment.columns[i] = encode(values[i], size, i, segment);
+		}
+		segments.add(segment);
+		rowCount += size;
+	}
+
+	private EncodedColumn encode(Object[] values, int size, int column, Segment segment) {
+		Map<Object, Integer> dictionary = new HashMap<Object, Integer>();
+		int runs = 0;
+		Object min = null;
+		Object max = null;
+		int nulls = 0;
+		for (int i = 0; i < size; i++) {
+			Object value = values[i];
+			if (i == 0 || !equals(values[i - 1], value)) {
+				runs++;
+			}
+			if (value == null) {
+				nulls++;
+				continue;
+			}
+			if (dictionary != null && !dictionary.containsKey(value)) {
+				if (dictionary.size() >= size / 2) {
+					dictionary = null;
+				} else {
+					dictionary.put(value, dictionary.size() + 1);
+				}
+			}
+			if (comparable[column]) {
+				if (min == null || Constant.COMPARATOR.compare(value, min) < 0) {
+					min = value;
+				}
+				if (max == null || Constant.COMPARATOR.compare(value, max) > 0) {
+					max = value;
+				}
+			}
+		}
+		segment.nullCount[column] = nulls;
+		segment.min[column] = min;
+		segment.max[column] = max;
+		if (runs * 4 <= size) {
+			Object[] runValues = new Object[runs];
+			int[] ends = new int[runs];
+			int run = 0;
+			for (int i = 1; i <= size; i++) {
+				if (i == size || !equals(values[i - 1], values[i])) {
+					runValues[run] = values[i - 1];
+					ends[run++] = i;
+				}
+			}
+			return new RunLengthColumn(runValues, ends);
+		}
+		Class<?> type = types[column];
+		if (min != null && isIntegral(type)) {
+			long base = ((Number)min).longValue();
+			long range = ((Number)max).longValue() - base + 1;
+			if (range > 0) {
+				int bits = bitsFor(range);
+				long[] codes = new long[words(size, bits)];
+				for (int i = 0; i < size; i++) {
+					if (values[i] != null) {
+						pack(codes, i, bits, ((Number)values[i]).longValue() - base + 1);
+					}
+				}
+				return new PackedColumn(type, base, codes, bits);
+			}
+		}
+		if (dictionary != null) {
+			Object[] entries = new Object[dictionary.size() + 1];
+			for (Map.Entry<Object, Integer> entry : dictionary.entrySet()) {
+				entries[entry.getValue()] = entry.getKey();
+			}
+			int bits = bitsFor(dictionary.size());
+			long[] codes = new long[words(size, bits)];
+			for (int i = 0; i < size; i++) {
+				if (values[i] != null) {
+					pack(codes, i, bits, dictionary.get(values[i]));
+				}
+			}
+			return new DictionaryColumn(entries, codes, bits);
+		}
+		return new PlainColumn(Arrays.copyOf(values, size));
+	}
+	
+	private static boolean equals(Object o1, Object o2) {
+		if (o1 == null) {
+			return o2 == null;
+		}
+		return o1.equals(o2);
+	}
+	
+	static boolean isIntegral(Class<?> type) {
+		return type == DataTypeManager.DefaultDataClasses.INTEGER
+				|| type == DataTypeManager.DefaultDataClasses.LONG
+				|| type == DataTypeManager.DefaultDataClasses.SHORT
+				|| type == DataTypeManager.DefaultDataClasses.BYTE;
+	}
+	
+	static Object toValue(Class<?> type, long value) {
+		if (type == DataTypeManager.DefaultDataClasses.INTEGER) {
+			return Integer.valueOf((int)value);
+		}
+		if (type == DataTypeManager.DefaultDataClasses.LONG) {
+			return Long.valueOf(value);
+		}
+		if (type == DataTypeManager.DefaultDataClasses.SHORT) {
+			return Short.valueOf((short)value);
+		}
+		return Byte.valueOf((byte)value);
+	}
+	
+	/**
+	 * @return the number of bits needed for values from 0 to max
+	 */
+	static int bitsFor(long max) {
+		return 64 - Long.numberOfLeadingZeros(max);
+	}
+	
+	private static int words(int size, int bits) {
+		return (int)(((long)size * bits + 63) >>> 6);
+	}
+	
+	static void pack(long[] data, int index, int bits, long value) {
+		if (bits == 0) {
+			return;
+		}
+		long bitIndex = (long)index * bits;
+		int word = (int)(bitIndex >>> 6);
+		int shift = (int)(bitIndex & 63);
+		data[word] |= value << shift;
+		if (shift + bits > 64) {
+			data[word + 1] |= value >>> (64 - shift);
+		}
+	}
+	
+	static long unpack(long[] data, int index, int bits) {
+		if (bits == 0) {
+			return 0;
+		}
+		long bitIndex = (long)index * bits;
+		int word = (int)(bitIndex >>> 6);
+		int shift = (int)(bitIndex & 63);
+		long value = data[word] >>> shift;
+		if (shift + bits > 64) {
+			value |= data[word + 1] << (64 - shift);
+		}
+		return value & (-1L >>> (64 - bits));
+	}
+	
+	static boolean isSelected(long[] selection, int row) {
+		return (selection[row >>> 6] & (1L << row)) != 0;
+	}
+	
+	static void clear(long[] selection, int row) {
+		selection[row >>> 6] &= ~(1L << row);
+	}
+	
+	long getRowCount() {
+		return rowCount;
+	}
+	
+	private Object get(long position, int column) {
+		Segment segment = segments.get((int)(position >>> SEGMENT_BITS));
+		return segment.columns[column].get((int)(position & (SEGMENT_SIZE - 1)));
+	}
+	
+	List<?> getRow(long position) {
+		return getRow(segments.get((int)(position >>> SEGMENT_BITS)), (int)(position & (SEGMENT_SIZE - 1)), null);
+	}
+	
+	private List<?> getRow(Segment segment, int row, boolean[] needed) {
+		Object[] values = new Object[types.length];
+		for (int i = 0; i < values.length; i++) {
+			if (needed == null || needed[i]) {
+				values[i] = segment.columns[i].get(row);
+			}
+		}
+		return Arrays.asList(values);
+	}
+	
+	/**
+	 * Get the simple predicates from the conjuncts of the condition
+	 */
+	List<ColumnPredicate> getPredicates(Criteria condition, Map<Expression, Integer> columnMap) {
+		List<ColumnPredicate> result = new ArrayList<ColumnPredicate>();
+		if (condition == null) {
+			return result;
+		}
+		for (Criteria crit : Criteria.separateCriteriaByAnd(condition)) {
+			if (crit instanceof CompareCriteria) {
+				CompareCriteria cc = (CompareCriteria)crit;
+				Integer column = columnMap.get(cc.getLeftExpression());
+				if (column == null || !comparable[column] || !(cc.getRightExpression() instanceof Constant)) {
+					continue;
+				}
+				Constant constant = (Constant)cc.getRightExpression();
+				if (constant.isMultiValued() || !types[column].isInstance(constant.getValue())) {
+					continue;
+				}
+				result.add(new ColumnPredicate(column, cc.getOperator(), constant.getValue(), null, false));
+			} else if (crit instanceof SetCriteria) {
+				SetCriteria sc = (SetCriteria)crit;
+				Integer column = columnMap.get(sc.getExpression());
+				if (column == null || !comparable[column] || sc.isNegated()) {
+					continue;
+				}
+				Object[] values = getValues(sc.getValues(), types[column]);
+				if (values != null) {
+					result.add(new ColumnPredicate(column, ColumnPredicate.IN, null, values, false));
+				}
+			} else if (crit instanceof IsNullCriteria) {
+				IsNullCriteria inc = (IsNullCriteria)crit;
+				Integer column = columnMap.get(inc.getExpression());
+				if (column != null) {
+					result.add(new ColumnPredicate(column, ColumnPredicate.IS_NULL, null, null, inc.isNegated()));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Object[] getValues(Collection<?> constants, Class<?> type) {
+		Object[] values = new Object[constants.size()];
+		int i = 0;
+		for (Object ex : constants) {
+			if (!(ex instanceof Constant)) {
+				return null;
+			}
+			Object value = ((Constant)ex).getValue();
+			if (!type.isInstance(value)) {
+				return null;
+			}
+			values[i++] = value;
+		}
+		Arrays.sort(values, Constant.COMPARATOR);
+		return values;
+	}
+	
+	/**
+	 * @return the columns referenced by the expressions or null if all columns are needed 
+	 */
+	static boolean[] getNeededColumns(Collection<? extends Expression> expressions, Map<Expression, Integer> columnMap) {
+		boolean[] needed = new boolean[columnMap.size()];
+		for (Expression ex : expressions) {
+			Integer index = columnMap.get(ex);
+			if (index == null) {
+				return null;
+			}
+			needed[index] = true;
+		}
+		return needed;
+	}
+	
+	/**
+	 * Create a tuple source for the index info, which should be for the primary key.
+	 * @param predicates the predicates to evaluate for scans
+	 * @param needed the columns to include in the rows, or null for all 
+	 */
+	TupleSource createTupleSource(final IndexInfo ii, final List<ColumnPredicate> predicates, final boolean[] needed, final boolean direction, final NullOrder nullOrder) {
+		if (ii.valueTs == null && ii.valueSet.isEmpty()) {
+			long lo = 0;
+			long hi = rowCount;
+			if (ii.lower != null) {
+				lo = search(ii.lower, false, nullOrder);
+			}
+			if (ii.upper != null) {
+				hi = search(ii.upper, true, nullOrder);
+			}
+			final long[] bounds = new long[] {lo, hi};
+			return new RangeTupleSource(direction, needed, predicates) {
+				boolean done;
+				
+				@Override
+				protected long[] nextRange() {
+					if (done) {
+						return null;
+					}
+					done = true;
+					return bounds;
+				}
+			};
+		}
+		if (ii.valueTs == null) {
+			ii.sortValueSet(direction, nullOrder);
+		}
+		return new RangeTupleSource(direction, needed, null) {
+			int index;
+			List<?> last;
+			
+			@Override
+			protected long[] nextRange() throws TeiidComponentException, TeiidProcessingException {
+				for (;;) {
+					List<?> key = null;
+					if (ii.valueTs != null) {
+						key = ii.valueTs.nextTuple();
+					} else if (index < ii.valueSet.size()) {
+						key = ii.valueSet.get(index++);
+					}
+					if (key == null) {
+						return null;
+					}
+					if (key.equals(last)) {
+						continue;
+					}
+					last = key;
+					return new long[] {search(key, false, nullOrder), search(key, true, nullOrder)};
+				}
+			}
+			
+			@Override
+			public void closeSource() {
+				if (ii.valueTs != null) {
+					ii.valueTs.closeSource();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Binary search for the first row position with a key greater than or equal to (or greater than if after is true)
+	 * the key values, which may be a prefix of the key.
+	 */
+	@SuppressWarnings("unchecked")
+	long search(List<?> key, boolean after, NullOrder nullOrder) {
+		int length = Math.min(key.size(), keyLength);
+		int[] compareIndexes = new int[length];
+		for (int i = 0; i < length; i++) {
+			compareIndexes[i] = i;
+		}
+		ListNestedSortComparator comparator = new ListNestedSortComparator(compareIndexes).defaultNullOrder(nullOrder);
+		Object[] rowKey = new Object[length];
+		List<Object> rowKeyList = Arrays.asList(rowKey);
+		long lo = 0;
+		long hi = rowCount;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			for (int i = 0; i < length; i++) {
+				rowKey[i] = get(mid, i);
+			}
+			int compare = comparator.compare(rowKeyList, key);
+			if (compare < 0 || (after && compare == 0)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	/**
+	 * Iterates the rows of a sequence of position ranges in the given direction
+	 */
+	private abstract class RangeTupleSource implements TupleSource {
+		private final boolean direction;
+		private final boolean[] needed;
+		private final List<ColumnPredicate> predicates;
+		private long[] range;
+		private long position;
+		private Segment segment;
+		private long segmentStart;
+		private int from;
+		private int to;
+		private int row;
+		private long[] selection;
+
+		RangeTupleSource(boolean direction, boolean[] needed, List<ColumnPredicate> predicates) {
+			this.direction = direction;
+			this.needed = needed;
+			if (predicates != null && !predicates.isEmpty()) {
+				this.predicates = predicates;
+				this.selection = new long[SEGMENT_SIZE >>> 6];
+			} else {
+				this.predicates = null;
+			}
+		}
+		
+		/**
+		 * @return the next [start, end) range or null if there are no more
+		 */
+		protected abstract long[] nextRange() throws TeiidComponentException, TeiidProcessingException;
+		
+		@Override
+		public List<?> nextTuple() throws TeiidComponentException, TeiidProcessingException {
+			for (;;) {
+				if (segment != null) {
+					while (direction ? row < to : row >= from) {
+						int current = row;
+						row += direction ? 1 : -1;
+						if (selection == null || isSelected(selection, current)) {
+							return getRow(segment, current, needed);
+						}
+					}
+					position = segmentStart + (direction ? to : from - 1);
+					segment = null;
+				}
+				if (range == null || (direction ? position >= range[1] : position < range[0])) {
+					range = nextRange();
+					if (range == null) {
+						return null;
+					}
+					position = direction ? range[0] : range[1] - 1;
+					if (range[0] >= range[1]) {
+						continue;
+					}
+				}
+				segment = segments.get((int)(position >>> SEGMENT_BITS));
+				segmentStart = position & ~(long)(SEGMENT_SIZE - 1);
+				from = (int)Math.max(range[0] - segmentStart, 0);
+				to = (int)Math.min(range[1] - segmentStart, segment.size);
+				row = direction ? from : to - 1;
+				if (selection != null && !select()) {
+					row = direction ? to : from - 1;
+				}
+			}
+		}
+
+		/**
+		 * Evaluate the predicates for the current segment
+		 * @return false if no rows can match
+		 */
+		private boolean select() {
+			for (ColumnPredicate predicate : predicates) {
+				if (!predicate.matches(segment)) {
+					return false;
+				}
+			}
+			Arrays.fill(selection, -1L);
+			for (ColumnPredicate predicate : predicates) {
+				segment.columns[predicate.column].filter(predicate, from, to, selection);
+			}
+			return true;
+		}
+		
+		@Override
+		public void closeSource() {
+			
+		}
+	}
+	
+	/**
+	 * Write the rows in the format of {@link org.teiid.common.buffer.STree#writeValuesTo(ObjectOutputStream)}
+	 */
+	void writeValuesTo(ObjectOutputStream oos, String[] typeNames) throws IOException {
+		oos.writeLong(rowCount);
+		for (Segment segment : segments) {
+			List<List<?>> batch = new ArrayList<List<?>>(segment.size);
+			for (int i = 0; i < segment.size; i++) {
+				batch.add(getRow(segment, i, null));
+			}
+			BatchSerializer.writeBatch(oos, typeNames, batch);
+		}
+	}
+	
+}
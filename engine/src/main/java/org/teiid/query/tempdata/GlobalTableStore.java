@@ -48,10 +48,24 @@ public interface GlobalTableStore {
 	Serializable getAddress();
 	
 	List<?> updateMatViewRow(String matTableName, List<?> tuple, boolean delete) throws TeiidComponentException;
+	
+	/**
+	 * Update the rows as a single change, so that a table pinned by readers is copied once
+	 * rather than for each row
+	 * @return the number of rows that were updated
+	 */
+	int updateMatViewRows(String matTableName, List<? extends List<?>> tuples, List<Boolean> deletes) throws TeiidComponentException;
 
 	TempTable createMatTable(String tableName, GroupSymbol group)
 	throws TeiidComponentException, QueryMetadataException, TeiidProcessingException;
 	
+	/**
+	 * Restore the first load of the given mat table from a persistent snapshot
+	 * @return the restored table or null if there is no usable snapshot
+	 */
+	TempTable restoreSnapshot(String matTableName, GroupSymbol group)
+	throws TeiidComponentException, QueryMetadataException, TeiidProcessingException;
+	
 	@Replicated
 	void failedLoad(String matTableName);
 	
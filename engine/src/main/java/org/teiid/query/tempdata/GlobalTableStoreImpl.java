@@ -18,32 +18,51 @@
 
 package org.teiid.query.tempdata;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.teiid.adminapi.impl.VDBMetaData;
 import org.teiid.api.exception.query.QueryMetadataException;
 import org.teiid.api.exception.query.QueryResolverException;
 import org.teiid.api.exception.query.QueryValidatorException;
 import org.teiid.common.buffer.BufferManager;
+import org.teiid.common.buffer.ExtensibleBufferedInputStream;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.TeiidRuntimeException;
 import org.teiid.core.types.DataTypeManager;
+import org.teiid.core.types.Streamable;
+import org.teiid.core.util.ExecutorUtils;
+import org.teiid.core.util.PropertiesUtils;
 import org.teiid.dqp.internal.process.RequestWorkItem;
 import org.teiid.dqp.message.RequestID;
 import org.teiid.language.SQLConstants;
@@ -82,6 +101,15 @@ import org.teiid.query.tempdata.TempTableStore.TransactionMode;
 public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<String> {
 	
 	private static final String TEIID_FBI = "teiid:fbi"; //$NON-NLS-1$
+	
+	/**
+	 * System property for the directory of persistent internal mat view snapshots.  Snapshots are disabled if not set.
+	 */
+	public static final String SNAPSHOT_DIRECTORY = "org.teiid.matViewSnapshotDirectory"; //$NON-NLS-1$
+	private static final String SNAPSHOT_SUFFIX = ".snapshot"; //$NON-NLS-1$
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_REGION_SIZE = 1 << 30;
+	private static Executor defaultSnapshotExecutor = ExecutorUtils.newFixedThreadPool(1, "Mat View Snapshot Writer"); //$NON-NLS-1$
 
 	public enum MatState {
 		NEEDS_LOADING,
@@ -97,6 +125,9 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 		private long ttl = -1;
 		private boolean valid;
 		private boolean asynch; //sub state of loading
+		private boolean snapshotChecked; //only the first load may use a snapshot
+		private long snapshotTime = -1;
+		private long snapshotGeneration; //incremented when a pending snapshot is no longer valid
 		private Map<RequestID, WeakReference<RequestWorkItem>> waiters = new HashMap<RequestID, WeakReference<RequestWorkItem>>(2);
 		
 		protected MatTableInfo() {}
@@ -105,6 +136,7 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 			if (invalidate) {
 				LogManager.logDetail(LogConstants.CTX_MATVIEWS, this, "invalidating"); //$NON-NLS-1$
 				valid = false;
+				snapshotChecked = true;
 			}
 			switch (state) {
 			case NEEDS_LOADING:
@@ -207,11 +239,25 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 	private QueryMetadataInterface metadata;
 	private volatile Serializable localAddress;
 	private VDBMetaData vdbMetaData;
+	private File snapshotDirectory;
+	private Executor snapshotExecutor = defaultSnapshotExecutor;
 	
 	public GlobalTableStoreImpl(BufferManager bufferManager, VDBMetaData vdbMetaData, QueryMetadataInterface metadata) {
 		this.bufferManager = bufferManager;
 		this.vdbMetaData = vdbMetaData;
 		this.metadata = new TempMetadataAdapter(metadata, new TempMetadataStore());
+		String dir = PropertiesUtils.getHierarchicalProperty(SNAPSHOT_DIRECTORY, null);
+		if (dir != null) {
+			this.snapshotDirectory = new File(dir);
+		}
+	}
+	
+	public void setSnapshotDirectory(File snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
+	
+	public void setSnapshotExecutor(Executor snapshotExecutor) {
+		this.snapshotExecutor = snapshotExecutor;
 	}
 
 	public synchronized MatTableInfo getMatTableInfo(final String tableName) {
@@ -311,10 +357,17 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 					if (pk != null) {
 						ArrayList<TempMetadataID> primaryKey = resolveIndex(metadata, id, pk);
 						id.setPrimaryKey(primaryKey);
+						if (isHashIndex(pk)) {
+							id.addIndex(pk, primaryKey);
+						}
 					}
 					Collection keys = metadata.getUniqueKeysInGroup(viewId);
 					for (Object key : keys) {
-						id.addUniqueKey(resolveIndex(metadata, id, key));
+						ArrayList<TempMetadataID> uniqueKey = resolveIndex(metadata, id, key);
+						id.addUniqueKey(uniqueKey);
+						if (isHashIndex(key)) {
+							id.addIndex(key, uniqueKey);
+						}
 					}
 					Collection indexes = metadata.getIndexesInGroup(viewId);
 					for (Object index : indexes) {
@@ -404,6 +457,18 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 		id.setCacheHint(hint);
 	}
 		
+	/**
+	 * @return true if the view of the mat table should use {@link MaterializationMetadataRepository.StorageFormat#COLUMNAR} storage
+	 */
+	static boolean isColumnar(QueryMetadataInterface metadata, GroupSymbol group) throws TeiidComponentException, QueryMetadataException {
+		Object viewId = group.getMetadataID();
+		if (viewId instanceof TempMetadataID && ((TempMetadataID)viewId).getOriginalMetadataID() != null) {
+			viewId = ((TempMetadataID)viewId).getOriginalMetadataID();
+		}
+		String format = metadata.getExtensionProperty(viewId, MaterializationMetadataRepository.MATVIEW_STORAGE_FORMAT, false);
+		return MaterializationMetadataRepository.StorageFormat.COLUMNAR.name().equalsIgnoreCase(format);
+	}
+	
 	static ArrayList<TempMetadataID> resolveIndex(
 			QueryMetadataInterface metadata, TempMetadataID id, Object pk)
 			throws TeiidComponentException, QueryMetadataException {
@@ -419,7 +484,23 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 	@Override
 	public void loaded(String matTableName, TempTable table) {
 		swapTempTable(matTableName, table);
-		this.getMatTableInfo(matTableName).setState(MatState.LOADED, true);
+		MatTableInfo info = this.getMatTableInfo(matTableName);
+		long updateTime = -1;
+		long generation = 0;
+		synchronized (info) {
+			info.setState(MatState.LOADED, true);
+			generation = ++info.snapshotGeneration;
+			if (info.snapshotTime >= 0) {
+				//keep the original load time so that the ttl still applies
+				info.updateTime = info.snapshotTime;
+				info.snapshotTime = -1;
+			} else {
+				updateTime = info.updateTime;
+			}
+		}
+		if (updateTime >= 0) {
+			writeSnapshot(matTableName, table, updateTime, generation);
+		}
 	}
 	
 	private void swapTempTable(String tempTableName, TempTable tempTable) {
@@ -429,19 +510,65 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 	@Override
 	public List<?> updateMatViewRow(String matTableName, List<?> tuple,
 			boolean delete) throws TeiidComponentException {
-		TempTable tempTable = tableStore.getTempTable(matTableName);
-		if (tempTable != null) {
+		List<?>[] results = updateRows(matTableName, Collections.singletonList(tuple), Collections.singletonList(delete));
+		if (results == null) {
+			return null;
+		}
+		return results[0];
+	}
+	
+	@Override
+	public int updateMatViewRows(String matTableName,
+			List<? extends List<?>> tuples, List<Boolean> deletes)
+			throws TeiidComponentException {
+		List<?>[] results = updateRows(matTableName, tuples, deletes);
+		int count = 0;
+		if (results != null) {
+			for (List<?> result : results) {
+				if (result != null) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private List<?>[] updateRows(String matTableName,
+			List<? extends List<?>> tuples, List<Boolean> deletes)
+			throws TeiidComponentException {
+		if (tableStore.getTempTable(matTableName) != null) {
 			TempMetadataID id = tableStore.getMetadataStore().getTempGroupID(matTableName);
 			synchronized (id) {
-				boolean clone = tempTable.getActive().get() != 0;
-				if (clone) {
+				//obtain the current version under the lock so that concurrent updates are not lost
+				TempTable tempTable = tableStore.getTempTable(matTableName);
+				List<?>[] results = new List<?>[tuples.size()];
+				if (tempTable.lockForUpdate()) {
+					try {
+						for (int i = 0; i < results.length; i++) {
+							results[i] = tempTable.updateTuple(tuples.get(i), deletes.get(i));
+						}
+					} finally {
+						tempTable.unlockForUpdate();
+					}
+				} else {
+					//readers have pinned the current version, so publish a single new one with all of the rows
+					//the clone shares the unmodified pages and index segments until they are written
 					tempTable = tempTable.clone();
-				}
-				List<?> result = tempTable.updateTuple(tuple, delete);
-				if (clone) {
+					for (int i = 0; i < results.length; i++) {
+						results[i] = tempTable.updateTuple(tuples.get(i), deletes.get(i));
+					}
 					swapTempTable(matTableName, tempTable);
 				}
-				return result;
+				//the snapshot no longer reflects the table
+				File f = getSnapshotFile(matTableName);
+				if (f != null) {
+					MatTableInfo info = getMatTableInfo(matTableName);
+					synchronized (info) {
+						info.snapshotGeneration++;
+						f.delete();
+					}
+				}
+				return results;
 			}
 		}
 		return null;
@@ -457,6 +584,7 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 		Create create = getCreateCommand(group, true, metadata);
 		TempTable table = tableStore.addTempTable(tableName, create, bufferManager, false, null);
 		table.setUpdatable(false);
+		table.setSnapshotReads(true);
 		CacheHint hint = table.getCacheHint();
 		if (hint != null) {
 			table.setPreferMemory(hint.isPrefersMemory());
@@ -496,6 +624,16 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 		return create;
 	}
 	
+	/**
+	 * @return true if the key or index is declared with the {@link KeyRecord#INDEX_TYPE_HASH} index type
+	 */
+	static boolean isHashIndex(Object key) {
+		if (key instanceof TempMetadataID) {
+			key = ((TempMetadataID)key).getOriginalMetadataID();
+		}
+		return key instanceof KeyRecord && KeyRecord.INDEX_TYPE_HASH.equalsIgnoreCase(((KeyRecord)key).getProperty(KeyRecord.INDEX_TYPE, false));
+	}
+	
 	/**
 	 * Return a list of ElementSymbols for the given index/key object
 	 */
@@ -509,6 +647,178 @@ public class GlobalTableStoreImpl implements GlobalTableStore, ReplicatedObject<
 		return pkColumns;
 	}
 
+	//begin snapshot methods
+	
+	private File getSnapshotFile(String matTableName) {
+		if (this.snapshotDirectory == null || this.vdbMetaData == null || !matTableName.startsWith(RelationalPlanner.MAT_PREFIX)) {
+			return null;
+		}
+		try {
+			File vdbDirectory = new File(this.snapshotDirectory, URLEncoder.encode(this.vdbMetaData.getName() + "_" + this.vdbMetaData.getVersion(), "UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+			return new File(vdbDirectory, URLEncoder.encode(matTableName, "UTF-8") + SNAPSHOT_SUFFIX); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			throw new TeiidRuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Compute a hash of everything that determines the contents and structure of the mat table 
+	 */
+	private String getDefinitionHash(String matTableName, TempTable table) throws TeiidComponentException, QueryMetadataException {
+		Object viewId = this.metadata.getGroupID(matTableName.substring(RelationalPlanner.MAT_PREFIX.length()));
+		StringBuilder sb = new StringBuilder(this.metadata.getVirtualPlan(viewId).getQuery());
+		for (ElementSymbol es : table.getColumns()) {
+			sb.append(',').append(es.getShortName()).append(' ').append(DataTypeManager.getDataTypeName(es.getType()));
+		}
+		sb.append(',').append(table.getPkLength());
+		for (Object index : this.metadata.getIndexesInGroup(viewId)) {
+			sb.append(",index ").append(this.metadata.getFullName(index)).append(' ').append(isHashIndex(index)); //$NON-NLS-1$
+		}
+		for (Object key : this.metadata.getUniqueKeysInGroup(viewId)) {
+			sb.append(",unique ").append(this.metadata.getFullName(key)); //$NON-NLS-1$
+		}
+		sb.append(',').append(this.metadata.getExtensionProperty(viewId, MaterializationMetadataRepository.MATVIEW_STORAGE_FORMAT, false));
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			return PropertiesUtils.toHex(md.digest(sb.toString().getBytes(Streamable.CHARSET)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new TeiidComponentException(e);
+		}
+	}
+	
+	/**
+	 * Write the table to the snapshot directory using the snapshot executor.  Failures are logged, but do not affect the load.
+	 * <br>
+	 * The snapshot is only published if the table has not been updated or reloaded since the
+	 * given generation.
+	 */
+	private void writeSnapshot(final String matTableName, final TempTable table, final long updateTime, final long generation) {
+		final File f = getSnapshotFile(matTableName);
+		if (f == null) {
+			return;
+		}
+		snapshotExecutor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				writeSnapshot(matTableName, table, updateTime, generation, f);
+			}
+		});
+	}
+	
+	private void writeSnapshot(String matTableName, TempTable table, long updateTime, long generation, File f) {
+		MatTableInfo info = getMatTableInfo(matTableName);
+		File temp = new File(f.getParentFile(), f.getName() + "." + generation + ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			f.getParentFile().mkdirs();
+			ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				oos.writeInt(SNAPSHOT_VERSION);
+				oos.writeUTF(this.vdbMetaData.getFullName());
+				oos.writeUTF(getDefinitionHash(matTableName, table));
+				oos.writeLong(updateTime);
+				table.writeTo(oos);
+			} finally {
+				oos.close();
+			}
+			synchronized (info) {
+				if (info.snapshotGeneration != generation) {
+					temp.delete();
+					LogManager.logDetail(LogConstants.CTX_MATVIEWS, "discarding stale snapshot", f, "for", matTableName); //$NON-NLS-1$ //$NON-NLS-2$
+					return;
+				}
+				Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			LogManager.logDetail(LogConstants.CTX_MATVIEWS, "wrote snapshot", f, "for", matTableName); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (Exception e) {
+			temp.delete();
+			LogManager.logWarning(LogConstants.CTX_MATVIEWS, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31298, matTableName, f));
+		}
+	}
+	
+	@Override
+	public TempTable restoreSnapshot(String matTableName, GroupSymbol group)
+			throws TeiidComponentException, QueryMetadataException, TeiidProcessingException {
+		File f = getSnapshotFile(matTableName);
+		if (f == null) {
+			return null;
+		}
+		MatTableInfo info = getMatTableInfo(matTableName);
+		synchronized (info) {
+			if (info.snapshotChecked) {
+				return null;
+			}
+			info.snapshotChecked = true;
+		}
+		if (!f.exists()) {
+			return null;
+		}
+		TempTable table = createMatTable(matTableName, group);
+		boolean success = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
+			try {
+				ObjectInputStream ois = new ObjectInputStream(createMappedInputStream(raf.getChannel()));
+				if (ois.readInt() != SNAPSHOT_VERSION 
+						|| !this.vdbMetaData.getFullName().equals(ois.readUTF())
+						|| !getDefinitionHash(matTableName, table).equals(ois.readUTF())) {
+					LogManager.logDetail(LogConstants.CTX_MATVIEWS, "snapshot", f, "does not match the current definition of", matTableName); //$NON-NLS-1$ //$NON-NLS-2$
+					return null;
+				}
+				long updateTime = ois.readLong();
+				long ttl = info.getTtl();
+				if (ttl < 0) {
+					Object viewId = this.metadata.getGroupID(matTableName.substring(RelationalPlanner.MAT_PREFIX.length()));
+					String ttlString = this.metadata.getExtensionProperty(viewId, MaterializationMetadataRepository.MATVIEW_TTL, false);
+					if (ttlString != null) {
+						ttl = Long.parseLong(ttlString);
+					}
+				}
+				if (ttl > 0 && System.currentTimeMillis() - updateTime > ttl) {
+					LogManager.logDetail(LogConstants.CTX_MATVIEWS, "snapshot", f, "is older than the ttl of", matTableName); //$NON-NLS-1$ //$NON-NLS-2$
+					return null;
+				}
+				table.readFrom(ois);
+				synchronized (info) {
+					info.snapshotTime = updateTime;
+				}
+				success = true;
+				LogManager.logInfo(LogConstants.CTX_MATVIEWS, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31297, matTableName, table.getRowCount(), f));
+				return table;
+			} finally {
+				raf.close();
+			}
+		} catch (Exception e) {
+			LogManager.logWarning(LogConstants.CTX_MATVIEWS, e, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31299, matTableName, f));
+			return null;
+		} finally {
+			if (!success) {
+				table.remove();
+			}
+		}
+	}
+
+	/**
+	 * Read the file through read only mappings rather than copying it through the heap
+	 */
+	private static ExtensibleBufferedInputStream createMappedInputStream(final FileChannel channel) {
+		return new ExtensibleBufferedInputStream() {
+			private long position;
+			
+			@Override
+			protected ByteBuffer nextBuffer() throws IOException {
+				long remaining = channel.size() - position;
+				if (remaining <= 0) {
+					return null;
+				}
+				long size = Math.min(remaining, SNAPSHOT_REGION_SIZE);
+				ByteBuffer result = channel.map(MapMode.READ_ONLY, position, size);
+				position += size;
+				return result;
+			}
+		};
+	}
+	
 	//begin replication methods
 	
 	@Override
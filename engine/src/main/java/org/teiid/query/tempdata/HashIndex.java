@@ -0,0 +1,357 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.tempdata;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.TeiidProcessingException;
+import org.teiid.query.processor.relational.GroupingHashTable;
+import org.teiid.query.processor.relational.MergeJoinStrategy;
+import org.teiid.query.sql.symbol.ElementSymbol;
+import org.teiid.query.sql.symbol.Expression;
+
+/**
+ * An open addressing (linear probing) hash index of the rows of a {@link TempTable}.
+ * <br>
+ * The entries are the full table rows, so the index is always covering and is used only for
+ * equality and IN lookups that specify all of the key columns.  The index is held on the heap
+ * and is intended for materialized lookup tables.
+ * <br>
+ * For a table in a {@link ColumnStore} the entries are instead the row positions in the store and the 
+ * rows are read from the store as they are matched, so that the index does not hold the rows on the heap.
+ */
+class HashIndex implements SearchableTable, Cloneable {
+
+	private static final int INITIAL_CAPACITY = 64;
+	/*
+	 * the slots are held in segments that are copied independently on the first
+	 * modification after a clone, so that an update of a shared index is proportional
+	 * to the segments written rather than the index size 
+	 */
+	private static final int SEGMENT_SHIFT = 10;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+	private List<ElementSymbol> keyColumns;
+	private Map<Expression, Integer> columnMap;
+	private int[] keyIndexes;
+	private int[] probeIndexes;
+	private int[] rowKeyIndexes;
+
+	private int capacity;
+	private int[][] hashes;
+	private List<?>[][] entries;
+	//the row positions + 1 in the store, which are used instead of the entries
+	private int[][] positions;
+	private ColumnStore store;
+	private boolean[] owned;
+	private int size;
+
+	/**
+	 * @param keyColumns the index columns
+	 * @param columnMap the column map of the table
+	 * @param rowKeyLength the length of the table key, which identifies rows for removal
+	 */
+	HashIndex(List<ElementSymbol> keyColumns, Map<Expression, Integer> columnMap, int rowKeyLength) {
+		this.keyColumns = keyColumns;
+		this.columnMap = columnMap;
+		this.keyIndexes = new int[keyColumns.size()];
+		this.probeIndexes = new int[keyColumns.size()];
+		for (int i = 0; i < keyIndexes.length; i++) {
+			keyIndexes[i] = columnMap.get(keyColumns.get(i));
+			probeIndexes[i] = i;
+		}
+		this.rowKeyIndexes = new int[rowKeyLength];
+		for (int i = 0; i < rowKeyLength; i++) {
+			rowKeyIndexes[i] = i;
+		}
+		allocate(INITIAL_CAPACITY, false);
+	}
+
+	private void allocate(int newCapacity, boolean usePositions) {
+		this.capacity = newCapacity;
+		int segmentSize = Math.min(newCapacity, SEGMENT_MASK + 1);
+		int segments = newCapacity / segmentSize;
+		this.hashes = new int[segments][segmentSize];
+		if (usePositions) {
+			this.entries = null;
+			this.positions = new int[segments][segmentSize];
+		} else {
+			this.entries = new List[segments][segmentSize];
+			this.positions = null;
+			this.store = null;
+		}
+		this.owned = new boolean[segments];
+		Arrays.fill(this.owned, true);
+	}
+
+	private boolean isEmpty(int slot) {
+		if (positions != null) {
+			return positions[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK] == 0;
+		}
+		return entries[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK] == null;
+	}
+
+	private List<?> getEntry(int slot) {
+		if (positions != null) {
+			int position = positions[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK];
+			return position == 0 ? null : store.getRow(position - 1);
+		}
+		return entries[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK];
+	}
+
+	private int getHash(int slot) {
+		return hashes[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK];
+	}
+
+	private void set(int slot, List<?> row, int hash) {
+		int segment = slot >>> SEGMENT_SHIFT;
+		if (!owned[segment]) {
+			entries[segment] = entries[segment].clone();
+			hashes[segment] = hashes[segment].clone();
+			owned[segment] = true;
+		}
+		entries[segment][slot & SEGMENT_MASK] = row;
+		hashes[segment][slot & SEGMENT_MASK] = hash;
+	}
+
+	/**
+	 * Add a row, which requires that the index is not using the positions of a store
+	 */
+	void add(List<?> row) {
+		if ((size + 1) << 1 > capacity) {
+			List<?>[][] oldEntries = entries;
+			int[][] oldHashes = hashes;
+			allocate(capacity << 1, false);
+			for (int i = 0; i < oldEntries.length; i++) {
+				for (int j = 0; j < oldEntries[i].length; j++) {
+					if (oldEntries[i][j] != null) {
+						insert(oldEntries[i][j], oldHashes[i][j]);
+					}
+				}
+			}
+		}
+		insert(row, GroupingHashTable.hash(row, keyIndexes, 0));
+		size++;
+	}
+
+	private void insert(List<?> row, int hash) {
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		while (getEntry(slot) != null) {
+			slot = (slot + 1) & mask;
+		}
+		set(slot, row, hash);
+	}
+
+	/**
+	 * Replace the row entries with the positions of the rows in the store.
+	 * @param keys the rows of the store in position order with at least the key columns
+	 */
+	void setStore(ColumnStore columnStore, TupleSource keys) throws TeiidComponentException, TeiidProcessingException {
+		int newCapacity = INITIAL_CAPACITY;
+		while (size << 1 > newCapacity) {
+			newCapacity <<= 1;
+		}
+		allocate(newCapacity, true);
+		size = 0;
+		int mask = capacity - 1;
+		List<?> row = null;
+		while ((row = keys.nextTuple()) != null) {
+			int hash = GroupingHashTable.hash(row, keyIndexes, 0);
+			int slot = hash & mask;
+			while (!isEmpty(slot)) {
+				slot = (slot + 1) & mask;
+			}
+			positions[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK] = ++size;
+			hashes[slot >>> SEGMENT_SHIFT][slot & SEGMENT_MASK] = hash;
+		}
+		this.store = columnStore;
+	}
+
+	/**
+	 * Remove the entry with the same table key as the given row
+	 */
+	void remove(List<?> row) {
+		int hash = GroupingHashTable.hash(row, keyIndexes, 0);
+		int mask = capacity - 1;
+		for (int slot = hash & mask; getEntry(slot) != null; slot = (slot + 1) & mask) {
+			if (getHash(slot) == hash && MergeJoinStrategy.compareTuples(row, getEntry(slot), rowKeyIndexes, rowKeyIndexes, true, false) == 0) {
+				removeSlot(slot);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Shift the following entries of the probe sequence back into the freed slot
+	 */
+	private void removeSlot(int slot) {
+		int mask = capacity - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; getEntry(next) != null; next = (next + 1) & mask) {
+			int nextHash = getHash(next);
+			int home = nextHash & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				set(hole, getEntry(next), nextHash);
+				hole = next;
+			}
+		}
+		set(hole, null, 0);
+		size--;
+	}
+
+	void clear() {
+		allocate(INITIAL_CAPACITY, false);
+		size = 0;
+	}
+
+	/**
+	 * @return the number of segments that are still shared with a clone
+	 */
+	int getSharedSegments() {
+		int shared = 0;
+		for (boolean b : owned) {
+			if (!b) {
+				shared++;
+			}
+		}
+		return shared;
+	}
+
+	@Override
+	public HashIndex clone() {
+		try {
+			HashIndex clone = (HashIndex) super.clone();
+			//the segments are shared until written
+			clone.hashes = hashes.clone();
+			if (entries != null) {
+				clone.entries = entries.clone();
+			} else {
+				clone.positions = positions.clone();
+			}
+			this.owned = new boolean[owned.length];
+			clone.owned = new boolean[owned.length];
+			return clone;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return true if the lookup values from the index info specify all key columns
+	 */
+	boolean isUsable(List<List<Object>> keys) {
+		if (keys.isEmpty()) {
+			return false;
+		}
+		for (List<Object> key : keys) {
+			if (key.size() != keyIndexes.length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create a tuple source of the rows matching the keys, which should be sorted
+	 * so that duplicate keys are only looked up once.  The rows are looked up lazily,
+	 * so that the caller can hold the table lock while iterating.
+	 */
+	TupleSource createTupleSource(final List<List<Object>> keys) {
+		return new TupleSource() {
+			private int keyIndex = -1;
+			private List<Object> key;
+			private int hash;
+			private int slot;
+
+			@Override
+			public List<?> nextTuple() {
+				for (;;) {
+					if (key != null) {
+						int mask = capacity - 1;
+						while (!isEmpty(slot)) {
+							int current = slot;
+							slot = (slot + 1) & mask;
+							if (getHash(current) != hash) {
+								continue;
+							}
+							List<?> row = getEntry(current);
+							if (MergeJoinStrategy.compareTuples(key, row, probeIndexes, keyIndexes, true, false) == 0) {
+								return row;
+							}
+						}
+					}
+					List<Object> previous = key;
+					do {
+						if (++keyIndex >= keys.size()) {
+							key = null;
+							return null;
+						}
+						key = keys.get(keyIndex);
+					} while (previous != null && MergeJoinStrategy.compareTuples(previous, key, probeIndexes, probeIndexes, true, false) == 0);
+					hash = GroupingHashTable.hash(key, probeIndexes, 0);
+					slot = hash & (capacity - 1);
+				}
+			}
+
+			@Override
+			public void closeSource() {
+
+			}
+		};
+	}
+
+	List<ElementSymbol> getKeyColumns() {
+		return keyColumns;
+	}
+
+	int size() {
+		return size;
+	}
+
+	@Override
+	public Map<Expression, Integer> getColumnMap() {
+		return columnMap;
+	}
+
+	@Override
+	public int getPkLength() {
+		return keyColumns.size();
+	}
+
+	@Override
+	public Object matchesPkColumn(int pkIndex, Expression ex) {
+		return TempTable.matchesColumn(keyColumns, pkIndex, ex);
+	}
+
+	@Override
+	public boolean supportsOrdering(int pkIndex, Expression ex) {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "hash index " + keyColumns; //$NON-NLS-1$
+	}
+
+}
@@ -49,6 +49,7 @@ import org.teiid.query.QueryPlugin;
 import org.teiid.query.eval.Evaluator;
 import org.teiid.query.metadata.TempMetadataID;
 import org.teiid.query.processor.CollectionTupleSource;
+import org.teiid.query.processor.relational.GroupingNode;
 import org.teiid.query.processor.relational.RelationalNode;
 import org.teiid.query.processor.relational.SortUtility;
 import org.teiid.query.processor.relational.SortUtility.Mode;
@@ -63,6 +64,7 @@ import org.teiid.query.sql.symbol.Constant;
 import org.teiid.query.sql.symbol.ElementSymbol;
 import org.teiid.query.sql.symbol.Expression;
 import org.teiid.query.sql.symbol.ExpressionSymbol;
+import org.teiid.query.sql.visitor.ElementCollectorVisitor;
 import org.teiid.query.util.CommandContext;
 import org.teiid.query.util.GeneratedKeysImpl;
 
@@ -211,9 +213,10 @@ public class TempTable implements Cloneable, SearchableTable {
 		private final boolean project;
 		private final int[] indexes;
 		private int reserved;
-		private TupleBrowser browser;
+		private TupleSource browser;
+		private boolean locked;
 
-		private QueryTupleSource(TupleBrowser browser, Map map,
+		private QueryTupleSource(TupleSource browser, Map map,
 				List<? extends Expression> projectedCols, Criteria condition) {
 			this.browser = browser;
 			this.indexes = RelationalNode.getProjectionIndexes(map, projectedCols);
@@ -221,7 +224,9 @@ public class TempTable implements Cloneable, SearchableTable {
 			this.condition = condition;
 			this.project = shouldProject();
 			this.reserved = reserveBuffers();
-			if (updatable) {
+			//snapshot reads are protected by the pin instead
+			this.locked = updatable && !snapshotReads;
+			if (locked) {
 				lock.readLock().lock();
 			}
 		}
@@ -248,7 +253,8 @@ public class TempTable implements Cloneable, SearchableTable {
 		
 		@Override
 		public void closeSource() {
-			if (updatable) {
+			if (locked) {
+				locked = false;
 				lock.readLock().unlock();
 			}
 			bm.releaseBuffers(reserved);
@@ -369,7 +375,10 @@ public class TempTable implements Cloneable, SearchableTable {
 	private TempMetadataID tid;
 	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 	private boolean updatable = true;
+	private boolean snapshotReads;
 	private LinkedHashMap<List<ElementSymbol>, TempTable> indexTables;
+	private List<HashIndex> hashIndexes;
+	private ColumnStore columnStore;
 	
 	private int keyBatchSize;
 	private int leafBatchSize;
@@ -452,6 +461,12 @@ public class TempTable implements Cloneable, SearchableTable {
 					entry.setValue(indexClone);
 				}
 			}
+			if (clone.hashIndexes != null) {
+				clone.hashIndexes = new ArrayList<HashIndex>(clone.hashIndexes);
+				for (int i = 0; i < clone.hashIndexes.size(); i++) {
+					clone.hashIndexes.set(i, clone.hashIndexes.get(i).clone());
+				}
+			}
 			clone.tree = tree.clone();
 			clone.activeReaders = new AtomicInteger();
 			return clone;
@@ -466,9 +481,60 @@ public class TempTable implements Cloneable, SearchableTable {
 		return activeReaders;
 	}
 	
+	/**
+	 * Pin this version of the table so that it will not be updated in place.
+	 * Must be matched with a call to {@link #unpin()}
+	 */
+	void pin() {
+		lock.readLock().lock();
+		try {
+			activeReaders.getAndIncrement();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	void unpin() {
+		activeReaders.decrementAndGet();
+	}
+	
+	/**
+	 * Acquire the write lock for an in place update.  If a reader has pinned this version
+	 * the lock is not held and the update should instead be made against a clone.
+	 * @return true if the write lock is held and must be released with {@link #unlockForUpdate()}
+	 */
+	boolean lockForUpdate() {
+		lock.writeLock().lock();
+		if (activeReaders.get() == 0) {
+			return true;
+		}
+		lock.writeLock().unlock();
+		return false;
+	}
+	
+	void unlockForUpdate() {
+		lock.writeLock().unlock();
+	}
+	
 	void addIndex(List<ElementSymbol> indexColumns, boolean unique) throws TeiidComponentException, TeiidProcessingException {
+		addIndex(indexColumns, unique, false);
+	}
+	
+	/**
+	 * Add an index
+	 * @param hash true if a {@link HashIndex} should be used.  If the column types are not hashable
+	 * an ordered index is used instead.
+	 */
+	void addIndex(List<ElementSymbol> indexColumns, boolean unique, boolean hash) throws TeiidComponentException, TeiidProcessingException {
+		if (hash) {
+			if (GroupingNode.isHashable(indexColumns)) {
+				addHashIndex(indexColumns);
+				return;
+			}
+			LogManager.logDetail(LogConstants.CTX_DQP, "Using an ordered index rather than a hash index for", indexColumns); //$NON-NLS-1$
+		}
 		List<ElementSymbol> keyColumns = columns.subList(0, tree.getKeyLength());
-		if (keyColumns.equals(indexColumns) || (indexTables != null && indexTables.containsKey(indexColumns))) {
+		if (keyColumns.equals(indexColumns) || (indexTables != null && indexTables.containsKey(indexColumns)) || getHashIndex(indexColumns) != null) {
 			return;
 		}
 		TempTable indexTable = createIndexTable(indexColumns, unique);
@@ -478,6 +544,37 @@ public class TempTable implements Cloneable, SearchableTable {
 		indexTable.getTree().compact();
 	}
 
+	private void addHashIndex(List<ElementSymbol> indexColumns) throws TeiidComponentException, TeiidProcessingException {
+		if (getHashIndex(indexColumns) != null) {
+			return;
+		}
+		if (hashIndexes == null) {
+			hashIndexes = new ArrayList<HashIndex>(2);
+		}
+		HashIndex index = new HashIndex(indexColumns, columnMap, tree.getKeyLength());
+		TupleSource browser = createTupleSource(this.columns, null, null);
+		try {
+			List<?> next = null;
+			while ((next = browser.nextTuple()) != null) {
+				index.add(next);
+			}
+		} finally {
+			browser.closeSource();
+		}
+		hashIndexes.add(index);
+	}
+	
+	HashIndex getHashIndex(List<ElementSymbol> indexColumns) {
+		if (hashIndexes != null) {
+			for (HashIndex index : hashIndexes) {
+				if (index.getKeyColumns().equals(indexColumns)) {
+					return index;
+				}
+			}
+		}
+		return null;
+	}
+	
 	private TempTable createIndexTable(List<ElementSymbol> indexColumns,
 			boolean unique) {
 		List<ElementSymbol> allColumns = new ArrayList<ElementSymbol>(indexColumns);
@@ -497,6 +594,7 @@ public class TempTable implements Cloneable, SearchableTable {
 			indexTables.put(indexColumns, indexTable);
 		}
 		indexTable.setUpdatable(this.updatable);
+		indexTable.snapshotReads = this.snapshotReads;
 		return indexTable;
 	}
 	
@@ -505,6 +603,41 @@ public class TempTable implements Cloneable, SearchableTable {
 	}
 
 	public TupleSource createTupleSource(final List<? extends Expression> projectedCols, final Criteria condition, OrderBy orderBy) throws TeiidComponentException, TeiidProcessingException {
+		if (!snapshotReads) {
+			return createTupleSourceDirect(projectedCols, condition, orderBy);
+		}
+		//read against the current version without holding the lock, writers will clone rather than wait
+		pin();
+		boolean success = false;
+		try {
+			final TupleSource ts = createTupleSourceDirect(projectedCols, condition, orderBy);
+			success = true;
+			return new TupleSource() {
+				private boolean pinned = true;
+				
+				@Override
+				public List<?> nextTuple() throws TeiidComponentException,
+						TeiidProcessingException {
+					return ts.nextTuple();
+				}
+				
+				@Override
+				public void closeSource() {
+					if (pinned) {
+						pinned = false;
+						unpin();
+					}
+					ts.closeSource();
+				}
+			};
+		} finally {
+			if (!success) {
+				unpin();
+			}
+		}
+	}
+
+	private TupleSource createTupleSourceDirect(final List<? extends Expression> projectedCols, final Criteria condition, OrderBy orderBy) throws TeiidComponentException, TeiidProcessingException {
 		//special handling for count(*)
 		boolean agg = false;
 		for (Expression singleElementSymbol : projectedCols) {
@@ -520,11 +653,23 @@ public class TempTable implements Cloneable, SearchableTable {
 			}
 			orderBy = null;
 		}
+		if (hashIndexes != null && condition != null) {
+			for (HashIndex index : hashIndexes) {
+				BaseIndexInfo<HashIndex> hashInfo = new BaseIndexInfo<HashIndex>(index, projectedCols, condition, null, true);
+				if (index.isUsable(hashInfo.getValueSet())) {
+					LogManager.logDetail(LogConstants.CTX_DQP, "Using", index, "for query", projectedCols, condition); //$NON-NLS-1$ //$NON-NLS-2$
+					if (hashInfo.getValueSet().size() > 1) {
+						hashInfo.sortValueSet(OrderBy.ASC, bm.getOptions().getDefaultNullOrder());
+					}
+					return createTupleSource(projectedCols, condition, orderBy, index.createTupleSource(hashInfo.getValueSet()), false, agg);
+				}
+			}
+		}
 		IndexInfo primary = new IndexInfo(this, projectedCols, condition, orderBy, true);
 		IndexInfo ii = primary;
 		if ((indexTables != null || (!this.updatable && allowImplicitIndexing && condition != null && this.getRowCount() > 2*this.getTree().getPageSize(true))) && (condition != null || orderBy != null) && ii.valueSet.size() != 1) {
 			LogManager.logDetail(LogConstants.CTX_DQP, "Considering indexes on table", this, "for query", projectedCols, condition, orderBy); //$NON-NLS-1$ //$NON-NLS-2$
-			long rowCost = this.tree.getRowCount();
+			long rowCost = this.getRowCount();
 			long bestCost = estimateCost(orderBy, ii, rowCost);
 			if (this.indexTables != null) {
     			for (TempTable table : this.indexTables.values()) {
@@ -623,14 +768,38 @@ public class TempTable implements Cloneable, SearchableTable {
 			final List<? extends Expression> projectedCols,
 			final Criteria condition, OrderBy orderBy, IndexInfo ii, boolean agg)
 			throws TeiidComponentException, TeiidProcessingException {
+		if (ii.table.columnStore != null) {
+			ColumnStore store = ii.table.columnStore;
+			Map<Expression, Integer> map = ii.table.columnMap;
+			boolean[] needed = null;
+			if (!agg) {
+				List<Expression> referenced = new ArrayList<Expression>(projectedCols);
+				if (condition != null) {
+					referenced.addAll(ElementCollectorVisitor.getElements(condition, false));
+				}
+				needed = ColumnStore.getNeededColumns(referenced, map);
+			}
+			TupleSource ts = store.createTupleSource(ii, store.getPredicates(condition, map), needed, ii.ordering != null ? ii.ordering : OrderBy.ASC, bm.getOptions().getDefaultNullOrder());
+			return createTupleSource(projectedCols, condition, orderBy, ts, ii.ordering != null, agg);
+		}
 		TupleBrowser browser = ii.createTupleBrowser(bm.getOptions().getDefaultNullOrder(), true);
+		return createTupleSource(projectedCols, condition, orderBy, browser, ii.ordering != null, agg);
+	}
+	
+	/**
+	 * @param ordered true if the browser returns the rows in the order by order
+	 */
+	private TupleSource createTupleSource(
+			final List<? extends Expression> projectedCols,
+			final Criteria condition, OrderBy orderBy, TupleSource browser, boolean ordered, boolean agg)
+			throws TeiidComponentException, TeiidProcessingException {
 		TupleSource ts = new QueryTupleSource(browser, columnMap, agg?getColumns():projectedCols, condition);
 		
 		boolean usingQueryTupleSource = false;
 		boolean success = false;
 		TupleBuffer tb = null;
 		try {
-			if (ii.ordering == null && orderBy != null) {
+			if (!ordered && orderBy != null) {
 				SortUtility sort = new SortUtility(ts, orderBy.getOrderByItems(), Mode.SORT, bm, sessionID, projectedCols);
 				sort.setNonBlocking(true);
 				tb = sort.sort();
@@ -641,7 +810,7 @@ public class TempTable implements Cloneable, SearchableTable {
 				}
 				success = true;
 				return new CollectionTupleSource(Arrays.asList(Collections.nCopies(projectedCols.size(), count)).iterator());
-			} else if (updatable) {
+			} else if (updatable && !snapshotReads) {
 				tb = bm.createTupleBuffer(projectedCols, sessionID, TupleSourceType.PROCESSOR);
 				List<?> next = null;
 				while ((next = ts.nextTuple()) != null) {
@@ -712,11 +881,85 @@ public class TempTable implements Cloneable, SearchableTable {
 	}
 	
 	public long getRowCount() {
+		if (columnStore != null) {
+			return columnStore.getRowCount();
+		}
 		return tree.getRowCount();
 	}
 	
+	/**
+	 * Move the rows of this non-updatable table into a {@link ColumnStore}.
+	 * Hash indexes then reference the rows by position in the store.  Secondary indexes are unaffected.
+	 */
+	void convertToColumnar() throws TeiidComponentException, TeiidProcessingException {
+		if (this.updatable || this.columnStore != null) {
+			return;
+		}
+		ColumnStore store = new ColumnStore(this.columns, this.tree.getKeyLength());
+		TupleBrowser browser = new TupleBrowser(this.tree, null, null, OrderBy.ASC, true);
+		try {
+			store.addAll(browser);
+		} finally {
+			browser.closeSource();
+		}
+		if (this.hashIndexes != null) {
+			for (HashIndex index : this.hashIndexes) {
+				boolean[] needed = ColumnStore.getNeededColumns(index.getKeyColumns(), this.columnMap);
+				TupleSource ts = store.createTupleSource(new IndexInfo(this, null, null, null, true), Collections.<ColumnStore.ColumnPredicate>emptyList(), needed, OrderBy.ASC, bm.getOptions().getDefaultNullOrder());
+				index.setStore(store, ts);
+			}
+		}
+		this.columnStore = store;
+		this.tree.truncate(true);
+		LogManager.logDetail(LogConstants.CTX_DQP, "Converted", this, "to columnar storage with", store.getRowCount(), "rows"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	boolean isColumnar() {
+		return columnStore != null;
+	}
+	
+	/**
+	 * Move the rows of the {@link ColumnStore}, if any, back to the tree so that they may be modified
+	 */
+	private void restoreRows() {
+		if (this.columnStore == null) {
+			return;
+		}
+		TupleSource ts = this.columnStore.createTupleSource(new IndexInfo(this, null, null, null, true), Collections.<ColumnStore.ColumnPredicate>emptyList(), null, OrderBy.ASC, bm.getOptions().getDefaultNullOrder());
+		if (this.hashIndexes != null) {
+			//the positions will no longer be valid
+			for (HashIndex index : this.hashIndexes) {
+				index.clear();
+			}
+		}
+		try {
+			List<?> next = null;
+			while ((next = ts.nextTuple()) != null) {
+				this.tree.insert(next, InsertMode.ORDERED, -1);
+				if (this.hashIndexes != null) {
+					for (HashIndex index : this.hashIndexes) {
+						index.add(next);
+					}
+				}
+			}
+		} catch (TeiidException e) {
+			throw new TeiidRuntimeException(e);
+		}
+		this.columnStore = null;
+	}
+	
 	public long truncate(boolean force) {
 		this.tid.getTableData().dataModified(tree.getRowCount());
+		if (this.hashIndexes != null) {
+			for (HashIndex index : this.hashIndexes) {
+				index.clear();
+			}
+		}
+		if (this.columnStore != null) {
+			long count = this.columnStore.getRowCount();
+			this.columnStore = null;
+			return count;
+		}
 		return tree.truncate(force);
 	}
 	
@@ -730,6 +973,8 @@ public class TempTable implements Cloneable, SearchableTable {
 					indexTable.remove();
 				}
 			}
+			this.hashIndexes = null;
+			this.columnStore = null;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -740,13 +985,20 @@ public class TempTable implements Cloneable, SearchableTable {
 		if (rowId != null) {
 			return false;
 		}
+		return matchesColumn(this.columns.subList(0, this.getPkLength()), pkIndex, ex);
+	}
+	
+	/**
+	 * @see SearchableTable#matchesPkColumn(int, Expression)
+	 */
+	static Object matchesColumn(List<ElementSymbol> keyColumns, int pkIndex, Expression ex) {
 		if (ex instanceof Array) {
 			Array array = (Array)ex;
 			List<Expression> exprs = array.getExpressions();
-			int toIndex = Math.min(this.getPkLength(), exprs.size());
+			int toIndex = Math.min(keyColumns.size(), exprs.size());
 			int[] indexes = new int[toIndex];
 			for (int i = pkIndex; i < toIndex; i++) {
-				int index = exprs.indexOf(this.columns.get(i));
+				int index = exprs.indexOf(keyColumns.get(i));
 				indexes[i] = index;
 				if (index == -1) {
 					if (i == pkIndex) {
@@ -757,7 +1009,7 @@ public class TempTable implements Cloneable, SearchableTable {
 			}
 			return indexes;
 		}
-		return columns.get(pkIndex).equals(ex);
+		return keyColumns.get(pkIndex).equals(ex);
 	}
 	
 	@Override
@@ -924,9 +1176,18 @@ public class TempTable implements Cloneable, SearchableTable {
 	}
 	
 	void writeTo(ObjectOutputStream oos) throws TeiidComponentException, IOException {
-		this.lock.readLock().lock();
+		boolean pinned = this.snapshotReads;
+		if (pinned) {
+			pin();
+		} else {
+			this.lock.readLock().lock();
+		}
 		try {
-			this.tree.writeValuesTo(oos);
+			if (this.columnStore != null) {
+				this.columnStore.writeValuesTo(oos, TupleBuffer.getTypeNames(this.columns));
+			} else {
+				this.tree.writeValuesTo(oos);
+			}
 			if (this.indexTables == null) {
 				oos.writeInt(0);
 			} else {
@@ -940,8 +1201,24 @@ public class TempTable implements Cloneable, SearchableTable {
 					entry.getValue().writeTo(oos);
 				}
 			}
+			if (this.hashIndexes == null) {
+				oos.writeInt(0);
+			} else {
+				oos.writeInt(this.hashIndexes.size());
+				for (HashIndex index : this.hashIndexes) {
+					oos.writeInt(index.getKeyColumns().size());
+					for (ElementSymbol es : index.getKeyColumns()) {
+						oos.writeInt(this.columnMap.get(es));
+					}
+				}
+			}
+			oos.writeBoolean(this.columnStore != null);
 		} finally {
-			this.lock.readLock().unlock();
+			if (pinned) {
+				unpin();
+			} else {
+				this.lock.readLock().unlock();
+			}
 		}
 	}
 	
@@ -959,11 +1236,32 @@ public class TempTable implements Cloneable, SearchableTable {
 			TempTable tt = this.createIndexTable(indexColumns, unique);
 			tt.readFrom(ois);
 		}
+		int numHashIdx = ois.readInt();
+		for (int i = 0; i < numHashIdx; i++) {
+			int numCols = ois.readInt();
+			ArrayList<ElementSymbol> indexColumns = new ArrayList<ElementSymbol>(numCols);
+			for (int j = 0; j < numCols; j++) {
+				indexColumns.add(this.columns.get(ois.readInt()));
+			}
+			try {
+				this.addHashIndex(indexColumns);
+			} catch (TeiidProcessingException e) {
+				throw new TeiidComponentException(e);
+			}
+		}
+		if (ois.readBoolean()) {
+			try {
+				this.convertToColumnar();
+			} catch (TeiidProcessingException e) {
+				throw new TeiidComponentException(e);
+			}
+		}
 	}
 	
 	List<?> updateTuple(List<?> tuple, boolean remove) throws TeiidComponentException {
 		try {
 			lock.writeLock().lock();
+			restoreRows();
 			if (remove) {
 				List<?> result = tree.remove(tuple);
 				if (result == null) {
@@ -975,10 +1273,23 @@ public class TempTable implements Cloneable, SearchableTable {
 						index.tree.remove(tuple);
 					}
 				}
+				if (hashIndexes != null) {
+					for (HashIndex index : this.hashIndexes) {
+						index.remove(result);
+					}
+				}
 				tid.getTableData().dataModified(1);
 				return result;
 			} 
 			List<?> result = tree.insert(tuple, InsertMode.UPDATE, -1);
+			if (hashIndexes != null) {
+				for (HashIndex index : this.hashIndexes) {
+					if (result != null) {
+						index.remove(result);
+					}
+					index.add(tuple);
+				}
+			}
 			if (indexTables != null) {
 				for (TempTable index : this.indexTables.values()) {
 					tuple = RelationalNode.projectTuple(RelationalNode.getProjectionIndexes(index.getColumnMap(), index.columns), tuple);
@@ -1003,6 +1314,9 @@ public class TempTable implements Cloneable, SearchableTable {
 	}
 	
 	void setUpdatable(boolean updatable) {
+		if (updatable) {
+			restoreRows();
+		}
 		this.updatable = updatable;
 		if (this.indexTables != null) {
 			for (TempTable index : this.indexTables.values()) {
@@ -1011,6 +1325,19 @@ public class TempTable implements Cloneable, SearchableTable {
 		}
 	}
 	
+	/**
+	 * Use pinned snapshot reads rather than the read lock.  Updates must then be
+	 * made through {@link #lockForUpdate()} or against a clone.
+	 */
+	void setSnapshotReads(boolean snapshotReads) {
+		this.snapshotReads = snapshotReads;
+		if (this.indexTables != null) {
+			for (TempTable index : this.indexTables.values()) {
+				index.snapshotReads = snapshotReads;
+			}
+		}
+	}
+	
 	CacheHint getCacheHint() {
 		return this.tid.getCacheHint();
 	}
@@ -457,7 +457,8 @@ public class TempTableDataManager implements ProcessorDataManager {
 			private QueryProcessor qp;
 			private TupleSource ts;
 			private Object[] params;
-			private int count;
+			private List<List<?>> tuples = new ArrayList<List<?>>();
+			private List<Boolean> deletes = new ArrayList<Boolean>();
 
 			@Override
 			protected TupleSource createTupleSource()
@@ -479,15 +480,9 @@ public class TempTableDataManager implements ProcessorDataManager {
 					} else {
 						tuple = new ArrayList<Object>(tuple); //ensure the list is serializable 
 					}
-					List<?> result = globalStore.updateMatViewRow(matTableName, tuple, delete);
-					
-					if (result != null) {
-						count++;
-					}
-					
-					if (eventDistributor != null) {
-						eventDistributor.updateMatViewRow(context.getVdbName(), context.getVdbVersion(), metadata.getName(metadata.getModelID(groupID)), metadata.getName(groupID), tuple, delete);
-					}
+					//collect the rows so that they are applied as a single change
+					tuples.add(tuple);
+					deletes.add(delete);
 					
 					qp.closeProcessing();
 					qp = null;
@@ -498,6 +493,14 @@ public class TempTableDataManager implements ProcessorDataManager {
 					}
 				}
 				
+				int count = globalStore.updateMatViewRows(matTableName, tuples, deletes);
+				
+				if (eventDistributor != null) {
+					for (int i = 0; i < tuples.size(); i++) {
+						eventDistributor.updateMatViewRow(context.getVdbName(), context.getVdbVersion(), metadata.getName(metadata.getModelID(groupID)), metadata.getName(groupID), tuples.get(i), deletes.get(i));
+					}
+				}
+				
 				return CollectionTupleSource.createUpdateCountTupleSource(count);
 			}
 
@@ -714,6 +717,11 @@ public class TempTableDataManager implements ProcessorDataManager {
 		LogManager.logInfo(LogConstants.CTX_MATVIEWS, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID30013, tableName));
 		final QueryMetadataInterface metadata = context.getMetadata();
 		final List<ElementSymbol> allColumns = ResolverUtil.resolveElementsInGroup(group, metadata); 
+		TempTable snapshot = globalStore.restoreSnapshot(tableName, group);
+		if (snapshot != null) {
+			globalStore.loaded(tableName, snapshot);
+			return CollectionTupleSource.createUpdateCountTupleSource((int)Math.min(Integer.MAX_VALUE, snapshot.getRowCount()));
+		}
 		final TempTable table = globalStore.createMatTable(tableName, group);
 		table.setUpdatable(false);
 		return new ProxyTupleSource() {
@@ -742,7 +750,7 @@ public class TempTableDataManager implements ProcessorDataManager {
 					//TODO: could pre-process indexes to remove overlap
 					for (Object index : metadata.getIndexesInGroup(group.getMetadataID())) {
 						List<ElementSymbol> columns = GlobalTableStoreImpl.resolveIndex(metadata, allColumns, index);
-						table.addIndex(columns, false);
+						table.addIndex(columns, false, GlobalTableStoreImpl.isHashIndex(index));
 					}
 					for (Object key : metadata.getUniqueKeysInGroup(group.getMetadataID())) {
 						List<ElementSymbol> columns = GlobalTableStoreImpl.resolveIndex(metadata, allColumns, key);
@@ -752,6 +760,9 @@ public class TempTableDataManager implements ProcessorDataManager {
 					if (hint != null && table.getPkLength() > 0) {
 						table.setUpdatable(hint.isUpdatable(false));
 					}
+					if (!table.isUpdatable() && GlobalTableStoreImpl.isColumnar(metadata, group)) {
+						table.convertToColumnar();
+					}
 					if (determinism.compareTo(Determinism.VDB_DETERMINISTIC) < 0 && (hint == null || hint.getScope() == null || Scope.VDB.compareTo(hint.getScope()) <= 0)) {
 						LogManager.logInfo(LogConstants.CTX_DQP, QueryPlugin.Util.gs(QueryPlugin.Event.TEIID31143, determinism, tableName)); //$NON-NLS-1$
 					}
@@ -310,7 +310,7 @@ public class TempTableStore {
     		synchronizations.remove(id);
     		if (transactionMode == TransactionMode.ISOLATE_READS) {
 				for (TempTable table : tables.values()) {
-					table.getActive().decrementAndGet();
+					table.unpin();
 				}
     		} else {
     			HashSet<TempTable> current = new HashSet<TempTable>(tempTables.values());
@@ -632,7 +632,7 @@ public class TempTableStore {
     						synchronized (synch) {
 								if (!synch.isCompleted()) {
 									synch.tables.put(tempTableID, tempTable);
-									result.getActive().getAndIncrement();
+									result.pin();
 								}
 							}
     					}
@@ -35,6 +35,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -322,6 +323,29 @@ public class CommandContext implements Cloneable, org.teiid.CommandContext {
     	return clone;
     }
     
+    /**
+     * Create a context for part of the plan that is processed by another thread.
+     * The determinism level and accessed data objects are tracked separately and must be merged back by the 
+     * processing thread with {@link #mergeBranch(CommandContext)}.
+     */
+    public CommandContext branch() {
+    	CommandContext branch = clone();
+    	if (this.dataObjects != null) {
+    		branch.dataObjects = new HashSet<Object>();
+    	}
+    	branch.determinismLevel = new Determinism[] {Determinism.DETERMINISTIC};
+    	return branch;
+    }
+    
+    public void mergeBranch(CommandContext branch) {
+    	setDeterminismLevel(branch.getDeterminismLevel());
+    	if (this.dataObjects != null && branch.dataObjects != null) {
+    		synchronized (branch.dataObjects) {
+    			this.dataObjects.addAll(branch.dataObjects);
+    		}
+    	}
+    }
+    
     public void setNewVDBState(DQPWorkContext newWorkContext) {
     	this.vdbState = new VDBState();
     	VDBMetaData vdb = newWorkContext.getVDB();
@@ -661,7 +685,10 @@ public class CommandContext implements Cloneable, org.teiid.CommandContext {
 	
 	public void accessedDataObject(Object id) {
 		if (this.dataObjects != null) {
-			this.dataObjects.add(id);
+			//a branch may be merged by another thread
+			synchronized (this.dataObjects) {
+				this.dataObjects.add(id);
+			}
 		}
 	}
 	
@@ -747,6 +774,19 @@ public class CommandContext implements Cloneable, org.teiid.CommandContext {
 	    return ForkJoinPool.commonPool().submit(callable);
     }
 	
+	/**
+	 * Submit work for processing part of the plan in parallel.  With a request work item the
+	 * work counts against, and may be queued by, the user request source concurrency.
+	 */
+	public <V> Future<V> submitParallel(Callable<V> callable) {
+		if (getWorkItem() != null) {
+			return getWorkItem().addParallelWork(callable);
+		}
+		FutureTask<V> task = new FutureTask<V>(callable);
+		getExecutor().execute(task);
+		return task;
+	}
+	
 	public void setExecutor(Executor e) {
 		this.globalState.executor = e;
 	}
@@ -39,6 +39,9 @@ public class Options {
 	public static final String MAX_SESSION_BUFFER_SIZE_ESTIMATE = "org.teiid.maxSessionBufferSizeEstimate"; //$NON-NLS-1$
 	public static final String TRACING_WITH_ACTIVE_SPAN_ONLY = "org.teiid.tracingWithActiveSpanOnly"; //$NON-NLS-1$
 	public static final String ENFORCE_SINGLE_MAX_BUFFER_SIZE_ESTIMATE = "org.teiid.enforceSingleMaxBufferSizeEstimate"; //$NON-NLS-1$
+	public static final String PARALLEL_EXCHANGE = "org.teiid.parallelExchange"; //$NON-NLS-1$
+	public static final String PARALLEL_SORT = "org.teiid.parallelSort"; //$NON-NLS-1$
+	public static final String COMPILE_EXPRESSIONS = "org.teiid.compileExpressions"; //$NON-NLS-1$
 
 	private Properties properties;
 	private boolean subqueryUnnestDefault = false;
@@ -54,6 +57,9 @@ public class Options {
 	private boolean tracingWithActiveSpanOnly = true;
 	private boolean enforceSingleMaxBufferSizeEstimate = false;
 	private boolean relativeXPath = true;
+	private boolean parallelExchange = false;
+	private boolean parallelSort = false;
+	private boolean compileExpressions = false;
 	
 	public Properties getProperties() {
 		return properties;
@@ -238,4 +244,43 @@ public class Options {
         return this;
     }
 
+    public boolean isParallelExchange() {
+        return parallelExchange;
+    }
+    
+    public void setParallelExchange(boolean parallelExchange) {
+        this.parallelExchange = parallelExchange;
+    }
+    
+    public Options parallelExchange(boolean b) {
+        this.parallelExchange = b;
+        return this;
+    }
+
+    public boolean isParallelSort() {
+        return parallelSort;
+    }
+    
+    public void setParallelSort(boolean parallelSort) {
+        this.parallelSort = parallelSort;
+    }
+    
+    public Options parallelSort(boolean b) {
+        this.parallelSort = b;
+        return this;
+    }
+
+    public boolean isCompileExpressions() {
+        return compileExpressions;
+    }
+    
+    public void setCompileExpressions(boolean compileExpressions) {
+        this.compileExpressions = compileExpressions;
+    }
+    
+    public Options compileExpressions(boolean b) {
+        this.compileExpressions = b;
+        return this;
+    }
+
 }
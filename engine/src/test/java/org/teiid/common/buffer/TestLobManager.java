@@ -132,4 +132,36 @@ public class TestLobManager {
 		assertEquals(StorageMode.MEMORY, InputStreamFactory.getStorageMode(clob));
 	}
 	
+	@Test public void testCompressedPersistence() throws Exception {
+		BufferManager buffMgr = BufferManagerFactory.getStandaloneBufferManager();
+		FileStore fs = buffMgr.createFileStore("temp");
+		
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("repeated clob value ").append(i % 50);
+		}
+		final String value = sb.toString();
+		ClobType clob = new ClobType(new ClobImpl(new InputStreamFactory() {
+			@Override
+			public InputStream getInputStream() throws IOException {
+				return new ReaderInputStream(new StringReader(value),  Charset.forName(Streamable.ENCODING)); 
+			}
+			
+		}, -1));
+		
+		AdaptiveCompressor compressor = new AdaptiveCompressor();
+		LobManager lobManager = new LobManager(new int[] {0}, fs);
+		lobManager.setMaxMemoryBytes(4);
+		lobManager.setCompressor(compressor);
+		lobManager.updateReferences(Arrays.asList(clob), ReferenceMode.CREATE);
+		lobManager.persist();
+		
+		assertTrue(compressor.getCompressedCount() > 0);
+		assertTrue(fs.getLength() < value.length() / 4);
+		
+		ClobType clobRead = (ClobType)lobManager.getLobReference(clob.getReferenceStreamId());
+		assertEquals(value, ClobType.getString(clobRead));
+		assertEquals(value.length(), clobRead.length());
+	}
+	
 }
@@ -445,6 +445,42 @@ public class TestBufferFrontedFileStoreCache {
 		assertEquals(655360, cache.getDiskUsage());
 	}
 	
+	@Test public void testCompression() throws Exception {
+		cache = createLayeredCache(1<<15, 1<<15, true);
+		cache.setCompress(true);
+		Serializer<Integer> s = new SimpleSerializer() {
+			@Override
+			public void serialize(Integer obj, ObjectOutput oos)
+					throws IOException {
+				oos.writeInt(obj);
+				for (int i = 0; i < obj; i++) {
+					oos.writeInt(i % 10);
+				}
+			}
+			
+			@Override
+			public Integer deserialize(ObjectInput ois)
+					throws IOException, ClassNotFoundException {
+				Integer result = ois.readInt();
+				for (int i = 0; i < result; i++) {
+					assertEquals(i % 10, ois.readInt());
+				}
+				return result;
+			}
+		};
+		WeakReference<? extends Serializer<?>> ref = new WeakReference<Serializer<?>>(s);
+		cache.createCacheGroup(s.getId());
+		for (int i = 0; i < 8; i++) {
+			add(cache, s, ref, i);
+		}
+		assertEquals(8, cache.getCompressor().getCompressedCount());
+		assertTrue(cache.getCompressor().getRatio() > 4);
+		for (int i = 0; i < 8; i++) {
+			CacheEntry ce = get(cache, Long.valueOf(i), s);
+			assertEquals(Integer.valueOf(5000 + i), ce.getObject());
+		}
+	}
+	
 	@Test public void testLargeMax() throws TeiidComponentException {
 		createLayeredCache(1 << 20, 1 << 30, false);
 	}
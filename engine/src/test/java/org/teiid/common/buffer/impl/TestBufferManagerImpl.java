@@ -25,9 +25,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.teiid.adminapi.impl.SessionMetadata;
+import org.teiid.common.buffer.BlockedException;
 import org.teiid.common.buffer.BufferManager;
 import org.teiid.common.buffer.BufferManager.BufferReserveMode;
 import org.teiid.common.buffer.BufferManager.TupleSourceType;
@@ -65,6 +67,73 @@ public class TestBufferManagerImpl {
         assertEquals(24576, bufferManager.reserveBuffers(1024000, BufferReserveMode.NO_WAIT));
     }
     
+    @Test public void testConcurrentReserve() throws Exception {
+        final BufferManagerImpl bufferManager = new BufferManagerImpl();
+        bufferManager.setCache(new MemoryStorageManager());
+        bufferManager.setMaxProcessingKB(1024);
+        bufferManager.setMaxReserveKB(1024);
+        bufferManager.initialize();
+        final long initial = bufferManager.getReserveBatchBytes();
+        final AtomicInteger reserved = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    long[] val = new long[2];
+                    for (int j = 0; j < 100; j++) {
+                        while (true) {
+                            try {
+                                int count = bufferManager.reserveBuffersBlocking(400000, val, false);
+                                if (count == 0) {
+                                    continue;
+                                }
+                                reserved.incrementAndGet();
+                                bufferManager.releaseBuffers(count);
+                                break;
+                            } catch (BlockedException e) {
+                                //retry
+                            }
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800, reserved.get());
+        assertEquals(initial, bufferManager.getReserveBatchBytes());
+    }
+    
+    @Test public void testConcurrentReserveNoOverCommit() throws Exception {
+        final BufferManagerImpl bufferManager = new BufferManagerImpl();
+        bufferManager.setCache(new MemoryStorageManager());
+        bufferManager.setMaxProcessingKB(1024);
+        bufferManager.setMaxReserveKB(1024);
+        bufferManager.initialize();
+        final long initial = bufferManager.getReserveBatchBytes();
+        final AtomicInteger reserved = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        reserved.addAndGet(bufferManager.reserveBuffers(1000, BufferReserveMode.NO_WAIT));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(reserved.get() <= initial);
+        assertEquals(initial - reserved.get(), bufferManager.getReserveBatchBytes());
+    }
+    
     @Test public void testLargeReserve() throws Exception {
         BufferManagerImpl bufferManager = new BufferManagerImpl();
         bufferManager.setCache(new MemoryStorageManager());
@@ -20,14 +20,21 @@ package org.teiid.common.buffer.impl;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.teiid.common.buffer.AutoCleanupUtil;
 import org.teiid.common.buffer.FileStore;
 import org.teiid.common.buffer.FileStore.FileStoreOutputStream;
 import org.teiid.core.TeiidComponentException;
@@ -200,4 +207,192 @@ public class TestFileStorageManager {
        	in.close();        
     }	
 	
+    
+    private static FileStorageManager getMappedStorageManager() throws TeiidComponentException {
+    	FileStorageManager sm = getStorageManager(null, null);
+    	sm.setMemoryMapped(true);
+    	sm.setLogMappedRegionSize(12);
+    	return sm;
+    }
+    
+    @Test public void testMappedWrite() throws Exception {
+    	FileStorageManager sm = getMappedStorageManager();
+    	FileStore store = sm.createFileStore("0");
+    	assertEquals(-1, store.read(0, new byte[1], 0, 1));
+    	writeBytes(store);
+    	writeBytes(store);
+    	byte[] expected = writeBytes(store, 3000);
+    	assertEquals(5048, store.getLength());
+    	assertEquals(8192, sm.getUsedBufferSpace());
+    	assertEquals(0, sm.getOpenFiles());
+    	
+    	byte[] bytesRead = new byte[2048];
+    	store.readFully(3000, bytesRead, 0, bytesRead.length);
+    	assertArrayEquals(expected, bytesRead);
+    	
+    	store.setLength(100);
+    	assertUsedBufferSpace(sm, 4096);
+    	assertEquals(-1, store.read(100, new byte[1], 0, 1));
+    	
+    	store.remove();
+    	assertUsedBufferSpace(sm, 0);
+    }
+    
+    @Test public void testMappedGrowth() throws Exception {
+    	FileStorageManager sm = getMappedStorageManager();
+    	sm.setLogMappedRegionSize(16);
+    	FileStore store = sm.createFileStore("0");
+    	store.write(new byte[100], 0, 100);
+    	assertEquals(4096, sm.getUsedBufferSpace());
+    	byte[] expected = writeBytes(store, 100);
+    	assertEquals(2148, store.getLength());
+    	store.setLength(5000);
+    	//the smaller mapping is replaced, but not yet credited
+    	assertUsedBufferSpace(sm, 8192);
+    	byte[] bytesRead = new byte[2048];
+    	store.readFully(100, bytesRead, 0, bytesRead.length);
+    	assertArrayEquals(expected, bytesRead);
+    	store.setLength(70000);
+    	assertUsedBufferSpace(sm, 65536 + 8192);
+    	store.remove();
+    	assertUsedBufferSpace(sm, 0);
+    }
+    
+    /**
+     * Released mappings are credited only once collected
+     */
+    static void assertUsedBufferSpace(FileStorageManager sm, long expected) throws InterruptedException {
+    	for (int i = 0; i < 100 && sm.getUsedBufferSpace() != expected; i++) {
+    		System.gc();
+    		Thread.sleep(10);
+    		AutoCleanupUtil.doCleanup(false);
+    	}
+    	assertEquals(expected, sm.getUsedBufferSpace());
+    }
+    
+    @Test(expected=IOException.class) public void testMappedMaxSpace() throws Exception {
+    	FileStorageManager sm = getMappedStorageManager();
+    	sm.setMaxBufferSpace(1);
+    	FileStore store = sm.createFileStore("0");
+    	try {
+    		writeBytes(store);
+    	} finally {
+    		assertUsedBufferSpace(sm, 0);
+    	}
+    }
+    
+    @Test public void testMappedConcurrentReads() throws Exception {
+    	FileStorageManager sm = getMappedStorageManager();
+    	SplittableStorageManager ssm = new SplittableStorageManager(sm);
+    	ssm.setMaxFileSizeDirect(1 << 14);
+    	final FileStore store = ssm.createFileStore("0");
+    	final byte[] bytes = new byte[1 << 16];
+    	r.nextBytes(bytes);
+    	store.write(bytes, 0, bytes.length);
+    	final AtomicInteger failures = new AtomicInteger();
+    	Thread[] threads = new Thread[4];
+    	for (int i = 0; i < threads.length; i++) {
+    		threads[i] = new Thread() {
+    			@Override
+    			public void run() {
+    				byte[] bytesRead = new byte[bytes.length];
+    				try {
+    					store.readFully(0, bytesRead, 0, bytesRead.length);
+    					if (!Arrays.equals(bytes, bytesRead)) {
+    						failures.incrementAndGet();
+    					}
+    				} catch (IOException e) {
+    					failures.incrementAndGet();
+    				}
+    			}
+    		};
+    		threads[i].start();
+    	}
+    	for (Thread thread : threads) {
+    		thread.join();
+    	}
+    	assertEquals(0, failures.get());
+    	store.remove();
+    	assertUsedBufferSpace(sm, 0);
+    }
+    
+    @Test public void testMappedReadsDuringTruncation() throws Exception {
+    	FileStorageManager sm = getMappedStorageManager();
+    	final FileStore store = sm.createFileStore("0");
+    	final byte[] bytes = new byte[1 << 15];
+    	r.nextBytes(bytes);
+    	store.write(bytes, 0, bytes.length);
+    	final AtomicInteger failures = new AtomicInteger();
+    	final AtomicBoolean done = new AtomicBoolean();
+    	Thread[] threads = new Thread[2];
+    	for (int i = 0; i < threads.length; i++) {
+    		threads[i] = new Thread() {
+    			@Override
+    			public void run() {
+    				byte[] b = new byte[1024];
+    				while (!done.get()) {
+    					long offset = r.nextInt(bytes.length - b.length);
+	    				try {
+	    					int read = store.read(offset, b, 0, b.length);
+	    					for (int j = 0; j < read; j++) {
+	    						if (b[j] != bytes[(int)offset + j]) {
+	    							failures.incrementAndGet();
+	    							break;
+	    						}
+	    					}
+	    				} catch (Throwable e) {
+	    					failures.incrementAndGet();
+	    				}
+    				}
+    			}
+    		};
+    		threads[i].start();
+    	}
+    	try {
+	    	for (int i = 0; i < 200; i++) {
+	    		store.setLength(100);
+	    		store.write(100, bytes, 100, bytes.length - 100);
+	    	}
+    	} finally {
+    		done.set(true);
+    		for (Thread thread : threads) {
+        		thread.join();
+        	}
+    	}
+    	assertEquals(0, failures.get());
+    	store.remove();
+    	assertUsedBufferSpace(sm, 0);
+    }
+	
+    @Test public void testTransferTo() throws Exception {
+    	helpTestTransferTo(getStorageManager(null, null));
+    	helpTestTransferTo(getMappedStorageManager());
+    }
+
+	private void helpTestTransferTo(FileStorageManager sm) throws IOException, InterruptedException {
+		SplittableStorageManager ssm = new SplittableStorageManager(sm);
+    	ssm.setMaxFileSizeDirect(5000);
+    	FileStore store = ssm.createFileStore("0");
+    	byte[] bytes = new byte[12000];
+    	r.nextBytes(bytes);
+    	store.write(bytes, 0, bytes.length);
+    	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    	WritableByteChannel channel = Channels.newChannel(baos);
+    	long position = 100;
+    	while (position < bytes.length) {
+    		long transferred = store.transferTo(position, bytes.length - position, channel);
+    		assertTrue(transferred > 0);
+    		position += transferred;
+    	}
+    	assertArrayEquals(Arrays.copyOfRange(bytes, 100, bytes.length), baos.toByteArray());
+    	try {
+    		store.transferTo(bytes.length, 1, channel);
+    		fail();
+    	} catch (EOFException e) {
+    		
+    	}
+    	store.remove();
+    	assertUsedBufferSpace(sm, 0);
+	}
+	
 }
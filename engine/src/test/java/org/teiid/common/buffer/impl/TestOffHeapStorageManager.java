@@ -0,0 +1,205 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.common.buffer.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.teiid.common.buffer.CacheEntry;
+import org.teiid.common.buffer.FileStore;
+import org.teiid.common.buffer.Serializer;
+import org.teiid.core.TeiidComponentException;
+
+public class TestOffHeapStorageManager {
+
+	private static OffHeapStorageManager getStorageManager(long maxSpace) throws TeiidComponentException {
+		OffHeapStorageManager sm = new OffHeapStorageManager();
+		sm.setLogPageSize(10);
+		sm.setLogSegmentSize(13);
+		sm.setMaxStorageSpace(maxSpace);
+		sm.initialize();
+		return sm;
+	}
+
+	private static byte[] write(FileStore store, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		new Random().nextBytes(bytes);
+		store.write(bytes, 0, length);
+		return bytes;
+	}
+
+	private static void assertContents(FileStore store, long start, byte[] expected) throws IOException {
+		byte[] read = new byte[expected.length];
+		store.readFully(start, read, 0, read.length);
+		assertArrayEquals(expected, read);
+	}
+
+	@Test public void testInitialRead() throws Exception {
+		OffHeapStorageManager sm = getStorageManager(1 << 20);
+		FileStore store = sm.createFileStore("0"); //$NON-NLS-1$
+		assertEquals(-1, store.read(0, new byte[1], 0, 1));
+	}
+
+	@Test public void testWriteAcrossPages() throws Exception {
+		OffHeapStorageManager sm = getStorageManager(1 << 20);
+		FileStore store = sm.createFileStore("0"); //$NON-NLS-1$
+		byte[] first = write(store, 100);
+		byte[] second = write(store, 5000);
+		assertEquals(5100, store.getLength());
+		assertEquals(5 << 10, sm.getUsedBufferSpace());
+		assertEquals(1 << 13, sm.getAllocatedBufferSpace());
+		assertContents(store, 0, first);
+		assertContents(store, 100, second);
+
+		store.remove();
+		assertEquals(0, sm.getUsedBufferSpace());
+	}
+
+	@Test public void testSetLength() throws Exception {
+		OffHeapStorageManager sm = getStorageManager(1 << 20);
+		FileStore store = sm.createFileStore("0"); //$NON-NLS-1$
+		store.setLength(3000);
+		assertEquals(3 << 10, sm.getUsedBufferSpace());
+		store.setLength(1024);
+		assertEquals(1 << 10, sm.getUsedBufferSpace());
+		assertEquals(1024, store.getLength());
+		assertEquals(-1, store.read(1024, new byte[1], 0, 1));
+	}
+
+	@Test(expected=OutOfDiskException.class) public void testMaxSpace() throws Exception {
+		OffHeapStorageManager sm = getStorageManager(1 << 12);
+		FileStore store = sm.createFileStore("0"); //$NON-NLS-1$
+		FileStore other = sm.createFileStore("1"); //$NON-NLS-1$
+		write(store, 3000);
+		try {
+			write(other, 2000);
+		} finally {
+			assertEquals(3 << 10, sm.getUsedBufferSpace());
+			assertEquals(0, other.getLength());
+		}
+	}
+
+	@Test public void testReleaseAndCompact() throws Exception {
+		OffHeapStorageManager sm = getStorageManager(1 << 20);
+		List<FileStore> stores = new ArrayList<FileStore>();
+		List<byte[]> contents = new ArrayList<byte[]>();
+		//interleave the pages of the stores across 4 segments
+		for (int i = 0; i < 32; i++) {
+			FileStore store = sm.createFileStore(String.valueOf(i));
+			stores.add(store);
+			contents.add(write(store, 1024));
+		}
+		assertEquals(4, sm.getSegmentCount());
+
+		//a fully free segment is released
+		for (int i = 24; i < 32; i++) {
+			stores.get(i).remove();
+		}
+		assertEquals(3, sm.getSegmentCount());
+		assertEquals(1, sm.getSegmentsReleased());
+
+		//half free, the remaining pages are moved down
+		for (int i = 0; i < 24; i += 2) {
+			stores.get(i).remove();
+		}
+		assertEquals(2, sm.getSegmentCount());
+		assertTrue(sm.getPagesMoved() > 0);
+		for (int i = 1; i < 24; i += 2) {
+			assertContents(stores.get(i), 0, contents.get(i));
+		}
+		assertEquals(12 << 10, sm.getUsedBufferSpace());
+	}
+
+	@Test public void testBufferFrontedCache() throws Exception {
+		OffHeapStorageManager sm = new OffHeapStorageManager();
+		sm.setMaxStorageSpace(1 << 24);
+		sm.setDirect(false);
+		BufferFrontedFileStoreCache fsc = new BufferFrontedFileStoreCache();
+		fsc.cleanerRunning.set(true); //prevent async affects
+		fsc.setMemoryBufferSpace(1<<15);
+		fsc.setMaxStorageObjectSize(1<<15);
+		fsc.setDirect(false);
+		fsc.setStorageManager(sm);
+		fsc.initialize();
+		try {
+			Serializer<Integer> s = new Serializer<Integer>() {
+				@Override
+				public Integer deserialize(ObjectInput ois) throws IOException, ClassNotFoundException {
+					Integer result = ois.readInt();
+					for (int i = 0; i < result; i++) {
+						assertEquals(i, ois.readInt());
+					}
+					return result;
+				}
+
+				@Override
+				public void serialize(Integer obj, ObjectOutput oos) throws IOException {
+					oos.writeInt(obj);
+					for (int i = 0; i < obj; i++) {
+						oos.writeInt(i);
+					}
+				}
+
+				@Override
+				public Long getId() {
+					return 1l;
+				}
+
+				@Override
+				public boolean useSoftCache() {
+					return false;
+				}
+
+				@Override
+				public String describe(Integer obj) {
+					return null;
+				}
+			};
+			WeakReference<? extends Serializer<?>> ref = new WeakReference<Serializer<?>>(s);
+			fsc.createCacheGroup(s.getId());
+			for (long i = 0; i < 4; i++) {
+				CacheEntry ce = new CacheEntry(i);
+				ce.setSerializer(ref);
+				ce.setObject(Integer.valueOf(5000 + (int)i));
+				fsc.addToCacheGroup(s.getId(), ce.getId());
+				fsc.add(ce, s);
+			}
+			//evicted entries are in off heap storage
+			assertTrue(fsc.getStorageWrites() > 0);
+			assertTrue(sm.getUsedBufferSpace() > 0);
+			for (long i = 0; i < 4; i++) {
+				PhysicalInfo o = fsc.lockForLoad(i, s);
+				CacheEntry ce = fsc.get(o, i, ref);
+				fsc.unlockForLoad(o);
+				assertEquals(Integer.valueOf(5000 + (int)i), ce.getObject());
+			}
+		} finally {
+			fsc.shutdown();
+		}
+	}
+
+}
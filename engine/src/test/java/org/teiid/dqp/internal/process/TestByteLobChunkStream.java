@@ -21,6 +21,7 @@ package org.teiid.dqp.internal.process;
 import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 
+import org.teiid.client.lob.LobChunk;
 import org.teiid.client.lob.LobChunkInputStream;
 import org.teiid.core.util.ObjectConverterUtil;
 
@@ -36,4 +37,19 @@ public class TestByteLobChunkStream extends TestCase {
         assertTrue(Arrays.equals(bytes, ObjectConverterUtil.convertToByteArray(new LobChunkInputStream(stream))));            
     }
     
+    public void testLastChunk() throws Exception {
+    	ByteLobChunkStream stream = new ByteLobChunkStream(new ByteArrayInputStream(new byte[10]), 5);
+    	LobChunk chunk = stream.getNextChunk();
+    	assertEquals(5, chunk.getBytes().length);
+    	assertFalse(chunk.isLast());
+    	chunk = stream.getNextChunk();
+    	assertEquals(5, chunk.getBytes().length);
+    	assertTrue(chunk.isLast());
+    	
+    	stream = new ByteLobChunkStream(new ByteArrayInputStream(new byte[0]), 5);
+    	chunk = stream.getNextChunk();
+    	assertEquals(0, chunk.getBytes().length);
+    	assertTrue(chunk.isLast());
+    }
+    
 }
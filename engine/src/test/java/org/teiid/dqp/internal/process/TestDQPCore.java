@@ -23,6 +23,7 @@ import static org.junit.Assert.*;
 import java.sql.ResultSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -43,6 +44,7 @@ import org.teiid.adminapi.impl.DataPolicyMetadata;
 import org.teiid.api.exception.query.QueryResolverException;
 import org.teiid.cache.CacheConfiguration;
 import org.teiid.cache.DefaultCacheFactory;
+import org.teiid.client.DQP;
 import org.teiid.client.RequestMessage;
 import org.teiid.client.RequestMessage.ResultsMode;
 import org.teiid.client.RequestMessage.StatementType;
@@ -444,6 +446,46 @@ public class TestDQPCore {
         assertEquals(10, item.resultsBuffer.getRowCount());
     }
     
+    @Test public void testStreamedCursorRequests() throws Exception {
+    	//the sql should return 400 rows
+        String sql = "SELECT A.IntKey FROM BQT1.SmallA as A, BQT1.SmallA as B, (select intkey from BQT1.SmallA limit 4) as C"; //$NON-NLS-1$
+        RequestMessage reqMsg = exampleRequestMessage(sql);
+        reqMsg.setCursorType(ResultSet.TYPE_FORWARD_ONLY);
+        DQPWorkContext.getWorkContext().getSession().setSessionId("1"); //$NON-NLS-1$
+        DQPWorkContext.getWorkContext().getSession().setUserName("1"); //$NON-NLS-1$
+        ((BufferManagerImpl)core.getBufferManager()).setProcessorBatchSize(1);
+        Future<ResultsMessage> message = core.executeRequest(reqMsg.getExecutionId(), reqMsg);
+        ResultsMessage rm = message.get(500000, TimeUnit.MILLISECONDS);
+        assertNull(rm.getException());
+        int rowsPerBatch = 8;
+        assertEquals(rowsPerBatch, rm.getResultsList().size());
+        
+        //several outstanding requests should be queued and answered in order
+        LinkedList<Future<ResultsMessage>> pending = new LinkedList<Future<ResultsMessage>>();
+        for (int i = 0; i < 4; i++) {
+        	pending.add(core.processCursorRequest(reqMsg.getExecutionId(), DQP.NEXT_BATCH, rowsPerBatch));
+        }
+        int next = rm.getLastRow() + 1;
+        while (true) {
+        	rm = pending.removeFirst().get(5000, TimeUnit.MILLISECONDS);
+	        assertNull(rm.getException());
+	        assertEquals(next, rm.getFirstRow());
+	        assertTrue(rowsPerBatch >= rm.getResultsList().size());
+	        next = rm.getLastRow() + 1;
+	        if (rm.getFinalRow() == rm.getLastRow()) {
+	        	break;
+	        }
+	        pending.add(core.processCursorRequest(reqMsg.getExecutionId(), DQP.NEXT_BATCH, rowsPerBatch));
+        }
+        assertEquals(400, rm.getFinalRow());
+        //the remaining requests are answered with the end of the results
+        for (Future<ResultsMessage> future : pending) {
+        	rm = future.get(5000, TimeUnit.MILLISECONDS);
+        	assertNull(rm.getException());
+        	assertEquals(0, rm.getResultsList().size());
+        }
+    }
+    
     @Test public void testBufferReuse1() throws Exception {
     	//the sql should return 100 rows
         String sql = "SELECT IntKey FROM texttable('1112131415' columns intkey integer width 2 no row delimiter) t " +
@@ -20,6 +20,7 @@ package org.teiid.query.metadata;
 import static org.junit.Assert.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Before;
@@ -34,6 +35,7 @@ import org.teiid.metadata.MetadataFactory;
 import org.teiid.metadata.MetadataStore;
 import org.teiid.metadata.ParseException;
 import org.teiid.metadata.Table;
+import org.teiid.metadata.Trigger;
 import org.teiid.query.function.SystemFunctionManager;
 import org.teiid.query.parser.QueryParser;
 import org.teiid.query.parser.TestDDLParser;
@@ -377,6 +379,48 @@ public class TestMetadataValidator {
 		assertFalse(printError(report), report.hasItems());
 	}	
 	
+	@Test
+	public void testIncrementalMaterializationTriggers() throws Exception {
+		String ddl = "CREATE FOREIGN TABLE src(id integer primary key, grp varchar, val integer);"
+				+ "CREATE FOREIGN TABLE grps(grp varchar primary key, name varchar);";
+		String ddl2 = "CREATE VIEW v (grp varchar primary key, name varchar, total long) OPTIONS (MATERIALIZED 'true', \"teiid_rel:MATVIEW_UPDATABLE\" 'true', \"teiid_rel:MATVIEW_INCREMENTAL\" 'true') "
+				+ "AS SELECT s.grp, g.name, sum(val) FROM pm1.src AS s LEFT OUTER JOIN grps AS g ON s.grp = g.grp GROUP BY s.grp, g.name HAVING count(*) > 1";
+		
+		buildModel("pm1", true, this.vdb, this.store, ddl);
+		buildModel("vm1", false, this.vdb, this.store, ddl2);
+		
+		buildTransformationMetadata();
+		
+		ValidatorReport report = new MetadataValidator().validate(this.vdb, this.store);
+		assertFalse(printError(report), report.hasItems());
+		Map<String, Trigger> triggers = store.getSchema("pm1").getTable("src").getTriggers();
+		assertEquals(3, triggers.size());
+		String plan = triggers.get("ON_src_UPDATE_FOR_v_FOR_INCREMENTAL_REFRESH").getPlan();
+		assertTrue(plan, plan.contains("FROM (SELECT \"OLD\".id AS id, \"OLD\".grp AS grp, \"OLD\".val AS val) AS delta LEFT OUTER JOIN grps AS g ON delta.grp = g.grp GROUP BY delta.grp, g.name UNION "));
+		assertTrue(plan, plan.contains("EXECUTE SYSADMIN.refreshMatViewRow('vm1.v', x.k1);"));
+		assertFalse(plan, plan.contains("HAVING"));
+		//the preserved side of the outer join must match the changed row
+		plan = store.getSchema("pm1").getTable("grps").getTriggers().get("ON_grps_INSERT_FOR_v_FOR_INCREMENTAL_REFRESH").getPlan();
+		assertTrue(plan, plan.contains("SELECT DISTINCT s.grp AS k1 FROM pm1.src AS s INNER JOIN (SELECT \"NEW\".grp AS grp, \"NEW\".name AS name) AS delta ON s.grp = delta.grp"));
+	}
+	
+	@Test
+	public void testIncrementalMaterializationNotPossible() throws Exception {
+		String ddl = "CREATE FOREIGN TABLE src(id integer primary key, grp varchar, val integer);";
+		String ddl2 = "CREATE VIEW v (grp varchar primary key) OPTIONS (MATERIALIZED 'true', \"teiid_rel:MATVIEW_UPDATABLE\" 'true', \"teiid_rel:MATVIEW_INCREMENTAL\" 'true') "
+				+ "AS SELECT grp FROM pm1.src LIMIT 10";
+		
+		buildModel("pm1", true, this.vdb, this.store, ddl);
+		buildModel("vm1", false, this.vdb, this.store, ddl2);
+		
+		buildTransformationMetadata();
+		
+		ValidatorReport report = new MetadataValidator().validate(this.vdb, this.store);
+		assertFalse(printError(report), report.hasItems());
+		assertTrue(store.getSchema("pm1").getTable("src").getTriggers().isEmpty());
+		assertTrue(this.vdb.getModel("vm1").getMessages().iterator().next().getValue().startsWith("TEIID31295"));
+	}
+	
 	@Test
 	public void testExternalMaterializationValidate() throws Exception {
 		String ddl = "CREATE FOREIGN TABLE G1(e1 integer, e2 varchar);"
@@ -50,6 +50,7 @@ import org.teiid.query.processor.FakeDataManager;
 import org.teiid.query.processor.HardcodedDataManager;
 import org.teiid.query.processor.ProcessorPlan;
 import org.teiid.query.processor.TestProcessor;
+import org.teiid.query.processor.relational.HashJoinStrategy;
 import org.teiid.query.processor.relational.JoinNode;
 import org.teiid.query.processor.relational.RelationalNode;
 import org.teiid.query.processor.relational.RelationalPlan;
@@ -1647,4 +1648,30 @@ public class TestJoinOptimization {
                      "SELECT g_0.e1 AS c_0, g_0.e3 AS c_1 FROM pm1.g1 AS g_0 ORDER BY c_0"}, new DefaultCapabilitiesFinder(caps), ComparisonMode.EXACT_COMMAND_STRING); //$NON-NLS-1$
       }
 	
+     @Test public void testHashJoin() throws Exception {
+         TransformationMetadata metadata = RealMetadataFactory.fromDDL("create foreign table t1 (a integer, b string) options (cardinality 10000); "
+                 + "create foreign table t2 (a integer, c string) options (cardinality 20000);", "x", "y");
+         BasicSourceCapabilities caps = TestOptimizer.getTypicalCapabilities();
+         caps.setCapabilitySupport(Capability.QUERY_FROM_JOIN_INNER, false);
+         caps.setCapabilitySupport(Capability.QUERY_FROM_JOIN_OUTER, false);
+         caps.setCapabilitySupport(Capability.QUERY_ORDERBY, false);
+         caps.setCapabilitySupport(Capability.CRITERIA_IN, false);
+         String sql = "select t1.b, t2.c from t1, t2 where t1.a = t2.a"; //$NON-NLS-1$
+         ProcessorPlan plan = TestOptimizer.helpPlan(sql, metadata, new String[] {"SELECT g_0.a, g_0.b FROM y.t1 AS g_0", "SELECT g_0.a, g_0.c FROM y.t2 AS g_0"}, new DefaultCapabilitiesFinder(caps), ComparisonMode.EXACT_COMMAND_STRING); //$NON-NLS-1$ //$NON-NLS-2$
+         JoinNode join = (JoinNode)((RelationalPlan)plan).getRootNode().getChildren()[0];
+         assertEquals("HASH JOIN (build left)", join.getJoinStrategy().toString()); //$NON-NLS-1$
+         
+         HardcodedDataManager hdm = new HardcodedDataManager();
+         hdm.addData("SELECT g_0.a, g_0.b FROM y.t1 AS g_0", Arrays.asList(1, "a"), Arrays.asList(2, "b"), Arrays.asList(null, "c")); //$NON-NLS-1$
+         hdm.addData("SELECT g_0.a, g_0.c FROM y.t2 AS g_0", Arrays.asList(2, "x"), Arrays.asList(null, "y"), Arrays.asList(1, "z")); //$NON-NLS-1$
+         TestProcessor.helpProcess(plan, hdm, new List<?>[] {Arrays.asList("b", "x"), Arrays.asList("a", "z")});
+         
+         //small inputs should still use the merge join
+         metadata = RealMetadataFactory.fromDDL("create foreign table t1 (a integer, b string) options (cardinality 10); "
+                 + "create foreign table t2 (a integer, c string) options (cardinality 20);", "x", "y");
+         plan = TestOptimizer.helpPlan(sql, metadata, new String[] {"SELECT g_0.a, g_0.b FROM y.t1 AS g_0", "SELECT g_0.a, g_0.c FROM y.t2 AS g_0"}, new DefaultCapabilitiesFinder(caps), ComparisonMode.EXACT_COMMAND_STRING); //$NON-NLS-1$ //$NON-NLS-2$
+         join = (JoinNode)((RelationalPlan)plan).getRootNode().getChildren()[0];
+         assertFalse(join.getJoinStrategy() instanceof HashJoinStrategy);
+     }
+	
 }
@@ -18,6 +18,8 @@
 
 package org.teiid.query.optimizer;
 
+import static org.junit.Assert.*;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -36,8 +38,15 @@ import org.teiid.query.processor.FakeDataStore;
 import org.teiid.query.processor.HardcodedDataManager;
 import org.teiid.query.processor.ProcessorPlan;
 import org.teiid.query.processor.TestProcessor;
+import org.teiid.query.processor.relational.ExchangeNode;
 import org.teiid.query.processor.relational.LimitNode;
+import org.teiid.query.processor.relational.RelationalNode;
+import org.teiid.query.processor.relational.RelationalPlan;
+import org.teiid.query.processor.relational.SelectNode;
+import org.teiid.query.processor.relational.UnionAllNode;
 import org.teiid.query.unittest.RealMetadataFactory;
+import org.teiid.query.util.CommandContext;
+import org.teiid.query.util.Options;
 
 @SuppressWarnings("nls")
 public class TestUnionPlanning {
@@ -715,4 +724,23 @@ public class TestUnionPlanning {
                 Arrays.asList(1, "abc", "def"), Arrays.asList(10, "2abc", "2def")} );
     }
 
+    @Test public void testParallelExchange() throws Exception {
+        String sql = "select e1 from pm1.g1 where lcase(e1) = 'a' union all select e1 from pm2.g1"; //$NON-NLS-1$
+        BasicSourceCapabilities caps = TestOptimizer.getTypicalCapabilities();
+        caps.setFunctionSupport("lcase", false); //$NON-NLS-1$
+        CommandContext cc = new CommandContext();
+        cc.setOptions(new Options().parallelExchange(true));
+        ProcessorPlan plan = TestOptimizer.getPlan(TestOptimizer.helpGetCommand(sql, RealMetadataFactory.example1Cached()), RealMetadataFactory.example1Cached(), new DefaultCapabilitiesFinder(caps), null, true, cc);
+        RelationalNode union = ((RelationalPlan)plan).getRootNode();
+        assertTrue(union instanceof UnionAllNode);
+        assertTrue(union.getChildren()[0] instanceof ExchangeNode);
+        assertTrue(union.getChildren()[0].getChildren()[0].getChildren()[0] instanceof SelectNode);
+        assertTrue(union.getChildren()[1] instanceof ExchangeNode);
+        
+        HardcodedDataManager dataManager = new HardcodedDataManager();
+        dataManager.addData("SELECT g_0.e1 FROM pm1.g1 AS g_0", Arrays.asList("a"), Arrays.asList("b")); //$NON-NLS-1$
+        dataManager.addData("SELECT g_0.e1 FROM pm2.g1 AS g_0", Arrays.asList("c")); //$NON-NLS-1$
+        TestProcessor.helpProcess(plan, dataManager, new List[] {Arrays.asList("a"), Arrays.asList("c")}); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
 }
@@ -55,6 +55,8 @@ import org.teiid.query.optimizer.capabilities.CapabilitiesFinder;
 import org.teiid.query.optimizer.capabilities.DefaultCapabilitiesFinder;
 import org.teiid.query.optimizer.capabilities.FakeCapabilitiesFinder;
 import org.teiid.query.optimizer.capabilities.SourceCapabilities.Capability;
+import org.teiid.query.processor.relational.GroupingNode;
+import org.teiid.query.processor.relational.RelationalPlan;
 import org.teiid.query.resolver.TestResolver;
 import org.teiid.query.sql.lang.Command;
 import org.teiid.query.unittest.RealMetadataFactory;
@@ -1450,6 +1452,25 @@ public class TestAggregateProcessing {
         helpProcess(plan, hdm, new List[] {Arrays.asList(BigDecimal.valueOf(2))});
     }
     
+    @Test public void testHashAggregation() throws Exception {
+        String sql = "select e1, count(*), max(e2) from pm1.g1 group by e1"; //$NON-NLS-1$
+
+        TransformationMetadata metadata = RealMetadataFactory.example1();
+        RealMetadataFactory.setCardinality("pm1.g1", 10000, metadata);
+        metadata.getElementID("pm1.g1.e1").setDistinctValues(10);
+        ProcessorPlan plan = helpGetPlan(sql, metadata);
+        GroupingNode node = (GroupingNode)((RelationalPlan)plan).getRootNode().getChildren()[0];
+        assertTrue(node.isHashAggregation());
+        HardcodedDataManager hdm = new HardcodedDataManager();
+        hdm.addData("SELECT pm1.g1.e1, pm1.g1.e2 FROM pm1.g1", Arrays.asList("a", 1), Arrays.asList("a", 3), Arrays.asList("a", 2));
+        helpProcess(plan, hdm, new List[] {Arrays.asList("a", 3, 3)});
+        
+        //the order is relied upon, so the sort based grouping is needed
+        plan = helpGetPlan(sql + " order by e1", metadata);
+        node = (GroupingNode)((RelationalPlan)plan).getRootNode().getChildren()[0];
+        assertFalse(node.isHashAggregation());
+    }
+    
     @Test public void testCountBig() throws Exception {
         String sql = "select count_big(e1) from pm1.g1"; //$NON-NLS-1$
 
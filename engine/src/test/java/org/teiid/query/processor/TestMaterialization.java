@@ -22,18 +22,33 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.teiid.cache.DefaultCacheFactory;
 import org.teiid.common.buffer.BufferManager;
 import org.teiid.common.buffer.BufferManagerFactory;
+import org.teiid.common.buffer.TupleSource;
 import org.teiid.core.TeiidProcessingException;
+import org.teiid.core.util.ExecutorUtils;
+import org.teiid.core.util.FileUtils;
+import org.teiid.core.util.UnitTestUtil;
 import org.teiid.dqp.internal.process.CachedResults;
 import org.teiid.dqp.internal.process.QueryProcessorFactoryImpl;
 import org.teiid.dqp.internal.process.SessionAwareCache;
+import org.teiid.metadata.KeyRecord;
+import org.teiid.metadata.Table;
+import org.teiid.query.metadata.MaterializationMetadataRepository;
 import org.teiid.query.metadata.TempMetadataAdapter;
 import org.teiid.query.metadata.TempMetadataID;
 import org.teiid.query.metadata.TransformationMetadata;
@@ -42,6 +57,7 @@ import org.teiid.query.optimizer.capabilities.DefaultCapabilitiesFinder;
 import org.teiid.query.optimizer.relational.RelationalPlanner;
 import org.teiid.query.tempdata.GlobalTableStoreImpl;
 import org.teiid.query.tempdata.GlobalTableStoreImpl.MatTableInfo;
+import org.teiid.query.tempdata.TempTable;
 import org.teiid.query.tempdata.TempTableDataManager;
 import org.teiid.query.tempdata.TempTableStore;
 import org.teiid.query.tempdata.TempTableStore.TransactionMode;
@@ -63,6 +79,7 @@ public class TestMaterialization {
 	    BufferManager bm = BufferManagerFactory.getStandaloneBufferManager();
 	    TransformationMetadata actualMetadata = RealMetadataFactory.exampleMaterializedView();
 	    globalStore = new GlobalTableStoreImpl(bm, actualMetadata.getVdbMetaData(), actualMetadata);
+	    globalStore.setSnapshotExecutor(ExecutorUtils.getDirectExecutor());
 		metadata = new TempMetadataAdapter(actualMetadata, tempStore.getMetadataStore());
 		hdm = new HardcodedDataManager();
 		hdm.addData("SELECT MatSrc.MatSrc.x FROM MatSrc.MatSrc", new List[] {Arrays.asList((String)null), Arrays.asList("one"), Arrays.asList("two"), Arrays.asList("three")});
@@ -162,6 +179,176 @@ public class TestMaterialization {
 		execute("SELECT * from vgroup5 where y is null and z = 2");
 	}
 	
+	@Test public void testHashIndex() throws Exception {
+		Table table = (Table)metadata.getGroupID("MatView.VGroup5");
+		table.getPrimaryKey().setProperty(KeyRecord.INDEX_TYPE, KeyRecord.INDEX_TYPE_HASH);
+		table.getIndexes().get(0).setProperty(KeyRecord.INDEX_TYPE, "hash");
+		execute("SELECT * from vgroup5 where y in ('zwo', 'zne', 'zwo') order by y desc", Arrays.asList("two", "zwo", 1), Arrays.asList("one", "zne", 1));
+		execute("SELECT * from vgroup5 where y is null", Arrays.asList((String)null, (String)null, 1), Arrays.asList(" b", (String)null, 1), Arrays.asList(" c", (String)null, 1), Arrays.asList(" d", (String)null, 1));
+		execute("SELECT * from vgroup5 where y is null and z = 2");
+		execute("SELECT z from vgroup5 where x = 'oneb'", Arrays.asList(1));
+		execute("SELECT count(*) from vgroup5 where x in ('oneb', 'onec', 'one')", Arrays.asList(3));
+		//not usable for a range
+		execute("SELECT x from vgroup5 where y > 'zt' order by x", Arrays.asList("two"));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testColumnarStorage() throws Exception {
+		Table table = (Table)metadata.getGroupID("MatView.VGroup5");
+		table.setProperty(MaterializationMetadataRepository.MATVIEW_STORAGE_FORMAT, "columnar");
+		execute("SELECT * from vgroup5 where y in ('zwo', 'zne') order by y desc", Arrays.asList("two", "zwo", 1), Arrays.asList("one", "zne", 1));
+		execute("SELECT * from vgroup5 where y is null", Arrays.asList((String)null, (String)null, 1), Arrays.asList(" b", (String)null, 1), Arrays.asList(" c", (String)null, 1), Arrays.asList(" d", (String)null, 1));
+		execute("SELECT x from vgroup5 where x >= 'two' order by x desc", Arrays.asList("twod"), Arrays.asList("twoc"), Arrays.asList("twob"), Arrays.asList("two"));
+		execute("SELECT count(*) from vgroup5 where x in ('oneb', 'onec', 'one')", Arrays.asList(3));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		String matTableName = RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP5";
+		this.globalStore.getState(matTableName, baos);
+		this.globalStore.failedLoad(matTableName);
+		this.globalStore.setState(matTableName, new ByteArrayInputStream(baos.toByteArray()));
+		execute("SELECT z from vgroup5 where x = 'oneb'", Arrays.asList(1));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testColumnarHashIndex() throws Exception {
+		Table table = (Table)metadata.getGroupID("MatView.VGroup5");
+		table.setProperty(MaterializationMetadataRepository.MATVIEW_STORAGE_FORMAT, "columnar");
+		table.getIndexes().get(0).setProperty(KeyRecord.INDEX_TYPE, "hash");
+		execute("SELECT * from vgroup5 where y in ('zwo', 'zne', 'zwo') order by y desc", Arrays.asList("two", "zwo", 1), Arrays.asList("one", "zne", 1));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		String matTableName = RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP5";
+		this.globalStore.getState(matTableName, baos);
+		this.globalStore.failedLoad(matTableName);
+		this.globalStore.setState(matTableName, new ByteArrayInputStream(baos.toByteArray()));
+		execute("SELECT * from vgroup5 where y is null", Arrays.asList((String)null, (String)null, 1), Arrays.asList(" b", (String)null, 1), Arrays.asList(" c", (String)null, 1), Arrays.asList(" d", (String)null, 1));
+		execute("SELECT x from vgroup5 where y = 'zne'", Arrays.asList("one"));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testSnapshotReads() throws Exception {
+		Table table = (Table)metadata.getGroupID("MatView.VGroup3");
+		table.setProperty(MaterializationMetadataRepository.MATVIEW_UPDATABLE, "true");
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		String matTableName = RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP3";
+		final TempTable tempTable = globalStore.getTempTable(matTableName);
+		assertTrue(tempTable.isUpdatable());
+		
+		TupleSource ts = tempTable.createTupleSource(tempTable.getColumns(), null, null);
+		assertNotNull(ts.nextTuple());
+		//the open read should not block the update
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<List<?>> result = executor.submit(new Callable<List<?>>() {
+				@Override
+				public List<?> call() throws Exception {
+					return globalStore.updateMatViewRow(matTableName, Arrays.asList("one"), true);
+				}
+			});
+			assertEquals(Arrays.asList("one", "zne"), result.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		//the reader still sees its snapshot
+		int count = 1;
+		while (ts.nextTuple() != null) {
+			count++;
+		}
+		ts.closeSource();
+		assertEquals(4, count);
+		
+		//new readers see the new version
+		TempTable current = globalStore.getTempTable(matTableName);
+		assertNotSame(tempTable, current);
+		execute("SELECT * from vgroup3 where x = 'one'");
+		
+		//without a reader the update is in place
+		globalStore.updateMatViewRow(matTableName, Arrays.asList("one", "zne"), false);
+		assertSame(current, globalStore.getTempTable(matTableName));
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testSnapshotReadsRowsUpdate() throws Exception {
+		Table table = (Table)metadata.getGroupID("MatView.VGroup3");
+		table.setProperty(MaterializationMetadataRepository.MATVIEW_UPDATABLE, "true");
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		String matTableName = RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP3";
+		TempTable tempTable = globalStore.getTempTable(matTableName);
+		TupleSource ts = tempTable.createTupleSource(tempTable.getColumns(), null, null);
+		assertNotNull(ts.nextTuple());
+		
+		//the pinned version is copied once for all of the rows
+		assertEquals(2, globalStore.updateMatViewRows(matTableName, Arrays.asList(Arrays.asList("one"), Arrays.asList("two"), Arrays.asList("four", "zour")), Arrays.asList(true, true, false)));
+		TempTable current = globalStore.getTempTable(matTableName);
+		assertNotSame(tempTable, current);
+		assertEquals(0, current.getActive().get());
+		int count = 1;
+		while (ts.nextTuple() != null) {
+			count++;
+		}
+		ts.closeSource();
+		assertEquals(4, count);
+		execute("SELECT * from vgroup3 order by x", Arrays.asList((String)null, (String)null), Arrays.asList("four", "zour"), Arrays.asList("three", "zhree"));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testSnapshot() throws Exception {
+		File dir = UnitTestUtil.getTestScratchFile("snapshots").getAbsoluteFile();
+		FileUtils.removeDirectoryAndChildren(dir);
+		globalStore.setSnapshotDirectory(dir);
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		execute("SELECT * from vgroup4 where x = 'one'", Arrays.asList("one"));
+		assertEquals(2, hdm.getCommandHistory().size());
+		long time = globalStore.getMatTableInfo(RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP3").getUpdateTime();
+		
+		//simulate a restart
+		Thread.sleep(150);
+		setUp();
+		globalStore.setSnapshotDirectory(dir);
+		execute("SELECT * from vgroup3 where x is null", Arrays.asList(null, null));
+		assertEquals(0, hdm.getCommandHistory().size());
+		assertEquals(time, globalStore.getMatTableInfo(RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP3").getUpdateTime());
+		
+		//older than the ttl
+		execute("SELECT * from vgroup4 where x = 'one'", Arrays.asList("one"));
+		assertEquals(1, hdm.getCommandHistory().size());
+		
+		//a changed definition should not use the snapshot
+		setUp();
+		globalStore.setSnapshotDirectory(dir);
+		((Table)metadata.getGroupID("MatView.VGroup3")).setProperty(MaterializationMetadataRepository.MATVIEW_STORAGE_FORMAT, "columnar");
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		assertEquals(1, hdm.getCommandHistory().size());
+	}
+	
+	@Test public void testStaleSnapshot() throws Exception {
+		File dir = UnitTestUtil.getTestScratchFile("snapshots").getAbsoluteFile();
+		FileUtils.removeDirectoryAndChildren(dir);
+		globalStore.setSnapshotDirectory(dir);
+		final List<Runnable> pending = new ArrayList<Runnable>();
+		globalStore.setSnapshotExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				pending.add(command);
+			}
+		});
+		Table table = (Table)metadata.getGroupID("MatView.VGroup3");
+		table.setProperty(MaterializationMetadataRepository.MATVIEW_UPDATABLE, "true");
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		assertEquals(1, pending.size());
+		
+		//updated before the snapshot was written
+		globalStore.updateMatViewRow(RelationalPlanner.MAT_PREFIX + "MATVIEW.VGROUP3", Arrays.asList("one", "one"), false);
+		pending.remove(0).run();
+		
+		//simulate a restart
+		setUp();
+		globalStore.setSnapshotDirectory(dir);
+		execute("SELECT * from vgroup3 where x = 'one'", Arrays.asList("one", "zne"));
+		assertEquals(1, hdm.getCommandHistory().size());
+		assertEquals(1, dir.listFiles()[0].list().length);
+	}
+	
 	@Test public void testNonCoveringSecondaryIndexWithoutPrimaryKey() throws Exception {
 		execute("SELECT * from vgroup6 where y in ('zne', 'zwo') order by y desc", Arrays.asList("two", "zwo"), Arrays.asList("one", "zne"));
 		execute("SELECT * from vgroup6 where y is null", Arrays.asList((String)null, (String)null));
@@ -91,6 +91,7 @@ import org.teiid.query.tempdata.TempTableStore.TransactionMode;
 import org.teiid.query.unittest.RealMetadataFactory;
 import org.teiid.query.unittest.TimestampUtil;
 import org.teiid.query.util.CommandContext;
+import org.teiid.query.util.Options;
 import org.teiid.query.validator.Validator;
 import org.teiid.query.validator.ValidatorReport;
 import org.teiid.translator.SourceSystemFunctions;
@@ -8069,5 +8070,17 @@ public class TestProcessor {
        TestProcessor.helpProcess(plan, dataManager, new List<?>[] {Arrays.asList(2)});
    }
 	
+    @Test public void testCompiledExpressions() throws Exception {
+        String sql = "select e1, e2 * 2, case when e3 then 'y' else 'n' end from pm1.g1 where e2 + 1 > 2 and (e1 like 'a%' or e1 is null)"; //$NON-NLS-1$
+        CommandContext cc = createCommandContext();
+        cc.setOptions(new Options().compileExpressions(true));
+        ProcessorPlan plan = helpGetPlan(helpParse(sql), RealMetadataFactory.example1Cached(), new DefaultCapabilitiesFinder(new BasicSourceCapabilities()), cc);
+        
+        HardcodedDataManager dataManager = new HardcodedDataManager();
+        dataManager.addData("SELECT pm1.g1.e1, pm1.g1.e2, pm1.g1.e3 FROM pm1.g1", //$NON-NLS-1$
+        		Arrays.asList("ab", 2, true), Arrays.asList("b", 2, false), Arrays.asList(null, 3, false), Arrays.asList("a", 1, false), Arrays.asList("a", null, true)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        helpProcess(plan, cc, dataManager, new List<?>[] {Arrays.asList("ab", 4, "y"), Arrays.asList(null, 6, "n")}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+	
     private static final boolean DEBUG = false;
 }
@@ -40,6 +40,9 @@ import org.teiid.core.TeiidException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.types.DataTypeManager;
 import org.teiid.query.eval.Evaluator;
+import org.teiid.query.eval.ExpressionCompiler;
+import org.teiid.query.eval.ExpressionCompiler.CompiledCriteria;
+import org.teiid.query.eval.ExpressionCompiler.CompiledExpression;
 import org.teiid.query.function.FunctionDescriptor;
 import org.teiid.query.parser.QueryParser;
 import org.teiid.query.processor.FakeDataManager;
@@ -63,24 +66,37 @@ public class TestExpressionEvaluator {
         try {
             Object actualValue = helpEval(expr, elementList, valueList, dataMgr, context);
             assertEquals("Did not get expected result", expectedValue, actualValue); //$NON-NLS-1$
+            //the compiled form should be equivalent
+            CompiledExpression compiled = ExpressionCompiler.compile(expr, getElements(elementList));
+            if (compiled != null) {
+            	assertEquals("Did not get expected compiled result", expectedValue, compiled.evaluate(getTuple(valueList), new Evaluator(getElements(elementList), dataMgr, context))); //$NON-NLS-1$
+            }
         } catch(TeiidException e) {
             throw new RuntimeException(e);
         }
     }
 
     public Object helpEval(Expression expr, Expression[] elementList, Object[] valueList, ProcessorDataManager dataMgr, CommandContext context) throws ExpressionEvaluationException, BlockedException, TeiidComponentException {
-        Map<Expression, Integer> elements = new HashMap<Expression, Integer>();
+        return new Evaluator(getElements(elementList), dataMgr, context).evaluate(expr, getTuple(valueList));
+    }
+
+	private Map<Expression, Integer> getElements(Expression[] elementList) {
+		Map<Expression, Integer> elements = new HashMap<Expression, Integer>();
         if (elementList != null) {
             for(int i=0; i<elementList.length; i++) {
                 elements.put(elementList[i], i);
             }
         }
-        List<Object> tuple = null;
+		return elements;
+	}
+
+	private List<Object> getTuple(Object[] valueList) {
+		List<Object> tuple = null;
         if (valueList != null) {
         	tuple = Arrays.asList(valueList);
         }
-        return new Evaluator(elements, dataMgr, context).evaluate(expr, tuple);
-    }
+		return tuple;
+	}
     
     @Test public void testCaseExpression1() {
         CaseExpression expr = TestCaseExpression.example(3);
@@ -526,4 +542,43 @@ public class TestExpressionEvaluator {
         assertEval("('a', null) is not distinct from ('a', null)", "true");
     }
 
+    @Test public void testCompiledCriteria() throws Exception {
+        ElementSymbol e1 = new ElementSymbol("e1");
+        e1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+        ElementSymbol e2 = new ElementSymbol("e2");
+        e2.setType(DataTypeManager.DefaultDataClasses.STRING);
+        Map<Expression, Integer> elements = getElements(new Expression[] {e1, e2});
+        Evaluator eval = new Evaluator(elements, null, null);
+        
+        CompiledCriteria crit = ExpressionCompiler.compile(QueryParser.getQueryParser().parseCriteria("e1 > 1 and (e2 in ('a', 'b') or e2 is null)"), elements);
+        assertNotNull(crit);
+        //the unresolved in predicate is not marked as all constants, so it is interpreted
+        assertEquals(Boolean.TRUE, crit.evaluateTVL(Arrays.asList(2, "a"), eval));
+        assertEquals(Boolean.TRUE, crit.evaluateTVL(Arrays.asList(2, null), eval));
+        assertEquals(Boolean.FALSE, crit.evaluateTVL(Arrays.asList(2, "c"), eval));
+        assertEquals(Boolean.FALSE, crit.evaluateTVL(Arrays.asList(1, "a"), eval));
+        assertNull(crit.evaluateTVL(Arrays.asList(null, "a"), eval));
+        
+        crit = ExpressionCompiler.compile(new CompareCriteria(e1, CompareCriteria.NE, new Constant(null, DataTypeManager.DefaultDataClasses.INTEGER)), elements);
+        assertNull(crit.evaluateTVL(Arrays.asList(2, "a"), eval));
+    }
+    
+    @Test public void testCompiledFallback() throws Exception {
+        ElementSymbol e1 = new ElementSymbol("e1");
+        e1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+        Map<Expression, Integer> elements = getElements(new Expression[] {e1});
+        //a reference is not compiled
+        Reference ref = new Reference(0);
+        ref.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+        assertNull(ExpressionCompiler.compile(new CompareCriteria(ref, CompareCriteria.EQ, ref), elements));
+        
+        //but can be evaluated as part of a compiled criteria
+        CommandContext cc = new CommandContext();
+        cc.getVariableContext().setGlobalValue(ref.getContextSymbol(), 1);
+        CompiledCriteria crit = ExpressionCompiler.compile(new CompareCriteria(e1, CompareCriteria.EQ, ref), elements);
+        assertNotNull(crit);
+        assertEquals(Boolean.TRUE, crit.evaluateTVL(Arrays.asList(1), new Evaluator(elements, null, cc)));
+        assertEquals(Boolean.FALSE, crit.evaluateTVL(Arrays.asList(2), new Evaluator(elements, null, cc)));
+    }
+
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.processor.relational;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.teiid.common.buffer.BlockedException;
+import org.teiid.common.buffer.BufferManager;
+import org.teiid.common.buffer.BufferManagerFactory;
+import org.teiid.common.buffer.TupleBatch;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.TeiidComponentException;
+import org.teiid.core.TeiidProcessingException;
+import org.teiid.core.types.DataTypeManager;
+import org.teiid.metadata.FunctionMethod.Determinism;
+import org.teiid.query.processor.FakeDataManager;
+import org.teiid.query.processor.RegisterRequestParameter;
+import org.teiid.query.processor.TestProcessor;
+import org.teiid.query.resolver.TestResolver;
+import org.teiid.query.sql.lang.Command;
+import org.teiid.query.sql.lang.Query;
+import org.teiid.query.sql.symbol.ElementSymbol;
+import org.teiid.query.unittest.RealMetadataFactory;
+import org.teiid.query.util.CommandContext;
+
+@SuppressWarnings({"nls", "unchecked"})
+public class TestExchangeNode {
+
+	private ExecutorService executor;
+
+	@Before public void setup() {
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private CommandContext createContext(int concurrency) {
+		CommandContext context = new CommandContext("pid", "test", null, null, 1);
+		context.setExecutor(executor);
+		context.setUserRequestSourceConcurrency(concurrency);
+		return context;
+	}
+
+	private List<?>[] createData(int rows) {
+		List<?>[] data = new List<?>[rows];
+		for (int i = 0; i < rows; i++) {
+			data[i] = Arrays.asList(i);
+		}
+		return data;
+	}
+
+	private ExchangeNode helpCreateExchange(RelationalNode child, CommandContext context) {
+		ElementSymbol es1 = new ElementSymbol("e1");
+		es1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+		child.setElements(Arrays.asList(es1));
+		ExchangeNode exchange = new ExchangeNode(2);
+		exchange.setElements(child.getElements());
+		exchange.addChild(child);
+		BufferManager bm = BufferManagerFactory.getTestBufferManager(100000, 10);
+		exchange.initialize(context, bm, null);
+		child.initialize(context, bm, null);
+		return exchange;
+	}
+
+	private List<List<?>> process(RelationalNode node) throws Exception {
+		List<List<?>> results = new ArrayList<List<?>>();
+		node.open();
+		long end = System.currentTimeMillis() + 10000;
+		while (true) {
+			try {
+				TupleBatch batch = node.nextBatch();
+				results.addAll(batch.getTuples());
+				if (batch.getTerminationFlag()) {
+					break;
+				}
+			} catch (BlockedException e) {
+				assertTrue("did not complete processing", System.currentTimeMillis() < end);
+				Thread.sleep(1);
+			}
+		}
+		node.close();
+		return results;
+	}
+
+	@Test public void testParallel() throws Exception {
+		List<?>[] data = createData(1000);
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		BlockingFakeRelationalNode child = new BlockingFakeRelationalNode(1, data, 10) {
+			@Override
+			public TupleBatch nextBatchDirect() throws BlockedException,
+					TeiidComponentException, TeiidProcessingException {
+				threads.add(Thread.currentThread());
+				return super.nextBatchDirect();
+			}
+		};
+		CommandContext context = createContext(4);
+		ExchangeNode exchange = helpCreateExchange(child, context);
+		assertEquals(Arrays.asList(data), process(exchange));
+		assertFalse(threads.contains(Thread.currentThread()));
+
+		//should be repeatable
+		exchange.reset();
+		assertEquals(Arrays.asList(data), process(exchange));
+	}
+
+	@Test public void testBranchContext() throws Exception {
+		List<?>[] data = createData(100);
+		final Set<Thread> openThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final Set<CommandContext> contexts = Collections.newSetFromMap(new ConcurrentHashMap<CommandContext, Boolean>());
+		FakeRelationalNode child = new FakeRelationalNode(1, data, 10) {
+			@Override
+			public void open() throws TeiidComponentException,
+					TeiidProcessingException {
+				openThreads.add(Thread.currentThread());
+				super.open();
+			}
+			
+			@Override
+			public TupleBatch nextBatchDirect() throws BlockedException,
+					TeiidComponentException, TeiidProcessingException {
+				contexts.add(getContext());
+				getContext().setDeterminismLevel(Determinism.NONDETERMINISTIC);
+				getContext().accessedDataObject("x");
+				return super.nextBatchDirect();
+			}
+		};
+		CommandContext context = createContext(4);
+		context.setDataObjects(new HashSet<Object>());
+		ExchangeNode exchange = helpCreateExchange(child, context);
+		assertEquals(Arrays.asList(data), process(exchange));
+		assertEquals(Collections.singleton(Thread.currentThread()), openThreads);
+		assertEquals(1, contexts.size());
+		assertNotSame(context, contexts.iterator().next());
+		//merged back by the processing thread
+		assertEquals(Determinism.NONDETERMINISTIC, context.getDeterminismLevel());
+		assertEquals(Collections.singleton("x"), context.getDataObjects());
+		assertNotSame(context.getDataObjects(), contexts.iterator().next().getDataObjects());
+	}
+	
+	@Test public void testSourceReadByProcessingThread() throws Exception {
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		FakeDataManager dataManager = new FakeDataManager() {
+			@Override
+			public TupleSource registerRequest(CommandContext context, Command command, String modelName,
+					RegisterRequestParameter parameterObject) throws TeiidComponentException {
+				final TupleSource ts = super.registerRequest(context, command, modelName, parameterObject);
+				return new TupleSource() {
+					@Override
+					public List<?> nextTuple() throws TeiidComponentException, TeiidProcessingException {
+						threads.add(Thread.currentThread());
+						return ts.nextTuple();
+					}
+					
+					@Override
+					public void closeSource() {
+						threads.add(Thread.currentThread());
+						ts.closeSource();
+					}
+				};
+			}
+		};
+		TestProcessor.sampleData1(dataManager);
+		Query query = (Query)TestResolver.helpResolve("SELECT e1, e2 FROM pm1.g1", RealMetadataFactory.example1Cached());
+		AccessNode access = new AccessNode(1);
+		access.setCommand(query);
+		access.setElements(query.getProjectedSymbols());
+		ExchangeNode exchange = new ExchangeNode(2);
+		exchange.setElements(access.getElements());
+		exchange.addChild(access);
+		assertTrue(ExchangeNode.canExchange(access));
+		CommandContext context = createContext(4);
+		BufferManager bm = BufferManagerFactory.getTestBufferManager(100000, 2);
+		exchange.initialize(context, bm, dataManager);
+		access.initialize(context, bm, dataManager);
+		assertEquals(6, process(exchange).size());
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+	}
+	
+	@Test public void testCloseDoesNotWait() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean closed = new AtomicBoolean();
+		FakeRelationalNode child = new FakeRelationalNode(1, createData(100), 10) {
+			@Override
+			public TupleBatch nextBatchDirect() throws BlockedException,
+					TeiidComponentException, TeiidProcessingException {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new TeiidComponentException(e);
+				}
+				return super.nextBatchDirect();
+			}
+			
+			@Override
+			public void closeDirect() {
+				closed.set(true);
+			}
+		};
+		ExchangeNode exchange = helpCreateExchange(child, createContext(4));
+		exchange.open();
+		try {
+			exchange.nextBatch();
+			fail();
+		} catch (BlockedException e) {
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		exchange.close();
+		//the worker is still running, so the child is closed later
+		assertFalse(closed.get());
+		release.countDown();
+		for (int i = 0; i < 500 && !closed.get(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(closed.get());
+		exchange.reset();
+		assertSame(child, exchange.getChildren()[0]);
+	}
+
+	@Test public void testInlineWithoutConcurrency() throws Exception {
+		List<?>[] data = createData(100);
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		FakeRelationalNode child = new FakeRelationalNode(1, data, 10) {
+			@Override
+			public TupleBatch nextBatchDirect() throws BlockedException,
+					TeiidComponentException, TeiidProcessingException {
+				threads.add(Thread.currentThread());
+				return super.nextBatchDirect();
+			}
+		};
+		ExchangeNode exchange = helpCreateExchange(child, createContext(1));
+		assertEquals(Arrays.asList(data), process(exchange));
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+	}
+
+	@Test(expected=TeiidProcessingException.class) public void testFailure() throws Exception {
+		FakeRelationalNode child = new FakeRelationalNode(1, createData(100), 10) {
+			int batches;
+			@Override
+			public TupleBatch nextBatchDirect() throws BlockedException,
+					TeiidComponentException, TeiidProcessingException {
+				if (batches++ > 5) {
+					throw new TeiidProcessingException("failed");
+				}
+				return super.nextBatchDirect();
+			}
+		};
+		process(helpCreateExchange(child, createContext(4)));
+	}
+
+}
@@ -24,8 +24,10 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Test;
 import org.teiid.api.exception.query.ExpressionEvaluationException;
@@ -478,6 +480,102 @@ public class TestGroupingNode {
         helpProcess(mgr, node, context, expected, null);
     }
 
+    @Test public void testHashAggregation() throws Exception {
+        BufferManager mgr = BufferManagerFactory.getStandaloneBufferManager();
+
+        GroupingNode node = getExampleHashGroupingNode();
+        CommandContext context = new CommandContext("pid", "test", null, null,  1);               //$NON-NLS-1$ //$NON-NLS-2$
+        
+        List[] expected = new List[] {
+            Arrays.asList(new Object[] { null, new Integer(2), new Long(3) }),
+            Arrays.asList(new Object[] { new Integer(0), new Integer(1), new Long(4) }),
+            Arrays.asList(new Object[] { new Integer(1), new Integer(1), new Long(2) }),
+            Arrays.asList(new Object[] { new Integer(2), new Integer(4), new Long(5) }),
+            Arrays.asList(new Object[] { new Integer(3), new Integer(1), new Long(0) }),
+            Arrays.asList(new Object[] { new Integer(4), new Integer(3), new Long(5) }),
+            Arrays.asList(new Object[] { new Integer(5), new Integer(1), new Long(3) }),
+            Arrays.asList(new Object[] { new Integer(6), new Integer(2), new Long(7) })
+        };
+        
+        helpProcessUnordered(mgr, node, context, expected, createTupleSource1());
+        assertTrue(node.getDescriptionProperties().toString().contains("Hash Aggregation")); //$NON-NLS-1$
+    }
+    
+    @Test public void testHashAggregationSpill() throws Exception {
+        BufferManagerImpl mgr = BufferManagerFactory.getTestBufferManager(20000, 16);
+        long reserve = mgr.getReserveBatchBytes();
+
+        GroupingNode node = getExampleHashGroupingNode();
+        CommandContext context = new CommandContext("pid", "test", null, null,  1);               //$NON-NLS-1$ //$NON-NLS-2$
+        
+        int groups = 2000;
+        List[] data = new List[groups * 5];
+        for (int i = 0; i < data.length; i++) {
+        	data[i] = Arrays.asList(i % groups, i / groups);
+        }
+        List[] expected = new List[groups];
+        for (int i = 0; i < groups; i++) {
+        	expected[i] = Arrays.asList(i, 5, 10L);
+        }
+        
+        helpProcessUnordered(mgr, node, context, expected, new FakeTupleSource(createTupleSource1().getSchema(), data));
+        node.closeDirect();
+        assertEquals(reserve, mgr.getReserveBatchBytes());
+    }
+    
+    @Test public void testHashAggregationNotHashable() throws Exception {
+    	ElementSymbol col1 = new ElementSymbol("col1"); //$NON-NLS-1$
+        col1.setType(DataTypeManager.DefaultDataClasses.OBJECT);
+        assertFalse(GroupingNode.isHashable(Arrays.asList(col1)));
+        col1.setType(DataTypeManager.DefaultDataClasses.BIG_DECIMAL);
+        assertTrue(GroupingNode.isHashable(Arrays.asList(col1)));
+        assertEquals(GroupingHashTable.hashValue(new BigDecimal("1.0")), GroupingHashTable.hashValue(new BigDecimal("1.00"))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(GroupingHashTable.hashValue(BigDecimal.ZERO), GroupingHashTable.hashValue(new BigDecimal("0.000"))); //$NON-NLS-1$
+    }
+    
+    private void helpProcessUnordered(BufferManager mgr, GroupingNode node, CommandContext context, List[] expected, FakeTupleSource dataSource) throws TeiidComponentException, TeiidProcessingException {
+        RelationalNode dataNode = new FakeRelationalNode(0, dataSource, mgr.getProcessorBatchSize());
+        dataNode.setElements(dataSource.getSchema());            
+        node.addChild(dataNode);    
+        node.initialize(context, mgr, null);
+        node.open();
+        
+        Set<List> actual = new HashSet<List>();
+        while(true) {
+            try {
+                TupleBatch batch = node.nextBatch();
+                for(long row = batch.getBeginRow(); row <= batch.getEndRow(); row++) {
+                    assertTrue(actual.add(batch.getTuple(row)));
+                }
+                if(batch.getTerminationFlag()) {
+                    break;
+                }
+            } catch (BlockedException e) {
+                //ignore
+            }
+        }
+        assertEquals(new HashSet<List>(Arrays.asList(expected)), actual);
+    }
+
+	private GroupingNode getExampleHashGroupingNode() {
+		GroupingNode node = new GroupingNode(1);
+        List outputElements = new ArrayList();
+        ElementSymbol col1 = new ElementSymbol("col1"); //$NON-NLS-1$
+        col1.setType(Integer.class);
+        ElementSymbol col2 = new ElementSymbol("col2"); //$NON-NLS-1$
+        col2.setType(Integer.class);
+        outputElements.add(col1);
+        outputElements.add(new AggregateSymbol("COUNT", false, null)); //$NON-NLS-1$
+        outputElements.add(new AggregateSymbol("SUM", false, col2)); //$NON-NLS-1$
+        node.setElements(outputElements);
+        
+        List groupingElements = new ArrayList();
+        groupingElements.add(col1); 
+        node.setOrderBy(new OrderBy(groupingElements).getOrderByItems());
+        node.setHashAggregation(true);
+		return node;
+	}
+
 	private GroupingNode getExampleGroupingNode() {
 		GroupingNode node = new GroupingNode(1);
         List outputElements = new ArrayList();
@@ -1231,4 +1231,135 @@ public class TestJoinNode {
         TestProcessor.helpProcess(plan, context, hdm, results);
     }
     
+    @Test public void testHashJoin() throws Exception {
+        joinType = JoinType.JOIN_INNER;
+        expected = new List[] {
+        	Arrays.asList(1, 1),    
+            Arrays.asList(2, 2),    
+            Arrays.asList(2, 2),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4)            
+        };
+        helpTestHashJoin(expected, 100000);
+    }
+    
+    @Test public void testHashJoinLeftOuter() throws Exception {
+        joinType = JoinType.JOIN_LEFT_OUTER;
+        expected = new List[] {
+            Arrays.asList(1, 1),    
+            Arrays.asList(2, 2),    
+            Arrays.asList(2, 2),    
+            Arrays.asList(3, null),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),            
+            Arrays.asList(5, null),    
+            Arrays.asList(10, null),            
+            Arrays.asList(11, null),    
+            Arrays.asList(11, null)            
+        };
+        helpTestHashJoin(expected, 100000);
+    }
+    
+    @Test public void testHashJoinSemi() throws Exception {
+        joinType = JoinType.JOIN_SEMI;
+        expected = new List[] {
+            Arrays.asList(1, 1),    
+            Arrays.asList(2, 2),    
+            Arrays.asList(4, 4),    
+            Arrays.asList(4, 4),    
+        };
+        helpTestHashJoin(expected, 100000);
+    }
+    
+    @Test public void testHashJoinAntiSemi() throws Exception {
+        joinType = JoinType.JOIN_ANTI_SEMI;
+        expected = new List[] {
+            Arrays.asList(3, null),    
+            Arrays.asList(5, null),    
+            Arrays.asList(10, null),            
+            Arrays.asList(11, null),    
+            Arrays.asList(11, null)            
+        };
+        helpTestHashJoin(expected, 100000);
+    }
+    
+    /**
+     * With minimal memory the build side must be partitioned to disk
+     */
+    @Test public void testHashJoinSpill() throws Exception {
+        joinType = JoinType.JOIN_LEFT_OUTER;
+        int rows = 3000;
+        leftTuples = new List[rows];
+        rightTuples = new List[rows];
+        expected = new List[rows + rows/2];
+        int index = 0;
+        for (int i = 0; i < rows; i++) {
+        	leftTuples[i] = Arrays.asList(i);
+        	rightTuples[i] = Arrays.asList(i % (rows/2));
+        	if (i < rows/2) {
+        		expected[index++] = Arrays.asList(i, i);
+        		expected[index++] = Arrays.asList(i, i);
+        	} else {
+        		expected[index++] = Arrays.asList(i, null);
+        	}
+        }
+        helpTestHashJoin(expected, 1);
+    }
+    
+    private void helpTestHashJoin(List[] expectedResults, int processingBytes) throws TeiidComponentException, TeiidProcessingException {
+    	for (boolean buildLeft : new boolean[] {true, false}) {
+    		for (int batchSize : new int[] {1, 10, 100}) {
+    			helpCreateJoin();
+    			joinStrategy = new HashJoinStrategy(buildLeft);
+    			join.setJoinStrategy(joinStrategy);
+    			
+    			BufferManagerImpl mgr = BufferManagerFactory.getTestBufferManager(processingBytes, batchSize);
+    	        mgr.setTargetBytesPerRow(100);
+    	        CommandContext context = new CommandContext("pid", "test", null, null, 1);               //$NON-NLS-1$ //$NON-NLS-2$
+    	        join.addChild(leftNode);
+    	        join.addChild(rightNode);
+    	        leftNode.initialize(context, mgr, dataMgr);
+    	        rightNode.initialize(context, mgr, dataMgr);
+    	        join.initialize(context, mgr, dataMgr);
+    	        
+    	        processUnordered(expectedResults);
+    	        join.reset();
+    	        processUnordered(expectedResults);
+    		}
+    	}
+    }
+
+	private void processUnordered(List[] expectedResults)
+			throws TeiidComponentException, TeiidProcessingException {
+		join.open();
+		List<List<?>> actual = new ArrayList<List<?>>();
+        while(true) {
+            try {
+                TupleBatch batch = join.nextBatch();
+                actual.addAll(batch.getTuples());
+                if(batch.getTerminationFlag()) {
+                    break;
+                }
+            } catch(BlockedException e) {
+                // ignore and retry
+            }
+        }
+        join.close();
+        List<String> expectedStrings = new ArrayList<String>();
+        for (List<?> tuple : expectedResults) {
+        	expectedStrings.add(tuple.toString());
+        }
+        List<String> actualStrings = new ArrayList<String>();
+        for (List<?> tuple : actual) {
+        	actualStrings.add(tuple.toString());
+        }
+        Collections.sort(expectedStrings);
+        Collections.sort(actualStrings);
+        assertEquals(expectedStrings, actualStrings);
+	}
+    
 }
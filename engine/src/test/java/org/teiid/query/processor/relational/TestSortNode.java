@@ -26,8 +26,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.teiid.adminapi.impl.SessionMetadata;
 import org.teiid.common.buffer.BlockedException;
 import org.teiid.common.buffer.BufferManager;
 import org.teiid.common.buffer.BufferManager.TupleSourceType;
@@ -40,6 +45,8 @@ import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.types.DataTypeManager;
+import org.teiid.dqp.internal.process.FutureWork;
+import org.teiid.dqp.internal.process.RequestWorkItem;
 import org.teiid.language.SortSpecification.NullOrdering;
 import org.teiid.query.optimizer.TestOptimizer.ComparisonMode;
 import org.teiid.query.optimizer.TestOptimizer.DupRemoveSortNode;
@@ -54,6 +61,7 @@ import org.teiid.query.sql.lang.OrderBy;
 import org.teiid.query.sql.symbol.ElementSymbol;
 import org.teiid.query.unittest.RealMetadataFactory;
 import org.teiid.query.util.CommandContext;
+import org.teiid.query.util.Options;
 
 @SuppressWarnings({"rawtypes", "nls"})
 public class TestSortNode {
@@ -61,7 +69,16 @@ public class TestSortNode {
     public static final int BATCH_SIZE = 100;
     
     private void helpTestSort(List elements, List[] data, List sortElements, List sortTypes, List[] expected, Mode mode) throws TeiidComponentException, TeiidProcessingException {
+        helpTestSort(elements, data, sortElements, sortTypes, expected, mode, false);
+    }
+    
+    private void helpTestSort(List elements, List[] data, List sortElements, List sortTypes, List[] expected, Mode mode, boolean parallel) throws TeiidComponentException, TeiidProcessingException {
+        helpTestSort(elements, data, sortElements, sortTypes, expected, mode, parallel, null);
+    }
+    
+    private void helpTestSort(List elements, List[] data, List sortElements, List sortTypes, List[] expected, Mode mode, boolean parallel, RequestWorkItem workItem) throws TeiidComponentException, TeiidProcessingException {
         BufferManagerImpl mgr = BufferManagerFactory.getTestBufferManager(10000, BATCH_SIZE);
+        mgr.setOptions(new Options().parallelSort(parallel));
         long reserve = mgr.getReserveBatchBytes();
         CommandContext context = new CommandContext ("pid", "test", null, null, 1);               //$NON-NLS-1$ //$NON-NLS-2$
         
@@ -79,19 +96,30 @@ public class TestSortNode {
         
         sortNode.open();
     	assertTrue(sortNode.hasBuffer());
+    	if (workItem != null) {
+    		context.setWorkItem(workItem);
+    		context.setSession(new SessionMetadata());
+    		CommandContext.pushThreadLocalContext(context);
+    	}
         int currentRow = 1;
-        while(true) {
-        	try {
-	            TupleBatch batch = sortNode.nextBatch();
-                for(int row = currentRow; row <= batch.getEndRow(); row++) {
-                    assertEquals("Rows don't match at " + row, expected[row-1], batch.getTuple(row)); //$NON-NLS-1$
-                }
-	            currentRow += batch.getRowCount();    
-	            if(batch.getTerminationFlag()) {
-	                break;
-	            }
-        	} catch (BlockedException e) {
-        		
+        try {
+	        while(true) {
+	        	try {
+		            TupleBatch batch = sortNode.nextBatch();
+	                for(int row = currentRow; row <= batch.getEndRow(); row++) {
+	                    assertEquals("Rows don't match at " + row, expected[row-1], batch.getTuple(row)); //$NON-NLS-1$
+	                }
+		            currentRow += batch.getRowCount();    
+		            if(batch.getTerminationFlag()) {
+		                break;
+		            }
+	        	} catch (BlockedException e) {
+	        		
+	        	}
+	        }
+        } finally {
+        	if (workItem != null) {
+        		CommandContext.popThreadLocalContext();
         	}
         }
         assertEquals(expected.length, currentRow - 1);
@@ -132,6 +160,14 @@ public class TestSortNode {
     }
     
     private void helpTestAllSorts(int batches) throws Exception {
+        helpTestAllSorts(batches, false);
+    }
+    
+    private void helpTestAllSorts(int batches, boolean parallel) throws Exception {
+        helpTestAllSorts(batches, parallel, null);
+    }
+    
+    private void helpTestAllSorts(int batches, boolean parallel, RequestWorkItem workItem) throws Exception {
         ElementSymbol es1 = new ElementSymbol("e1"); //$NON-NLS-1$
         es1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
 
@@ -162,7 +198,7 @@ public class TestSortNode {
         Arrays.sort(expected, comparator);
         
         for (Mode mode : Mode.values()) {
-    		helpTestSort(elements, data, sortElements, sortTypes, mode==Mode.SORT?expected:expectedDistinct, mode);
+    		helpTestSort(elements, data, sortElements, sortTypes, mode==Mode.SORT?expected:expectedDistinct, mode, parallel, workItem);
         }
     }
     
@@ -278,6 +314,104 @@ public class TestSortNode {
         helpTestAllSorts(1);
     }       
     
+    @Test public void testBiggerParallelSort() throws Exception {
+        helpTestAllSorts(100, true);
+    }
+    
+    @Test public void testBiggerParallelSortAsync() throws Exception {
+        RequestWorkItem workItem = Mockito.mock(RequestWorkItem.class);
+        Mockito.when(workItem.addRequestWork(Mockito.any(Callable.class))).thenAnswer(new Answer<FutureWork<?>>() {
+            @Override
+            public FutureWork<?> answer(InvocationOnMock invocation) throws Throwable {
+                FutureWork<Object> work = new FutureWork<Object>((Callable<Object>)invocation.getArguments()[0], 0);
+                new Thread(work).start();
+                return work;
+            }
+        });
+        helpTestAllSorts(100, true, workItem);
+        Mockito.verify(workItem, Mockito.atLeastOnce()).addRequestWork(Mockito.any(Callable.class));
+    }
+    
+    @Test public void testParallelRunsSortedWhileReading() throws Exception {
+        ElementSymbol es1 = new ElementSymbol("e1"); //$NON-NLS-1$
+        es1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+        List<ElementSymbol> elements = Arrays.asList(es1);
+        BufferManagerImpl mgr = BufferManagerFactory.getTestBufferManager(10000, BATCH_SIZE);
+        mgr.setOptions(new Options().parallelSort(true));
+        long reserve = mgr.getReserveBatchBytes();
+        final int rows = 50000;
+        final int[] read = new int[1];
+        TupleSource ts = new TupleSource() {
+            @Override
+            public List<?> nextTuple() {
+                if (read[0] == rows) {
+                    return null;
+                }
+                return Arrays.asList((read[0]++ * 7919) % rows);
+            }
+            
+            @Override
+            public void closeSource() {
+            }
+        };
+        SortUtility su = new SortUtility(ts, elements, Arrays.asList(OrderBy.ASC), Mode.SORT, mgr, "test", elements);
+        final List<FutureWork<?>> submitted = new ArrayList<FutureWork<?>>();
+        final int[] readAtFirstSubmit = {-1};
+        final int[] maxInFlight = new int[1];
+        RequestWorkItem workItem = Mockito.mock(RequestWorkItem.class);
+        Mockito.when(workItem.addRequestWork(Mockito.any(Callable.class))).thenAnswer(new Answer<FutureWork<?>>() {
+            @Override
+            public FutureWork<?> answer(InvocationOnMock invocation) throws Throwable {
+                FutureWork<Object> work = new FutureWork<Object>((Callable<Object>)invocation.getArguments()[0], 0);
+                if (readAtFirstSubmit[0] == -1) {
+                    readAtFirstSubmit[0] = read[0];
+                }
+                int inFlight = 1;
+                for (FutureWork<?> other : submitted) {
+                    if (!other.isDone()) {
+                        inFlight++;
+                    }
+                }
+                maxInFlight[0] = Math.max(maxInFlight[0], inFlight);
+                submitted.add(work);
+                return work;
+            }
+        });
+        CommandContext context = new CommandContext ("pid", "test", null, null, 1);               //$NON-NLS-1$ //$NON-NLS-2$
+        context.setWorkItem(workItem);
+        context.setSession(new SessionMetadata());
+        context.setUserRequestSourceConcurrency(2);
+        context.setTimeSliceEnd(System.currentTimeMillis() + 60000);
+        CommandContext.pushThreadLocalContext(context);
+        TupleBuffer result = null;
+        try {
+            while (result == null) {
+                try {
+                    result = su.sort();
+                } catch (BlockedException e) {
+                    //run the held tasks
+                    for (FutureWork<?> work : new ArrayList<FutureWork<?>>(submitted)) {
+                        if (!work.isDone()) {
+                            work.run();
+                        }
+                    }
+                }
+            }
+        } finally {
+            CommandContext.popThreadLocalContext();
+        }
+        //the first run is sorted before the source is exhausted and no more than 2 are in flight
+        assertTrue(readAtFirstSubmit[0] < rows / 2);
+        assertTrue(submitted.size() > 2);
+        assertEquals(2, maxInFlight[0]);
+        assertEquals(rows, result.getRowCount());
+        for (int i = 1; i <= rows; i++) {
+            assertEquals(Arrays.asList(i - 1), result.getBatch(i).getTuple(i));
+        }
+        result.remove();
+        assertEquals(reserve, mgr.getReserveBatchBytes());
+    }
+    
     @Test public void testDistinct() throws Exception {
     	ElementSymbol es1 = new ElementSymbol("e1"); //$NON-NLS-1$
         es1.setType(DataTypeManager.DefaultDataClasses.INTEGER);
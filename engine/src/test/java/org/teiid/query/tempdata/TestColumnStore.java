@@ -0,0 +1,177 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.tempdata;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.teiid.common.buffer.BufferManager;
+import org.teiid.common.buffer.BufferManagerFactory;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.types.DataTypeManager;
+import org.teiid.query.metadata.TempMetadataID;
+import org.teiid.query.parser.QueryParser;
+import org.teiid.query.processor.CollectionTupleSource;
+import org.teiid.query.sql.lang.Criteria;
+import org.teiid.query.sql.lang.OrderBy;
+import org.teiid.query.sql.symbol.ElementSymbol;
+
+@SuppressWarnings("nls")
+public class TestColumnStore {
+	
+	private static final int ROWS = 3000;
+	
+	private List<ElementSymbol> columns;
+	private TempTable rowTable;
+	private TempTable columnTable;
+	
+	private static ElementSymbol column(String name, Class<?> type) {
+		ElementSymbol es = new ElementSymbol(name);
+		es.setType(type);
+		return es;
+	}
+	
+	private TempTable createTable(BufferManager bm, boolean columnar) throws Exception {
+		return createTable(bm, columnar, false);
+	}
+	
+	private TempTable createTable(BufferManager bm, boolean columnar, boolean hash) throws Exception {
+		List<List<?>> rows = new ArrayList<List<?>>(ROWS);
+		for (int i = 0; i < ROWS; i++) {
+			rows.add(Arrays.asList(i, "c" + (i % 5), i / 500, i % 7 == 0 ? null : i % 100, "v" + (i * 31 % ROWS)));
+		}
+		TempTable table = new TempTable(new TempMetadataID("x", Collections.EMPTY_LIST), bm, new ArrayList<ElementSymbol>(columns), 1, "1");
+		table.insert(new CollectionTupleSource(rows.iterator()), columns, false, false, null);
+		table.setUpdatable(false);
+		if (hash) {
+			table.addIndex(Arrays.asList(columns.get(4)), false, true);
+			table.addIndex(Arrays.asList(columns.get(1), columns.get(2)), false, true);
+		}
+		if (columnar) {
+			table.convertToColumnar();
+			assertTrue(table.isColumnar());
+		}
+		return table;
+	}
+	
+	@Before public void setUp() throws Exception {
+		columns = Arrays.asList(column("pk", DataTypeManager.DefaultDataClasses.INTEGER), 
+				column("cat", DataTypeManager.DefaultDataClasses.STRING),
+				column("run", DataTypeManager.DefaultDataClasses.INTEGER),
+				column("val", DataTypeManager.DefaultDataClasses.INTEGER),
+				column("data", DataTypeManager.DefaultDataClasses.STRING));
+		BufferManager bm = BufferManagerFactory.getStandaloneBufferManager();
+		rowTable = createTable(bm, false);
+		columnTable = createTable(bm, true);
+	}
+	
+	private static List<List<?>> query(TempTable table, List<ElementSymbol> cols, String criteria, OrderBy orderBy) throws Exception {
+		Criteria crit = criteria == null ? null : QueryParser.getQueryParser().parseCriteria(criteria);
+		TupleSource ts = table.createTupleSource(cols, crit, orderBy);
+		List<List<?>> result = new ArrayList<List<?>>();
+		List<?> next = null;
+		while ((next = ts.nextTuple()) != null) {
+			result.add(next);
+		}
+		ts.closeSource();
+		return result;
+	}
+	
+	private void helpCompare(String criteria, int expected) throws Exception {
+		helpCompare(columns, criteria, null, expected);
+	}
+	
+	private void helpCompare(List<ElementSymbol> cols, String criteria, OrderBy orderBy, int expected) throws Exception {
+		List<List<?>> result = query(columnTable, cols, criteria, orderBy);
+		assertEquals(query(rowTable, cols, criteria, orderBy), result);
+		assertEquals(expected, result.size());
+	}
+	
+	@Test public void testScan() throws Exception {
+		assertEquals(ROWS, columnTable.getRowCount());
+		helpCompare(null, ROWS);
+		helpCompare("cat = 'c1'", 600);
+		helpCompare("run = 2", 500);
+		helpCompare("run >= 4 and cat in ('c1', 'c2', 'c9')", 400);
+		helpCompare("val is null", 429);
+		helpCompare("val < 10 and val is not null", 257);
+		helpCompare("val <> 3 and data = 'v31'", 1);
+		helpCompare("run = 10", 0);
+	}
+	
+	@Test public void testKeys() throws Exception {
+		helpCompare("pk = 1024", 1);
+		helpCompare("pk in (5, 2999, 1023, 1024, 3000)", 4);
+		helpCompare("pk > 1000 and pk <= 2100 and cat = 'c3'", 220);
+		helpCompare("pk < 10", 10);
+		helpCompare("pk >= 2990", 10);
+		helpCompare("pk < 0", 0);
+	}
+	
+	@Test public void testOrderAndProjection() throws Exception {
+		OrderBy orderBy = new OrderBy();
+		orderBy.addVariable(columns.get(0), OrderBy.DESC);
+		helpCompare(columns, "pk >= 1000 and pk <= 2050 and val = 50", orderBy, 9);
+		helpCompare(columns, "pk in (1, 2000, 1500)", orderBy, 3);
+		List<ElementSymbol> cols = Arrays.asList(columns.get(4), columns.get(1));
+		helpCompare(cols, "run = 1", orderBy, 500);
+	}
+	
+	@Test public void testEncodings() throws Exception {
+		assertEquals(7, ColumnStore.bitsFor(100));
+		assertEquals(0, ColumnStore.bitsFor(0));
+		long[] data = new long[3];
+		for (int i = 0; i < 9; i++) {
+			ColumnStore.pack(data, i, 17, 100000 + i);
+		}
+		for (int i = 0; i < 9; i++) {
+			assertEquals(100000 + i, ColumnStore.unpack(data, i, 17));
+		}
+	}
+	
+	@Test public void testHashIndex() throws Exception {
+		BufferManager bm = BufferManagerFactory.getStandaloneBufferManager();
+		rowTable = createTable(bm, false, true);
+		columnTable = createTable(bm, true, true);
+		//the index references the rows by position in the store
+		assertNotNull(columnTable.getHashIndex(Arrays.asList(columns.get(4))));
+		helpCompare("data = 'v31'", 1);
+		helpCompare("data in ('v31', 'v62', 'v93', 'x')", 3);
+		helpCompare("cat = 'c1' and run = 2", 100);
+		helpCompare("cat = 'c1' and run in (2, 3) and val = 11", 8);
+		//restoring the rows restores the index entries
+		columnTable.setUpdatable(true);
+		assertFalse(columnTable.isColumnar());
+		helpCompare("data in ('v31', 'v62')", 2);
+		helpCompare("cat = 'c4' and run = 0", 100);
+	}
+	
+	@Test public void testRestoreRows() throws Exception {
+		columnTable.setUpdatable(true);
+		assertFalse(columnTable.isColumnar());
+		helpCompare("cat = 'c1' and pk > 1500", 300);
+	}
+
+}
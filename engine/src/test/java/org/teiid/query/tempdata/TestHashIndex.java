@@ -0,0 +1,117 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.query.tempdata;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.teiid.common.buffer.TupleSource;
+import org.teiid.core.types.DataTypeManager;
+import org.teiid.query.processor.relational.RelationalNode;
+import org.teiid.query.sql.symbol.ElementSymbol;
+
+@SuppressWarnings("nls")
+public class TestHashIndex {
+
+	private static List<List<?>> lookup(HashIndex index, Object... keys) throws Exception {
+		List<List<Object>> keyList = new ArrayList<List<Object>>();
+		for (Object key : keys) {
+			keyList.add(Arrays.asList(key));
+		}
+		TupleSource ts = index.createTupleSource(keyList);
+		List<List<?>> result = new ArrayList<List<?>>();
+		List<?> next = null;
+		while ((next = ts.nextTuple()) != null) {
+			result.add(next);
+		}
+		return result;
+	}
+
+	private static HashIndex createIndex(int rows) {
+		ElementSymbol pk = new ElementSymbol("pk");
+		pk.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+		ElementSymbol key = new ElementSymbol("key");
+		key.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+		HashIndex index = new HashIndex(Arrays.asList(key), RelationalNode.createLookupMap(Arrays.asList(pk, key)), 1);
+		for (int i = 0; i < rows; i++) {
+			index.add(Arrays.asList(i, i % 10));
+		}
+		return index;
+	}
+
+	@Test public void testRemove() throws Exception {
+		HashIndex index = createIndex(1000);
+		assertEquals(100, lookup(index, 3).size());
+		for (int i = 0; i < 1000; i += 2) {
+			index.remove(Arrays.asList(i, i % 10));
+		}
+		assertEquals(500, index.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i % 2 == 0 ? 0 : 100, lookup(index, i).size());
+		}
+		assertEquals(0, lookup(index, 11).size());
+	}
+
+	@Test public void testDuplicateKeys() throws Exception {
+		HashIndex index = createIndex(20);
+		assertEquals(Arrays.asList(Arrays.asList(1, 1), Arrays.asList(11, 1), Arrays.asList(2, 2), Arrays.asList(12, 2)), lookup(index, 1, 1, 2));
+	}
+
+	@Test public void testClone() throws Exception {
+		HashIndex index = createIndex(20);
+		HashIndex clone = index.clone();
+		clone.remove(Arrays.asList(1, 1));
+		clone.add(Arrays.asList(20, 0));
+		assertEquals(2, lookup(index, 1).size());
+		assertEquals(2, lookup(index, 0).size());
+		assertEquals(1, lookup(clone, 1).size());
+		assertEquals(3, lookup(clone, 0).size());
+		index.add(Arrays.asList(21, 1));
+		assertEquals(1, lookup(clone, 1).size());
+		assertEquals(3, lookup(index, 1).size());
+	}
+
+	@Test public void testCloneCopiesWrittenSegments() throws Exception {
+		ElementSymbol pk = new ElementSymbol("pk");
+		pk.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+		ElementSymbol key = new ElementSymbol("key");
+		key.setType(DataTypeManager.DefaultDataClasses.INTEGER);
+		HashIndex index = new HashIndex(Arrays.asList(key), RelationalNode.createLookupMap(Arrays.asList(pk, key)), 1);
+		for (int i = 0; i < 100000; i++) {
+			index.add(Arrays.asList(i, i));
+		}
+		HashIndex clone = index.clone();
+		int segments = clone.getSharedSegments();
+		assertTrue(segments > 100);
+		//a row update copies only the segments of its probe sequences rather than the index
+		clone.remove(Arrays.asList(5, 5));
+		clone.add(Arrays.asList(5, 100005));
+		assertTrue(segments - clone.getSharedSegments() <= 4);
+		assertEquals(segments, index.getSharedSegments());
+		assertEquals(1, lookup(index, 5).size());
+		assertEquals(0, lookup(clone, 5).size());
+		assertEquals(1, lookup(clone, 100005).size());
+		assertEquals(0, lookup(index, 100005).size());
+	}
+
+}
@@ -130,6 +130,13 @@ public class CompositeGlobalTableStore implements GlobalTableStore {
 			boolean delete) throws TeiidComponentException {
 		return getStoreForTable(matTableName).updateMatViewRow(matTableName, tuple, delete);
 	}
+	
+	@Override
+	public int updateMatViewRows(String matTableName,
+			List<? extends List<?>> tuples, List<Boolean> deletes)
+			throws TeiidComponentException {
+		return getStoreForTable(matTableName).updateMatViewRows(matTableName, tuples, deletes);
+	}
 
 	@Override
 	public TempTable createMatTable(String matTableName, GroupSymbol group)
@@ -137,6 +144,13 @@ public class CompositeGlobalTableStore implements GlobalTableStore {
 			TeiidProcessingException {
 		return getStoreForTable(matTableName).createMatTable(matTableName, group);
 	}
+	
+	@Override
+	public TempTable restoreSnapshot(String matTableName, GroupSymbol group)
+			throws TeiidComponentException, QueryMetadataException,
+			TeiidProcessingException {
+		return getStoreForTable(matTableName).restoreSnapshot(matTableName, group);
+	}
 
 	@Override
 	public void failedLoad(String matTableName) {
@@ -23,6 +23,7 @@ import java.util.Properties;
 import org.teiid.client.util.ResultsFuture;
 import org.teiid.jdbc.ResultSetImpl;
 import org.teiid.odbc.PGUtil.PgColInfo;
+import org.teiid.transport.pg.CopyFormat;
 
 public interface ODBCClientRemote {
 	
@@ -79,6 +80,15 @@ public interface ODBCClientRemote {
 	
 	void sendCommandComplete(String sql, Integer count);	
 
+	//	CopyOutResponse (B)
+	//	CopyData (B)
+	//	CopyDone (B)
+	//	CommandComplete (B)
+	void sendCopyOut(String sql, ResultSetImpl rs, List<PgColInfo> cols, CopyFormat format, ResultsFuture<Integer> result);
+
+	//	CopyInResponse (B)
+	void sendCopyIn(int columns, CopyFormat format);
+
 	//	CommandComplete (B)
 	void sendUpdateCount(String sql, int updateCount);
 
@@ -107,11 +117,6 @@ public interface ODBCClientRemote {
 	
 	//	CloseComplete (B)
 
-	//	CopyData (F & B)
-	//	CopyDone (F & B)
-	//	CopyInResponse (B)
-	//	CopyOutResponse (B)
-	
 	//	NoticeResponse (B)
 	//	NotificationResponse (B)
 	
@@ -59,10 +59,14 @@ public interface ODBCServerRemote {
 
     void cancel(int pid, int key);
 	
-	//  unimplemented frontend messages
-	//	CopyData (F & B)
-	//	CopyDone (F & B)
+	//	CopyData (F)
+	void copyData(byte[] data);
+
+	//	CopyDone (F)
+	void copyDone();
+
 	//	CopyFail (F)
+	void copyFail(String msg);
 }
 
 
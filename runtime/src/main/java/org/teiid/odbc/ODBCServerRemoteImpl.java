@@ -27,6 +27,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -42,6 +43,7 @@ import java.util.regex.Pattern;
 import org.ietf.jgss.GSSCredential;
 import org.teiid.adminapi.VDB;
 import org.teiid.adminapi.impl.SessionMetadata;
+import org.teiid.adminapi.impl.VDBMetaData;
 import org.teiid.client.RequestMessage.ResultsMode;
 import org.teiid.client.security.ILogon;
 import org.teiid.client.security.LogonException;
@@ -49,6 +51,7 @@ import org.teiid.client.util.ResultsFuture;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.util.EquivalenceUtil;
+import org.teiid.core.util.LRUCache;
 import org.teiid.core.util.PropertiesUtils;
 import org.teiid.core.util.StringUtil;
 import org.teiid.core.util.TimestampWithTimezone;
@@ -62,18 +65,26 @@ import org.teiid.jdbc.TeiidDriver;
 import org.teiid.jdbc.TeiidSQLException;
 import org.teiid.logging.LogConstants;
 import org.teiid.logging.LogManager;
+import org.teiid.metadata.Schema;
+import org.teiid.metadata.Table;
 import org.teiid.net.TeiidURL;
 import org.teiid.net.socket.AuthenticationType;
 import org.teiid.net.socket.SocketServerConnection;
 import org.teiid.odbc.ODBCClientRemote.CursorDirection;
 import org.teiid.odbc.PGUtil.PgColInfo;
+import org.teiid.query.metadata.TransformationMetadata;
+import org.teiid.query.sql.visitor.SQLStringVisitor;
 import org.teiid.runtime.RuntimePlugin;
 import org.teiid.security.GSSResult;
 import org.teiid.transport.LocalServerConnection;
 import org.teiid.transport.LogonImpl;
 import org.teiid.transport.ODBCClientInstance;
+import org.teiid.transport.PGCharsetConverter;
 import org.teiid.transport.PgBackendProtocol;
 import org.teiid.transport.PgFrontendProtocol.NullTerminatedStringDataInputStream;
+import org.teiid.transport.pg.CopyFormat;
+import org.teiid.transport.pg.PGbytea;
+import org.teiid.transport.pg.PGnumeric;
 import org.teiid.transport.pg.TimestampUtils;
 
 /**
@@ -83,10 +94,12 @@ import org.teiid.transport.pg.TimestampUtils;
 public class ODBCServerRemoteImpl implements ODBCServerRemote {
 	
     private static final boolean HONOR_DECLARE_FETCH_TXN = PropertiesUtils.getHierarchicalProperty("org.teiid.honorDeclareFetchTxn", false, Boolean.class); //$NON-NLS-1$
+    private static final int PREPARED_CACHE_SIZE = PropertiesUtils.getHierarchicalProperty("org.teiid.ODBCPreparedCacheSize", 256, Integer.class); //$NON-NLS-1$
     
 	public static final String CONNECTION_PROPERTY_PREFIX = "connection."; //$NON-NLS-1$
 	private static final String UNNAMED = ""; //$NON-NLS-1$
 	private static Pattern setPattern = Pattern.compile("set\\s+(\\w+)\\s+to\\s+((?:'[^']*')+)", Pattern.DOTALL|Pattern.CASE_INSENSITIVE);//$NON-NLS-1$
+	private static Pattern ddlPattern = Pattern.compile("\\s*(?:create|drop|alter)\\s.*", Pattern.DOTALL|Pattern.CASE_INSENSITIVE);//$NON-NLS-1$
 	
 	private static Pattern columnMetadataPattern = Pattern.compile("select n.nspname, c.relname, a.attname, a.atttypid, t.typname, a.attnum, a.attlen, a.atttypmod, a.attnotnull, " //$NON-NLS-1$
 			+ "c.relhasrules, c.relkind, c.oid, pg_get_expr\\(d.adbin, d.adrelid\\), case t.typtype when 'd' then t.typbasetype else 0 end, t.typtypmod, c.relhasoids " //$NON-NLS-1$
@@ -192,6 +205,9 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 	private static Pattern savepointPattern = Pattern.compile("SAVEPOINT\\s+(\\w+\\d?_*)", Pattern.DOTALL|Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
 	private static Pattern rollbackPattern = Pattern.compile("ROLLBACK(\\s+to)?\\s+(\\w+\\d+_*)", Pattern.DOTALL|Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
 	
+	private static Pattern copyPattern = Pattern.compile("COPY\\s+(?:\\((.*)\\)|((?:\"[^\"]*\"|[^\\s(\"])+)\\s*(?:\\(([^)]*)\\))?)\\s*(TO\\s+STDOUT|FROM\\s+STDIN)(?:\\s+(.*))?", Pattern.DOTALL|Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+	private static final int COPY_BATCH_SIZE = 2048;
+
 	private static Pattern txnPattern = Pattern.compile("(BEGIN(?:\\s+READ\\s+ONLY)?|COMMIT|ROLLBACK)(\\s+(WORK|TRANSACTION))?", Pattern.DOTALL|Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
 	
 	private TeiidDriver driver;
@@ -202,11 +218,17 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 	private boolean errorOccurred;
 	
 	private volatile ResultsFuture<Boolean> executionFuture;
+	private volatile CopyIn copyIn;
 	
 	// TODO: this is unbounded map; need to define some boundaries as to how many stmts each session can have
 	private Map<String, Prepared> preparedMap = Collections.synchronizedMap(new HashMap<String, Prepared>());
 	private Map<String, Portal> portalMap = Collections.synchronizedMap(new HashMap<String, Portal>());
 	private Map<String, Cursor> cursorMap = Collections.synchronizedMap(new HashMap<String, Cursor>());
+	/*
+	 * parsed statements by sql text and parameter types, so that drivers that parse
+	 * each execution, such as batches of unnamed statements, skip the metadata lookup
+	 */
+	private Map<List<Object>, CachedPrepared> preparedCache = Collections.synchronizedMap(new LRUCache<List<Object>, CachedPrepared>(PREPARED_CACHE_SIZE));
 	private	LogonImpl logon;
 
 	//state needed to implement cancel
@@ -555,6 +577,188 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		});    	
     }	
 	
+	private void copy(Matcher m, ResultsFuture<Integer> completion) throws SQLException {
+		CopyFormat format = CopyFormat.parse(m.group(5));
+		String table = m.group(2);
+		String columns = m.group(3);
+		if (StringUtil.startsWithIgnoreCase(m.group(4), "TO")) { //$NON-NLS-1$
+			String query = m.group(1);
+			if (query == null) {
+				query = "SELECT " + (columns == null?"*":columns) + " FROM " + table; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			copyOut(fixSQL(query), format, completion);
+			return;
+		}
+		if (table == null) {
+			throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40170));
+		}
+		copyIn(table, columns, format, completion);
+	}
+
+	private void copyOut(String query, final CopyFormat format, final ResultsFuture<Integer> completion) throws SQLException {
+		final StatementImpl stmt = connection.createStatement();
+		executionFuture = stmt.submitExecute(query, null);
+		this.executingStatement = stmt.getRequestIdentifier();
+		completion.addCompletionListener(new ResultsFuture.CompletionListener<Integer>() {
+			public void onCompletion(ResultsFuture<Integer> future) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					LogManager.logDetail(LogConstants.CTX_ODBC, e, "Error closing statement"); //$NON-NLS-1$
+				}
+			}
+		});
+		executionFuture.addCompletionListener(new ResultsFuture.CompletionListener<Boolean>() {
+			@Override
+			public void onCompletion(ResultsFuture<Boolean> future) {
+				executionFuture = null;
+				try {
+					if (future.get()) {
+						List<PgColInfo> cols = getPgColInfo(stmt.getResultSet().getMetaData());
+						client.sendCopyOut("COPY", stmt.getResultSet(), cols, format, completion); //$NON-NLS-1$
+					} else {
+						client.sendCommandComplete("COPY", 0); //$NON-NLS-1$
+						completion.getResultsReceiver().receiveResults(0);
+					}
+				} catch (Throwable e) {
+					if (!completion.isDone()) {
+						completion.getResultsReceiver().exceptionOccurred(e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start a COPY FROM STDIN.  The incoming rows are inserted as prepared batches,
+	 * which the engine may process as bulk inserts.  As with other statements the copy
+	 * is only atomic if the client has started a transaction or the batch size is not exceeded.
+	 * <br>
+	 * The execution is marked as done so that the CopyData messages are processed
+	 * while the completion remains pending until the CopyDone.
+	 */
+	private void copyIn(String table, String columns, CopyFormat format, ResultsFuture<Integer> completion) throws SQLException {
+		PreparedStatementImpl select = this.connection.prepareStatement("SELECT " + (columns == null?"*":columns) + " FROM " + table); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		List<PgColInfo> cols = null;
+		StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" ("); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			ResultSetMetaData metadata = select.getMetaData();
+			cols = getPgColInfo(metadata);
+			for (int i = 0; i < cols.size(); i++) {
+				if (i > 0) {
+					insert.append(", "); //$NON-NLS-1$
+				}
+				insert.append(SQLStringVisitor.escapeSinglePart(metadata.getColumnName(i + 1)));
+			}
+		} finally {
+			select.close();
+		}
+		insert.append(") VALUES ("); //$NON-NLS-1$
+		for (int i = 0; i < cols.size(); i++) {
+			if (i > 0) {
+				insert.append(", "); //$NON-NLS-1$
+			}
+			insert.append('?');
+		}
+		insert.append(')');
+		Charset encoding = PGCharsetConverter.getCharset(getEncoding());
+		if (encoding == null) {
+			encoding = Charset.forName("UTF-8"); //$NON-NLS-1$
+		}
+		PreparedStatementImpl stmt = this.connection.prepareStatement(insert.toString());
+		this.copyIn = new CopyIn(stmt, cols, format.createParser(encoding), encoding, completion);
+		this.client.sendCopyIn(cols.size(), format);
+		doneExecuting();
+	}
+
+	@Override
+	public void copyData(byte[] data) {
+		CopyIn copy = this.copyIn;
+		if (copy == null) {
+			//discard until the client sees the error
+			return;
+		}
+		copy.parser.addData(data);
+		processCopyData(copy, false);
+	}
+
+	@Override
+	public void copyDone() {
+		CopyIn copy = this.copyIn;
+		if (copy != null) {
+			processCopyData(copy, true);
+		}
+	}
+
+	@Override
+	public void copyFail(String msg) {
+		CopyIn copy = this.copyIn;
+		if (copy != null) {
+			failCopy(copy, new TeiidSQLException(msg));
+		}
+	}
+
+	/**
+	 * Add the complete rows to the batch and submit the batch if it is full or the data is done.
+	 * @return true if a batch was submitted
+	 */
+	private boolean processCopyData(final CopyIn copy, final boolean eof) {
+		try {
+			List<Object> row = null;
+			while (copy.rows < COPY_BATCH_SIZE && (row = copy.parser.nextRow(eof)) != null) {
+				copy.addRow(row);
+			}
+			if (copy.rows < COPY_BATCH_SIZE && !eof) {
+				return false;
+			}
+			this.executing = true;
+			ResultsFuture<int[]> result = null;
+			if (copy.rows > 0) {
+				result = copy.stmt.submitExecuteBatch();
+				copy.count += copy.rows;
+				copy.rows = 0;
+			} else {
+				result = new ResultsFuture<int[]>();
+				result.getResultsReceiver().receiveResults(null);
+			}
+			result.addCompletionListener(new ResultsFuture.CompletionListener<int[]>() {
+				@Override
+				public void onCompletion(ResultsFuture<int[]> future) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						throw new AssertionError(e);
+					} catch (ExecutionException e) {
+						failCopy(copy, e.getCause());
+						return;
+					}
+					if (eof) {
+						finishCopy(copy);
+					} else if (!processCopyData(copy, false)) {
+						doneExecuting();
+					}
+				}
+			});
+			return true;
+		} catch (SQLException e) {
+			failCopy(copy, e);
+			return true;
+		}
+	}
+
+	private void finishCopy(CopyIn copy) {
+		this.copyIn = null;
+		copy.close();
+		this.client.sendCommandComplete("COPY", copy.count); //$NON-NLS-1$
+		copy.completion.getResultsReceiver().receiveResults(copy.count);
+	}
+
+	private void failCopy(CopyIn copy, Throwable t) {
+		this.copyIn = null;
+		copy.close();
+		copy.completion.getResultsReceiver().exceptionOccurred(t);
+	}
+
 	@Override
 	public void prepare(String prepareName, String sql, int[] paramType) {
 		if (prepareName == null || prepareName.length() == 0) {
@@ -575,6 +779,23 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 						return;
 					}
 				}
+				List<Object> key = Arrays.asList(sql, Arrays.toString(paramType));
+				if (ddlPattern.matcher(sql).matches()) {
+					//the metadata of other statements may change
+					this.preparedCache.clear();
+				} else {
+					CachedPrepared cached = this.preparedCache.get(key);
+					if (cached != null) {
+						if (cached.isValid(getVDB())) {
+							Prepared prepared = cached.prepared;
+							this.preparedMap.put(prepareName, new Prepared(prepareName, sql, prepared.modifiedSql, paramType, prepared.columnMetadata, prepared.cursorName));
+							this.client.prepareCompleted(prepareName);
+							return;
+						}
+						this.preparedCache.remove(key);
+					}
+				}
+				long creationTime = System.currentTimeMillis();
 				//just pull the initial information - leave statement formation until binding 
 				String modfiedSQL = fixSQL(sql);
 				Matcher m = null;
@@ -587,8 +808,13 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
                     scroll = m.group(3) != null && m.group(4) == null;
                 }
 				stmt = this.connection.prepareStatement(modfiedSQL, scroll?ResultSet.TYPE_SCROLL_INSENSITIVE:ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-				Prepared prepared = new Prepared(prepareName, sql, modfiedSQL, paramType, getPgColInfo(stmt.getMetaData()), cursorName);
+				ResultSetMetaData metadata = stmt.getMetaData();
+				Prepared prepared = new Prepared(prepareName, sql, modfiedSQL, paramType, getPgColInfo(metadata), cursorName);
 				this.preparedMap.put(prepareName, prepared);
+				if (PREPARED_CACHE_SIZE > 0) {
+					VDBMetaData vdb = getVDB();
+					this.preparedCache.put(key, new CachedPrepared(prepared, vdb, creationTime, getTables(vdb, metadata)));
+				}
 				this.client.prepareCompleted(prepareName);
 			} catch (SQLException e) {
 				if (e.getCause() instanceof TeiidProcessingException) {
@@ -606,10 +832,10 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		}
 	}	
 	
-	private long readLong(byte[] bytes, int length) {
+	private static long readLong(byte[] bytes, int length) {
 		long val = 0;
 		for (int k = 0; k < length; k++) {
-			val += ((bytes[k] & 255) << ((length - k - 1)*8));
+			val += ((bytes[k] & 255L) << ((length - k - 1)*8));
 		}
 		return val;
 	}
@@ -644,36 +870,7 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 			for (int i = 0; i < params.length; i++) {
 				Object param = params[i];
 				if (param instanceof byte[] && prepared.paramType.length > i) {
-					int oid = prepared.paramType[i];
-					switch (oid) {
-					case PGUtil.PG_TYPE_UNSPECIFIED:
-						//TODO: should infer type from the parameter metadata from the parse message
-						break;
-					case PGUtil.PG_TYPE_BYTEA:
-						break;
-					case PGUtil.PG_TYPE_INT2:
-						param = (short)readLong((byte[])param, 2);
-						break;
-					case PGUtil.PG_TYPE_INT4:
-						param = (int)readLong((byte[])param, 4);
-						break;
-					case PGUtil.PG_TYPE_INT8:
-						param = readLong((byte[])param, 8);
-						break;
-					case PGUtil.PG_TYPE_FLOAT4:
-						param = Float.intBitsToFloat((int)readLong((byte[])param, 4));
-						break;
-					case PGUtil.PG_TYPE_FLOAT8:
-						param = Double.longBitsToDouble(readLong((byte[])param, 8));
-						break;
-					case PGUtil.PG_TYPE_DATE:
-					    param = TimestampUtils.toDate(TimestampWithTimezone.getCalendar().getTimeZone(), (int)readLong((byte[])param, 4));
-						break;
-					default:
-					    //start with the string conversion
-					    param = new String((byte[])param, encoding);
-					    break;
-					}
+					param = fromBinary(prepared.paramType[i], (byte[])param, encoding);
 				}
 				stmt.setObject(i+1, param);
 			}
@@ -692,6 +889,71 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		}
 	}
 
+	private static Object fromBinary(int oid, byte[] param, Charset encoding) throws TeiidSQLException {
+		switch (oid) {
+		case PGUtil.PG_TYPE_UNSPECIFIED:
+			//TODO: should infer type from the parameter metadata from the parse message
+			return param;
+		case PGUtil.PG_TYPE_BYTEA:
+			return param;
+		case PGUtil.PG_TYPE_INT2:
+			return (short)readLong(param, 2);
+		case PGUtil.PG_TYPE_INT4:
+			return (int)readLong(param, 4);
+		case PGUtil.PG_TYPE_INT8:
+			return readLong(param, 8);
+		case PGUtil.PG_TYPE_FLOAT4:
+			return Float.intBitsToFloat((int)readLong(param, 4));
+		case PGUtil.PG_TYPE_FLOAT8:
+			return Double.longBitsToDouble(readLong(param, 8));
+		case PGUtil.PG_TYPE_DATE:
+		    return TimestampUtils.toDate(TimestampWithTimezone.getCalendar().getTimeZone(), (int)readLong(param, 4));
+		case PGUtil.PG_TYPE_TIMESTAMP_NO_TMZONE:
+		    return TimestampUtils.toTimestamp(TimestampWithTimezone.getCalendar().getTimeZone(), readLong(param, 8));
+		case PGUtil.PG_TYPE_TIME:
+		    return TimestampUtils.toTime(TimestampWithTimezone.getCalendar().getTimeZone(), readLong(param, 8));
+		case PGUtil.PG_TYPE_BOOL:
+		    return param[0] != 0;
+		case PGUtil.PG_TYPE_NUMERIC:
+		    try {
+		        return PGnumeric.toBigDecimal(param);
+		    } catch (NumberFormatException e) {
+		        throw TeiidSQLException.create(e, e.getMessage());
+		    }
+		default:
+		    //start with the string conversion
+		    return new String(param, encoding);
+		}
+	}
+
+	/**
+	 * Convert the text form of COPY data, other than strings the engine conversions are used
+	 */
+	private static Object fromText(int oid, String value, Charset encoding) throws SQLException {
+		switch (oid) {
+		case PGUtil.PG_TYPE_BOOL:
+			if (value.length() > 0) {
+				switch (Character.toLowerCase(value.charAt(0))) {
+				case 't':
+				case 'y':
+				case '1':
+					return Boolean.TRUE;
+				case 'f':
+				case 'n':
+				case '0':
+					return Boolean.FALSE;
+				case 'o':
+					return value.equalsIgnoreCase("on"); //$NON-NLS-1$
+				}
+			}
+			return value;
+		case PGUtil.PG_TYPE_BYTEA:
+			return PGbytea.toBytes(value.getBytes(encoding));
+		default:
+			return value;
+		}
+	}
+
 	@Override
 	public void unsupportedOperation(String msg) {
 		errorOccurred(msg);
@@ -947,6 +1209,9 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 			closePortal(p);
 		}
 		this.preparedMap.remove(UNNAMED);
+		if (ddlPattern.matcher(query).matches()) {
+			this.preparedCache.clear();
+		}
 		query = query.trim();
 		if (query.length() == 0) {
     		client.emptyQueryReceived();
@@ -1028,6 +1293,10 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 
 	@Override
 	public void sync() {
+		if (this.copyIn != null) {
+			//ignored during a copy
+			return;
+		}
 		ready();
 	}
 	
@@ -1107,6 +1376,7 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		closePortals();
 		
 		this.preparedMap.clear();
+		this.preparedCache.clear();
 		try {			
 			if (this.connection != null) {
 				if (!this.connection.getAutoCommit()) {
@@ -1291,6 +1561,9 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		    				client.sendCommandComplete("DEALLOCATE", null); //$NON-NLS-1$
 		    				results.getResultsReceiver().receiveResults(1);
 		    			}
+		    			else if ((m = copyPattern.matcher(sql)).matches()) {
+		    				copy(m, results);
+		    			}
 		    			else {
 		    				sqlExecute(sql, results);
 		    			}
@@ -1366,7 +1639,72 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
 		}
 		return result;
 	}  
+
+	private VDBMetaData getVDB() throws SQLException {
+		return ((LocalServerConnection)this.connection.getServerConnection()).getWorkContext().getSession().getVdb();
+	}
+	
+	/**
+	 * Get the tables that the result columns are defined against, so that a cached 
+	 * parse can be invalidated by metadata changes from other sessions
+	 */
+	private static List<Table> getTables(VDBMetaData vdb, ResultSetMetaData meta) throws SQLException {
+		if (meta == null) {
+			return Collections.emptyList();
+		}
+		TransformationMetadata metadata = vdb.getAttachment(TransformationMetadata.class);
+		if (metadata == null) {
+			return Collections.emptyList();
+		}
+		List<Table> result = new ArrayList<Table>();
+		for (int i = 1; i <= meta.getColumnCount(); i++) {
+			String schemaName = meta.getSchemaName(i);
+			String tableName = meta.getTableName(i);
+			if (schemaName == null || tableName == null) {
+				continue;
+			}
+			Schema schema = metadata.getMetadataStore().getSchema(schemaName);
+			if (schema == null) {
+				continue;
+			}
+			Table table = schema.getTables().get(tableName);
+			if (table != null && !result.contains(table)) {
+				result.add(table);
+			}
+		}
+		return result;
+	}
     
+	/**
+	 * A cached parse, which is only valid against the same vdb instance and 
+	 * while the tables of the result columns are unmodified
+	 */
+	private static class CachedPrepared {
+		final Prepared prepared;
+		final VDBMetaData vdb;
+		final long creationTime;
+		final List<Table> tables;
+		
+		CachedPrepared(Prepared prepared, VDBMetaData vdb, long creationTime, List<Table> tables) {
+			this.prepared = prepared;
+			this.vdb = vdb;
+			this.creationTime = creationTime;
+			this.tables = tables;
+		}
+		
+		boolean isValid(VDBMetaData current) {
+			if (current != this.vdb) {
+				return false;
+			}
+			for (Table table : this.tables) {
+				if (table.getLastModified() >= this.creationTime) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
 	/**
      * Represents a PostgreSQL Prepared object.  The actual plan preparation is performed lazily.
      */
@@ -1441,6 +1779,62 @@ public class ODBCServerRemoteImpl implements ODBCServerRemote {
         final PreparedStatementImpl stmt;
     }
     
+    /**
+     * The state of a COPY FROM STDIN
+     */
+    static class CopyIn {
+
+    	public CopyIn(PreparedStatementImpl stmt, List<PgColInfo> cols, CopyFormat.Parser parser, Charset encoding,
+    			ResultsFuture<Integer> completion) {
+    		this.stmt = stmt;
+    		this.cols = cols;
+    		this.parser = parser;
+    		this.encoding = encoding;
+    		this.completion = completion;
+    	}
+
+    	final PreparedStatementImpl stmt;
+    	final List<PgColInfo> cols;
+    	final CopyFormat.Parser parser;
+    	final Charset encoding;
+    	final ResultsFuture<Integer> completion;
+
+    	/**
+    	 * rows in the current batch
+    	 */
+    	int rows;
+
+    	/**
+    	 * rows submitted
+    	 */
+    	int count;
+
+    	void addRow(List<Object> row) throws SQLException {
+    		if (row.size() != cols.size()) {
+    			throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40169));
+    		}
+    		for (int i = 0; i < row.size(); i++) {
+    			Object value = row.get(i);
+    			if (value instanceof byte[]) {
+    				value = fromBinary(cols.get(i).type, (byte[])value, encoding);
+    			} else if (value != null) {
+    				value = fromText(cols.get(i).type, (String)value, encoding);
+    			}
+    			stmt.setObject(i + 1, value);
+    		}
+    		stmt.addBatch();
+    		rows++;
+    	}
+
+    	void close() {
+    		try {
+    			stmt.close();
+    		} catch (SQLException e) {
+    			LogManager.logDetail(LogConstants.CTX_ODBC, e, "Error closing statement"); //$NON-NLS-1$
+    		}
+    	}
+    }
+
     static class Cursor extends Portal {
     	
     	public Cursor (String name, String sql, PreparedStatementImpl stmt, ResultSetImpl rs, List<PgColInfo> colMetadata, short[] resultColumnFormat) {
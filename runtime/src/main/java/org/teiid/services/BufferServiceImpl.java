@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 
+import org.teiid.common.buffer.AdaptiveCompressor;
 import org.teiid.common.buffer.BufferManager;
 import org.teiid.common.buffer.StorageManager;
 import org.teiid.common.buffer.TupleBufferCache;
@@ -30,6 +31,7 @@ import org.teiid.common.buffer.impl.BufferManagerImpl;
 import org.teiid.common.buffer.impl.EncryptedStorageManager;
 import org.teiid.common.buffer.impl.FileStorageManager;
 import org.teiid.common.buffer.impl.MemoryStorageManager;
+import org.teiid.common.buffer.impl.OffHeapStorageManager;
 import org.teiid.common.buffer.impl.SplittableStorageManager;
 import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidRuntimeException;
@@ -62,6 +64,7 @@ public class BufferServiceImpl implements BufferService, Serializable {
     private int maxStorageObjectSize = BufferFrontedFileStoreCache.DEFAULT_MAX_OBJECT_SIZE;
     private BufferFrontedFileStoreCache fsc;
     private FileStorageManager fsm;
+    private OffHeapStorageManager ohsm;
     
     //reserve / heap properties
     private int maxProcessingKb = BufferManager.DEFAULT_MAX_PROCESSING_KB;
@@ -74,9 +77,15 @@ public class BufferServiceImpl implements BufferService, Serializable {
 	//disk properties
 	private File bufferDir;
     private boolean encryptFiles = false;
+    private boolean memoryMappedFiles = false;
+    private boolean compressBuffers = false;
     private int maxOpenFiles = FileStorageManager.DEFAULT_MAX_OPEN_FILES;
     private long maxFileSize = SplittableStorageManager.DEFAULT_MAX_FILESIZE; // 2GB
     private long maxDiskBufferSpace = FileStorageManager.DEFAULT_MAX_BUFFERSPACE>>20;
+    
+    //off heap storage properties - used in place of disk
+    private boolean offHeapStorage;
+    private long maxOffHeapStorageSpace = OffHeapStorageManager.DEFAULT_MAX_STORAGE_SPACE>>20;
        
     private long vmMaxMemory = Runtime.getRuntime().maxMemory();
     private SessionServiceImpl sessionService;
@@ -101,25 +110,34 @@ public class BufferServiceImpl implements BufferService, Serializable {
             this.bufferMgr.setSessionService(sessionService);
             this.bufferMgr.initialize();
             
-            // If necessary, add disk storage manager
-            if(useDisk) {
-        		LogManager.logDetail(LogConstants.CTX_DQP, "Starting BufferManager using", bufferDir); //$NON-NLS-1$
-        		if (!bufferDir.exists()) {
-        			this.bufferDir.mkdirs();
-        		}
-            	// start the file storage manager in clean state
-                // wise FileStorageManager is smart enough to clean up after itself
-                cleanDirectory(bufferDir);
-                // Get the properties for FileStorageManager and create.
-                fsm = new FileStorageManager();
-                fsm.setStorageDirectory(bufferDir.getCanonicalPath());
-                fsm.setMaxOpenFiles(maxOpenFiles);
-                fsm.setMaxBufferSpace(maxDiskBufferSpace*MB);
-                SplittableStorageManager ssm = new SplittableStorageManager(fsm);
-                ssm.setMaxFileSize(maxFileSize);
-                StorageManager sm = ssm;
-                if (encryptFiles) {
-                	sm = new EncryptedStorageManager(ssm);
+            // If necessary, add disk or off heap storage manager
+            if(useDisk || offHeapStorage) {
+                StorageManager sm = null;
+                if (offHeapStorage) {
+                    LogManager.logDetail(LogConstants.CTX_DQP, "Starting BufferManager using off heap storage"); //$NON-NLS-1$
+                    ohsm = new OffHeapStorageManager();
+                    ohsm.setMaxStorageSpace(maxOffHeapStorageSpace*MB);
+                    sm = ohsm;
+                } else {
+	        		LogManager.logDetail(LogConstants.CTX_DQP, "Starting BufferManager using", bufferDir); //$NON-NLS-1$
+	        		if (!bufferDir.exists()) {
+	        			this.bufferDir.mkdirs();
+	        		}
+	            	// start the file storage manager in clean state
+	                // wise FileStorageManager is smart enough to clean up after itself
+	                cleanDirectory(bufferDir);
+	                // Get the properties for FileStorageManager and create.
+	                fsm = new FileStorageManager();
+	                fsm.setStorageDirectory(bufferDir.getCanonicalPath());
+	                fsm.setMaxOpenFiles(maxOpenFiles);
+	                fsm.setMaxBufferSpace(maxDiskBufferSpace*MB);
+	                fsm.setMemoryMapped(memoryMappedFiles);
+	                SplittableStorageManager ssm = new SplittableStorageManager(fsm);
+	                ssm.setMaxFileSize(maxFileSize);
+	                sm = ssm;
+	                if (encryptFiles) {
+	                	sm = new EncryptedStorageManager(ssm);
+	                }
                 }
                 fsc = new BufferFrontedFileStoreCache();
                 fsc.setBufferManager(this.bufferMgr);
@@ -151,6 +169,11 @@ public class BufferServiceImpl implements BufferService, Serializable {
                 	}
                 }
                 fsc.setStorageManager(sm);
+                if (compressBuffers) {
+                	fsc.setCompress(true);
+                	//lobs have their own compressor so that incompressible lobs do not affect batch compression
+                	this.bufferMgr.setLobCompressor(new AdaptiveCompressor());
+                }
                 fsc.initialize();
                 this.bufferMgr.setCache(fsc);
             } else {
@@ -287,6 +310,20 @@ public class BufferServiceImpl implements BufferService, Serializable {
     	}
     	return 0;
     }
+    
+    public long getOffHeapStorageUsedKb() {
+    	if (ohsm != null) {
+    		return ohsm.getUsedBufferSpace() >> 10;
+    	}
+    	return 0;
+    }
+    
+    public long getOffHeapStorageAllocatedKb() {
+    	if (ohsm != null) {
+    		return ohsm.getAllocatedBufferSpace() >> 10;
+    	}
+    	return 0;
+    }
 
 	public long getHeapBufferInUseKb() {
 		return bufferMgr.getActiveBatchBytes()/1024;
@@ -317,6 +354,30 @@ public class BufferServiceImpl implements BufferService, Serializable {
     	return 0;
     }
     
+    /**
+     * @return the ratio of uncompressed to stored bytes for compressed buffers
+     */
+    public double getCompressionRatio() {
+    	if (fsc != null) {
+    		return fsc.getCompressor().getRatio();
+    	}
+    	return 1;
+    }
+    
+    public long getCompressionTimeMs() {
+    	if (fsc != null) {
+    		return fsc.getCompressor().getCompressionNanos()/1000000;
+    	}
+    	return 0;
+    }
+    
+    public long getDecompressionTimeMs() {
+    	if (fsc != null) {
+    		return fsc.getCompressor().getDecompressionNanos()/1000000;
+    	}
+    	return 0;
+    }
+    
     public long getStorageReadCount() {
     	return bufferMgr.getReadCount();
     }
@@ -348,6 +409,50 @@ public class BufferServiceImpl implements BufferService, Serializable {
     public void setEncryptFiles(boolean encryptFiles) {
 		this.encryptFiles = encryptFiles;
 	}
+    
+    public boolean isMemoryMappedFiles() {
+		return memoryMappedFiles;
+	}
+    
+    /**
+     * Use memory mapped regions for the buffer files rather than file handle access
+     * @param memoryMappedFiles
+     */
+    public void setMemoryMappedFiles(boolean memoryMappedFiles) {
+		this.memoryMappedFiles = memoryMappedFiles;
+	}
+    
+    public boolean isCompressBuffers() {
+		return compressBuffers;
+	}
+    
+    /**
+     * Compress spilled batches and persisted lob chunks.  Data that does not compress well is stored as is.
+     * @param compressBuffers
+     */
+    public void setCompressBuffers(boolean compressBuffers) {
+		this.compressBuffers = compressBuffers;
+	}
+    
+    public boolean isOffHeapStorage() {
+		return offHeapStorage;
+	}
+    
+    /**
+     * Use off heap memory rather than disk as the storage for the fixed memory buffer
+     * @param offHeapStorage
+     */
+    public void setOffHeapStorage(boolean offHeapStorage) {
+		this.offHeapStorage = offHeapStorage;
+	}
+    
+    public long getMaxOffHeapStorageSpaceMb() {
+		return maxOffHeapStorageSpace;
+	}
+    
+    public void setMaxOffHeapStorageSpaceMb(long maxOffHeapStorageSpace) {
+		this.maxOffHeapStorageSpace = maxOffHeapStorageSpace;
+	}
 
     public void setBufferManager(BufferManagerImpl bufferManager) {
         this.bufferMgr = bufferManager;
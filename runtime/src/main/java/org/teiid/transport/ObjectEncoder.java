@@ -18,11 +18,16 @@
 package org.teiid.transport;
 
 
-import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.teiid.client.ResultsMessage;
+import org.teiid.core.types.InputStreamFactory;
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
 import org.teiid.core.util.ExternalizeUtil;
+import org.teiid.core.util.LZ4Codec;
+import org.teiid.net.socket.Message;
 import org.teiid.netty.handler.codec.serialization.CompactObjectOutputStream;
 import org.teiid.netty.handler.codec.serialization.ObjectDecoderInputStream;
 
@@ -33,7 +38,9 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
-import io.netty.handler.stream.ChunkedStream;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.concurrent.PromiseCombiner;
 
 
 /**
@@ -68,11 +75,34 @@ public class ObjectEncoder extends ChannelOutboundHandlerAdapter {
 		}
 	}
 	
+	/**
+	 * Counters for the compressed objects, which may be shared by encoders
+	 */
+	public static class CompressionStats {
+		private AtomicLong objectsCompressed = new AtomicLong();
+		private AtomicLong bytesBeforeCompression = new AtomicLong();
+		private AtomicLong bytesAfterCompression = new AtomicLong();
+		
+		public long getObjectsCompressed() {
+			return objectsCompressed.get();
+		}
+		
+		public long getBytesBeforeCompression() {
+			return bytesBeforeCompression.get();
+		}
+		
+		public long getBytesAfterCompression() {
+			return bytesAfterCompression.get();
+		}
+	}
+	
     private static final byte[] LENGTH_PLACEHOLDER = new byte[4];
-	private static final int CHUNK_SIZE = (1 << 16) - 1;
+	static final int CHUNK_SIZE = (1 << 16) - 1;
 
     private final int estimatedLength;
     private final boolean preferDirect;
+    private volatile int compressionThreshold;
+    private CompressionStats compressionStats = new CompressionStats();
     
     /**
      * Creates a new encoder with the estimated length of 512 bytes.
@@ -101,6 +131,20 @@ public class ObjectEncoder extends ChannelOutboundHandlerAdapter {
         this.preferDirect = preferDirect;
     }
     
+    public ObjectEncoder(CompressionStats compressionStats) {
+    	this();
+    	this.compressionStats = compressionStats;
+    }
+    
+    /**
+     * Set the serialized size above which results will be compressed.
+     * Should only be set once the client has accepted compression.
+     * @param compressionThreshold 0 to disable compression
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+    
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
         ByteBuf out = allocateBuffer(ctx, this.estimatedLength, this.preferDirect);
@@ -115,13 +159,30 @@ public class ObjectEncoder extends ChannelOutboundHandlerAdapter {
 	        oout.close();
 	        
 	        int endIdx = out.writerIndex();
-	        out.setInt(startIdx, endIdx - startIdx - 4);
+	        int length = endIdx - startIdx - 4;
+	        int threshold = this.compressionThreshold;
+	        if (threshold > 0 && length > threshold && msg instanceof Message && ((Message)msg).getContents() instanceof ResultsMessage) {
+	        	compress(out, startIdx, length);
+	        } else {
+	        	out.setInt(startIdx, length);
+	        }
 	        
 	        if (out.isReadable()) {
-	            ctx.write(out, promise);
+	        	//each write needs its own promise
+	        	PromiseCombiner combiner = new PromiseCombiner();
+	            combiner.add(ctx.write(out));
+	            //file regions are written directly by the transport, which is not possible through ssl
+	            boolean fileRegions = ctx.pipeline().get(SslHandler.class) == null;
 	            for (InputStream is : oout.getStreams()) {
-	                ctx.write(new AnonymousChunkedStream(new BufferedInputStream(is, CHUNK_SIZE)), promise);
+	            	InputStreamFactory isf = oout.getTransferableFactory(is);
+	            	if (fileRegions && isf != null && isf.getLength() >= 0) {
+	            		is.close();
+	            		combiner.add(ctx.write(new StreamFactoryRegion((ChannelTransferable)isf, isf.getLength())));
+	            	} else {
+	            		combiner.add(ctx.write(new AnonymousChunkedStream(is)));
+	            	}
 	            }
+	            combiner.finish(promise);
 	        } else {
 	            out.release();
 	            ctx.write(Unpooled.EMPTY_BUFFER, promise);
@@ -137,6 +198,28 @@ public class ObjectEncoder extends ChannelOutboundHandlerAdapter {
         }
     }
     
+    /**
+     * Replace the serialized object with a negative length, the raw length, and the LZ4 block.
+     * The object is left as is if it does not shrink by at least 1/8.
+     */
+    private void compress(ByteBuf out, int startIdx, int length) {
+    	byte[] raw = new byte[length];
+    	out.getBytes(startIdx + 4, raw);
+    	byte[] dest = new byte[LZ4Codec.maxCompressedLength(length)];
+    	int compressedLength = LZ4Codec.compress(raw, 0, length, dest, 0);
+    	if (compressedLength > length - (length >> 3)) {
+    		out.setInt(startIdx, length);
+    		return;
+    	}
+    	out.writerIndex(startIdx + 4);
+    	out.setInt(startIdx, -(compressedLength + 4));
+    	out.writeInt(length);
+    	out.writeBytes(dest, 0, compressedLength);
+    	compressionStats.objectsCompressed.getAndIncrement();
+    	compressionStats.bytesBeforeCompression.addAndGet(length);
+    	compressionStats.bytesAfterCompression.addAndGet(compressedLength + 4);
+    }
+    
     protected ByteBuf allocateBuffer(ChannelHandlerContext ctx,
             int estimatedSize, boolean preferDirect)
             throws Exception {
@@ -147,23 +230,77 @@ public class ObjectEncoder extends ChannelOutboundHandlerAdapter {
         }
     }    
     
-    static class AnonymousChunkedStream extends ChunkedStream {
+    /**
+     * Writes the stream as chunks prefixed by a short length, followed by a 0 short.
+     * The stream is read directly into the chunk buffers.
+     */
+    static class AnonymousChunkedStream implements ChunkedInput<ByteBuf> {
+    	
+    	private final InputStream in;
+    	private long offset;
+    	private boolean endOfInput;
 
 		public AnonymousChunkedStream(InputStream in) {
-			super(in, CHUNK_SIZE);
+			this.in = in;
+		}
+		
+		@Override
+		public boolean isEndOfInput() throws Exception {
+			return endOfInput;
+		}
+		
+		@Override
+		public void close() throws Exception {
+			in.close();
+		}
+		
+		@Deprecated
+		@Override
+		public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+			return readChunk(ctx.alloc());
 		}
 		
 		@Override
 		public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
-		    ByteBuf cb = super.readChunk(allocator);
-			int length = cb.capacity();
-			ByteBuf prefix = Unpooled.wrappedBuffer(new byte[2]);
-			prefix.setShort(0, (short)length);
-			if (isEndOfInput()) {
-				//append a 0 short
-				return Unpooled.wrappedBuffer(prefix, cb, Unpooled.wrappedBuffer(new byte[2]));
+			if (endOfInput) {
+				return null;
+			}
+			ByteBuf cb = allocator.buffer(CHUNK_SIZE + 4);
+			boolean release = true;
+			try {
+				cb.writeShort(0);
+				int length = 0;
+				while (length < CHUNK_SIZE) {
+					int read = cb.writeBytes(in, CHUNK_SIZE - length);
+					if (read < 0) {
+						endOfInput = true;
+						break;
+					}
+					length += read;
+				}
+				cb.setShort(0, length);
+				if (endOfInput && length > 0) {
+					//append a 0 short
+					cb.writeShort(0);
+				}
+				offset += length;
+				release = false;
+				return cb;
+			} finally {
+				if (release) {
+					cb.release();
+				}
 			}
-			return Unpooled.wrappedBuffer(prefix, cb);
+		}
+		
+		@Override
+		public long length() {
+			return -1;
+		}
+		
+		@Override
+		public long progress() {
+			return offset;
 		}
 		
     }
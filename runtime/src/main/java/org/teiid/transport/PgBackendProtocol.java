@@ -24,9 +24,11 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StreamCorruptedException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
@@ -35,6 +37,9 @@ import java.sql.Blob;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -59,7 +64,9 @@ import org.teiid.odbc.ODBCClientRemote;
 import org.teiid.odbc.PGUtil.PgColInfo;
 import org.teiid.query.function.GeometryUtils;
 import org.teiid.runtime.RuntimePlugin;
+import org.teiid.transport.pg.CopyFormat;
 import org.teiid.transport.pg.PGbytea;
+import org.teiid.transport.pg.PGnumeric;
 import org.teiid.transport.pg.TimestampUtils;
 
 import io.netty.buffer.ByteBuf;
@@ -109,6 +116,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		private int rowsSent = 0;
 		private int rowsInBuffer = 0;
 		String sql;
+		CopyFormat copyFormat;
 
 		private ResultsWorkItem(List<PgColInfo> cols, ResultSetImpl rs, ResultsFuture<Integer> result, int rows2Send, short[] resultColumnFormat) {
 			this.cols = cols;
@@ -153,7 +161,11 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 			boolean processNext = true;
 			try {
     			if (future.get()) {
-    				sendDataRow(rs, cols, resultColumnFormat);
+    				if (copyFormat != null) {
+    					sendCopyData(rs, cols, copyFormat);
+    				} else {
+    					sendDataRow(rs, cols, resultColumnFormat, 'D');
+    				}
     				rowsSent++;
     				rowsInBuffer++;
     				boolean done = rowsSent == rows2Send;
@@ -166,7 +178,15 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
     					result.getResultsReceiver().receiveResults(rowsSent);
     				}
     			} else {
-    				sendContents();
+    				if (copyFormat != null) {
+    					if (copyFormat.isBinary()) {
+    						//trailer
+    						writeCopyData(new byte[] {-1, -1});
+    					}
+    					startMessage('c', -1);
+    					dataOut.setInt(dataOut.writerIndex() - 4, 4);
+    				}
+    				sendContents(false);
     				if (sql != null) {
 		    			sendCommandComplete(sql, rowsSent);
 		    		}
@@ -183,13 +203,16 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		private void flushResults(boolean force) {
 			int avgRowsize = dataOut.writerIndex()/rowsInBuffer;
 			if (force || (maxBufferSize - dataOut.writerIndex()) < (avgRowsize*2)) {
-				sendContents();
+				//the last rows are flushed with the completion messages
+				sendContents(!force);
 				initBuffer(maxBufferSize / 8);
 				rowsInBuffer = 0;
 			}			
 		}
 	}
 
+	private static final short[] BINARY_FORMAT = {1};
+
 	public static final String DEFAULT_ENCODING = "UTF8";
 	public static final String CLIENT_ENCODING = "client_encoding";
 
@@ -271,7 +294,8 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		
 		sendParameterStatus("client_encoding", clientEncoding);
 		sendParameterStatus("DateStyle", this.props.getProperty("DateStyle", "ISO"));
-		sendParameterStatus("integer_datetimes", "off");
+		//binary time values are sent as int8 microseconds
+		sendParameterStatus("integer_datetimes", "on");
 		sendParameterStatus("is_superuser", "off");
 		sendParameterStatus("server_encoding", "SQL_ASCII");
 		sendParameterStatus("server_version", "8.2");
@@ -341,7 +365,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		for (int i = 0; i < paramType.length; i++) {
 			writeInt(paramType[i]);
 		}
-		sendMessage();
+		sendMessage(false);
 	}
 
 	@Override
@@ -404,7 +428,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 	@Override
 	public void statementClosed() {
 		startMessage('3');
-		sendMessage();
+		sendMessage(false);
 	}
 
 	@Override
@@ -433,7 +457,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 
 	private void sendEmptyQueryResponse() {
 		startMessage('I');
-		sendMessage();
+		sendMessage(false);
 	}
 
 	@Override
@@ -441,7 +465,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		startMessage('C');
 		String tag = getCompletionTag(sql, count);
 		writeString(tag);
-		sendMessage();
+		sendMessage(false);
 	}
 
 	public static String getCompletionTag(String sql, Integer count) {
@@ -470,8 +494,35 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		return tag;
 	}
 
-	private void sendDataRow(ResultSet rs, List<PgColInfo> cols, short[] resultColumnFormat) throws SQLException, IOException {
-		startMessage('D', -1);
+	private void sendCopyData(ResultSet rs, List<PgColInfo> cols, CopyFormat format) throws SQLException, IOException {
+		if (format.isBinary()) {
+			//the binary tuple is the same as the data row, but non-binary types are sent as their text
+			sendDataRow(rs, cols, BINARY_FORMAT, 'd');
+			return;
+		}
+		StringBuilder line = new StringBuilder();
+		StringWriter value = new StringWriter();
+		for (int i = 0; i < cols.size(); i++) {
+			if (i > 0) {
+				line.append(format.getDelimiter());
+			}
+			value.getBuffer().setLength(0);
+			getContent(rs, cols.get(i), i+1, value);
+			format.writeValue(rs.wasNull()?null:value.toString(), line);
+		}
+		line.append('\n');
+		writeCopyData(line.toString().getBytes(this.encoding));
+	}
+
+	private void writeCopyData(byte[] data) {
+		startMessage('d', -1);
+		int lengthIndex = this.dataOut.writerIndex() - 4;
+		write(data);
+		this.dataOut.setInt(lengthIndex, this.dataOut.writerIndex() - lengthIndex);
+	}
+
+	private void sendDataRow(ResultSet rs, List<PgColInfo> cols, short[] resultColumnFormat, char messageType) throws SQLException, IOException {
+		startMessage(messageType, -1);
 		int lengthIndex = this.dataOut.writerIndex() - 4;
 		writeShort(cols.size());
 		for (int i = 0; i < cols.size(); i++) {
@@ -479,7 +530,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 			writeInt(-1);
 			if (!isBinary(cols.get(i).type)
 			        || (resultColumnFormat==null || (resultColumnFormat.length==1?resultColumnFormat[0]==0:resultColumnFormat[i]==0))) {
-	            getContent(rs, cols.get(i), i+1);
+	            getContent(rs, cols.get(i), i+1, writer);
 			} else {
                 getBinaryContent(rs, cols.get(i), i+1);
 			}
@@ -544,12 +595,36 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 	            dataOut.writeInt((int) (secs / 86400));
 	        }
 	        break;
+	    case PG_TYPE_TIMESTAMP_NO_TMZONE:
+	        Timestamp ts = rs.getTimestamp(column);
+	        if (ts != null) {
+	            dataOut.writeLong(TimestampUtils.toPgMicros(TimestampWithTimezone.getCalendar().getTimeZone(), ts));
+	        }
+	        break;
+	    case PG_TYPE_TIME:
+	        Time t = rs.getTime(column);
+	        if (t != null) {
+	            dataOut.writeLong(TimestampUtils.toPgTimeMicros(TimestampWithTimezone.getCalendar().getTimeZone(), t));
+	        }
+	        break;
+	    case PG_TYPE_BOOL:
+	        boolean b = rs.getBoolean(column);
+	        if (!rs.wasNull()) {
+	            dataOut.writeByte(b?1:0);
+	        }
+	        break;
+	    case PG_TYPE_NUMERIC:
+	        BigDecimal bd = rs.getBigDecimal(column);
+	        if (bd != null) {
+	            PGnumeric.writeBinary(bd, dataOut);
+	        }
+	        break;
 	    default:
 	        throw new AssertionError();
 	    }
 	}
 	
-	private void getContent(ResultSet rs, PgColInfo col, int column) throws SQLException, TeiidSQLException, IOException {
+	private void getContent(ResultSet rs, PgColInfo col, int column, Writer writer) throws SQLException, TeiidSQLException, IOException {
 		switch (col.type) {
 			case PG_TYPE_BOOL:
 	            boolean b = rs.getBoolean(column);
@@ -693,6 +768,50 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		sb.append('"');
 	}	
 	
+	@Override
+	public void sendCopyOut(String sql, ResultSetImpl rs, List<PgColInfo> cols,
+			CopyFormat format, ResultsFuture<Integer> result) {
+		if (nextFuture != null) {
+			sendErrorResponse(new IllegalStateException("Pending results have not been sent")); //$NON-NLS-1$
+		}
+		startMessage('H');
+		write(format.isBinary()?1:0);
+		writeShort(cols.size());
+		for (int i = 0; i < cols.size(); i++) {
+			writeShort(format.isBinary()?1:0);
+		}
+		sendMessage(false);
+		ResultsWorkItem r = new ResultsWorkItem(cols, rs, result, -1, null);
+		r.sql = sql;
+		r.copyFormat = format;
+		if (format.isBinary()) {
+			//signature, flags, and header extension length
+			writeCopyData(Arrays.copyOf(CopyFormat.BINARY_SIGNATURE, CopyFormat.BINARY_SIGNATURE.length + 8));
+		} else if (format.isHeader()) {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < cols.size(); i++) {
+				if (i > 0) {
+					line.append(format.getDelimiter());
+				}
+				format.writeValue(cols.get(i).name, line);
+			}
+			line.append('\n');
+			writeCopyData(line.toString().getBytes(this.encoding));
+		}
+		r.run();
+	}
+
+	@Override
+	public void sendCopyIn(int columns, CopyFormat format) {
+		startMessage('G');
+		write(format.isBinary()?1:0);
+		writeShort(columns);
+		for (int i = 0; i < columns; i++) {
+			writeShort(format.isBinary()?1:0);
+		}
+		sendMessage();
+	}
+
 	@Override
 	public void sendSslResponse() {
 		SSLEngine engine = null;
@@ -753,6 +872,10 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 	    case PG_TYPE_FLOAT8:
 	    case PG_TYPE_BYTEA:
 	    case PG_TYPE_DATE:
+	    case PG_TYPE_TIME:
+	    case PG_TYPE_TIMESTAMP_NO_TMZONE:
+	    case PG_TYPE_BOOL:
+	    case PG_TYPE_NUMERIC:
 	        return true;
 	    }
 	    return false;
@@ -762,7 +885,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 		if (cols == null) {
 			//send NoData
 			startMessage('n');
-			sendMessage();
+			sendMessage(false);
 			return;
 		}
 		startMessage('T');
@@ -787,7 +910,7 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
                 writeShort(resultColumnFormat[resultColumnFormat.length == 1?0:i]);
 			}
 		}
-		sendMessage();
+		sendMessage(false);
 	}
 
 	private int getTypeSize(int pgType, int precision) {
@@ -815,18 +938,18 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 	
 	private void sendParseComplete() {
 		startMessage('1');
-		sendMessage();
+		sendMessage(false);
 	}
 
 	private void sendBindComplete() {
 		startMessage('2');
-		sendMessage();
+		sendMessage(false);
 	}
 	
 	@Override
 	public void sendPortalSuspended() {
 		startMessage('s');
-		sendMessage();
+		sendMessage(false);
 	}	
 
 	private void sendAuthenticationCleartextPassword() {
@@ -952,16 +1075,29 @@ public class PgBackendProtocol extends ChannelOutboundHandlerAdapter implements
 	}
 
 	private void sendMessage() {
+		sendMessage(true);
+	}
+
+	/**
+	 * @param flush false if the message may wait for a following ready, flush, or
+	 * full buffer of rows, which allows pipelined extended query messages to be
+	 * acknowledged together
+	 */
+	private void sendMessage(boolean flush) {
 		int pos = this.dataOut.writerIndex();
 		this.dataOut.setInt(1, pos - 1);
-		sendContents();
+		sendContents(flush);
 	}
 	
-	private void sendContents() {
+	private void sendContents(boolean flush) {
 		ByteBuf cb = this.dataOut;
 		this.dataOut = null;
 		this.writer = null;
-		this.ctx.writeAndFlush(cb);
+		if (flush) {
+			this.ctx.writeAndFlush(cb);
+		} else {
+			this.ctx.write(cb);
+		}
 	}
 
 	private static void trace(String... msg) {
@@ -167,6 +167,12 @@ public class PgFrontendProtocol extends ByteToMessageDecoder {
         	return buildFlush();
         case 'F':
         	return buildFunctionCall(data);        	               	
+        case 'd':
+        	return buildCopyData(data);
+        case 'c':
+        	return buildCopyDone();
+        case 'f':
+        	return buildCopyFail(data);
         default:
         	return buildError();
         }
@@ -182,6 +188,23 @@ public class PgFrontendProtocol extends ByteToMessageDecoder {
 		return message;
 	}
 
+	private Object buildCopyData(NullTerminatedStringDataInputStream data) throws IOException {
+		byte[] bytes = createByteArray(data.available());
+		data.readFully(bytes);
+		this.odbcProxy.copyData(bytes);
+		return message;
+	}
+
+	private Object buildCopyDone() {
+		this.odbcProxy.copyDone();
+		return message;
+	}
+
+	private Object buildCopyFail(NullTerminatedStringDataInputStream data) throws IOException {
+		this.odbcProxy.copyFail(data.readString());
+		return message;
+	}
+
 	private Object buildTeminate() {
 		this.odbcProxy.terminate();
 		return message;
@@ -271,11 +294,15 @@ public class PgFrontendProtocol extends ByteToMessageDecoder {
         Object[] params = new Object[paramCount];
         for (int i = 0; i < paramCount; i++) {
             int paramLen = data.readInt();
+            if (paramLen == -1) {
+            	//null
+            	continue;
+            }
             byte[] paramdata = createByteArray(paramLen);
             data.readFully(paramdata);
             
             // the params can be either text or binary
-            if (formatCodeCount == 0 || (formatCodeCount == 1 && formatCodes[0] == 0) || formatCodes[i] == 0) {
+            if (formatCodeCount == 0 || formatCodes[formatCodeCount == 1?0:i] == 0) {
             	params[i] = new String(paramdata, this.pgBackendProtocol.getEncoding());
             }
             else {
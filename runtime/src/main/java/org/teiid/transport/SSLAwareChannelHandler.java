@@ -71,6 +71,16 @@ public class SSLAwareChannelHandler extends ChannelDuplexHandler {
 			return channel.isOpen();
 		}
 		
+		/**
+		 * Compress results above the threshold, see {@link ObjectEncoder#setCompressionThreshold(int)}
+		 */
+		public void setCompressionThreshold(int compressionThreshold) {
+			ObjectEncoder encoder = channel.pipeline().get(ObjectEncoder.class);
+			if (encoder != null) {
+				encoder.setCompressionThreshold(compressionThreshold);
+			}
+		}
+		
 		public SocketAddress getRemoteAddress() {
 			return channel.remoteAddress();
 		}
@@ -24,6 +24,8 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.teiid.client.security.ILogon;
 import org.teiid.client.util.ExceptionHolder;
@@ -41,9 +43,11 @@ import org.teiid.logging.MessageLevel;
 import org.teiid.net.CommunicationException;
 import org.teiid.net.socket.Handshake;
 import org.teiid.net.socket.Message;
+import org.teiid.net.socket.MultiplexedMessage;
 import org.teiid.net.socket.ObjectChannel;
 import org.teiid.runtime.RuntimePlugin;
 import org.teiid.transport.ObjectEncoder.FailedWriteException;
+import org.teiid.transport.SSLAwareChannelHandler.ObjectChannelImpl;
 
 
 /**
@@ -62,6 +66,45 @@ public class SocketClientInstance implements ChannelListener, ClientInstance {
     private boolean usingEncryption; 
     private DhKeyGenerator keyGen;
     private DQPWorkContext workContext = new DQPWorkContext().local(false);
+    private Map<Integer, Stream> streams = new ConcurrentHashMap<Integer, Stream>();
+    private int compressionThreshold;
+    private int maxStreams;
+    private int lastStreamId;
+    
+    /**
+     * A logical connection sharing this socket, which has its own session.
+     * Messages for all streams are processed in order by the socket.
+     */
+    private class Stream implements ClientInstance {
+    	private final Integer streamId;
+    	private final DQPWorkContext streamContext = workContext.newClientContext();
+    	
+    	Stream(Integer streamId) {
+    		this.streamId = streamId;
+		}
+    	
+    	@Override
+    	public void send(Message message, Serializable messageKey) {
+    		SocketClientInstance.this.send(message, messageKey);
+    	}
+    	
+    	@Override
+    	public Cryptor getCryptor() {
+    		return cryptor;
+    	}
+    	
+    	@Override
+    	public DQPWorkContext getWorkContext() {
+    		return streamContext;
+    	}
+    	
+    	@Override
+    	public void shutdown() {
+    		if (streams.remove(streamId) != null) {
+    			logoff(streamContext);
+    		}
+    	}
+    }
         
     public SocketClientInstance(ObjectChannel objectSocket, ClientServiceRegistryImpl csr, boolean isClientEncryptionEnabled) {
         this.objectSocket = objectSocket;
@@ -164,13 +207,24 @@ public class SocketClientInstance implements ChannelListener, ClientInstance {
 			}
             handshake.setPublicKey(publicKey);
         } 
+        handshake.setMultiplexed(maxStreams > 1);
+        handshake.setMaxStreams(maxStreams);
+        handshake.setCompression(compressionThreshold > 0);
         this.objectSocket.write(handshake);
 	}
 	
 	@Override
 	public void disconnected() {
-		if (workContext.getSessionId() != null) {
-			workContext.runInContext(new Runnable() {
+		logoff(workContext);
+		for (Stream stream : streams.values()) {
+			logoff(stream.getWorkContext());
+		}
+		streams.clear();
+	}
+
+	private void logoff(DQPWorkContext context) {
+		if (context.getSessionId() != null) {
+			context.runInContext(new Runnable() {
 				@Override
 				public void run() {
 					try {
@@ -212,6 +266,22 @@ public class SocketClientInstance implements ChannelListener, ClientInstance {
         } else {
             this.cryptor = new NullCryptor();
         }
+		if (compressionThreshold > 0 && handshake.isCompression() && this.objectSocket instanceof ObjectChannelImpl) {
+			((ObjectChannelImpl)this.objectSocket).setCompressionThreshold(compressionThreshold);
+		}
+		if (maxStreams > 1 && handshake.isMultiplexed()) {
+			maxStreams = Math.min(maxStreams, handshake.getMaxStreams());
+		} else {
+			maxStreams = 0;
+		}
+	}
+	
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+	
+	public void setMaxStreams(int maxStreams) {
+		this.maxStreams = maxStreams;
 	}
 
 	public void receivedMessage(Object msg) throws CommunicationException {
@@ -226,12 +296,51 @@ public class SocketClientInstance implements ChannelListener, ClientInstance {
 		if (LogManager.isMessageToBeRecorded(LogConstants.CTX_TRANSPORT, MessageLevel.DETAIL)) { 
 			LogManager.logDetail(LogConstants.CTX_TRANSPORT, "processing message:" + packet); //$NON-NLS-1$
         }
-		workContext.getSession().setLastPingTime(System.currentTimeMillis());
-		if (this.workContext.getSecurityHelper() != null) {
-			this.workContext.getSecurityHelper().clearSecurityContext();
+		ClientInstance instance = this;
+		if (packet instanceof MultiplexedMessage) {
+			MultiplexedMessage streamMessage = (MultiplexedMessage)packet;
+			Integer streamId = streamMessage.getStreamId();
+			Stream stream = streams.get(streamId);
+			if (streamMessage.isClose()) {
+				if (stream != null) {
+					stream.shutdown();
+				}
+				return;
+			}
+			if (stream == null) {
+				//the client assigns increasing ids, so an unknown id at or below the last is for a closed stream
+				if (streamId <= lastStreamId || streams.size() >= maxStreams) {
+					rejectMessage(packet, RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40171, streamId, maxStreams));
+					return;
+				}
+				lastStreamId = streamId;
+				stream = new Stream(streamId);
+				streams.put(streamId, stream);
+			}
+			instance = stream;
 		}
-		final ServerWorkItem work = new ServerWorkItem(this, packet.getMessageKey(), packet, this.csr);
-		this.workContext.runInContext(work);
+		DQPWorkContext context = instance.getWorkContext();
+		context.getSession().setLastPingTime(System.currentTimeMillis());
+		if (context.getSecurityHelper() != null) {
+			context.getSecurityHelper().clearSecurityContext();
+		}
+		final ServerWorkItem work = new ServerWorkItem(instance, packet.getMessageKey(), packet, this.csr);
+		context.runInContext(work);
+	}
+	
+	/**
+	 * Fail just the given request, the socket and other streams are unaffected
+	 */
+	private void rejectMessage(Message packet, String msg) {
+		LogManager.logWarning(LogConstants.CTX_TRANSPORT, msg);
+		Message exception = new Message();
+		exception.setContents(packet.getMessageKey());
+		exception.setMessageKey(new ExceptionHolder(new CommunicationException(RuntimePlugin.Event.TEIID40171, msg)));
+		objectSocket.write(exception);
+	}
+	
+	int getStreamCount() {
+		return streams.size();
 	}
 
 	public void shutdown() throws CommunicationException {
@@ -54,6 +54,8 @@ import io.netty.util.concurrent.Future;
  */
 public class SocketListener implements ChannelListenerFactory {
     private static final int DEFAULT_MAX_MESSAGE_SIZE = 1 << 21;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1 << 13;
+    private static final int DEFAULT_MAX_STREAMS_PER_SOCKET = 32;
 
     protected SSLAwareChannelHandler channelHandler;
     private Channel serverChannel;
@@ -63,6 +65,9 @@ public class SocketListener implements ChannelListenerFactory {
     
     private int maxMessageSize = PropertiesUtils.getHierarchicalProperty("org.teiid.maxMessageSize", DEFAULT_MAX_MESSAGE_SIZE, Integer.class); //$NON-NLS-1$
     private long maxLobSize = PropertiesUtils.getHierarchicalProperty("org.teiid.maxStreamingLobSize", ObjectDecoder.MAX_LOB_SIZE, Long.class); //$NON-NLS-1$
+    private int compressionThreshold = PropertiesUtils.getHierarchicalProperty("org.teiid.compressionThreshold", DEFAULT_COMPRESSION_THRESHOLD, Integer.class); //$NON-NLS-1$
+    private int maxStreamsPerSocket = PropertiesUtils.getHierarchicalProperty("org.teiid.maxStreamsPerSocket", DEFAULT_MAX_STREAMS_PER_SOCKET, Integer.class); //$NON-NLS-1$
+    private ObjectEncoder.CompressionStats compressionStats = new ObjectEncoder.CompressionStats();
 	
     public SocketListener(InetSocketAddress address, SocketConfiguration config, ClientServiceRegistryImpl csr, StorageManager storageManager) {
 		this(address, config.getInputBufferSize(), config.getOutputBufferSize(), config.getMaxSocketThreads(), config.getSSLConfiguration(), csr, storageManager);
@@ -134,7 +139,7 @@ public class SocketListener implements ChannelListenerFactory {
                 Thread.currentThread().getContextClassLoader(), 
                 storageManager)); 
         pipeline.addLast("chunker", new ChunkedWriteHandler()); //$NON-NLS-1$
-        pipeline.addLast("encoder", new ObjectEncoder()); //$NON-NLS-1$        
+        pipeline.addLast("encoder", new ObjectEncoder(compressionStats)); //$NON-NLS-1$        
         pipeline.addLast("handler", this.channelHandler); //$NON-NLS-1$                
     }
     
@@ -168,6 +173,9 @@ public class SocketListener implements ChannelListenerFactory {
         stats.objectsWritten = this.channelHandler.getObjectsWritten();
         stats.sockets = this.channelHandler.getConnectedChannels();
         stats.maxSockets = this.channelHandler.getMaxConnectedChannels();
+        stats.objectsCompressed = this.compressionStats.getObjectsCompressed();
+        stats.bytesBeforeCompression = this.compressionStats.getBytesBeforeCompression();
+        stats.bytesAfterCompression = this.compressionStats.getBytesAfterCompression();
         return stats;
     }
 
@@ -176,7 +184,10 @@ public class SocketListener implements ChannelListenerFactory {
     }
     
 	public ChannelListener createChannelListener(ObjectChannel channel) {
-		return new SocketClientInstance(channel, csr, this.isClientEncryptionEnabled);
+		SocketClientInstance instance = new SocketClientInstance(channel, csr, this.isClientEncryptionEnabled);
+		instance.setCompressionThreshold(this.compressionThreshold);
+		instance.setMaxStreams(this.maxStreamsPerSocket);
+		return instance;
 	}
 	
 	SSLAwareChannelHandler getChannelHandler() {
@@ -193,5 +204,30 @@ public class SocketListener implements ChannelListenerFactory {
     
     public void setMaxLobSize(long maxLobSize) {
         this.maxLobSize = maxLobSize;
-    }	
+    }
+    
+    public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+    
+    /**
+     * Set the serialized size of results above which they will be compressed 
+     * for clients that accept compression.
+     * @param compressionThreshold 0 to not offer compression
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+    
+    public int getMaxStreamsPerSocket() {
+		return maxStreamsPerSocket;
+	}
+    
+    /**
+     * Set the max number of logical connections a client may open over one socket.
+     * @param maxStreamsPerSocket 1 or less to not offer sharing sockets
+     */
+    public void setMaxStreamsPerSocket(int maxStreamsPerSocket) {
+		this.maxStreamsPerSocket = maxStreamsPerSocket;
+	}
 }
\ No newline at end of file
@@ -32,5 +32,9 @@ public class SocketListenerStats implements Serializable {
     
     public int sockets = 0;
     public int maxSockets = 0;
+    
+    public long objectsCompressed = 0;
+    public long bytesBeforeCompression = 0;
+    public long bytesAfterCompression = 0;
 }
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+
+/**
+ * A {@link FileRegion} that frames the bytes of a {@link ChannelTransferable} in the same
+ * way as {@link ObjectEncoder.AnonymousChunkedStream}.  The chunk lengths are written from
+ * a small header buffer and the chunk contents are transferred directly from the source.
+ */
+class StreamFactoryRegion extends AbstractReferenceCounted implements FileRegion {
+	
+	private static final int STRIDE = ObjectEncoder.CHUNK_SIZE + 2;
+	
+	private final ChannelTransferable source;
+	private final long length;
+	private final long chunks;
+	private final long count;
+	private long transferred;
+	private ByteBuffer header = ByteBuffer.allocate(2);
+	
+	StreamFactoryRegion(ChannelTransferable source, long length) {
+		this.source = source;
+		this.length = length;
+		this.chunks = (length + ObjectEncoder.CHUNK_SIZE - 1)/ObjectEncoder.CHUNK_SIZE;
+		//each chunk has a short length and there is a final 0 short
+		this.count = length + 2*chunks + 2;
+	}
+
+	@Override
+	public long position() {
+		return 0;
+	}
+
+	@Deprecated
+	@Override
+	public long transfered() {
+		return transferred;
+	}
+	
+	@Override
+	public long transferred() {
+		return transferred;
+	}
+
+	@Override
+	public long count() {
+		return count;
+	}
+
+	@Override
+	public long transferTo(WritableByteChannel target, long position)
+			throws IOException {
+		long total = 0;
+		while (position < count) {
+			long chunk = chunks;
+			int chunkOffset = (int)(position - (count - 2));
+			int chunkLength = 0;
+			if (chunkOffset < 0) {
+				//only the last chunk may be short, so all others start at a multiple of the stride
+				chunk = position / STRIDE;
+				chunkOffset = (int)(position % STRIDE);
+				chunkLength = (int)Math.min(ObjectEncoder.CHUNK_SIZE, length - chunk * ObjectEncoder.CHUNK_SIZE);
+			}
+			long written = 0;
+			if (chunkOffset < 2) {
+				header.clear();
+				header.putShort((short)chunkLength);
+				header.position(chunkOffset);
+				written = target.write(header);
+			} else {
+				written = source.transferTo(chunk * ObjectEncoder.CHUNK_SIZE + chunkOffset - 2, chunkLength - chunkOffset + 2, target);
+			}
+			if (written <= 0) {
+				break;
+			}
+			position += written;
+			total += written;
+		}
+		transferred += total;
+		return total;
+	}
+
+	@Override
+	public FileRegion retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public FileRegion retain(int increment) {
+		super.retain(increment);
+		return this;
+	}
+
+	@Override
+	public FileRegion touch() {
+		return this;
+	}
+
+	@Override
+	public FileRegion touch(Object hint) {
+		return this;
+	}
+
+	@Override
+	protected void deallocate() {
+		
+	}
+
+}
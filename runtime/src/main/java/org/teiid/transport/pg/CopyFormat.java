@@ -0,0 +1,556 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport.pg;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.teiid.jdbc.TeiidSQLException;
+import org.teiid.runtime.RuntimePlugin;
+
+/**
+ * The options of a postgresql COPY statement and the text, csv and binary encodings
+ * of the COPY data.
+ * <br>
+ * Both the legacy option syntax, e.g. WITH CSV HEADER, and the parenthesized option
+ * list, e.g. WITH (FORMAT csv, HEADER true), are understood.
+ */
+public class CopyFormat {
+
+	public enum Type {
+		TEXT,
+		CSV,
+		BINARY
+	}
+
+	public static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xff, '\r', '\n', 0};
+
+	private Type type = Type.TEXT;
+	private Character delimiter;
+	private String nullString;
+	private boolean header;
+	private char quote = '"';
+	private Character escape;
+
+	public static CopyFormat parse(String options) throws TeiidSQLException {
+		CopyFormat result = new CopyFormat();
+		if (options != null) {
+			List<String> tokens = tokenize(options);
+			for (int i = 0; i < tokens.size(); i++) {
+				String option = tokens.get(i).toLowerCase();
+				if (option.equals("with")) { //$NON-NLS-1$
+					continue;
+				}
+				if (option.equals("format")) { //$NON-NLS-1$
+					String value = value(tokens, ++i, option).toUpperCase();
+					try {
+						result.type = Type.valueOf(value);
+					} catch (IllegalArgumentException e) {
+						throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40168, value));
+					}
+				} else if (option.equals("binary")) { //$NON-NLS-1$
+					result.type = Type.BINARY;
+				} else if (option.equals("csv")) { //$NON-NLS-1$
+					result.type = Type.CSV;
+				} else if (option.equals("header")) { //$NON-NLS-1$
+					result.header = true;
+					if (i + 1 < tokens.size()) {
+						String next = tokens.get(i + 1).toLowerCase();
+						if (next.equals("true") || next.equals("on") || next.equals("1")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							i++;
+						} else if (next.equals("false") || next.equals("off") || next.equals("0")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							result.header = false;
+							i++;
+						}
+					}
+				} else if (option.equals("delimiter")) { //$NON-NLS-1$
+					result.delimiter = character(tokens, ++i, option);
+				} else if (option.equals("null")) { //$NON-NLS-1$
+					result.nullString = value(tokens, ++i, option);
+				} else if (option.equals("quote")) { //$NON-NLS-1$
+					result.quote = character(tokens, ++i, option);
+				} else if (option.equals("escape")) { //$NON-NLS-1$
+					result.escape = character(tokens, ++i, option);
+				} else if (option.equals("encoding")) { //$NON-NLS-1$
+					//the client encoding is always used
+					value(tokens, ++i, option);
+				} else {
+					throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40168, tokens.get(i)));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String value(List<String> tokens, int i, String option) throws TeiidSQLException {
+		if (i < tokens.size() && tokens.get(i).equalsIgnoreCase("as")) { //$NON-NLS-1$
+			tokens.remove(i);
+		}
+		if (i >= tokens.size()) {
+			throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40168, option));
+		}
+		return tokens.get(i);
+	}
+
+	private static char character(List<String> tokens, int i, String option) throws TeiidSQLException {
+		String value = value(tokens, i, option);
+		if (value.length() != 1) {
+			throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40168, option + " " + value)); //$NON-NLS-1$
+		}
+		return value.charAt(0);
+	}
+
+	/**
+	 * Split into words and single quoted strings, ignoring the parens and commas of an option list
+	 */
+	private static List<String> tokenize(String options) {
+		List<String> result = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i < options.length(); i++) {
+			char c = options.charAt(i);
+			if (c == '\'' || ((c == 'e' || c == 'E') && token.length() == 0 && i + 1 < options.length() && options.charAt(i + 1) == '\'')) {
+				boolean escapes = c != '\'';
+				if (escapes) {
+					i++;
+				}
+				while (++i < options.length()) {
+					c = options.charAt(i);
+					if (c == '\'') {
+						if (i + 1 < options.length() && options.charAt(i + 1) == '\'') {
+							i++;
+						} else {
+							break;
+						}
+					} else if (escapes && c == '\\' && i + 1 < options.length()) {
+						c = unescape(options.charAt(++i));
+					}
+					token.append(c);
+				}
+				result.add(token.toString());
+				token.setLength(0);
+			} else if (Character.isWhitespace(c) || c == '(' || c == ')' || c == ',' || c == ';') {
+				if (token.length() > 0) {
+					result.add(token.toString());
+					token.setLength(0);
+				}
+			} else {
+				token.append(c);
+			}
+		}
+		if (token.length() > 0) {
+			result.add(token.toString());
+		}
+		return result;
+	}
+
+	private static char unescape(char c) {
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'v':
+			return 11;
+		}
+		return c;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public boolean isBinary() {
+		return type == Type.BINARY;
+	}
+
+	public boolean isHeader() {
+		return header && type == Type.CSV;
+	}
+
+	public char getDelimiter() {
+		if (delimiter != null) {
+			return delimiter;
+		}
+		return type == Type.CSV?',':'\t';
+	}
+
+	public String getNullString() {
+		if (nullString != null) {
+			return nullString;
+		}
+		return type == Type.CSV?"":"\\N"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public char getQuote() {
+		return quote;
+	}
+
+	public char getEscape() {
+		if (escape != null) {
+			return escape;
+		}
+		return quote;
+	}
+
+	/**
+	 * Append the text or csv form of the value
+	 * @param value the text value or null
+	 */
+	public void writeValue(String value, StringBuilder sb) {
+		String nullValue = getNullString();
+		if (value == null) {
+			sb.append(nullValue);
+			return;
+		}
+		char delim = getDelimiter();
+		if (type == Type.CSV) {
+			boolean quoted = value.equals(nullValue) || value.equals("\\."); //$NON-NLS-1$
+			for (int i = 0; !quoted && i < value.length(); i++) {
+				char c = value.charAt(i);
+				quoted = c == delim || c == quote || c == '\r' || c == '\n';
+			}
+			if (!quoted) {
+				sb.append(value);
+				return;
+			}
+			char esc = getEscape();
+			sb.append(quote);
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == quote || c == esc) {
+					sb.append(esc);
+				}
+				sb.append(c);
+			}
+			sb.append(quote);
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\"); //$NON-NLS-1$
+				break;
+			case '\n':
+				sb.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				sb.append("\\r"); //$NON-NLS-1$
+				break;
+			case '\t':
+				sb.append("\\t"); //$NON-NLS-1$
+				break;
+			default:
+				if (c == delim) {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+		}
+	}
+
+	public Parser createParser(Charset encoding) {
+		return new Parser(encoding);
+	}
+
+	/**
+	 * Incrementally parses COPY data into rows.  The data may be split arbitrarily
+	 * across CopyData messages, so rows are only returned once complete.
+	 * <br>
+	 * The values of text and csv rows are Strings, the values of binary rows are byte[].
+	 * Nulls are returned as null values.
+	 */
+	public class Parser {
+
+		private Charset encoding;
+		private byte[] buffer = new byte[1 << 13];
+		private int start;
+		private int end;
+		private boolean started;
+		private boolean done;
+
+		Parser(Charset encoding) {
+			this.encoding = encoding;
+		}
+
+		public void addData(byte[] data) {
+			if (end + data.length > buffer.length) {
+				int length = end - start;
+				byte[] target = buffer;
+				if (length + data.length > buffer.length) {
+					target = new byte[Math.max(buffer.length * 2, length + data.length)];
+				}
+				System.arraycopy(buffer, start, target, 0, length);
+				buffer = target;
+				start = 0;
+				end = length;
+			}
+			System.arraycopy(data, 0, buffer, end, data.length);
+			end += data.length;
+		}
+
+		/**
+		 * @return true if the end of data marker or binary trailer has been read
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * @param eof true if no more data will be added
+		 * @return the next row or null if there is not a complete row
+		 */
+		public List<Object> nextRow(boolean eof) throws TeiidSQLException {
+			while (!done) {
+				if (type == Type.BINARY) {
+					return nextBinaryRow(eof);
+				}
+				int recordEnd = findRecordEnd();
+				int next = recordEnd + 1;
+				if (recordEnd < 0) {
+					if (!eof || start == end) {
+						return null;
+					}
+					recordEnd = end;
+					next = end;
+				}
+				int lineEnd = recordEnd;
+				if (lineEnd > start && buffer[lineEnd - 1] == '\r') {
+					lineEnd--;
+				}
+				int lineStart = start;
+				start = next;
+				if (lineEnd - lineStart == 2 && buffer[lineStart] == '\\' && buffer[lineStart + 1] == '.') {
+					done = true;
+					return null;
+				}
+				if (!started) {
+					started = true;
+					if (isHeader()) {
+						continue;
+					}
+				}
+				if (type == Type.CSV) {
+					return parseCsv(new String(buffer, lineStart, lineEnd - lineStart, encoding));
+				}
+				return parseText(lineStart, lineEnd);
+			}
+			return null;
+		}
+
+		private int findRecordEnd() {
+			if (type == Type.TEXT) {
+				for (int i = start; i < end; i++) {
+					if (buffer[i] == '\n') {
+						return i;
+					}
+				}
+				return -1;
+			}
+			boolean inQuotes = false;
+			char esc = getEscape();
+			for (int i = start; i < end; i++) {
+				byte b = buffer[i];
+				if (inQuotes) {
+					if (b == esc && esc != quote && i + 1 < end) {
+						i++;
+					} else if (b == quote) {
+						inQuotes = false;
+					}
+				} else if (b == quote) {
+					inQuotes = true;
+				} else if (b == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Parse the text line from the buffer.  The octal and hex escapes are bytes in the 
+		 * client encoding, so the values are only decoded after the escapes are processed.
+		 */
+		private List<Object> parseText(int lineStart, int lineEnd) {
+			List<Object> row = new ArrayList<Object>();
+			//an escaped value is never longer than its text
+			byte[] value = new byte[lineEnd - lineStart];
+			int length = 0;
+			byte delim = (byte)getDelimiter();
+			byte[] nullValue = getNullString().getBytes(encoding);
+			int fieldStart = lineStart;
+			for (int i = lineStart; i <= lineEnd; i++) {
+				if (i == lineEnd || buffer[i] == delim) {
+					if (i - fieldStart == nullValue.length && regionMatches(fieldStart, nullValue)) {
+						row.add(null);
+					} else {
+						row.add(new String(value, 0, length, encoding));
+					}
+					length = 0;
+					fieldStart = i + 1;
+					continue;
+				}
+				byte b = buffer[i];
+				if (b != '\\' || i + 1 == lineEnd) {
+					value[length++] = b;
+					continue;
+				}
+				b = buffer[++i];
+				if (b >= '0' && b <= '7') {
+					int val = b - '0';
+					for (int j = 0; j < 2 && i + 1 < lineEnd && buffer[i + 1] >= '0' && buffer[i + 1] <= '7'; j++) {
+						val = val * 8 + buffer[++i] - '0';
+					}
+					value[length++] = (byte)val;
+				} else if (b == 'x' && i + 1 < lineEnd && Character.digit(buffer[i + 1], 16) >= 0) {
+					int val = Character.digit(buffer[++i], 16);
+					if (i + 1 < lineEnd && Character.digit(buffer[i + 1], 16) >= 0) {
+						val = val * 16 + Character.digit(buffer[++i], 16);
+					}
+					value[length++] = (byte)val;
+				} else if (b < 0) {
+					//not an escape, the backslash precedes a multibyte character
+					value[length++] = b;
+				} else {
+					value[length++] = (byte)unescape((char)b);
+				}
+			}
+			return row;
+		}
+		
+		private boolean regionMatches(int offset, byte[] bytes) {
+			for (int i = 0; i < bytes.length; i++) {
+				if (buffer[offset + i] != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private List<Object> parseCsv(String line) {
+			List<Object> row = new ArrayList<Object>();
+			StringBuilder value = new StringBuilder();
+			char delim = getDelimiter();
+			char esc = getEscape();
+			String nullValue = getNullString();
+			boolean inQuotes = false;
+			boolean quoted = false;
+			for (int i = 0; i <= line.length(); i++) {
+				if (i == line.length() || (!inQuotes && line.charAt(i) == delim)) {
+					if (!quoted && value.toString().equals(nullValue)) {
+						row.add(null);
+					} else {
+						row.add(value.toString());
+					}
+					value.setLength(0);
+					quoted = false;
+					continue;
+				}
+				char c = line.charAt(i);
+				if (inQuotes) {
+					if (c == esc && i + 1 < line.length() && (line.charAt(i + 1) == quote || line.charAt(i + 1) == esc)) {
+						value.append(line.charAt(++i));
+					} else if (c == quote) {
+						inQuotes = false;
+					} else {
+						value.append(c);
+					}
+				} else if (c == quote) {
+					inQuotes = true;
+					quoted = true;
+				} else {
+					value.append(c);
+				}
+			}
+			return row;
+		}
+
+		private List<Object> nextBinaryRow(boolean eof) throws TeiidSQLException {
+			int pos = start;
+			if (!started) {
+				if (end - pos < BINARY_SIGNATURE.length + 8) {
+					return incomplete(eof);
+				}
+				for (int i = 0; i < BINARY_SIGNATURE.length; i++) {
+					if (buffer[pos++] != BINARY_SIGNATURE[i]) {
+						throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40169));
+					}
+				}
+				pos += 4; //flags
+				int extension = readInt(pos);
+				pos += 4;
+				if (end - pos < extension) {
+					return incomplete(eof);
+				}
+				start = pos + extension;
+				started = true;
+				pos = start;
+			}
+			if (end - pos < 2) {
+				return incomplete(eof);
+			}
+			short count = (short)(((buffer[pos] & 0xff) << 8) | (buffer[pos + 1] & 0xff));
+			pos += 2;
+			if (count == -1) {
+				done = true;
+				start = pos;
+				return null;
+			}
+			List<Object> row = new ArrayList<Object>(count);
+			for (int i = 0; i < count; i++) {
+				if (end - pos < 4) {
+					return incomplete(eof);
+				}
+				int length = readInt(pos);
+				pos += 4;
+				if (length == -1) {
+					row.add(null);
+					continue;
+				}
+				if (end - pos < length) {
+					return incomplete(eof);
+				}
+				byte[] value = new byte[length];
+				System.arraycopy(buffer, pos, value, 0, length);
+				pos += length;
+				row.add(value);
+			}
+			start = pos;
+			return row;
+		}
+
+		private List<Object> incomplete(boolean eof) throws TeiidSQLException {
+			if (eof && start < end) {
+				throw new TeiidSQLException(RuntimePlugin.Util.gs(RuntimePlugin.Event.TEIID40169));
+			}
+			return null;
+		}
+
+		private int readInt(int pos) {
+			return ((buffer[pos] & 0xff) << 24) | ((buffer[pos + 1] & 0xff) << 16) | ((buffer[pos + 2] & 0xff) << 8) | (buffer[pos + 3] & 0xff);
+		}
+	}
+
+}
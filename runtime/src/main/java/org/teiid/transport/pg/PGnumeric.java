@@ -0,0 +1,130 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport.pg;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Converts to and from the binary format of the postgresql numeric datatype.
+ * <br>
+ * The format is the digit count, the weight of the first digit, the sign and the display
+ * scale as int2 values followed by the base 10000 digits as int2 values.
+ */
+public class PGnumeric {
+
+	private static final int NUMERIC_POS = 0x0000;
+	private static final int NUMERIC_NEG = 0x4000;
+	private static final int NUMERIC_NAN = 0xC000;
+	private static final int NBASE = 10000;
+	private static final BigInteger BIG_NBASE = BigInteger.valueOf(NBASE);
+
+	public static void writeBinary(BigDecimal value, ByteBuf out) {
+		int scale = value.scale();
+		BigInteger unscaled = value.unscaledValue().abs();
+		//align the scale to whole digits
+		int alignedScale = 0;
+		if (scale < 0) {
+			unscaled = unscaled.multiply(BigInteger.TEN.pow(-scale));
+		} else if (scale % 4 != 0) {
+			alignedScale = (scale + 3) / 4 * 4;
+			unscaled = unscaled.multiply(BigInteger.TEN.pow(alignedScale - scale));
+		} else {
+			alignedScale = scale;
+		}
+		short[] digits = new short[unscaled.bitLength() / 13 + 1];
+		int count = 0;
+		if (unscaled.bitLength() < 63) {
+			long val = unscaled.longValue();
+			while (val != 0) {
+				digits[count++] = (short)(val % NBASE);
+				val /= NBASE;
+			}
+		} else {
+			while (unscaled.signum() != 0) {
+				BigInteger[] qr = unscaled.divideAndRemainder(BIG_NBASE);
+				digits[count++] = qr[1].shortValue();
+				unscaled = qr[0];
+			}
+		}
+		int weight = count - 1 - alignedScale / 4;
+		//trailing zero digits are implied
+		int start = 0;
+		while (start < count && digits[start] == 0) {
+			start++;
+		}
+		if (start == count) {
+			weight = 0;
+		}
+		out.writeShort(count - start);
+		out.writeShort(weight);
+		out.writeShort(value.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS);
+		out.writeShort(Math.max(0, scale));
+		for (int i = count - 1; i >= start; i--) {
+			out.writeShort(digits[i]);
+		}
+	}
+
+	/**
+	 * @throws NumberFormatException if the value is NaN or malformed
+	 */
+	public static BigDecimal toBigDecimal(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (bytes.length < 8) {
+			throw new NumberFormatException("Invalid numeric length " + bytes.length); //$NON-NLS-1$
+		}
+		int ndigits = buffer.getShort() & 0xffff;
+		int weight = buffer.getShort();
+		int sign = buffer.getShort() & 0xffff;
+		int dscale = buffer.getShort() & 0xffff;
+		if (sign == NUMERIC_NAN) {
+			throw new NumberFormatException("NaN is not supported"); //$NON-NLS-1$
+		}
+		if (sign != NUMERIC_POS && sign != NUMERIC_NEG) {
+			throw new NumberFormatException("Invalid numeric sign " + sign); //$NON-NLS-1$
+		}
+		if (bytes.length != 8 + ndigits * 2) {
+			throw new NumberFormatException("Invalid numeric length " + bytes.length); //$NON-NLS-1$
+		}
+		BigInteger unscaled = null;
+		if (ndigits <= 4) {
+			long val = 0;
+			for (int i = 0; i < ndigits; i++) {
+				val = val * NBASE + buffer.getShort();
+			}
+			unscaled = BigInteger.valueOf(val);
+		} else {
+			unscaled = BigInteger.ZERO;
+			for (int i = 0; i < ndigits; i++) {
+				unscaled = unscaled.multiply(BIG_NBASE).add(BigInteger.valueOf(buffer.getShort()));
+			}
+		}
+		BigDecimal result = new BigDecimal(unscaled).scaleByPowerOfTen(4 * (weight - ndigits + 1));
+		result = result.setScale(dscale, RoundingMode.DOWN);
+		if (sign == NUMERIC_NEG) {
+			result = result.negate();
+		}
+		return result;
+	}
+
+}
@@ -8,6 +8,8 @@
 package org.teiid.transport.pg;
 
 import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.TimeZone;
 
 /**
@@ -42,6 +44,47 @@ public class TimestampUtils {
         return new Date(millis - offset);
     }
 
+    /**
+     * Returns the binary timestamp value, which is the microseconds from the
+     * postgresql epoch, of the local time of the given timestamp.
+     */
+    public static long toPgMicros(TimeZone tz, Timestamp ts) {
+        long millis = ts.getTime();
+        millis += tz.getOffset(millis);
+        long secs = toPgSecs(Math.floorDiv(millis, 1000));
+        return secs * 1000000 + ts.getNanos() / 1000;
+    }
+
+    /**
+     * Returns the timestamp for the binary timestamp value interpreted as a local time.
+     * See {@link #toPgMicros} for the reverse operation.
+     */
+    public static Timestamp toTimestamp(TimeZone tz, long micros) {
+        long secs = toJavaSecs(Math.floorDiv(micros, 1000000));
+        long millis = secs * 1000L;
+        Timestamp ts = new Timestamp(millis - tz.getOffset(millis));
+        ts.setNanos((int)Math.floorMod(micros, 1000000) * 1000);
+        return ts;
+    }
+
+    /**
+     * Returns the binary time value, which is the microseconds since midnight, of the local time.
+     */
+    public static long toPgTimeMicros(TimeZone tz, Time t) {
+        long millis = t.getTime();
+        millis += tz.getOffset(millis);
+        return Math.floorMod(millis, 86400000L) * 1000;
+    }
+
+    /**
+     * Returns the time for the binary time value.
+     * See {@link #toPgTimeMicros} for the reverse operation.
+     */
+    public static Time toTime(TimeZone tz, long micros) {
+        long millis = micros / 1000;
+        return new Time(millis - tz.getOffset(millis));
+    }
+
     /**
      * Converts the given postgresql seconds to java seconds.
      * Reverse engineered by inserting varying dates to postgresql
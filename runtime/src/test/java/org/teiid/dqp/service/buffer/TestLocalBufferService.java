@@ -64,6 +64,18 @@ public class TestLocalBufferService {
         assertTrue(((FileStorageManager)ssm.getStorageManager()).getDirectory().endsWith(svc.getBufferDirectory().getName()));
     }
 
+    @Test public void testCompressBuffers() throws Exception {
+        BufferServiceImpl svc = new BufferServiceImpl();
+        svc.setDiskDirectory(UnitTestUtil.getTestScratchPath()+"/teiid/1");
+        svc.setUseDisk(true);
+        svc.setCompressBuffers(true);
+        svc.start();
+        BufferManagerImpl mgr = svc.getBufferManager();
+        BufferFrontedFileStoreCache cache = (BufferFrontedFileStoreCache)mgr.getCache();
+        assertNotNull(mgr.getLobCompressor());
+        assertNotSame(cache.getCompressor(), mgr.getLobCompressor());
+    }
+
     @Test public void testCheckMemPropertyGotSet2() throws Exception {
         BufferServiceImpl svc = new BufferServiceImpl();
         svc.setDiskDirectory(UnitTestUtil.getTestScratchPath()+"/teiid/1");
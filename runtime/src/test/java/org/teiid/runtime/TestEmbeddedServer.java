@@ -21,12 +21,14 @@ package org.teiid.runtime;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
@@ -39,8 +41,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -54,6 +59,8 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.postgresql.Driver;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.teiid.CommandContext;
 import org.teiid.GeneratedKeys;
 import org.teiid.PreParser;
@@ -71,9 +78,13 @@ import org.teiid.core.util.ObjectConverterUtil;
 import org.teiid.core.util.SimpleMock;
 import org.teiid.core.util.UnitTestUtil;
 import org.teiid.deployers.VirtualDatabaseException;
+import org.teiid.jdbc.RequestOptions;
 import org.teiid.jdbc.SQLStates;
+import org.teiid.jdbc.StatementCallback;
 import org.teiid.jdbc.TeiidDriver;
+import org.teiid.jdbc.TeiidResultSet;
 import org.teiid.jdbc.TeiidSQLException;
+import org.teiid.jdbc.TeiidStatement;
 import org.teiid.jdbc.tracing.GlobalTracerInjector;
 import org.teiid.language.Command;
 import org.teiid.language.Literal;
@@ -595,6 +606,165 @@ public class TestEmbeddedServer {
 		}
 	}
 	
+	@Test 
+	public void testRemoteStreamedResults() throws Exception {
+		SocketConfiguration s = new SocketConfiguration();
+		InetSocketAddress addr = new InetSocketAddress(0);
+		s.setBindAddress(addr.getHostName());
+		s.setPortNumber(addr.getPort());
+		s.setProtocol(WireProtocol.teiid);
+		EmbeddedConfiguration config = new EmbeddedConfiguration();
+		config.addTransport(s);
+		es.start(config);
+		es.deployVDB(new ByteArrayInputStream("<vdb name=\"test\" version=\"1\"><model name=\"test\" type=\"VIRTUAL\"><metadata type=\"DDL\"><![CDATA[CREATE VIEW helloworld as SELECT 'HELLO WORLD';]]> </metadata></model></vdb>".getBytes()));
+		Connection conn = null;
+		try {
+			TeiidDriver driver = new TeiidDriver();
+			conn = driver.connect("jdbc:teiid:test@mm://"+addr.getHostName()+":"+es.transports.get(0).getPort()+";streamResultSets=true", null);
+			Statement stmt = conn.createStatement();
+			stmt.setFetchSize(100);
+			ResultSet rs = stmt.executeQuery("select x.x from texttable(repeat('1' || chr(10), 200) columns x integer) x, texttable(repeat('1' || chr(10), 100) columns x integer) y");
+			int count = 0;
+			while (rs.next()) {
+				assertEquals(1, rs.getInt(1));
+				count++;
+			}
+			assertEquals(20000, count);
+			rs.close();
+			//ensure that the connection is still usable
+			rs = stmt.executeQuery("select * from helloworld");
+			rs.next();
+			assertEquals("HELLO WORLD", rs.getString(1));
+		} finally {
+			if (conn != null) {
+				conn.close();
+			}
+		}
+	}
+	
+	@Test 
+	public void testRemoteAsynchExecution() throws Exception {
+		SocketConfiguration s = new SocketConfiguration();
+		InetSocketAddress addr = new InetSocketAddress(0);
+		s.setBindAddress(addr.getHostName());
+		s.setPortNumber(addr.getPort());
+		s.setProtocol(WireProtocol.teiid);
+		EmbeddedConfiguration config = new EmbeddedConfiguration();
+		config.addTransport(s);
+		es.start(config);
+		es.deployVDB(new ByteArrayInputStream("<vdb name=\"test\" version=\"1\"><model name=\"test\" type=\"VIRTUAL\"><metadata type=\"DDL\"><![CDATA[CREATE VIEW helloworld as SELECT 'HELLO WORLD';]]> </metadata></model></vdb>".getBytes()));
+		Connection conn = null;
+		String sql = "select x.x from texttable(repeat('1' || chr(10), 100) columns x integer) x, texttable(repeat('1' || chr(10), 50) columns x integer) y";
+		try {
+			TeiidDriver driver = new TeiidDriver();
+			conn = driver.connect("jdbc:teiid:test@mm://"+addr.getHostName()+":"+es.transports.get(0).getPort(), null);
+			//several callbacks outstanding without waiting threads
+			final CountDownLatch latch = new CountDownLatch(4);
+			final AtomicInteger rows = new AtomicInteger();
+			final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+			List<Statement> statements = new ArrayList<Statement>();
+			for (int i = 0; i < 4; i++) {
+				TeiidStatement stmt = conn.createStatement().unwrap(TeiidStatement.class);
+				stmt.setFetchSize(100);
+				statements.add(stmt);
+				stmt.submitExecute(sql, new StatementCallback() {
+					@Override
+					public void onRow(Statement st, ResultSet rs) throws Exception {
+						assertEquals(1, rs.getInt(1));
+						rows.incrementAndGet();
+					}
+					@Override
+					public void onException(Statement st, Exception e) throws Exception {
+						failure.set(e);
+						latch.countDown();
+					}
+					@Override
+					public void onComplete(Statement s) throws Exception {
+						latch.countDown();
+					}
+				}, new RequestOptions());
+			}
+			assertTrue(latch.await(30, TimeUnit.SECONDS));
+			assertNull(failure.get());
+			assertEquals(20000, rows.get());
+			for (Statement stmt : statements) {
+				stmt.close();
+			}
+			
+			//futures with batch reads
+			TeiidStatement stmt = conn.createStatement().unwrap(TeiidStatement.class);
+			stmt.setFetchSize(100);
+			assertTrue(stmt.submitExecute(sql, null).get(30, TimeUnit.SECONDS));
+			TeiidResultSet rs = stmt.getResultSet().unwrap(TeiidResultSet.class);
+			int count = 0;
+			while (rs.submitNext().get(30, TimeUnit.SECONDS)) {
+				count++;
+				for (int i = rs.availableFetched(); i > 0; i--) {
+					assertTrue(rs.next());
+					count++;
+				}
+			}
+			assertEquals(5000, count);
+			
+			//the connection is still usable synchronously
+			ResultSet result = stmt.executeQuery("select * from helloworld");
+			result.next();
+			assertEquals("HELLO WORLD", result.getString(1));
+		} finally {
+			if (conn != null) {
+				conn.close();
+			}
+		}
+	}
+	
+	@Test public void testRemoteLobStreaming() throws Exception {
+		SocketConfiguration s = new SocketConfiguration();
+		InetSocketAddress addr = new InetSocketAddress(0);
+		s.setBindAddress(addr.getHostName());
+		s.setPortNumber(addr.getPort());
+		s.setProtocol(WireProtocol.teiid);
+		EmbeddedConfiguration config = new EmbeddedConfiguration();
+		config.addTransport(s);
+		es.start(config);
+		es.deployVDB(new ByteArrayInputStream("<vdb name=\"test\" version=\"1\"><model name=\"test\" type=\"VIRTUAL\"><metadata type=\"DDL\"><![CDATA[CREATE VIEW helloworld as SELECT 'HELLO WORLD';]]> </metadata></model></vdb>".getBytes()));
+		//the textagg result is backed by a buffer file, the converted clob is not
+		String sql = "select to_bytes(string_agg(cast(repeat('abc', 1000) as clob), cast('' as clob)), 'UTF-8'), textagg(for repeat('abc', 1000) || x.x as y), to_bytes(cast('' as clob), 'UTF-8') from texttable(repeat('1' || chr(10), 100) columns x integer) x";
+		byte[] expected = new String(new char[100000]).replace("\0", "abc").getBytes("UTF-8");
+		byte[] textagg = null;
+		for (String props : new String[] {";streamLobs=true", ""}) {
+			Connection conn = null;
+			try {
+				TeiidDriver driver = new TeiidDriver();
+				conn = driver.connect("jdbc:teiid:test@mm://"+addr.getHostName()+":"+es.transports.get(0).getPort() + props, null);
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery(sql);
+				assertTrue(rs.next());
+				Blob blob = rs.getBlob(1);
+				assertEquals(expected.length, blob.length());
+				assertArrayEquals(expected, ObjectConverterUtil.convertToByteArray(blob.getBinaryStream()));
+				//a second read does not need another request
+				assertArrayEquals(expected, ObjectConverterUtil.convertToByteArray(blob.getBinaryStream()));
+				byte[] bytes = ObjectConverterUtil.convertToByteArray(rs.getBlob(2).getBinaryStream());
+				assertTrue(bytes.length > expected.length);
+				if (textagg == null) {
+					textagg = bytes;
+				} else {
+					assertArrayEquals(textagg, bytes);
+				}
+				assertEquals(0, rs.getBlob(3).length());
+				
+				//the connection is still usable
+				rs = stmt.executeQuery("select * from helloworld");
+				rs.next();
+				assertEquals("HELLO WORLD", rs.getString(1));
+			} finally {
+				if (conn != null) {
+					conn.close();
+				}
+			}
+		}
+	}
+	
 	@Test(expected=TeiidRuntimeException.class)
 	public void testRemoteTrasportSSLFail() throws Exception {
 		SocketConfiguration s = new SocketConfiguration();
@@ -639,6 +809,69 @@ public class TestEmbeddedServer {
 		}
 	}	
 	
+	@Test public void testRemoteODBCCopy() throws Exception {
+		SocketConfiguration s = new SocketConfiguration();
+		InetSocketAddress addr = new InetSocketAddress(0);
+		s.setBindAddress(addr.getHostName());
+		s.setPortNumber(addr.getPort());
+		s.setProtocol(WireProtocol.pg);
+		EmbeddedConfiguration config = new EmbeddedConfiguration();
+		config.addTransport(s);
+		es.start(config);
+		es.deployVDB(new ByteArrayInputStream("<vdb name=\"test\" version=\"1\"><model name=\"test\" type=\"VIRTUAL\"><metadata type=\"DDL\"><![CDATA[CREATE VIEW helloworld as SELECT 'HELLO WORLD';]]> </metadata></model></vdb>".getBytes()));
+		Connection conn = null;
+		try {
+			Driver d = new Driver();
+			Properties p = new Properties();
+			p.setProperty("user", "testuser");
+			p.setProperty("password", "testpassword");
+			
+			conn = d.connect("jdbc:postgresql://"+addr.getHostName()+":"+es.transports.get(0).getPort()+"/test", p);
+			Statement stmt = conn.createStatement();
+			stmt.execute("create local temporary table t (x integer, y string, z boolean)");
+			CopyManager cm = conn.unwrap(PGConnection.class).getCopyAPI();
+			assertEquals(2, cm.copyIn("copy t from stdin", new StringReader("1\ta\\tb\tt\n2\t\\N\tf\n")));
+			StringWriter out = new StringWriter();
+			assertEquals(2, cm.copyOut("copy (select * from t order by x) to stdout with csv header", out));
+			assertEquals("x,y,z\n1,a\tb,t\n2,,f\n", out.toString());
+			
+			//multiple batches
+			StringBuilder data = new StringBuilder("x,y\n");
+			for (int i = 0; i < 5000; i++) {
+				data.append(i).append(",\"a,").append(i).append("\"\n");
+			}
+			assertEquals(5000, cm.copyIn("copy t (x, y) from stdin with (format csv, header true)", new StringReader(data.toString())));
+			ResultSet rs = stmt.executeQuery("select count(*), max(y) from t where z is null");
+			rs.next();
+			assertEquals(5000, rs.getInt(1));
+			assertEquals("a,999", rs.getString(2));
+			
+			//binary round trip
+			stmt.execute("create local temporary table t1 (x integer, y string, z boolean)");
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			assertEquals(5002, cm.copyOut("copy t to stdout (format binary)", baos));
+			assertEquals(5002, cm.copyIn("copy t1 from stdin binary", new ByteArrayInputStream(baos.toByteArray())));
+			rs = stmt.executeQuery("select count(*) from t1 where z = false and y is null");
+			rs.next();
+			assertEquals(1, rs.getInt(1));
+			
+			//a failed batch is not applied
+			try {
+				cm.copyIn("copy t1 from stdin", new StringReader("1\ta\tt\nx\tb\tf\n"));
+				fail();
+			} catch (SQLException e) {
+				
+			}
+			rs = stmt.executeQuery("select count(*) from t1");
+			rs.next();
+			assertEquals(5002, rs.getInt(1));
+		} finally {
+			if (conn != null) {
+				conn.close();
+			}
+		}
+	}
+	
 	@Test(expected=VirtualDatabaseException.class) public void testXMLDeployFails() throws Exception {
 		es.start(new EmbeddedConfiguration());
 		es.deployVDB(new ByteArrayInputStream("<vdb name=\"test\" version=\"1\"><model name=\"test\" type=\"VIRTUAL\"><metadata type=\"DDL\"><![CDATA[CREATE VIEW helloworld as SELECT 'HELLO WORLD';]]> </metadata></model><translator name=\"foo\" type=\"h2\"></translator></vdb>".getBytes()));
@@ -2171,6 +2404,54 @@ public class TestEmbeddedServer {
 		s.execute("with a (x) as (select e1 from pm1.g1) SELECT a.x from a, a z"); //$NON-NLS-1$
 	}
 	
+	@Test public void testIncrementalMatViewRefresh() throws Exception {
+		EmbeddedConfiguration ec = new EmbeddedConfiguration();
+		ec.setUseDisk(false);
+		es.start(ec);
+		
+		HardCodedExecutionFactory hcef = new HardCodedExecutionFactory() {
+			@Override
+			public boolean supportsCompareCriteriaEquals() {
+				return true;
+			}
+		};
+		es.addTranslator("y", hcef);
+		hcef.addData("SELECT t.grp, t.val FROM t", Arrays.asList(Arrays.asList("a", 1), Arrays.asList("b", 2)));
+		
+		ModelMetaData mmd = new ModelMetaData();
+		mmd.setName("m");
+		mmd.addSourceMapping("x", "y", null);
+		mmd.addSourceMetadata("ddl", "create foreign table t (id integer primary key, grp string, val integer); "
+				+ "create view v (grp string primary key, total long) options (materialized true, "
+				+ "\"teiid_rel:MATVIEW_UPDATABLE\" true, \"teiid_rel:MATVIEW_INCREMENTAL\" true) "
+				+ "as select grp, sum(val) from t group by grp");
+		es.deployVDB("test", mmd);
+		
+		Connection c = es.getDriver().connect("jdbc:teiid:test", null);
+		Statement s = c.createStatement();
+		ResultSet rs = s.executeQuery("select total from v order by grp");
+		rs.next();
+		assertEquals(1, rs.getLong(1));
+		
+		//only the affected group should be read from the source
+		hcef.addData("SELECT t.grp, t.val FROM t", Arrays.asList(Arrays.asList("a", 10), Arrays.asList("b", 20)));
+		hcef.addData("SELECT t.grp, t.val FROM t WHERE t.grp = 'a'", Arrays.asList(Arrays.asList("a", 1), Arrays.asList("a", 5)));
+		es.getEventDistributor().dataModification("test", "1", "m", "t", null, new Object[] {3, "a", 5}, new String[] {"id", "grp", "val"}).get();
+		
+		rs = s.executeQuery("select total from v order by grp");
+		rs.next();
+		assertEquals(6, rs.getLong(1));
+		rs.next();
+		assertEquals(2, rs.getLong(1));
+		
+		hcef.addData("SELECT t.grp, t.val FROM t WHERE t.grp = 'b'", new ArrayList<List<?>>());
+		es.getEventDistributor().dataModification("test", "1", "m", "t", new Object[] {2, "b", 2}, null, new String[] {"id", "grp", "val"}).get();
+		
+		rs = s.executeQuery("select count(*) from v");
+		rs.next();
+		assertEquals(1, rs.getInt(1));
+	}
+	
 	@Test public void testBatchedUpdateErrors() throws Exception {
 		EmbeddedConfiguration ec = new EmbeddedConfiguration();
 		ec.setUseDisk(false);
@@ -2721,11 +3002,11 @@ public class TestEmbeddedServer {
         Statement stmt = connection.createStatement();
         stmt.execute("set autoCommitTxn off");
         boolean killed = false;
-        for (int i = 0; i < 64; i++) {
+        for (int i = 0; i < 128; i++) {
             try {
                 stmt.execute("insert into #temp select * from sys.columns limit 400");
             } catch (SQLException e) {
-                assertTrue(i > 50);
+                assertTrue(i > 90);
                 //session killed
                 killed = true;
                 break;
@@ -2737,7 +3018,7 @@ public class TestEmbeddedServer {
         connection = es.getDriver().connect("jdbc:teiid:test", null);
         stmt = connection.createStatement();
         stmt.execute("set autoCommitTxn off");
-        for (int i = 0; i < 54; i++) {
+        for (int i = 0; i < 92; i++) {
             stmt.execute("insert into #temp select * from sys.columns limit 400");
         }
         
@@ -18,6 +18,7 @@
 package org.teiid.transport;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
@@ -35,7 +36,10 @@ import javax.net.ssl.SSLContext;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.teiid.client.ResultsMessage;
 import org.teiid.client.security.ILogon;
+import org.teiid.client.util.ExceptionHolder;
 import org.teiid.client.util.ResultsFuture;
 import org.teiid.client.util.ResultsFuture.CompletionListener;
 import org.teiid.common.buffer.BufferManagerFactory;
@@ -47,6 +51,10 @@ import org.teiid.net.CommunicationException;
 import org.teiid.net.ConnectionException;
 import org.teiid.net.ServerConnection;
 import org.teiid.net.TeiidURL;
+import org.teiid.net.socket.Handshake;
+import org.teiid.net.socket.Message;
+import org.teiid.net.socket.MultiplexedMessage;
+import org.teiid.net.socket.ObjectChannel;
 import org.teiid.net.socket.SocketServerConnection;
 import org.teiid.net.socket.SocketServerConnectionFactory;
 import org.teiid.net.socket.SocketUtil;
@@ -293,6 +301,104 @@ public class TestCommSockets {
 		conn2.close();
 	}
 	
+	@Test public void testMultiplexedConnections() throws Exception {
+		Properties p = new Properties();
+		p.setProperty("org.teiid.sockets.maxConnectionsPerSocket", "2");
+		SSLConfiguration config = new SSLConfiguration();
+		SocketServerConnection conn = helpEstablishConnection(false, config, p);
+		SocketServerConnection conn2 = helpEstablishConnection(false, config, p);
+		assertEquals(1, listener.getStats().sockets);
+		assertEquals(2, this.service.getActiveSessionsCount());
+		SocketServerConnection conn3 = helpEstablishConnection(false, config, p);
+		assertEquals(2, listener.getStats().sockets);
+		assertEquals(3, this.service.getActiveSessionsCount());
+		
+		//requests from both connections in flight on the same socket
+		ResultsFuture<Integer> f = conn.getService(FakeService.class).asynchResult();
+		ResultsFuture<Integer> f2 = conn2.getService(FakeService.class).asynchResult();
+		assertEquals(Integer.valueOf(5), f2.get());
+		assertEquals(Integer.valueOf(5), f.get());
+		assertNotEquals(conn.getLogonResult().getSessionID(), conn2.getLogonResult().getSessionID());
+		
+		conn.close();
+		assertEquals(2, this.service.getActiveSessionsCount());
+		assertTrue(conn2.isOpen(10000));
+		assertEquals(2, listener.getStats().sockets);
+		conn2.close();
+		conn3.close();
+		for (int i = 0; i < 10 && listener.getStats().sockets > 0; i++) {
+			//the server side effect of the close can be delayed
+			Thread.sleep(100);
+		}
+		assertEquals(0, listener.getStats().sockets);
+		assertEquals(0, this.service.getActiveSessionsCount());
+	}
+	
+	@Test public void testCompression() throws Exception {
+		Properties p = new Properties();
+		p.setProperty("org.teiid.sockets.compression", "true");
+		SocketServerConnection conn = helpEstablishConnection(false, new SSLConfiguration(), p);
+		FakeService fs = conn.getService(FakeService.class);
+		//below the threshold
+		assertEquals(10, fs.getResults(10).getResultsList().size());
+		assertEquals(0, listener.getStats().objectsCompressed);
+		
+		ResultsMessage rm = fs.getResults(2000);
+		assertEquals(2000, rm.getResultsList().size());
+		assertEquals(Arrays.asList("some repetitive value 9"), rm.getResultsList().get(1999));
+		SocketListenerStats stats = listener.getStats();
+		assertEquals(1, stats.objectsCompressed);
+		assertTrue(stats.bytesBeforeCompression > 4 * stats.bytesAfterCompression);
+		conn.close();
+	}
+	
+	@Test public void testCompressionNotRequested() throws Exception {
+		SocketServerConnection conn = helpEstablishConnection(false);
+		FakeService fs = conn.getService(FakeService.class);
+		assertEquals(2000, fs.getResults(2000).getResultsList().size());
+		assertEquals(0, listener.getStats().objectsCompressed);
+		conn.close();
+	}
+	
+	@Test public void testMultiplexedMaxNegotiated() throws Exception {
+		Properties p = new Properties();
+		p.setProperty("org.teiid.sockets.maxConnectionsPerSocket", "4");
+		SSLConfiguration config = new SSLConfiguration();
+		System.setProperty("org.teiid.maxStreamsPerSocket", "2");
+		try {
+			SocketServerConnection conn = helpEstablishConnection(false, config, p);
+			SocketServerConnection conn2 = helpEstablishConnection(false, config, p);
+			assertEquals(1, listener.getStats().sockets);
+			SocketServerConnection conn3 = helpEstablishConnection(false, config, p);
+			assertEquals(2, listener.getStats().sockets);
+			assertEquals(3, this.service.getActiveSessionsCount());
+			conn.close();
+			conn2.close();
+			conn3.close();
+		} finally {
+			System.clearProperty("org.teiid.maxStreamsPerSocket");
+		}
+	}
+	
+	@Test public void testUnknownStreamRejected() throws Exception {
+		ObjectChannel channel = mock(ObjectChannel.class);
+		SocketClientInstance instance = new SocketClientInstance(channel, mock(ClientServiceRegistryImpl.class), false);
+		instance.setMaxStreams(2);
+		instance.onConnection();
+		//the client did not accept sharing the socket
+		instance.receivedMessage(new Handshake());
+		MultiplexedMessage message = new MultiplexedMessage(1);
+		message.setMessageKey(1);
+		instance.receivedMessage(message);
+		assertEquals(0, instance.getStreamCount());
+		
+		ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+		verify(channel, times(2)).write(captor.capture());
+		Message reply = (Message)captor.getValue();
+		assertEquals(1, reply.getContents());
+		assertTrue(((ExceptionHolder)reply.getMessageKey()).getException() instanceof CommunicationException);
+	}
+	
 	@Test public void testEnableCipherSuites() throws Exception {
 		SSLConfiguration config = new SSLConfiguration();
 		config.setEnabledCipherSuites("x,y,z");
@@ -0,0 +1,72 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.teiid.net.socket.ServiceInvocationStruct;
+import org.teiid.odbc.ODBCClientRemote;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+@SuppressWarnings("nls")
+public class TestPgBackendProtocol {
+
+	private static String readString(ByteBuf buf) {
+		StringBuilder sb = new StringBuilder();
+		byte b;
+		while ((b = buf.readByte()) != 0) {
+			sb.append((char)b);
+		}
+		return sb.toString();
+	}
+
+	@Test public void testParameterStatus() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new PgBackendProtocol(1 << 20, 1 << 20, null, false));
+		Properties props = new Properties();
+		props.setProperty("user", "x");
+		channel.writeOutbound(new ServiceInvocationStruct(new Object[] {props}, "initialized", ODBCClientRemote.class));
+		channel.writeOutbound(new ServiceInvocationStruct(new Object[] {1, 2}, "authenticationSucess", ODBCClientRemote.class));
+		Map<String, String> status = new HashMap<String, String>();
+		Object msg = null;
+		while ((msg = channel.readOutbound()) != null) {
+			ByteBuf buf = (ByteBuf)msg;
+			while (buf.isReadable()) {
+				char type = (char)buf.readByte();
+				int length = buf.readInt();
+				if (type == 'S') {
+					status.put(readString(buf), readString(buf));
+				} else {
+					buf.skipBytes(length - 4);
+				}
+			}
+			buf.release();
+		}
+		//binary timestamps and times are sent as int8 microseconds
+		assertEquals("on", status.get("integer_datetimes"));
+		assertEquals("ISO", status.get("DateStyle"));
+	}
+
+}
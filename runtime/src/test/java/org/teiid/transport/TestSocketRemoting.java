@@ -28,7 +28,10 @@ import java.io.StringReader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -36,6 +39,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.teiid.client.DQP;
+import org.teiid.client.ResultsMessage;
 import org.teiid.client.security.ILogon;
 import org.teiid.client.security.InvalidSessionException;
 import org.teiid.client.security.LogonException;
@@ -47,6 +51,7 @@ import org.teiid.core.TeiidComponentException;
 import org.teiid.core.TeiidProcessingException;
 import org.teiid.core.crypto.Cryptor;
 import org.teiid.core.crypto.NullCryptor;
+import org.teiid.core.types.DataTypeManager;
 import org.teiid.core.util.ApplicationInfo;
 import org.teiid.core.util.ObjectConverterUtil;
 import org.teiid.dqp.internal.process.DQPWorkContext;
@@ -76,6 +81,8 @@ public class TestSocketRemoting {
 		
 		Reader getReader() throws IOException;
 		
+		ResultsMessage getResults(int rows);
+		
 	}
 	
 	static class FakeServiceImpl implements FakeService {
@@ -100,6 +107,19 @@ public class TestSocketRemoting {
 			return new StringReader("hello world"); //$NON-NLS-1$
 		}
 		
+		@Override
+		public ResultsMessage getResults(int rows) {
+			List<List<String>> results = new ArrayList<List<String>>();
+			for (int i = 0; i < rows; i++) {
+				results.add(Arrays.asList("some repetitive value " + (i % 10))); //$NON-NLS-1$
+			}
+			ResultsMessage rm = new ResultsMessage(results, new String[] {"x"}, new String[] {DataTypeManager.DefaultDataTypes.STRING}); //$NON-NLS-1$
+			rm.setFirstRow(1);
+			rm.setLastRow(rows);
+			rm.setFinalRow(rows);
+			return rm;
+		}
+		
 		@Override
         public ResultsFuture<Integer> delayedAsynchResult() {
             ResultsFuture<Integer> result = new ResultsFuture<Integer>();
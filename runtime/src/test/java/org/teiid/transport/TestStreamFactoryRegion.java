@@ -0,0 +1,128 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.junit.Test;
+import org.teiid.core.types.InputStreamFactory.ChannelTransferable;
+import org.teiid.transport.ObjectEncoder.AnonymousChunkedStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+@SuppressWarnings("nls")
+public class TestStreamFactoryRegion {
+	
+	/**
+	 * Accepts a limited number of bytes per write as a non-blocking socket would
+	 */
+	private static final class LimitedChannel implements WritableByteChannel {
+		private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		private int limit;
+		
+		LimitedChannel(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int length = Math.min(limit, src.remaining());
+			byte[] bytes = new byte[length];
+			src.get(bytes);
+			baos.write(bytes);
+			return length;
+		}
+	}
+	
+	private static ChannelTransferable transferable(final byte[] bytes) {
+		return new ChannelTransferable() {
+			@Override
+			public long transferTo(long position, long count,
+					WritableByteChannel target) throws IOException {
+				if (position >= bytes.length) {
+					throw new EOFException();
+				}
+				return target.write(ByteBuffer.wrap(bytes, (int)position, (int)Math.min(count, bytes.length - position)));
+			}
+		};
+	}
+	
+	private byte[] helpTransfer(byte[] bytes, int limit) throws IOException {
+		StreamFactoryRegion region = new StreamFactoryRegion(transferable(bytes), bytes.length);
+		LimitedChannel channel = new LimitedChannel(limit);
+		while (region.transferred() < region.count()) {
+			assertTrue(region.transferTo(channel, region.transferred()) > 0);
+		}
+		assertEquals(region.count(), channel.baos.size());
+		return channel.baos.toByteArray();
+	}
+	
+	private byte[] helpChunk(byte[] bytes) throws Exception {
+		AnonymousChunkedStream stream = new AnonymousChunkedStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		while (!stream.isEndOfInput()) {
+			ByteBuf buf = stream.readChunk(UnpooledByteBufAllocator.DEFAULT);
+			buf.readBytes(baos, buf.readableBytes());
+			buf.release();
+		}
+		return baos.toByteArray();
+	}
+	
+	@Test public void testFraming() throws Exception {
+		byte[] bytes = new byte[2*ObjectEncoder.CHUNK_SIZE + 1000];
+		new Random(1).nextBytes(bytes);
+		byte[] result = helpTransfer(bytes, 1 << 14);
+		assertEquals(bytes.length + 8, result.length);
+		assertEquals((byte)0xff, result[0]);
+		assertEquals((byte)0xff, result[1]);
+		assertEquals(bytes[0], result[2]);
+		assertArrayEquals(helpChunk(bytes), result);
+		//single byte writes split the lengths
+		assertArrayEquals(result, helpTransfer(bytes, 1));
+	}
+	
+	@Test public void testEmpty() throws Exception {
+		assertArrayEquals(new byte[2], helpTransfer(new byte[0], 10));
+		assertArrayEquals(new byte[2], helpChunk(new byte[0]));
+	}
+	
+	@Test public void testExactChunk() throws Exception {
+		byte[] bytes = new byte[ObjectEncoder.CHUNK_SIZE];
+		assertArrayEquals(helpChunk(bytes), helpTransfer(bytes, 1 << 16));
+	}
+
+}
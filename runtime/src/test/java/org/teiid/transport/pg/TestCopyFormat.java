@@ -0,0 +1,134 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport.pg;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.teiid.jdbc.TeiidSQLException;
+
+@SuppressWarnings("nls")
+public class TestCopyFormat {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test public void testOptions() throws Exception {
+		CopyFormat format = CopyFormat.parse(null);
+		assertEquals(CopyFormat.Type.TEXT, format.getType());
+		assertEquals('\t', format.getDelimiter());
+		assertEquals("\\N", format.getNullString());
+
+		format = CopyFormat.parse("with csv header delimiter as '|' null 'x'");
+		assertEquals(CopyFormat.Type.CSV, format.getType());
+		assertTrue(format.isHeader());
+		assertEquals('|', format.getDelimiter());
+		assertEquals("x", format.getNullString());
+
+		format = CopyFormat.parse("WITH (FORMAT csv, HEADER false, QUOTE '''', ESCAPE E'\\\\')");
+		assertFalse(format.isHeader());
+		assertEquals('\'', format.getQuote());
+		assertEquals('\\', format.getEscape());
+		assertEquals("", format.getNullString());
+
+		assertTrue(CopyFormat.parse("(format binary)").isBinary());
+	}
+
+	@Test(expected=TeiidSQLException.class) public void testInvalidOption() throws Exception {
+		CopyFormat.parse("with (format xml)");
+	}
+
+	@Test public void testTextRoundTrip() throws Exception {
+		CopyFormat format = CopyFormat.parse(null);
+		StringBuilder sb = new StringBuilder();
+		format.writeValue("a\tb\\c\nd", sb);
+		sb.append(format.getDelimiter());
+		format.writeValue(null, sb);
+		sb.append(format.getDelimiter());
+		format.writeValue("", sb);
+		sb.append('\n');
+		assertEquals("a\\tb\\\\c\\nd\t\\N\t\n", sb.toString());
+		CopyFormat.Parser parser = format.createParser(UTF8);
+		byte[] bytes = (sb.toString() + "\\101\\x42\n\\.\n").getBytes(UTF8);
+		//split mid row
+		parser.addData(Arrays.copyOf(bytes, 5));
+		assertNull(parser.nextRow(false));
+		parser.addData(Arrays.copyOfRange(bytes, 5, bytes.length));
+		assertEquals(Arrays.asList("a\tb\\c\nd", null, ""), parser.nextRow(false));
+		assertEquals(Arrays.asList("AB"), parser.nextRow(false));
+		assertNull(parser.nextRow(true));
+		assertTrue(parser.isDone());
+	}
+
+	@Test public void testTextMultibyteEscapes() throws Exception {
+		CopyFormat.Parser parser = CopyFormat.parse(null).createParser(UTF8);
+		//the escapes are the utf-8 bytes of \u00e9
+		parser.addData("\\303\\251\t\\xc3\\xa9\t\u20ac\\\u20ac\n".getBytes(UTF8));
+		assertEquals(Arrays.asList("\u00e9", "\u00e9", "\u20ac\u20ac"), parser.nextRow(false));
+	}
+
+	@Test public void testCsv() throws Exception {
+		CopyFormat format = CopyFormat.parse("csv header");
+		StringBuilder sb = new StringBuilder();
+		format.writeValue("a,\"b\"\r\n", sb);
+		sb.append(format.getDelimiter());
+		format.writeValue("", sb);
+		sb.append(format.getDelimiter());
+		format.writeValue(null, sb);
+		assertEquals("\"a,\"\"b\"\"\r\n\",\"\",", sb.toString());
+		CopyFormat.Parser parser = format.createParser(UTF8);
+		parser.addData(("x,y,z\r\n" + sb.toString().substring(0, 8)).getBytes(UTF8));
+		//the newline is quoted
+		assertNull(parser.nextRow(false));
+		parser.addData(sb.toString().substring(8).getBytes(UTF8));
+		assertNull(parser.nextRow(false));
+		assertEquals(Arrays.asList("a,\"b\"\r\n", "", null), parser.nextRow(true));
+		assertNull(parser.nextRow(true));
+	}
+
+	@Test public void testBinary() throws Exception {
+		CopyFormat format = CopyFormat.parse("binary");
+		CopyFormat.Parser parser = format.createParser(UTF8);
+		byte[] bytes = new byte[] {0, 2, 0, 0, 0, 1, 7, -1, -1, -1, -1};
+		parser.addData(Arrays.copyOf(CopyFormat.BINARY_SIGNATURE, CopyFormat.BINARY_SIGNATURE.length + 8));
+		//one byte at a time
+		for (int i = 0; i < bytes.length; i++) {
+			assertNull(parser.nextRow(false));
+			parser.addData(new byte[] {bytes[i]});
+		}
+		List<Object> row = parser.nextRow(false);
+		assertArrayEquals(new byte[] {7}, (byte[])row.get(0));
+		assertNull(row.get(1));
+		assertFalse(parser.isDone());
+		parser.addData(new byte[] {-1, -1});
+		assertNull(parser.nextRow(false));
+		assertTrue(parser.isDone());
+	}
+
+	@Test(expected=TeiidSQLException.class) public void testBinaryTruncated() throws Exception {
+		CopyFormat.Parser parser = CopyFormat.parse("binary").createParser(UTF8);
+		parser.addData(Arrays.copyOf(CopyFormat.BINARY_SIGNATURE, CopyFormat.BINARY_SIGNATURE.length + 8));
+		parser.addData(new byte[] {0, 1, 0, 0});
+		parser.nextRow(true);
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags and
+ * the COPYRIGHT.txt file distributed with this work.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.teiid.transport.pg;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+@SuppressWarnings("nls")
+public class TestPGnumeric {
+
+	private static byte[] toBinary(BigDecimal value) {
+		ByteBuf buf = Unpooled.buffer();
+		PGnumeric.writeBinary(value, buf);
+		byte[] bytes = new byte[buf.readableBytes()];
+		buf.readBytes(bytes);
+		return bytes;
+	}
+
+	private static void helpTestRoundTrip(String value) {
+		BigDecimal bd = new BigDecimal(value);
+		BigDecimal result = PGnumeric.toBigDecimal(toBinary(bd));
+		assertEquals(0, bd.compareTo(result));
+		assertEquals(Math.max(0, bd.scale()), result.scale());
+	}
+
+	@Test public void testRoundTrip() {
+		helpTestRoundTrip("0");
+		helpTestRoundTrip("0.00");
+		helpTestRoundTrip("1");
+		helpTestRoundTrip("-1");
+		helpTestRoundTrip("0.5");
+		helpTestRoundTrip("-12345.678");
+		helpTestRoundTrip("10000");
+		helpTestRoundTrip("1E+5");
+		helpTestRoundTrip("0.00000001");
+		helpTestRoundTrip("123456789012345678901234567890.123456789");
+	}
+
+	@Test public void testFormat() {
+		//1 | 2345 | .6780 with a weight of 1
+		assertArrayEquals(new byte[] {0, 3, 0, 1, 0x40, 0, 0, 3, 0, 1, 0x09, 0x29, 0x1a, 0x7c}, toBinary(new BigDecimal("-12345.678")));
+		assertArrayEquals(new byte[] {0, 0, 0, 0, 0, 0, 0, 2}, toBinary(new BigDecimal("0.00")));
+	}
+
+	@Test(expected=NumberFormatException.class) public void testNaN() {
+		PGnumeric.toBigDecimal(new byte[] {0, 0, 0, 0, (byte)0xC0, 0, 0, 0});
+	}
+
+	@Test public void testTimestampRoundTrip() {
+		TimeZone tz = TimeZone.getTimeZone("America/Chicago");
+		Timestamp ts = Timestamp.valueOf("2019-03-10 05:06:07.123456");
+		Timestamp result = TimestampUtils.toTimestamp(tz, TimestampUtils.toPgMicros(tz, ts));
+		assertEquals(ts, result);
+		TimeZone gmt = TimeZone.getTimeZone("GMT");
+		assertEquals(0, TimestampUtils.toPgMicros(gmt, new Timestamp(946684800000L)));
+		ts = new Timestamp(946684800000L - 1);
+		assertEquals(-1000, TimestampUtils.toPgMicros(gmt, ts));
+		assertEquals(ts, TimestampUtils.toTimestamp(gmt, -1000));
+		Time t = Time.valueOf("13:14:15");
+		assertEquals(t, TimestampUtils.toTime(tz, TimestampUtils.toPgTimeMicros(tz, t)));
+	}
+
+}
@@ -20,6 +20,7 @@ package org.teiid.transport;
 
 import static org.junit.Assert.*;
 
+import java.math.BigDecimal;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.sql.Array;
@@ -30,6 +31,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.Properties;
 import java.util.concurrent.ForkJoinPool;
 
@@ -859,6 +861,57 @@ public class TestODBCSocketTransport {
         assertTrue(!rs.getBoolean(3) && rs.wasNull());
     }
 
+    @Test public void testBinaryTransfer() throws Exception {
+        conn.close();
+        Driver d = new Driver();
+        Properties p = new Properties();
+        p.setProperty("user", "testuser");
+        p.setProperty("password", "testpassword");
+        //use binary formats from the first execution
+        p.setProperty("prepareThreshold", "-1");
+        conn = d.connect("jdbc:postgresql://"+odbcServer.addr.getHostName()+":" +odbcServer.odbcTransport.getPort()+"/parts", p);
+        PreparedStatement ps = conn.prepareStatement("select cast(? as integer), cast(? as long), cast(? as double), cast(? as boolean), cast(? as bigdecimal), cast(? as timestamp), cast(? as integer)");
+        Timestamp ts = Timestamp.valueOf("2019-03-10 05:06:07.123456");
+        ps.setInt(1, -2);
+        ps.setLong(2, Long.MAX_VALUE);
+        ps.setDouble(3, 1.5);
+        ps.setBoolean(4, true);
+        ps.setBigDecimal(5, new BigDecimal("-12345.678"));
+        ps.setTimestamp(6, ts);
+        ps.setNull(7, java.sql.Types.INTEGER);
+        ResultSet rs = ps.executeQuery();
+        rs.next();
+        assertEquals(-2, rs.getInt(1));
+        assertEquals(Long.MAX_VALUE, rs.getLong(2));
+        assertEquals(1.5, rs.getDouble(3), 0);
+        assertTrue(rs.getBoolean(4));
+        assertEquals(new BigDecimal("-12345.678"), rs.getBigDecimal(5));
+        assertEquals(ts, rs.getTimestamp(6));
+        rs.getInt(7);
+        assertTrue(rs.wasNull());
+    }
+
+    @Test public void testPipelinedBatchAndDdlInvalidation() throws Exception {
+        Statement s = conn.createStatement();
+        s.execute("create local temporary table pipelined (x integer)");
+        PreparedStatement ps = conn.prepareStatement("insert into pipelined (x) values (?)");
+        for (int i = 0; i < 100; i++) {
+            ps.setInt(1, i);
+            ps.addBatch();
+        }
+        assertEquals(100, ps.executeBatch().length);
+        ResultSet rs = s.executeQuery("select count(*) from pipelined");
+        rs.next();
+        assertEquals(100, rs.getInt(1));
+        rs = s.executeQuery("select * from pipelined");
+        assertEquals(1, rs.getMetaData().getColumnCount());
+        s.execute("drop table pipelined");
+        //the cached parse of the select must not survive the ddl
+        s.execute("create local temporary table pipelined (x string, y integer)");
+        rs = s.executeQuery("select * from pipelined");
+        assertEquals(2, rs.getMetaData().getColumnCount());
+    }
+
     private void checkApplicationName(Statement s, String value) throws SQLException {
         ResultSet rs = s.executeQuery("show application_name");
         rs.next();